@@ -30,6 +30,11 @@ sourceSets {
       srcDirs("src/test/java", "src/test/$jdk")
     }
   }
+
+  // the jcodec annotation processor, shipped in the jar with the "processor" classifier
+  create("processor") {
+    compileClasspath += sourceSets.main.get().output
+  }
 }
 
 repositories {
@@ -64,6 +69,8 @@ dependencies {
   testImplementation("org.fusesource.jansi:jansi:${versions.jansi}")
   testImplementation("org.openjdk.jmh:jmh-core:${versions.jmh}")
   testAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:${versions.jmh}")
+  // generates the @JcodecAotSerializer test serializers
+  testAnnotationProcessor(files(sourceSets["processor"].output, sourceSets.main.get().output))
 }
 
 // ./gradlew test --tests "com.github.harbby.gadtry.graph.GraphxTest"
@@ -177,6 +184,18 @@ tasks.register<Jar>("javadocJar") {
   tasks.javadoc.orNull?.isFailOnError = false
 }
 
+tasks.register<Jar>("processorJar") {
+  archiveClassifier.set("processor")
+  from(sourceSets["processor"].output)
+  // the processor jar is used alone on the annotation processor path
+  from(sourceSets.main.get().output) {
+    include("com/github/harbby/gadtry/jcodec/JcodecAotSerializer.class")
+  }
+}
+tasks.assemble {
+  dependsOn(tasks.getByName("processorJar"))
+}
+
 //--- gradle clean build publish
 publishing {
   publications {
@@ -185,6 +204,7 @@ publishing {
       //artifact jar
       artifact(tasks.getByName("sourcesJar"))
       artifact(tasks.getByName("javadocJar"))
+      artifact(tasks.getByName("processorJar"))
 
       version = "${project.version}"
       artifactId = project.name
@@ -234,6 +254,7 @@ publishing {
   artifacts {
     archives(tasks.getByName("sourcesJar"))
     archives(tasks.getByName("javadocJar"))
+    archives(tasks.getByName("processorJar"))
   }
   signing {
     isRequired = project.hasProperty("mavenUsername")
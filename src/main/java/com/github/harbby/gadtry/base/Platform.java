@@ -116,7 +116,7 @@ public final class Platform
 
         boolean isDirectMemoryPageAligned();
 
-        public Class<?> defineHiddenClass(Class<?> buddyClass, byte[] classBytes, boolean initialize)
+        public Class<?> defineHiddenClass(Class<?> buddyClass, byte[] classBytes, boolean initialize, boolean nestmate)
                 throws IllegalAccessException;
 
         public <A> Comparator<A> getArrayComparator(Class<A> typeClass);
@@ -396,9 +396,20 @@ public final class Platform
 
     public static Class<?> defineHiddenClass(Class<?> buddyClass, byte[] classBytes, boolean initialize)
             throws IllegalAccessException
+    {
+        return defineHiddenClass(buddyClass, classBytes, initialize, false);
+    }
+
+    /**
+     * This method is available in Java 15 or later
+     *
+     * @param nestmate the hidden class joins the nest of buddyClass and can access its private members
+     */
+    public static Class<?> defineHiddenClass(Class<?> buddyClass, byte[] classBytes, boolean initialize, boolean nestmate)
+            throws IllegalAccessException
     {
         checkState(getJavaVersion() >= 15, "This method is available in Java 15 or later");
-        return ExtPlatformHolder.getExtPlatform().defineHiddenClass(buddyClass, classBytes, initialize);
+        return ExtPlatformHolder.getExtPlatform().defineHiddenClass(buddyClass, classBytes, initialize, nestmate);
     }
 
     /**
@@ -501,6 +512,16 @@ public final class Platform
         }
     }
 
+    /**
+     * @param buffer direct buffer or MappedByteBuffer
+     * @return the native address of buffer index 0
+     */
+    public static long getDirectBufferAddress(ByteBuffer buffer)
+    {
+        checkState(buffer.isDirect(), "buffer not direct");
+        return unsafe.getLong(buffer, DBB_ADDRESS_FIELD_OFFSET);
+    }
+
     /**
      * Creates a new cleaner.
      *
@@ -21,26 +21,33 @@ import java.lang.reflect.Field;
 
 public class Strings
 {
+    private static final Unsafe unsafe = Platform.getUnsafe();
+    private static final long ASCII_MASK = 0x8080808080808080L;
+
     public static final boolean ENABLE_STRING_COMPACT;
     public static final long STRING_CODER_OFFSET;
+    public static final long STRING_VALUE_OFFSET;
 
     static {
-        Unsafe unsafe = Platform.getUnsafe();
         boolean enableStringCompact;
         long offset;
+        long valueOffset;
         try {
             Field field = String.class.getDeclaredField("COMPACT_STRINGS");
             enableStringCompact = unsafe.getBoolean(String.class, unsafe.staticFieldOffset(field));
 
             field = String.class.getDeclaredField("coder");
             offset = unsafe.objectFieldOffset(field);
+            valueOffset = unsafe.objectFieldOffset(String.class.getDeclaredField("value"));
         }
         catch (NoSuchFieldException e) {
             enableStringCompact = false;
             offset = -1;
+            valueOffset = -1;
         }
         ENABLE_STRING_COMPACT = enableStringCompact;
         STRING_CODER_OFFSET = offset;
+        STRING_VALUE_OFFSET = valueOffset;
     }
 
     private Strings() {}
@@ -68,12 +75,20 @@ public class Strings
         return true;
     }
 
+    /**
+     * a LATIN1 compact string can contain the chars 0x80-0xFF, the bytes are checked 8 at a time.
+     * a whole UTF16 compact string has a char above 0xFF, so it is not ascii without scanning,
+     * the chars are only scanned for a prefix of it or when the strings are not compacted.
+     */
     public static boolean isAscii(String s, int len)
     {
-        if (ENABLE_STRING_COMPACT) {
-            return Platform.getUnsafe().getByte(s, STRING_CODER_OFFSET) == 0;
+        byte[] latin1 = getLatin1Bytes(s);
+        if (latin1 != null) {
+            return isAscii(latin1, 0, len);
+        }
+        if (ENABLE_STRING_COMPACT && len == s.length()) {
+            return false;
         }
-        // java8
         for (int i = 0; i < len; i++) {
             char c = s.charAt(i);
             if (c > 0x7F) {
@@ -83,6 +98,37 @@ public class Strings
         return true;
     }
 
+    public static boolean isAscii(byte[] bytes, int off, int len)
+    {
+        if ((off | len | (bytes.length - off - len)) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            if ((unsafe.getLong(bytes, Unsafe.ARRAY_BYTE_BASE_OFFSET + off + i) & ASCII_MASK) != 0) {
+                return false;
+            }
+        }
+        for (; i < len; i++) {
+            if (bytes[off + i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * returns the internal value of a LATIN1 compact string (one byte per char), the array must not be modified.
+     * null when the string is UTF16 or the strings are not compacted (java8 or -XX:-CompactStrings)
+     */
+    public static byte[] getLatin1Bytes(String s)
+    {
+        if (ENABLE_STRING_COMPACT && unsafe.getByte(s, STRING_CODER_OFFSET) == 0) {
+            return (byte[]) unsafe.getObject(s, STRING_VALUE_OFFSET);
+        }
+        return null;
+    }
+
     public static boolean isAscii(String s)
     {
         return isAscii(s, s.length());
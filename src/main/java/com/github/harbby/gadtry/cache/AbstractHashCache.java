@@ -0,0 +1,853 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import com.github.harbby.gadtry.base.Maths;
+import com.github.harbby.gadtry.collection.RedBlackTree;
+import com.github.harbby.gadtry.function.Supplier;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * non thread safe cache.
+ * The hash table, expiration and callback logic is shared here,
+ * subclasses only decide the eviction order through the onInsert/onAccess/onRemove/selectVictim hooks.
+ * <p>
+ * Every node carries an absolute expireTime in nanoseconds.
+ * The expired nodes are removed lazily on lookup, and proactively by the {@link TimerWheel}
+ * which is advanced on every write and cleanUp, so dead entries don't occupy the capacity.
+ * Reads check the expiration with {@link System#nanoTime()} but don't advance the wheel.
+ * If no expiration is configured the clock is never read.
+ * <p>
+ * The hash table is a power of two table of smeared hashes, it starts small and doubles with the live size,
+ * a bucket chain longer than 8 is converted to a {@link RedBlackTree} ordered by hash.
+ */
+abstract class AbstractHashCache<K, V>
+        extends AbstractMap<K, V>
+        implements Cache<K, V>
+{
+    static final float DEFAULT_LOAD_FACTOR = 0.83f;
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+    //jdk redBlack tree default length is 8
+    static final int TREEIFY_THRESHOLD = 8;
+    // the table is resized rather than treeified while it is small
+    static final int MIN_TREEIFY_CAPACITY = 64;
+    // the expected entries of a cache only bounded by weight
+    static final int DEFAULT_WEIGHTED_CAPACITY = 1 << 12;
+
+    protected final int maxCapacity;
+    protected final long maxWeight;
+    private final Weigher<K, V> weigher;
+    private final Callback<K, V> callback;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final Expiry<K, V> expiry;
+    private final long refreshAfterWriteNanos;
+    private final TimerWheel<K, V> timerWheel;
+    private final boolean ticking;
+    private final StatsCounter statsCounter;
+    private final Consumer<Node<K, V>> expireHandler = this::expireNode;
+
+    private final TreeBuckets treeBuckets = new TreeBuckets();
+    // a bucket is a Node chain linked by hashNext, or the root TreeEntry of a red black tree
+    private Entry<K, ?>[] buckets;
+    private int mask;
+    private int threshold;
+    private int size;
+    private long totalWeight;
+    // the hash chain figures of stats(), maintained on link and unlink rather than by scanning the table
+    private int usedBucketCount;
+    private int maxChainLength;
+
+    /**
+     * @param maxCapacity the max entries, Integer.MAX_VALUE if the cache is only bounded by weight
+     * @param maxWeight the max total weight, Long.MAX_VALUE if the cache is not weighted
+     */
+    @SuppressWarnings("unchecked")
+    AbstractHashCache(int maxCapacity, long maxWeight, CacheBuilder<K, V> builder)
+    {
+        if (maxCapacity < 0) {
+            throw new IllegalArgumentException("maxCapacity < 0");
+        }
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight < 0");
+        }
+        this.maxCapacity = maxCapacity;
+        this.maxWeight = maxWeight;
+        this.weigher = builder.getWeigher();
+        this.buckets = new Entry[DEFAULT_INITIAL_CAPACITY];
+        this.mask = DEFAULT_INITIAL_CAPACITY - 1;
+        this.threshold = (int) (DEFAULT_INITIAL_CAPACITY * DEFAULT_LOAD_FACTOR);
+        this.callback = requireNonNull(builder.getCallback(), "callback is null");
+        this.expireAfterWriteNanos = builder.getExpireAfterWriteNanos();
+        this.expireAfterAccessNanos = builder.getExpireAfterAccessNanos();
+        this.expiry = builder.getExpiry();
+        boolean expires = expiry != null || expireAfterWriteNanos != Long.MAX_VALUE || expireAfterAccessNanos != Long.MAX_VALUE;
+        this.timerWheel = expires ? new TimerWheel<>(System.nanoTime()) : null;
+        this.refreshAfterWriteNanos = builder.getRefreshAfterWriteNanos();
+        this.ticking = expires || refreshAfterWriteNanos != Long.MAX_VALUE;
+        this.statsCounter = builder.isRecordStats() ? new StatsCounter() : null;
+    }
+
+    /**
+     * the expected max entries, used to size the policy structures
+     */
+    final int expectedSize()
+    {
+        return weigher == null ? maxCapacity : Math.min(maxCapacity, DEFAULT_WEIGHTED_CAPACITY);
+    }
+
+    /**
+     * the weight of the node changed by delta after its value was replaced
+     */
+    void onWeightChanged(Node<K, V> node, int delta) {}
+
+    Node<K, V> newNode(K key, V value, int hash)
+    {
+        return new Node<>(key, value, hash);
+    }
+
+    /**
+     * a new node has been added to the hash table
+     */
+    abstract void onInsert(Node<K, V> node);
+
+    /**
+     * the node has been read or updated
+     */
+    abstract void onAccess(Node<K, V> node);
+
+    /**
+     * the node has been removed from the hash table
+     */
+    abstract void onRemove(Node<K, V> node);
+
+    /**
+     * the cache is over capacity, returns the node should be evicted.
+     */
+    abstract Node<K, V> selectVictim();
+
+    abstract void onClear();
+
+    /**
+     * the key was looked up but not found
+     */
+    void onMiss(int hash) {}
+
+    private static int hash(Object key)
+    {
+        return Maths.smearHashCode(key.hashCode());
+    }
+
+    @Deprecated
+    @Override
+    public V get(Object key)
+    {
+        return getIfPresent((K) key);
+    }
+
+    /**
+     * returns 0 if no expiration or refresh is configured, the hot path never reads the clock then.
+     */
+    private long now()
+    {
+        return ticking ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * the value was written refreshAfterWrite ago, it should be reloaded in the background
+     */
+    boolean shouldRefresh(Node<K, V> node)
+    {
+        return refreshAfterWriteNanos != Long.MAX_VALUE && now() - node.writeTime >= refreshAfterWriteNanos;
+    }
+
+    private static long saturatedAdd(long now, long duration)
+    {
+        long result = now + duration;
+        return duration > 0 && result < now ? Long.MAX_VALUE : result;
+    }
+
+    private int weigh(K key, V value)
+    {
+        if (weigher == null) {
+            return 1;
+        }
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight < 0");
+        }
+        return weight;
+    }
+
+    private void setValue(Node<K, V> node, V value, int weight)
+    {
+        node.value = value;
+        int delta = weight - node.weight;
+        if (delta != 0) {
+            node.weight = weight;
+            totalWeight += delta;
+            onWeightChanged(node, delta);
+        }
+    }
+
+    private static boolean isExpired(Node<?, ?> node, long now)
+    {
+        return node.expireTime <= now;
+    }
+
+    private void setExpireOnCreate(Node<K, V> node, long now)
+    {
+        node.writeTime = now;
+        if (timerWheel == null) {
+            return;
+        }
+        if (expiry != null) {
+            node.expireTime = saturatedAdd(now, expiry.expireAfterCreate(node.key, node.value));
+        }
+        else {
+            node.expireTime = Math.min(saturatedAdd(now, expireAfterWriteNanos), saturatedAdd(now, expireAfterAccessNanos));
+        }
+        timerWheel.schedule(node);
+    }
+
+    private void setExpireOnUpdate(Node<K, V> node, long now)
+    {
+        node.writeTime = now;
+        if (timerWheel == null) {
+            return;
+        }
+        if (expiry != null) {
+            long currentDuration = Math.max(0L, node.expireTime - now);
+            node.expireTime = saturatedAdd(now, expiry.expireAfterUpdate(node.key, node.value, currentDuration));
+        }
+        else {
+            node.expireTime = Math.min(saturatedAdd(now, expireAfterWriteNanos), saturatedAdd(now, expireAfterAccessNanos));
+        }
+        timerWheel.reschedule(node);
+    }
+
+    private void setExpireOnRead(Node<K, V> node, long now)
+    {
+        if (expiry != null) {
+            long currentDuration = Math.max(0L, node.expireTime - now);
+            node.expireTime = saturatedAdd(now, expiry.expireAfterRead(node.key, node.value, currentDuration));
+            timerWheel.reschedule(node);
+        }
+        else if (expireAfterAccessNanos != Long.MAX_VALUE) {
+            node.expireTime = Math.min(saturatedAdd(node.writeTime, expireAfterWriteNanos), saturatedAdd(now, expireAfterAccessNanos));
+            timerWheel.reschedule(node);
+        }
+    }
+
+    /**
+     * proactively removes the expired entries, it is called on every write.
+     */
+    private void expireEntries(long now)
+    {
+        if (timerWheel != null) {
+            timerWheel.advance(now, expireHandler);
+        }
+    }
+
+    private void expireNode(Node<K, V> node)
+    {
+        if (remove0(node.key, node.hash) != node) {
+            throw new ConcurrentModificationException();
+        }
+        doCallBack(node, EvictCause.TIME_OUT);
+    }
+
+    /**
+     * removes all expired entries now, the entries are also removed on writes and lazily on lookup.
+     */
+    @Override
+    public void cleanUp()
+    {
+        expireEntries(now());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, V> findNode(Object key, int hash)
+    {
+        Entry<K, ?> first = buckets[hash & mask];
+        if (first instanceof TreeEntry) {
+            return treeBuckets.get((TreeEntry<K, V>) first, key, hash);
+        }
+        for (Node<K, V> node = (Node<K, V>) first; node != null; node = node.hashNext) {
+            if (hash == node.hash && key.equals(node.key)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * links the node into its bucket, the key must not be in the table.
+     *
+     * @return the length of the bucket chain, 0 if the bucket is a tree
+     */
+    @SuppressWarnings("unchecked")
+    private int linkNode(Node<K, V> node)
+    {
+        int index = node.hash & mask;
+        Entry<K, ?> first = buckets[index];
+        if (first instanceof TreeEntry) {
+            node.hashNext = null;
+            treeBuckets.put(index, node.key, node, node.hash);
+            return 0;
+        }
+        if (first == null) {
+            usedBucketCount++;
+        }
+        node.hashNext = (Node<K, V>) first;
+        buckets[index] = node;
+        int binCount = 0;
+        for (Node<K, V> e = node; e != null; e = e.hashNext) {
+            binCount++;
+        }
+        maxChainLength = Math.max(maxChainLength, binCount);
+        if (binCount >= TREEIFY_THRESHOLD && buckets.length >= MIN_TREEIFY_CAPACITY) {
+            buckets[index] = null;
+            Node<K, V> e = node;
+            while (e != null) {
+                Node<K, V> next = e.hashNext;
+                e.hashNext = null;
+                treeBuckets.put(index, e.key, e, e.hash);
+                e = next;
+            }
+            return 0;
+        }
+        return binCount;
+    }
+
+    /**
+     * doubles the table, the trees shorter than TREEIFY_THRESHOLD after split are converted back to chains
+     */
+    @SuppressWarnings("unchecked")
+    private void resize()
+    {
+        Entry<K, ?>[] oldBuckets = buckets;
+        if (oldBuckets.length >= MAXIMUM_CAPACITY) {
+            return;
+        }
+        int capacity = oldBuckets.length << 1;
+        this.buckets = new Entry[capacity];
+        this.mask = capacity - 1;
+        this.threshold = (int) (capacity * DEFAULT_LOAD_FACTOR);
+        this.usedBucketCount = 0;
+        this.maxChainLength = 0;
+        for (Entry<K, ?> first : oldBuckets) {
+            if (first instanceof TreeEntry) {
+                Iterator<RedBlackTree.TreeNode<K, Node<K, V>>> iterator = treeBuckets.iterator((TreeEntry<K, V>) first);
+                while (iterator.hasNext()) {
+                    linkNode(iterator.next().getValue());
+                }
+            }
+            else {
+                Node<K, V> node = (Node<K, V>) first;
+                while (node != null) {
+                    Node<K, V> next = node.hashNext;
+                    linkNode(node);
+                    node = next;
+                }
+            }
+        }
+    }
+
+    private void unlinkNode(Node<K, V> node)
+    {
+        if (timerWheel != null) {
+            timerWheel.deschedule(node);
+        }
+        size--;
+        totalWeight -= node.weight;
+        onRemove(node);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, V> remove0(Object key, int hash)
+    {
+        int index = hash & mask;
+        Entry<K, ?> first = buckets[index];
+        if (first instanceof TreeEntry) {
+            Node<K, V> node = treeBuckets.remove(index, (K) key, hash);
+            if (node != null) {
+                if (buckets[index] == null) {
+                    usedBucketCount--;
+                }
+                unlinkNode(node);
+            }
+            return node;
+        }
+        Node<K, V> node = (Node<K, V>) first;
+        Node<K, V> last = null;
+        while (node != null) {
+            if (hash == node.hash && key.equals(node.key)) {
+                if (last == null) {
+                    buckets[index] = node.hashNext;
+                    if (node.hashNext == null) {
+                        usedBucketCount--;
+                    }
+                }
+                else {
+                    last.hashNext = node.hashNext;
+                }
+                unlinkNode(node);
+                return node;
+            }
+            last = node;
+            node = node.hashNext;
+        }
+        return null;
+    }
+
+    @Override
+    public V put(K key, V value)
+    {
+        long now = now();
+        expireEntries(now);
+        int hash = hash(key);
+        Node<K, V> node = findNode(key, hash);
+        if (node != null) {
+            V returnValue = node.value;
+            setValue(node, value, weigh(key, value));
+            setExpireOnUpdate(node, now);
+            onAccess(node);
+            checkCapacity();
+            return returnValue;
+        }
+        addNode(key, value, hash, now);
+        return null;
+    }
+
+    private void addNode(K key, V value, int hash, long now)
+    {
+        int weight = weigh(key, value);
+        Node<K, V> newNode = newNode(key, value, hash);
+        newNode.weight = weight;
+        int binCount = linkNode(newNode);
+        size++;
+        totalWeight += weight;
+        setExpireOnCreate(newNode, now);
+        onInsert(newNode);
+        checkCapacity();
+        //grow after the eviction, a full cache doesn't resize for the entry it just evicted
+        if (size > threshold || (binCount >= TREEIFY_THRESHOLD && buckets.length < MIN_TREEIFY_CAPACITY)) {
+            resize();
+        }
+    }
+
+    private void doCallBack(Node<K, V> node, EvictCause cause)
+    {
+        if (statsCounter != null) {
+            statsCounter.recordEviction(cause);
+        }
+        try {
+            callback.call(node.key, node.value, cause);
+        }
+        catch (Exception e) {
+            //the call back don't throw Exception
+        }
+    }
+
+    @Override
+    public V remove(Object key)
+    {
+        int hash = hash(key);
+        Node<K, V> node = remove0(key, hash);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(buckets, null);
+        this.usedBucketCount = 0;
+        this.maxChainLength = 0;
+        this.size = 0;
+        this.totalWeight = 0;
+        if (timerWheel != null) {
+            timerWheel.clear();
+        }
+        onClear();
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Entry<K, V>> iterator()
+            {
+                return new Iterator<Entry<K, V>>()
+                {
+                    private int index;
+                    private Iterator<RedBlackTree.TreeNode<K, Node<K, V>>> treeIterator;
+                    private Node<K, V> next = advance(null);
+
+                    @SuppressWarnings("unchecked")
+                    private Node<K, V> advance(Node<K, V> node)
+                    {
+                        if (treeIterator != null && treeIterator.hasNext()) {
+                            return treeIterator.next().getValue();
+                        }
+                        treeIterator = null;
+                        if (node != null && node.hashNext != null) {
+                            return node.hashNext;
+                        }
+                        while (index < buckets.length) {
+                            Entry<K, ?> first = buckets[index++];
+                            if (first instanceof TreeEntry) {
+                                treeIterator = treeBuckets.iterator((TreeEntry<K, V>) first);
+                                return treeIterator.next().getValue();
+                            }
+                            else if (first != null) {
+                                return (Node<K, V>) first;
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Node<K, V> next()
+                    {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Node<K, V> old = next;
+                        next = advance(old);
+                        return old;
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public V getIfPresent(K key)
+    {
+        Node<K, V> node = getNodeIfPresent(key, true);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * same as getIfPresent, but returns the live node
+     *
+     * @param recordAccess false if the lookup repeats a recorded one, it is neither recorded in the stats nor in the policy
+     */
+    Node<K, V> getNodeIfPresent(K key, boolean recordAccess)
+    {
+        int hash = hash(key);
+        Node<K, V> node = findNode(key, hash);
+        if (node != null) {
+            long now = now();
+            if (isExpired(node, now)) {
+                remove0(key, hash);
+                doCallBack(node, EvictCause.TIME_OUT);
+            }
+            else {
+                if (recordAccess) {
+                    if (statsCounter != null) {
+                        statsCounter.recordHit();
+                    }
+                    setExpireOnRead(node, now);
+                    onAccess(node);
+                }
+                return node;
+            }
+        }
+        if (recordAccess) {
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
+            onMiss(hash);
+        }
+        return null;
+    }
+
+    /**
+     * calls the caller, and records the load time
+     */
+    <E extends Exception> V load(Supplier<V, E> caller)
+            throws E
+    {
+        if (statsCounter == null) {
+            return caller.apply();
+        }
+        long startTime = System.nanoTime();
+        V value;
+        try {
+            value = caller.apply();
+        }
+        catch (Throwable e) {
+            statsCounter.recordLoadFailure(System.nanoTime() - startTime);
+            throw e;
+        }
+        statsCounter.recordLoadSuccess(System.nanoTime() - startTime);
+        return value;
+    }
+
+    @Override
+    public <E extends Exception> V get(K key, Supplier<V, E> caller)
+            throws E
+    {
+        int hash = hash(key);
+        Node<K, V> node = findNode(key, hash);
+        if (node != null) {
+            long now = now();
+            if (isExpired(node, now)) {
+                if (statsCounter != null) {
+                    statsCounter.recordMiss();
+                }
+                V value = load(caller);
+                setValue(node, value, weigh(key, value));
+                setExpireOnUpdate(node, now);
+                onAccess(node);
+                checkCapacity();
+                return value;
+            }
+            if (statsCounter != null) {
+                statsCounter.recordHit();
+            }
+            setExpireOnRead(node, now);
+            onAccess(node);
+            return node.value;
+        }
+        //not find key
+        //add new key node
+        if (statsCounter != null) {
+            statsCounter.recordMiss();
+        }
+        V returnValue = load(caller);
+        long now = now();
+        expireEntries(now);
+        addNode(key, returnValue, hash, now);
+        return returnValue;
+    }
+
+    @Override
+    public <E extends Exception> Map<K, V> getAll(Iterable<? extends K> keys, BulkLoader<K, V, E> loader)
+            throws E
+    {
+        return Cache.super.getAll(keys, missingKeys -> loadAll(missingKeys, loader));
+    }
+
+    /**
+     * calls the bulk loader, and records the load time
+     */
+    <E extends Exception> Map<K, V> loadAll(Set<K> keys, BulkLoader<K, V, E> loader)
+            throws E
+    {
+        if (statsCounter == null) {
+            return loader.loadAll(keys);
+        }
+        long startTime = System.nanoTime();
+        Map<K, V> values;
+        try {
+            values = loader.loadAll(keys);
+        }
+        catch (Throwable e) {
+            statsCounter.recordLoadFailure(System.nanoTime() - startTime);
+            throw e;
+        }
+        statsCounter.recordLoadSuccess(System.nanoTime() - startTime);
+        return values;
+    }
+
+    private void checkCapacity()
+    {
+        while (size > maxCapacity || totalWeight > maxWeight) {
+            //达到容量上限。开始移除victim节点
+            Node<K, V> victim = selectVictim();
+            if (remove0(victim.key, victim.hash) != victim) {
+                throw new ConcurrentModificationException();
+            }
+            doCallBack(victim, EvictCause.OVERFLOW);
+        }
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        StatsCounter counter = statsCounter == null ? StatsCounter.EMPTY : statsCounter;
+        return counter.snapshot(usedBucketCount, size, maxChainLength);
+    }
+
+    @Override
+    public Map<K, V> asMap()
+    {
+        return this;
+    }
+
+    @Override
+    public Map<K, V> getAllPresent()
+    {
+        long now = now();
+        Map<K, V> map = new HashMap<>();
+        for (Entry<K, V> entry : this.entrySet()) {
+            Node<K, V> node = (Node<K, V>) entry;
+            if (!isExpired(node, now)) {
+                map.put(node.key, node.value);
+            }
+        }
+        return map;
+    }
+
+    static class Node<K, V>
+            implements Entry<K, V>
+    {
+        final K key;
+        final int hash;
+        V value;
+        int weight;
+        long writeTime;
+        long expireTime = Long.MAX_VALUE;
+
+        private Node<K, V> hashNext;
+
+        // the eviction order links, owned by the subclass policy
+        Node<K, V> last;
+        Node<K, V> next;
+
+        // the timer wheel links
+        Node<K, V> timerPrev;
+        Node<K, V> timerNext;
+
+        Node(K key, V value, int hash)
+        {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("{key: %s, value: %s}", key, value);
+        }
+
+        @Override
+        public K getKey()
+        {
+            return key;
+        }
+
+        @Override
+        public V getValue()
+        {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * the tree node of a treeified bucket, its value is the cache node
+     */
+    private static final class TreeEntry<K, V>
+            extends RedBlackTree.TreeNode<K, Node<K, V>>
+    {
+        private final Node<K, V> node;
+
+        private TreeEntry(Node<K, V> node)
+        {
+            this.node = node;
+        }
+
+        @Override
+        public K getKey()
+        {
+            return node.key;
+        }
+
+        @Override
+        public Node<K, V> getValue()
+        {
+            return node;
+        }
+
+        @Override
+        public Node<K, V> setValue(Node<K, V> value)
+        {
+            throw new IllegalStateException("duplicate key " + node.key);
+        }
+
+        @Override
+        public int getHash()
+        {
+            return node.hash;
+        }
+    }
+
+    private final class TreeBuckets
+            extends RedBlackTree<K, Node<K, V>>
+    {
+        @SuppressWarnings("unchecked")
+        @Override
+        public TreeNode<K, Node<K, V>> getRoot(int treeId)
+        {
+            return (TreeNode<K, Node<K, V>>) buckets[treeId];
+        }
+
+        @Override
+        public void setRoot(int treeId, TreeNode<K, Node<K, V>> root)
+        {
+            buckets[treeId] = root;
+        }
+
+        @Override
+        public TreeNode<K, Node<K, V>> createNode(K key, Node<K, V> value, int hash)
+        {
+            return new TreeEntry<>(value);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * loads the missing keys of {@link Cache#getAll(Iterable, BulkLoader)} by one call
+ */
+@FunctionalInterface
+public interface BulkLoader<K, V, E extends Exception>
+{
+    /**
+     * @param keys the missing keys
+     * @return the loaded entries, a key absent from the result or mapped to null is not cached
+     */
+    Map<K, V> loadAll(Set<K> keys)
+            throws E;
+}
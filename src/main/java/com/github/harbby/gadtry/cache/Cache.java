@@ -17,7 +17,13 @@ package com.github.harbby.gadtry.cache;
 
 import com.github.harbby.gadtry.function.Supplier;
 
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public interface Cache<K, V>
 {
@@ -25,10 +31,80 @@ public interface Cache<K, V>
 
     <E extends Exception> V get(K key, Supplier<V, E> caller) throws E;
 
+    /**
+     * the thread safe cache runs the caller on the executor, concurrent misses of the same key share one load.
+     * the non thread safe cache loads on the calling thread and returns a completed future.
+     */
+    default <E extends Exception> CompletableFuture<V> getAsync(K key, Supplier<V, E> caller, Executor executor)
+    {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        try {
+            future.complete(get(key, caller));
+        }
+        catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    default <E extends Exception> CompletableFuture<V> getAsync(K key, Supplier<V, E> caller)
+    {
+        return getAsync(key, caller, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * returns the present values of the keys, the missing keys are loaded by one loader call and cached.
+     * the result keeps the order of the keys, a key the loader doesn't return is absent.
+     */
+    default <E extends Exception> Map<K, V> getAll(Iterable<? extends K> keys, BulkLoader<K, V, E> loader)
+            throws E
+    {
+        Map<K, V> result = new LinkedHashMap<>();
+        Set<K> missingKeys = new LinkedHashSet<>();
+        for (K key : keys) {
+            V value = getIfPresent(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+            else {
+                missingKeys.add(key);
+                // keep the order of the keys
+                result.put(key, null);
+            }
+        }
+        if (!missingKeys.isEmpty()) {
+            Map<K, V> loaded = loader.loadAll(missingKeys);
+            for (Map.Entry<K, V> entry : loaded.entrySet()) {
+                if (entry.getValue() != null) {
+                    put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (K key : missingKeys) {
+                result.put(key, loaded.get(key));
+            }
+        }
+        result.values().removeIf(value -> value == null);
+        return result;
+    }
+
     public V remove(K k);
 
+    default void invalidateAll(Iterable<? extends K> keys)
+    {
+        for (K key : keys) {
+            remove(key);
+        }
+    }
+
     public V put(K key, V value);
 
+    default void putAll(Map<? extends K, ? extends V> map)
+    {
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
     void clear();
 
     int size();
@@ -36,4 +112,17 @@ public interface Cache<K, V>
     Map<K, V> asMap();
 
     Map<K, V> getAllPresent();
+
+    /**
+     * performs the pending maintenance, e.g. removes the expired entries.
+     */
+    default void cleanUp() {}
+
+    /**
+     * the statistics snapshot, the counters are zero if {@link CacheBuilder#recordStats()} is not enabled.
+     */
+    default CacheStats stats()
+    {
+        return StatsCounter.EMPTY.snapshot(0, 0, 0);
+    }
 }
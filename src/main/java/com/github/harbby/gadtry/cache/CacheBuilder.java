@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import com.github.harbby.gadtry.jcodec.Serializer;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkArgument;
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * demo:
+ * <pre>{@code
+ * Cache<String, Integer> cache = CacheBuilder.<String, Integer>newBuilder()
+ *         .maxCapacity(10_000)
+ *         .evictPolicy(EvictPolicy.TINY_LFU)
+ *         .maxDuration(10, TimeUnit.MINUTES)
+ *         .concurrencyLevel(16)
+ *         .build();
+ * }</pre>
+ * <p>
+ * When expiration or refresh is configured every lookup reads {@link System#nanoTime()},
+ * the expired entries are only removed proactively by the writes and {@link Cache#cleanUp()}.
+ * A read mostly cache should call cleanUp() periodically to release the dead entries.
+ */
+public final class CacheBuilder<K, V>
+{
+    private int maxCapacity = -1;
+    private long maximumWeight = -1;
+    private Weigher<K, V> weigher;
+    private EvictPolicy evictPolicy = EvictPolicy.LRU;
+    private Callback<K, V> callback;
+    private long expireAfterWriteNanos = Long.MAX_VALUE;
+    private long expireAfterAccessNanos = Long.MAX_VALUE;
+    private Expiry<K, V> expiry;
+    private long refreshAfterWriteNanos = Long.MAX_VALUE;
+    private Executor refreshExecutor = ForkJoinPool.commonPool();
+    private int concurrencyLevel;
+    private boolean recordStats;
+    private Serializer<K> keySerializer;
+    private Serializer<V> valueSerializer;
+
+    private CacheBuilder() {}
+
+    public static <K, V> CacheBuilder<K, V> newBuilder()
+    {
+        return new CacheBuilder<>();
+    }
+
+    public CacheBuilder<K, V> maxCapacity(int maxCapacity)
+    {
+        checkArgument(maxCapacity >= 0, "maxCapacity < 0");
+        this.maxCapacity = maxCapacity;
+        return this;
+    }
+
+    /**
+     * bound the total weight of the entries instead of, or in addition to, the entry count.
+     * the weigher must also be set
+     */
+    public CacheBuilder<K, V> maximumWeight(long maximumWeight)
+    {
+        checkArgument(maximumWeight >= 0, "maximumWeight < 0");
+        this.maximumWeight = maximumWeight;
+        return this;
+    }
+
+    public CacheBuilder<K, V> weigher(Weigher<K, V> weigher)
+    {
+        this.weigher = requireNonNull(weigher, "weigher is null");
+        return this;
+    }
+
+    public CacheBuilder<K, V> evictPolicy(EvictPolicy evictPolicy)
+    {
+        this.evictPolicy = requireNonNull(evictPolicy, "evictPolicy is null");
+        return this;
+    }
+
+    public CacheBuilder<K, V> callback(Callback<K, V> callback)
+    {
+        this.callback = requireNonNull(callback, "callback is null");
+        return this;
+    }
+
+    /**
+     * the entry expires after the duration since it was created or its value was replaced,
+     * the same as {@link #expireAfterWrite(long, TimeUnit)}. a read doesn't extend the entry
+     */
+    public CacheBuilder<K, V> maxDuration(long duration, TimeUnit timeUnit)
+    {
+        return expireAfterWrite(duration, timeUnit);
+    }
+
+    /**
+     * the entry expires after the duration since it was created or its value was replaced
+     */
+    public CacheBuilder<K, V> expireAfterWrite(long duration, TimeUnit timeUnit)
+    {
+        checkArgument(duration >= 0, "duration < 0");
+        requireNonNull(timeUnit, "timeUnit is null");
+        this.expireAfterWriteNanos = timeUnit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * the entry expires after the duration since it was last written or read
+     */
+    public CacheBuilder<K, V> expireAfterAccess(long duration, TimeUnit timeUnit)
+    {
+        checkArgument(duration >= 0, "duration < 0");
+        requireNonNull(timeUnit, "timeUnit is null");
+        this.expireAfterAccessNanos = timeUnit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * every entry has its own time to live computed by the expiry,
+     * it can't be combined with expireAfterWrite and expireAfterAccess
+     */
+    public CacheBuilder<K, V> expireAfter(Expiry<K, V> expiry)
+    {
+        this.expiry = requireNonNull(expiry, "expiry is null");
+        return this;
+    }
+
+    /**
+     * the entry written refreshAfterWrite ago is reloaded asynchronously by the next {@code get(key, caller)},
+     * the caller gets the stale value immediately.
+     * the refresh requires the thread safe cache, concurrencyLevel defaults to 1 if it's not set.
+     */
+    public CacheBuilder<K, V> refreshAfterWrite(long duration, TimeUnit timeUnit)
+    {
+        checkArgument(duration > 0, "duration <= 0");
+        requireNonNull(timeUnit, "timeUnit is null");
+        this.refreshAfterWriteNanos = timeUnit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * the executor runs the refresh, default is ForkJoinPool.commonPool()
+     */
+    public CacheBuilder<K, V> refreshExecutor(Executor refreshExecutor)
+    {
+        this.refreshExecutor = requireNonNull(refreshExecutor, "refreshExecutor is null");
+        return this;
+    }
+
+    /**
+     * enable thread safe cache, the table is striped into concurrencyLevel independently locked segments.
+     * default is non thread safe
+     */
+    public CacheBuilder<K, V> concurrencyLevel(int concurrencyLevel)
+    {
+        checkArgument(concurrencyLevel > 0, "concurrencyLevel <= 0");
+        this.concurrencyLevel = concurrencyLevel;
+        return this;
+    }
+
+    /**
+     * store the entries in native memory, the keys and values are encoded by the jcodec serializers.
+     * the weight of an entry is its encoded bytes, so maximumWeight bounds the native memory without a weigher.
+     * the offHeap cache is non thread safe, evicts in lru order and doesn't support expiration or refresh.
+     */
+    public CacheBuilder<K, V> offHeap(Serializer<K> keySerializer, Serializer<V> valueSerializer)
+    {
+        this.keySerializer = requireNonNull(keySerializer, "keySerializer is null");
+        this.valueSerializer = requireNonNull(valueSerializer, "valueSerializer is null");
+        return this;
+    }
+
+    /**
+     * record the hit, miss, load and eviction statistics, see {@link Cache#stats()}
+     */
+    public CacheBuilder<K, V> recordStats()
+    {
+        this.recordStats = true;
+        return this;
+    }
+
+    public Cache<K, V> build()
+    {
+        checkState(maxCapacity >= 0 || maximumWeight >= 0, "maxCapacity or maximumWeight not set");
+        int capacity = maxCapacity >= 0 ? maxCapacity : Integer.MAX_VALUE;
+        long weight = maximumWeight >= 0 ? maximumWeight : Long.MAX_VALUE;
+        if (keySerializer != null) {
+            return buildOffHeap(capacity, weight);
+        }
+        checkState((maximumWeight >= 0) == (weigher != null), "maximumWeight and weigher must be set together");
+        checkState(expiry == null || (expireAfterWriteNanos == Long.MAX_VALUE && expireAfterAccessNanos == Long.MAX_VALUE),
+                "expireAfter(Expiry) can't be combined with expireAfterWrite or expireAfterAccess");
+        StripedHashCache.SegmentFactory<K, V> factory = createFactory();
+        if (concurrencyLevel > 0) {
+            return new StripedHashCache<>(concurrencyLevel, capacity, weight, factory, refreshExecutor);
+        }
+        if (refreshAfterWriteNanos != Long.MAX_VALUE) {
+            return new StripedHashCache<>(1, capacity, weight, factory, refreshExecutor);
+        }
+        return factory.create(capacity, weight);
+    }
+
+    private Cache<K, V> buildOffHeap(int capacity, long weight)
+    {
+        checkState(weigher == null, "the offHeap cache is weighed by the encoded bytes, weigher can't be set");
+        checkState(evictPolicy == EvictPolicy.LRU, "the offHeap cache only supports LRU");
+        checkState(concurrencyLevel == 0, "the offHeap cache is non thread safe");
+        checkState(expiry == null && expireAfterWriteNanos == Long.MAX_VALUE && expireAfterAccessNanos == Long.MAX_VALUE
+                && refreshAfterWriteNanos == Long.MAX_VALUE, "the offHeap cache doesn't support expiration or refresh");
+        return new OffHeapHashCache<>(capacity, weight, this);
+    }
+
+    private StripedHashCache.SegmentFactory<K, V> createFactory()
+    {
+        switch (evictPolicy) {
+            case LRU:
+                return (capacity, weight) -> new LRUHashCache<>(capacity, weight, this);
+            case LFU:
+                return (capacity, weight) -> new LFUHashCache<>(capacity, weight, this);
+            case FIFO:
+                return (capacity, weight) -> new FIFOHashCache<>(capacity, weight, this);
+            case TINY_LFU:
+                return (capacity, weight) -> new TinyLFUHashCache<>(capacity, weight, this);
+            default:
+                throw new UnsupportedOperationException("unknown evictPolicy " + evictPolicy);
+        }
+    }
+
+    Callback<K, V> getCallback()
+    {
+        return callback == null ? (k, v, cause) -> {} : callback;
+    }
+
+    boolean hasCallback()
+    {
+        return callback != null;
+    }
+
+    long getExpireAfterWriteNanos()
+    {
+        return expireAfterWriteNanos;
+    }
+
+    long getExpireAfterAccessNanos()
+    {
+        return expireAfterAccessNanos;
+    }
+
+    Weigher<K, V> getWeigher()
+    {
+        return weigher;
+    }
+
+    Expiry<K, V> getExpiry()
+    {
+        return expiry;
+    }
+
+    boolean isRecordStats()
+    {
+        return recordStats;
+    }
+
+    Serializer<K> getKeySerializer()
+    {
+        return keySerializer;
+    }
+
+    Serializer<V> getValueSerializer()
+    {
+        return valueSerializer;
+    }
+
+    long getRefreshAfterWriteNanos()
+    {
+        return refreshAfterWriteNanos;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import java.util.Arrays;
+
+/**
+ * immutable snapshot of the cache statistics.
+ * The counters are only recorded if {@link CacheBuilder#recordStats()} is enabled,
+ * the hash chain statistics are always maintained by the cache as the entries are linked and unlinked,
+ * so taking a snapshot never scans the table.
+ */
+public final class CacheStats
+{
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long[] evictionCounts;
+
+    private final long usedBucketCount;
+    private final long chainedEntryCount;
+    private final int maxChainLength;
+
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime, long[] evictionCounts,
+            long usedBucketCount, long chainedEntryCount, int maxChainLength)
+    {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCounts = evictionCounts;
+        this.usedBucketCount = usedBucketCount;
+        this.chainedEntryCount = chainedEntryCount;
+        this.maxChainLength = maxChainLength;
+    }
+
+    public long hitCount()
+    {
+        return hitCount;
+    }
+
+    public long missCount()
+    {
+        return missCount;
+    }
+
+    public long requestCount()
+    {
+        return hitCount + missCount;
+    }
+
+    public double hitRate()
+    {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public double missRate()
+    {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 0.0 : (double) missCount / requestCount;
+    }
+
+    public long loadSuccessCount()
+    {
+        return loadSuccessCount;
+    }
+
+    public long loadFailureCount()
+    {
+        return loadFailureCount;
+    }
+
+    /**
+     * the total nanoseconds spent in loading the values
+     */
+    public long totalLoadTime()
+    {
+        return totalLoadTime;
+    }
+
+    /**
+     * the average nanoseconds spent in loading a value
+     */
+    public double averageLoadPenalty()
+    {
+        long loadCount = loadSuccessCount + loadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    public long evictionCount()
+    {
+        long count = 0;
+        for (long evictionCount : evictionCounts) {
+            count += evictionCount;
+        }
+        return count;
+    }
+
+    public long evictionCount(EvictCause cause)
+    {
+        return evictionCounts[cause.ordinal()];
+    }
+
+    /**
+     * the average length of the non-empty hash chains, a value much greater than 1 means a poor hashCode
+     */
+    public double averageChainLength()
+    {
+        return usedBucketCount == 0 ? 0.0 : (double) chainedEntryCount / usedBucketCount;
+    }
+
+    /**
+     * the longest hash chain built since the table was last resized or cleared, it doesn't shrink on removal.
+     * a chain converted to a tree counts as the treeify threshold (8)
+     */
+    public int maxChainLength()
+    {
+        return maxChainLength;
+    }
+
+    CacheStats plus(CacheStats other)
+    {
+        long[] evictionCounts = new long[this.evictionCounts.length];
+        for (int i = 0; i < evictionCounts.length; i++) {
+            evictionCounts[i] = this.evictionCounts[i] + other.evictionCounts[i];
+        }
+        return new CacheStats(hitCount + other.hitCount,
+                missCount + other.missCount,
+                loadSuccessCount + other.loadSuccessCount,
+                loadFailureCount + other.loadFailureCount,
+                totalLoadTime + other.totalLoadTime,
+                evictionCounts,
+                usedBucketCount + other.usedBucketCount,
+                chainedEntryCount + other.chainedEntryCount,
+                Math.max(maxChainLength, other.maxChainLength));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("CacheStats{hitCount=%s, missCount=%s, loadSuccessCount=%s, loadFailureCount=%s, totalLoadTime=%s, " +
+                        "evictionCounts=%s, averageChainLength=%.2f, maxChainLength=%s}",
+                hitCount, missCount, loadSuccessCount, loadFailureCount, totalLoadTime,
+                Arrays.toString(evictionCounts), averageChainLength(), maxChainLength);
+    }
+}
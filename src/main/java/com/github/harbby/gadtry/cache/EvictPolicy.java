@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+public enum EvictPolicy
+{
+    /**
+     * evicts the least recently used entry
+     */
+    LRU,
+    /**
+     * evicts the least frequently used entry, ties are broken by lru
+     */
+    LFU,
+    /**
+     * evicts the oldest inserted entry, reads don't change the order
+     */
+    FIFO,
+    /**
+     * W-TinyLFU, a small lru window plus a segmented lru main space guarded by a frequency sketch admission.
+     * Keeps a much higher hit ratio than lru on scan heavy workloads.
+     */
+    TINY_LFU;
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+/**
+ * computes the variable time to live of every entry.
+ * All durations are in nanoseconds, return {@link Long#MAX_VALUE} if the entry never expires.
+ */
+public interface Expiry<K, V>
+{
+    /**
+     * @return the duration until the created entry expires
+     */
+    long expireAfterCreate(K key, V value);
+
+    /**
+     * @param currentDuration the remaining duration of the old value
+     * @return the duration until the updated entry expires
+     */
+    default long expireAfterUpdate(K key, V value, long currentDuration)
+    {
+        return expireAfterCreate(key, value);
+    }
+
+    /**
+     * @param currentDuration the remaining duration of the entry
+     * @return the duration until the read entry expires
+     */
+    default long expireAfterRead(K key, V value, long currentDuration)
+    {
+        return currentDuration;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+/**
+ * non thread safe cache, evicts the oldest inserted entry, reads and updates don't change the order.
+ */
+class FIFOHashCache<K, V>
+        extends LRUHashCache<K, V>
+{
+    FIFOHashCache(int maxCapacity, long maxWeight, CacheBuilder<K, V> builder)
+    {
+        super(maxCapacity, maxWeight, builder);
+    }
+
+    @Override
+    void onAccess(Node<K, V> node)
+    {
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+/**
+ * non thread safe cache, evicts the least frequently used entry,
+ * entries with the same frequency are evicted in lru order.
+ * <p>
+ * All operations are O(1), the nodes are kept in a list of frequency buckets sorted by frequency,
+ * see: An O(1) algorithm for implementing the LFU cache eviction scheme
+ */
+class LFUHashCache<K, V>
+        extends AbstractHashCache<K, V>
+{
+    // circular list of frequency buckets, header.next is the lowest frequency
+    private final Frequency<K, V> header = new Frequency<>(0);
+
+    LFUHashCache(int maxCapacity, long maxWeight, CacheBuilder<K, V> builder)
+    {
+        super(maxCapacity, maxWeight, builder);
+        this.onClear();
+    }
+
+    @Override
+    Node<K, V> newNode(K key, V value, int hash)
+    {
+        return new FrequencyNode<>(key, value, hash);
+    }
+
+    @Override
+    void onInsert(Node<K, V> node)
+    {
+        Frequency<K, V> first = header.next;
+        if (first.count != 1) {
+            first = addFrequencyAfter(header, 1);
+        }
+        first.queue.addFirst(node);
+        ((FrequencyNode<K, V>) node).frequency = first;
+    }
+
+    @Override
+    void onAccess(Node<K, V> node)
+    {
+        FrequencyNode<K, V> frequencyNode = (FrequencyNode<K, V>) node;
+        Frequency<K, V> current = frequencyNode.frequency;
+        long count = current.count + 1;
+        Frequency<K, V> next = current.next;
+        if (next == header || next.count != count) {
+            next = addFrequencyAfter(current, count);
+        }
+        NodeQueue.unlink(node);
+        next.queue.addFirst(node);
+        frequencyNode.frequency = next;
+        if (current.queue.isEmpty()) {
+            removeFrequency(current);
+        }
+    }
+
+    @Override
+    void onRemove(Node<K, V> node)
+    {
+        FrequencyNode<K, V> frequencyNode = (FrequencyNode<K, V>) node;
+        NodeQueue.unlink(node);
+        if (frequencyNode.frequency.queue.isEmpty()) {
+            removeFrequency(frequencyNode.frequency);
+        }
+        frequencyNode.frequency = null;
+    }
+
+    @Override
+    Node<K, V> selectVictim()
+    {
+        return header.next.queue.peekLast();
+    }
+
+    @Override
+    void onClear()
+    {
+        header.next = header;
+        header.last = header;
+    }
+
+    private Frequency<K, V> addFrequencyAfter(Frequency<K, V> frequency, long count)
+    {
+        Frequency<K, V> newFrequency = new Frequency<>(count);
+        newFrequency.last = frequency;
+        newFrequency.next = frequency.next;
+        frequency.next.last = newFrequency;
+        frequency.next = newFrequency;
+        return newFrequency;
+    }
+
+    private static <K, V> void removeFrequency(Frequency<K, V> frequency)
+    {
+        frequency.last.next = frequency.next;
+        frequency.next.last = frequency.last;
+    }
+
+    private static final class Frequency<K, V>
+    {
+        private final long count;
+        private final NodeQueue<K, V> queue = new NodeQueue<>();
+        private Frequency<K, V> last;
+        private Frequency<K, V> next;
+
+        private Frequency(long count)
+        {
+            this.count = count;
+        }
+    }
+
+    private static final class FrequencyNode<K, V>
+            extends Node<K, V>
+    {
+        private Frequency<K, V> frequency;
+
+        private FrequencyNode(K key, V value, int hash)
+        {
+            super(key, value, hash);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import com.github.harbby.gadtry.cache.AbstractHashCache.Node;
+
+/**
+ * circular doubly linked list of cache nodes, the head is the most recently added node.
+ */
+final class NodeQueue<K, V>
+{
+    private final Node<K, V> head = new Node<K, V>(null, null, Integer.MIN_VALUE)
+    {
+        @Override
+        public String toString()
+        {
+            return "headNode";
+        }
+    };
+
+    NodeQueue()
+    {
+        this.clear();
+    }
+
+    boolean isEmpty()
+    {
+        return head.next == head;
+    }
+
+    void addFirst(Node<K, V> node)
+    {
+        Node<K, V> first = head.next;
+        node.next = first;
+        node.last = head;
+        first.last = node;
+        head.next = node;
+    }
+
+    void moveToFirst(Node<K, V> node)
+    {
+        if (node == head.next) {
+            return;
+        }
+        unlink(node);
+        addFirst(node);
+    }
+
+    /**
+     * @return the least recently added node, or null if empty
+     */
+    Node<K, V> peekLast()
+    {
+        Node<K, V> last = head.last;
+        return last == head ? null : last;
+    }
+
+    void clear()
+    {
+        head.next = head;
+        head.last = head;
+    }
+
+    static <K, V> void unlink(Node<K, V> node)
+    {
+        node.last.next = node.next;
+        node.next.last = node.last;
+        node.last = null;
+        node.next = null;
+    }
+}
@@ -0,0 +1,587 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import com.github.harbby.gadtry.base.Maths;
+import com.github.harbby.gadtry.base.Platform;
+import com.github.harbby.gadtry.function.Supplier;
+import com.github.harbby.gadtry.jcodec.Jcodec;
+import com.github.harbby.gadtry.jcodec.OffHeapInputView;
+import com.github.harbby.gadtry.jcodec.Serializer;
+import com.github.harbby.gadtry.jcodec.StreamOutputView;
+import sun.misc.Unsafe;
+
+import java.io.ByteArrayOutputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * non thread safe cache, the entries are stored in native memory and evicted in lru order.
+ * <p>
+ * A record is {@code [keyLength int][valueLength int][key bytes][value bytes]} encoded by the jcodec serializers,
+ * and is allocated from the slabs of {@link SlabAllocator}.
+ * The on-heap index is a chained hash table and a lru list made of primitive arrays,
+ * a slot holds the hash, the record ref and the links, so the cache creates no object per entry.
+ * The keys are compared by their encoded bytes, the key serializer must be deterministic.
+ * <p>
+ * The weight of an entry is the bytes of its chunk, maximumWeight bounds the native memory of the records.
+ * The native memory is freed by clear, or by a cleaner after the cache is unreachable.
+ */
+class OffHeapHashCache<K, V>
+        extends AbstractMap<K, V>
+        implements Cache<K, V>
+{
+    private static final Unsafe unsafe = Platform.getUnsafe();
+    private static final int HEADER_SIZE = 8;
+    private static final int NONE = -1;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int maxCapacity;
+    private final long maxMemory;
+    private final Callback<K, V> callback;
+    private final boolean hasCallback;
+    private final StatsCounter statsCounter;
+
+    private final Jcodec jcodec;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final EncodeBuffer encodeBuffer = new EncodeBuffer();
+    private final StreamOutputView outputView = new StreamOutputView(encodeBuffer, 1 << 12);
+    private final OffHeapInputView inputView = new OffHeapInputView();
+    private final SlabAllocator allocator = new SlabAllocator();
+
+    private int[] table;
+    private int[] hashes;
+    private int[] hashNext;
+    private long[] refs;
+    private int[] lruPrev;
+    private int[] lruNext;
+    // the most recently used slot
+    private int head = NONE;
+    private int tail = NONE;
+    private int slotTop;
+    private int freeSlot = NONE;
+
+    private int size;
+    private long usedMemory;
+    // the hash chain figures of stats(), maintained on link and unlink rather than by scanning the table
+    private int usedBucketCount;
+    private int maxChainLength;
+
+    /**
+     * @param maxCapacity the max entries, Integer.MAX_VALUE if the cache is only bounded by memory
+     * @param maxMemory the max bytes of the records, Long.MAX_VALUE if the cache is only bounded by entries
+     */
+    OffHeapHashCache(int maxCapacity, long maxMemory, CacheBuilder<K, V> builder)
+    {
+        if (maxCapacity < 0) {
+            throw new IllegalArgumentException("maxCapacity < 0");
+        }
+        if (maxMemory < 0) {
+            throw new IllegalArgumentException("maxMemory < 0");
+        }
+        this.maxCapacity = maxCapacity;
+        this.maxMemory = maxMemory;
+        this.callback = requireNonNull(builder.getCallback(), "callback is null");
+        this.hasCallback = builder.hasCallback();
+        this.statsCounter = builder.isRecordStats() ? new StatsCounter() : null;
+        this.jcodec = Jcodec.of();
+        this.keySerializer = requireNonNull(builder.getKeySerializer(), "keySerializer is null");
+        this.valueSerializer = requireNonNull(builder.getValueSerializer(), "valueSerializer is null");
+
+        int slots = Math.min(maxCapacity, AbstractHashCache.DEFAULT_WEIGHTED_CAPACITY);
+        this.table = new int[Maths.nextPowerOfTwo(Math.max((int) (slots / LOAD_FACTOR), 2))];
+        Arrays.fill(table, NONE);
+        this.hashes = new int[Math.max(slots, 2)];
+        this.hashNext = new int[hashes.length];
+        this.refs = new long[hashes.length];
+        this.lruPrev = new int[hashes.length];
+        this.lruNext = new int[hashes.length];
+        Platform.createCleaner(this, allocator);
+    }
+
+    private static int hash(Object key)
+    {
+        return Maths.smearHashCode(key.hashCode());
+    }
+
+    /**
+     * encode the key to the head of encodeBuffer.
+     * The jcodec is reset before every key and value, so the bytes of a key are the same every time,
+     * and every key and value can be decoded alone.
+     *
+     * @return the key length
+     */
+    private int encodeKey(K key)
+    {
+        encodeBuffer.reset();
+        jcodec.reset();
+        jcodec.writeObject(outputView, key, keySerializer);
+        outputView.flush();
+        return encodeBuffer.size();
+    }
+
+    /**
+     * encode the value after the key
+     *
+     * @return the key and value length
+     */
+    private int encodeValue(V value)
+    {
+        jcodec.reset();
+        jcodec.writeObject(outputView, value, valueSerializer);
+        outputView.flush();
+        return encodeBuffer.size();
+    }
+
+    private K decodeKey(int slot)
+    {
+        long address = allocator.address(refs[slot]);
+        inputView.reset(address + HEADER_SIZE, unsafe.getInt(address));
+        jcodec.reset();
+        return jcodec.readObject(inputView, null, keySerializer);
+    }
+
+    private V decodeValue(int slot)
+    {
+        long address = allocator.address(refs[slot]);
+        int keyLength = unsafe.getInt(address);
+        inputView.reset(address + HEADER_SIZE + keyLength, unsafe.getInt(address + 4));
+        jcodec.reset();
+        return jcodec.readObject(inputView, null, valueSerializer);
+    }
+
+    private long writeRecord(int keyLength, int length)
+    {
+        long ref = allocator.allocate(HEADER_SIZE + length);
+        long address = allocator.address(ref);
+        unsafe.putInt(address, keyLength);
+        unsafe.putInt(address + 4, length - keyLength);
+        Platform.copyMemory(encodeBuffer.array(), Unsafe.ARRAY_BYTE_BASE_OFFSET, null, address + HEADER_SIZE, length);
+        usedMemory += SlabAllocator.chunkSize(HEADER_SIZE + length);
+        return ref;
+    }
+
+    private void freeRecord(int slot)
+    {
+        long address = allocator.address(refs[slot]);
+        long length = HEADER_SIZE + (long) unsafe.getInt(address) + unsafe.getInt(address + 4);
+        usedMemory -= SlabAllocator.chunkSize(length);
+        allocator.free(refs[slot]);
+        refs[slot] = NONE;
+    }
+
+    /**
+     * find the slot of the key encoded in the head of encodeBuffer
+     */
+    private int findSlot(int hash, int keyLength)
+    {
+        for (int slot = table[hash & (table.length - 1)]; slot != NONE; slot = hashNext[slot]) {
+            if (hashes[slot] == hash && keyEquals(slot, keyLength)) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    private boolean keyEquals(int slot, int keyLength)
+    {
+        long address = allocator.address(refs[slot]);
+        if (unsafe.getInt(address) != keyLength) {
+            return false;
+        }
+        address += HEADER_SIZE;
+        byte[] bytes = encodeBuffer.array();
+        int i = 0;
+        for (; i + 8 <= keyLength; i += 8) {
+            if (unsafe.getLong(address + i) != unsafe.getLong(bytes, Unsafe.ARRAY_BYTE_BASE_OFFSET + i)) {
+                return false;
+            }
+        }
+        for (; i < keyLength; i++) {
+            if (unsafe.getByte(address + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int newSlot()
+    {
+        if (freeSlot != NONE) {
+            int slot = freeSlot;
+            freeSlot = hashNext[slot];
+            return slot;
+        }
+        if (slotTop == hashes.length) {
+            int newLength = hashes.length * 2;
+            hashes = Arrays.copyOf(hashes, newLength);
+            hashNext = Arrays.copyOf(hashNext, newLength);
+            refs = Arrays.copyOf(refs, newLength);
+            lruPrev = Arrays.copyOf(lruPrev, newLength);
+            lruNext = Arrays.copyOf(lruNext, newLength);
+        }
+        return slotTop++;
+    }
+
+    private void resizeTable()
+    {
+        int[] newTable = new int[table.length * 2];
+        Arrays.fill(newTable, NONE);
+        this.table = newTable;
+        this.usedBucketCount = 0;
+        this.maxChainLength = 0;
+        for (int slot = 0; slot < slotTop; slot++) {
+            if (refs[slot] != NONE) {
+                linkSlot(slot);
+            }
+        }
+    }
+
+    private void linkSlot(int slot)
+    {
+        int index = hashes[slot] & (table.length - 1);
+        int first = table[index];
+        if (first == NONE) {
+            usedBucketCount++;
+        }
+        hashNext[slot] = first;
+        table[index] = slot;
+        int chainLength = 0;
+        for (int e = slot; e != NONE; e = hashNext[e]) {
+            chainLength++;
+        }
+        maxChainLength = Math.max(maxChainLength, chainLength);
+    }
+
+    private void linkFirst(int slot)
+    {
+        lruPrev[slot] = NONE;
+        lruNext[slot] = head;
+        if (head != NONE) {
+            lruPrev[head] = slot;
+        }
+        else {
+            tail = slot;
+        }
+        head = slot;
+    }
+
+    private void unlinkLru(int slot)
+    {
+        int prev = lruPrev[slot];
+        int next = lruNext[slot];
+        if (prev != NONE) {
+            lruNext[prev] = next;
+        }
+        else {
+            head = next;
+        }
+        if (next != NONE) {
+            lruPrev[next] = prev;
+        }
+        else {
+            tail = prev;
+        }
+    }
+
+    private void moveToFirst(int slot)
+    {
+        if (head != slot) {
+            unlinkLru(slot);
+            linkFirst(slot);
+        }
+    }
+
+    private void removeSlot(int slot)
+    {
+        int index = hashes[slot] & (table.length - 1);
+        if (table[index] == slot) {
+            table[index] = hashNext[slot];
+            if (hashNext[slot] == NONE) {
+                usedBucketCount--;
+            }
+        }
+        else {
+            int last = table[index];
+            while (hashNext[last] != slot) {
+                last = hashNext[last];
+            }
+            hashNext[last] = hashNext[slot];
+        }
+        unlinkLru(slot);
+        freeRecord(slot);
+        hashNext[slot] = freeSlot;
+        freeSlot = slot;
+        size--;
+    }
+
+    private void checkCapacity()
+    {
+        while (size > maxCapacity || usedMemory > maxMemory) {
+            int victim = tail;
+            K key = null;
+            V value = null;
+            if (hasCallback) {
+                key = decodeKey(victim);
+                value = decodeValue(victim);
+            }
+            removeSlot(victim);
+            if (statsCounter != null) {
+                statsCounter.recordEviction(EvictCause.OVERFLOW);
+            }
+            if (hasCallback) {
+                try {
+                    callback.call(key, value, EvictCause.OVERFLOW);
+                }
+                catch (Exception e) {
+                    //the call back don't throw Exception
+                }
+            }
+        }
+    }
+
+    @Deprecated
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key)
+    {
+        return getIfPresent((K) key);
+    }
+
+    @Override
+    public V getIfPresent(K key)
+    {
+        int slot = findSlot(hash(key), encodeKey(key));
+        if (slot == NONE) {
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
+        moveToFirst(slot);
+        return decodeValue(slot);
+    }
+
+    /**
+     * a null value loaded by the caller is returned but not cached
+     */
+    @Override
+    public <E extends Exception> V get(K key, Supplier<V, E> caller)
+            throws E
+    {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        long startTime = statsCounter == null ? 0L : System.nanoTime();
+        try {
+            value = caller.apply();
+        }
+        catch (Throwable e) {
+            if (statsCounter != null) {
+                statsCounter.recordLoadFailure(System.nanoTime() - startTime);
+            }
+            throw e;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordLoadSuccess(System.nanoTime() - startTime);
+        }
+        if (value != null) {
+            put(key, value, false);
+        }
+        return value;
+    }
+
+    /**
+     * the old value is decoded from native memory for the return value,
+     * {@link #putAll(Map)} and {@link #get(Object, Supplier)} skip the decoding
+     */
+    @Override
+    public V put(K key, V value)
+    {
+        return put(key, value, true);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map)
+    {
+        for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    private V put(K key, V value, boolean returnOldValue)
+    {
+        requireNonNull(value, "value is null");
+        int hash = hash(key);
+        int keyLength = encodeKey(key);
+        int slot = findSlot(hash, keyLength);
+        int length = encodeValue(value);
+        V oldValue = null;
+        if (slot != NONE) {
+            if (returnOldValue) {
+                oldValue = decodeValue(slot);
+            }
+            freeRecord(slot);
+            refs[slot] = writeRecord(keyLength, length);
+            moveToFirst(slot);
+        }
+        else {
+            slot = newSlot();
+            hashes[slot] = hash;
+            refs[slot] = writeRecord(keyLength, length);
+            linkSlot(slot);
+            linkFirst(slot);
+            if (++size > table.length * LOAD_FACTOR) {
+                resizeTable();
+            }
+        }
+        checkCapacity();
+        return oldValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(Object key)
+    {
+        int slot = findSlot(hash(key), encodeKey((K) key));
+        if (slot == NONE) {
+            return null;
+        }
+        V value = decodeValue(slot);
+        removeSlot(slot);
+        return value;
+    }
+
+    @Override
+    public void clear()
+    {
+        allocator.clear();
+        Arrays.fill(table, NONE);
+        head = NONE;
+        tail = NONE;
+        slotTop = 0;
+        freeSlot = NONE;
+        size = 0;
+        usedMemory = 0;
+        usedBucketCount = 0;
+        maxChainLength = 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * the bytes of the live records
+     */
+    long usedMemory()
+    {
+        return usedMemory;
+    }
+
+    /**
+     * the entries are decoded when iterated
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Entry<K, V>> iterator()
+            {
+                return new Iterator<Entry<K, V>>()
+                {
+                    private int slot = advance(0);
+
+                    private int advance(int from)
+                    {
+                        while (from < slotTop && refs[from] == NONE) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return slot < slotTop;
+                    }
+
+                    @Override
+                    public Entry<K, V> next()
+                    {
+                        if (slot >= slotTop) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<K, V> entry = new SimpleImmutableEntry<>(decodeKey(slot), decodeValue(slot));
+                        slot = advance(slot + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Map<K, V> asMap()
+    {
+        return this;
+    }
+
+    @Override
+    public Map<K, V> getAllPresent()
+    {
+        return new HashMap<>(this);
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        StatsCounter counter = statsCounter == null ? StatsCounter.EMPTY : statsCounter;
+        return counter.snapshot(usedBucketCount, size, maxChainLength);
+    }
+
+    private static final class EncodeBuffer
+            extends ByteArrayOutputStream
+    {
+        private byte[] array()
+        {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import com.github.harbby.gadtry.base.Platform;
+import sun.misc.Unsafe;
+
+import java.util.Arrays;
+
+/**
+ * native memory allocator of {@link OffHeapHashCache}.
+ * <p>
+ * Every size class is a power of two chunk size from 16B to 1MB, the chunks of a class are carved out of
+ * fixed size slabs. A class grows by appending a new slab, so a chunk never moves and nothing is copied.
+ * Every slab has its own free list stored inside the freed chunks and a live chunk count,
+ * an empty slab is released, except one per class which is kept to absorb an alloc/free ping-pong.
+ * <p>
+ * A larger record gets its own {@link Platform#allocateMemory(long)}, the huge allocations are linked
+ * into a native doubly linked list through a header in front of them, so they are tracked without boxing.
+ * <p>
+ * A ref is {@code [slab id][offset in slab][size class]} or {@code [address][HUGE_CLASS]},
+ * resolve the address by {@link #address(long)}.
+ */
+final class SlabAllocator
+        implements Runnable
+{
+    private static final Unsafe unsafe = Platform.getUnsafe();
+
+    private static final int MIN_CHUNK_SHIFT = 4;
+    private static final int MAX_CHUNK_SHIFT = 20;
+    private static final int HUGE_CLASS = 31;
+    private static final int CLASS_BITS = 5;
+    private static final long MIN_SLAB_SIZE = 1 << 16;
+    // the largest slab is 4 chunks of 1MB
+    private static final int OFFSET_BITS = MAX_CHUNK_SHIFT + 2;
+    private static final int MAX_SLABS = 1 << 24;
+    private static final int NONE = -1;
+    // prev and next address of the huge allocation list
+    private static final long HUGE_HEADER_SIZE = 16;
+
+    // the head slab of the classes which has free chunks
+    private final int[] partialHeads = new int[MAX_CHUNK_SHIFT - MIN_CHUNK_SHIFT + 1];
+    // the empty slab kept by the classes
+    private final int[] emptySlabs = new int[partialHeads.length];
+
+    private long[] slabAddresses = new long[16];
+    private int[] slabClasses = new int[16];
+    private int[] slabTops = new int[16];
+    private int[] slabFreeHeads = new int[16];
+    private int[] slabLiveCounts = new int[16];
+    // the links of the partial slab list, a released slab id is linked into freeSlabId by partialNext
+    private int[] partialPrev = new int[16];
+    private int[] partialNext = new int[16];
+    private int slabTop;
+    private int freeSlabId = NONE;
+
+    private long hugeHead;
+    private long reservedBytes;
+
+    SlabAllocator()
+    {
+        Arrays.fill(partialHeads, NONE);
+        Arrays.fill(emptySlabs, NONE);
+    }
+
+    /**
+     * @return the ref of a chunk which can hold size bytes
+     */
+    long allocate(long size)
+    {
+        if (size > 1L << MAX_CHUNK_SHIFT) {
+            return allocateHuge(size);
+        }
+        int sizeClass = sizeClass(size);
+        int chunkSize = 1 << (sizeClass + MIN_CHUNK_SHIFT);
+        int slab = partialHeads[sizeClass];
+        if (slab == NONE) {
+            slab = newSlab(sizeClass);
+            linkPartial(sizeClass, slab);
+        }
+        if (emptySlabs[sizeClass] == slab) {
+            emptySlabs[sizeClass] = NONE;
+        }
+        long address = slabAddresses[slab];
+        int offset = slabFreeHeads[slab];
+        if (offset != NONE) {
+            slabFreeHeads[slab] = unsafe.getInt(address + offset);
+        }
+        else {
+            offset = slabTops[slab];
+            slabTops[slab] += chunkSize;
+        }
+        slabLiveCounts[slab]++;
+        if (isFull(slab, chunkSize)) {
+            unlinkPartial(sizeClass, slab);
+        }
+        return ((((long) slab << OFFSET_BITS) | offset) << CLASS_BITS) | sizeClass;
+    }
+
+    long address(long ref)
+    {
+        int sizeClass = (int) (ref & ((1 << CLASS_BITS) - 1));
+        if (sizeClass == HUGE_CLASS) {
+            return ref >>> CLASS_BITS;
+        }
+        long payload = ref >>> CLASS_BITS;
+        return slabAddresses[(int) (payload >>> OFFSET_BITS)] + (payload & ((1 << OFFSET_BITS) - 1));
+    }
+
+    void free(long ref)
+    {
+        int sizeClass = (int) (ref & ((1 << CLASS_BITS) - 1));
+        if (sizeClass == HUGE_CLASS) {
+            freeHuge(ref >>> CLASS_BITS);
+            return;
+        }
+        long payload = ref >>> CLASS_BITS;
+        int slab = (int) (payload >>> OFFSET_BITS);
+        int offset = (int) (payload & ((1 << OFFSET_BITS) - 1));
+        int chunkSize = 1 << (sizeClass + MIN_CHUNK_SHIFT);
+        boolean wasFull = isFull(slab, chunkSize);
+        unsafe.putInt(slabAddresses[slab] + offset, slabFreeHeads[slab]);
+        slabFreeHeads[slab] = offset;
+        if (wasFull) {
+            linkPartial(sizeClass, slab);
+        }
+        if (--slabLiveCounts[slab] == 0) {
+            if (emptySlabs[sizeClass] == NONE) {
+                emptySlabs[sizeClass] = slab;
+            }
+            else {
+                unlinkPartial(sizeClass, slab);
+                releaseSlab(slab);
+            }
+        }
+    }
+
+    private boolean isFull(int slab, int chunkSize)
+    {
+        return slabFreeHeads[slab] == NONE && slabTops[slab] + chunkSize > slabSize(slabClasses[slab]);
+    }
+
+    private static long slabSize(int sizeClass)
+    {
+        return Math.max(MIN_SLAB_SIZE, 4L << (sizeClass + MIN_CHUNK_SHIFT));
+    }
+
+    private int newSlab(int sizeClass)
+    {
+        int slab;
+        if (freeSlabId != NONE) {
+            slab = freeSlabId;
+            freeSlabId = partialNext[slab];
+        }
+        else {
+            if (slabTop == MAX_SLABS) {
+                throw new IllegalStateException("the slab count exceeds " + MAX_SLABS);
+            }
+            if (slabTop == slabAddresses.length) {
+                int newLength = slabAddresses.length * 2;
+                slabAddresses = Arrays.copyOf(slabAddresses, newLength);
+                slabClasses = Arrays.copyOf(slabClasses, newLength);
+                slabTops = Arrays.copyOf(slabTops, newLength);
+                slabFreeHeads = Arrays.copyOf(slabFreeHeads, newLength);
+                slabLiveCounts = Arrays.copyOf(slabLiveCounts, newLength);
+                partialPrev = Arrays.copyOf(partialPrev, newLength);
+                partialNext = Arrays.copyOf(partialNext, newLength);
+            }
+            slab = slabTop++;
+        }
+        long slabSize = slabSize(sizeClass);
+        slabAddresses[slab] = Platform.allocateMemory(slabSize);
+        slabClasses[slab] = sizeClass;
+        slabTops[slab] = 0;
+        slabFreeHeads[slab] = NONE;
+        slabLiveCounts[slab] = 0;
+        reservedBytes += slabSize;
+        return slab;
+    }
+
+    private void releaseSlab(int slab)
+    {
+        Platform.freeMemory(slabAddresses[slab]);
+        reservedBytes -= slabSize(slabClasses[slab]);
+        slabAddresses[slab] = 0;
+        partialNext[slab] = freeSlabId;
+        freeSlabId = slab;
+    }
+
+    private void linkPartial(int sizeClass, int slab)
+    {
+        int first = partialHeads[sizeClass];
+        partialPrev[slab] = NONE;
+        partialNext[slab] = first;
+        if (first != NONE) {
+            partialPrev[first] = slab;
+        }
+        partialHeads[sizeClass] = slab;
+    }
+
+    private void unlinkPartial(int sizeClass, int slab)
+    {
+        int prev = partialPrev[slab];
+        int next = partialNext[slab];
+        if (prev != NONE) {
+            partialNext[prev] = next;
+        }
+        else {
+            partialHeads[sizeClass] = next;
+        }
+        if (next != NONE) {
+            partialPrev[next] = prev;
+        }
+    }
+
+    private long allocateHuge(long size)
+    {
+        long base = Platform.allocateMemory(HUGE_HEADER_SIZE + size);
+        unsafe.putLong(base, 0L);
+        unsafe.putLong(base + 8, hugeHead);
+        if (hugeHead != 0L) {
+            unsafe.putLong(hugeHead, base);
+        }
+        hugeHead = base;
+        return ((base + HUGE_HEADER_SIZE) << CLASS_BITS) | HUGE_CLASS;
+    }
+
+    private void freeHuge(long address)
+    {
+        long base = address - HUGE_HEADER_SIZE;
+        long prev = unsafe.getLong(base);
+        long next = unsafe.getLong(base + 8);
+        if (prev != 0L) {
+            unsafe.putLong(prev + 8, next);
+        }
+        else {
+            hugeHead = next;
+        }
+        if (next != 0L) {
+            unsafe.putLong(next, prev);
+        }
+        Platform.freeMemory(base);
+    }
+
+    /**
+     * the bytes a record of size occupies
+     */
+    static long chunkSize(long size)
+    {
+        if (size > 1L << MAX_CHUNK_SHIFT) {
+            return size;
+        }
+        return 1L << (sizeClass(size) + MIN_CHUNK_SHIFT);
+    }
+
+    private static int sizeClass(long size)
+    {
+        int shift = 64 - Long.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_CHUNK_SHIFT) - MIN_CHUNK_SHIFT;
+    }
+
+    /**
+     * the bytes of the live slabs, the huge allocations are not included
+     */
+    long reservedBytes()
+    {
+        return reservedBytes;
+    }
+
+    /**
+     * free all native memory
+     */
+    void clear()
+    {
+        for (int slab = 0; slab < slabTop; slab++) {
+            if (slabAddresses[slab] != 0) {
+                Platform.freeMemory(slabAddresses[slab]);
+                slabAddresses[slab] = 0;
+            }
+        }
+        slabTop = 0;
+        freeSlabId = NONE;
+        Arrays.fill(partialHeads, NONE);
+        Arrays.fill(emptySlabs, NONE);
+        while (hugeHead != 0L) {
+            long next = unsafe.getLong(hugeHead + 8);
+            Platform.freeMemory(hugeHead);
+            hugeHead = next;
+        }
+        reservedBytes = 0;
+    }
+
+    /**
+     * the cleaner action after the cache is unreachable
+     */
+    @Override
+    public void run()
+    {
+        clear();
+    }
+}
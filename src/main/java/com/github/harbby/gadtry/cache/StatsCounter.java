@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * the counters are LongAdder, the loads of the thread safe cache are recorded outside of the segment lock.
+ */
+final class StatsCounter
+{
+    // never recorded, the snapshot of a cache without recordStats
+    static final StatsCounter EMPTY = new StatsCounter();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder[] evictionCounts = new LongAdder[EvictCause.values().length];
+
+    StatsCounter()
+    {
+        for (int i = 0; i < evictionCounts.length; i++) {
+            evictionCounts[i] = new LongAdder();
+        }
+    }
+
+    void recordHit()
+    {
+        hitCount.increment();
+    }
+
+    void recordMiss()
+    {
+        missCount.increment();
+    }
+
+    void recordLoadSuccess(long loadTime)
+    {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    void recordLoadFailure(long loadTime)
+    {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    void recordEviction(EvictCause cause)
+    {
+        evictionCounts[cause.ordinal()].increment();
+    }
+
+    CacheStats snapshot(long usedBucketCount, long chainedEntryCount, int maxChainLength)
+    {
+        long[] evictions = new long[evictionCounts.length];
+        for (int i = 0; i < evictions.length; i++) {
+            evictions[i] = evictionCounts[i].sum();
+        }
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(), totalLoadTime.sum(),
+                evictions, usedBucketCount, chainedEntryCount, maxChainLength);
+    }
+}
@@ -0,0 +1,571 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import com.github.harbby.gadtry.base.Maths;
+import com.github.harbby.gadtry.base.Throwables;
+import com.github.harbby.gadtry.function.Supplier;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * thread safe cache.
+ * The table is striped into independently locked {@link AbstractHashCache} segments,
+ * a key is always routed to the same segment, so operations on different segments never contend.
+ * <p>
+ * The capacity is split across the segments, so the eviction order is maintained per segment.
+ * The callback is called while holding the lock of the segment that evicted the entry.
+ * <p>
+ * The loads run outside of the segment lock, concurrent misses of the same key share one in-flight load,
+ * the other callers wait on it. A caller must not load the key it is loading itself.
+ * A null loaded value is returned to all the waiters but not cached, the next get loads the key again.
+ * A put or remove of the key during its load makes the loaded value stale, it is returned but not cached.
+ * If refreshAfterWrite is configured, {@code get(key, caller)} returns the stale value
+ * and reloads it on the refresh executor, the refresh also shares the in-flight slot of the key.
+ */
+class StripedHashCache<K, V>
+        extends AbstractMap<K, V>
+        implements Cache<K, V>
+{
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final ConcurrentMap<K, Loading<V>> loadings = new ConcurrentHashMap<>();
+    private final Executor refreshExecutor;
+
+    StripedHashCache(int concurrencyLevel, int maxCapacity, Callback<K, V> callback, long maxDuration)
+    {
+        this(concurrencyLevel, maxCapacity, Long.MAX_VALUE,
+                (capacity, weight) -> new LRUHashCache<>(capacity, callback, maxDuration),
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param maxWeight the max total weight, Long.MAX_VALUE if the cache is not weighted
+     * @param segmentFactory create a segment cache with the given capacity and weight
+     * @param refreshExecutor run the refresh of the entries written refreshAfterWrite ago
+     */
+    @SuppressWarnings("unchecked")
+    StripedHashCache(int concurrencyLevel, int maxCapacity, long maxWeight, SegmentFactory<K, V> segmentFactory, Executor refreshExecutor)
+    {
+        this.refreshExecutor = requireNonNull(refreshExecutor, "refreshExecutor is null");
+        checkArgument(concurrencyLevel > 0, "concurrencyLevel <= 0");
+        if (maxCapacity < 0) {
+            throw new IllegalArgumentException("maxCapacity < 0");
+        }
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight < 0");
+        }
+        // every segment should hold at least one entry
+        int maxSegments = (int) Math.min(Math.min(concurrencyLevel, maxCapacity), maxWeight);
+        int segmentCount = Maths.lastPowerOfTwo(Math.max(1, maxSegments));
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segmentMask = segmentCount - 1;
+        this.segments = (Segment<K, V>[]) new Segment[segmentCount];
+        int segmentCapacity = maxCapacity / segmentCount;
+        int remaining = maxCapacity % segmentCount;
+        long segmentWeight = maxWeight / segmentCount;
+        long remainingWeight = maxWeight % segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            int capacity = i < remaining ? segmentCapacity + 1 : segmentCapacity;
+            long weight = maxWeight == Long.MAX_VALUE ? Long.MAX_VALUE : (i < remainingWeight ? segmentWeight + 1 : segmentWeight);
+            segments[i] = new Segment<>(segmentFactory.create(capacity, weight));
+        }
+    }
+
+    private Segment<K, V> segmentFor(Object key)
+    {
+        // use the high bits, the segment cache uses the low bits of hashCode.
+        int hash = Maths.smearHashCode(key.hashCode());
+        return segments[(hash >>> segmentShift) & segmentMask];
+    }
+
+    @Deprecated
+    @Override
+    public V get(Object key)
+    {
+        return getIfPresent((K) key);
+    }
+
+    @Override
+    public V getIfPresent(K key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.getIfPresent(key);
+        }
+        finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * returns the present value, and starts the refresh if the value was written refreshAfterWrite ago
+     */
+    private <E extends Exception> V getIfPresent(K key, Supplier<V, E> caller)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        AbstractHashCache.Node<K, V> node;
+        V value;
+        long writeTime;
+        boolean refresh;
+        segment.lock();
+        try {
+            node = segment.cache.getNodeIfPresent(key, true);
+            if (node == null) {
+                return null;
+            }
+            value = node.value;
+            writeTime = node.writeTime;
+            refresh = segment.cache.shouldRefresh(node);
+        }
+        finally {
+            segment.unlock();
+        }
+        if (refresh) {
+            refresh(key, caller, node, writeTime);
+        }
+        return value;
+    }
+
+    /**
+     * the refreshed value replaces the node only if it is still the one that triggered the refresh,
+     * a put or remove of the key during the refresh wins.
+     */
+    private <E extends Exception> void refresh(K key, Supplier<V, E> caller, AbstractHashCache.Node<K, V> node, long writeTime)
+    {
+        Loading<V> future = new Loading<>();
+        if (loadings.putIfAbsent(key, future) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                V value;
+                try {
+                    Segment<K, V> segment = segmentFor(key);
+                    value = segment.cache.load(caller);
+                    segment.lock();
+                    try {
+                        if (value != null && segment.cache.getNodeIfPresent(key, false) == node && node.writeTime == writeTime) {
+                            segment.cache.put(key, value);
+                        }
+                    }
+                    finally {
+                        segment.unlock();
+                    }
+                }
+                catch (Throwable e) {
+                    //keep the stale value, the next get will retry the refresh
+                    loadings.remove(key, future);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                loadings.remove(key, future);
+                future.complete(value);
+            });
+        }
+        catch (RuntimeException e) {
+            loadings.remove(key, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public <E extends Exception> V get(K key, Supplier<V, E> caller)
+            throws E
+    {
+        V value = getIfPresent(key, caller);
+        if (value != null) {
+            return value;
+        }
+        Loading<V> future = new Loading<>();
+        CompletableFuture<V> inFlight = loadings.putIfAbsent(key, future);
+        if (inFlight == null) {
+            return load(key, caller, future);
+        }
+        try {
+            // null if the loader returned null or the in-flight bulk load didn't return the key
+            return inFlight.join();
+        }
+        catch (CompletionException e) {
+            throw Throwables.throwThrowable(e.getCause());
+        }
+    }
+
+    @Override
+    public <E extends Exception> CompletableFuture<V> getAsync(K key, Supplier<V, E> caller, Executor executor)
+    {
+        V value = getIfPresent(key, caller);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        Loading<V> future = new Loading<>();
+        CompletableFuture<V> inFlight = loadings.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return inFlight.thenApply(Function.identity());
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    load(key, caller, future);
+                }
+                catch (Exception e) {
+                    //the future has been completed exceptionally
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            loadings.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        // the callers get a dependent stage, completing or cancelling it doesn't affect the other waiters
+        return future.thenApply(Function.identity());
+    }
+
+    /**
+     * the owner of the in-flight future loads the value, puts it into the cache and then completes the future.
+     * the future is unregistered before completing it, so a failed load is never observed by the later callers.
+     */
+    private <E extends Exception> V load(K key, Supplier<V, E> caller, Loading<V> future)
+            throws E
+    {
+        V value;
+        try {
+            // the previous load may have finished between the miss and taking over the in-flight slot
+            Segment<K, V> segment = segmentFor(key);
+            segment.lock();
+            try {
+                AbstractHashCache.Node<K, V> node = segment.cache.getNodeIfPresent(key, false);
+                value = node == null ? null : node.value;
+            }
+            finally {
+                segment.unlock();
+            }
+            if (value == null) {
+                value = segment.cache.load(caller);
+                install(key, value, future);
+            }
+        }
+        catch (Throwable e) {
+            loadings.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        loadings.remove(key, future);
+        future.complete(value);
+        return value;
+    }
+
+    /**
+     * puts the loaded value unless the key was written or removed during the load,
+     * a null value is returned to the callers as a miss and not cached.
+     */
+    private void install(K key, V value, Loading<V> loading)
+    {
+        if (value == null) {
+            return;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            if (!loading.stale) {
+                segment.cache.put(key, value);
+            }
+        }
+        finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * marks the in-flight load of the key stale, the caller holds the lock of the key's segment
+     */
+    private void invalidateLoading(Object key)
+    {
+        Loading<V> loading = loadings.get(key);
+        if (loading != null) {
+            loading.stale = true;
+        }
+    }
+
+    /**
+     * the missing keys take over their in-flight slots before calling the loader,
+     * so the concurrent single key loads of the same keys wait for the bulk load.
+     */
+    @Override
+    public <E extends Exception> Map<K, V> getAll(Iterable<? extends K> keys, BulkLoader<K, V, E> loader)
+            throws E
+    {
+        Map<K, V> result = new LinkedHashMap<>();
+        Map<K, Loading<V>> ownedLoads = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> otherLoads = new HashMap<>();
+        for (K key : keys) {
+            if (result.containsKey(key)) {
+                continue;
+            }
+            V value = getIfPresent(key);
+            // keep the order of the keys
+            result.put(key, value);
+            if (value == null) {
+                Loading<V> future = new Loading<>();
+                CompletableFuture<V> inFlight = loadings.putIfAbsent(key, future);
+                if (inFlight == null) {
+                    ownedLoads.put(key, future);
+                }
+                else {
+                    otherLoads.put(key, inFlight);
+                }
+            }
+        }
+        if (!ownedLoads.isEmpty()) {
+            Map<K, V> loaded;
+            try {
+                Set<K> missingKeys = Collections.unmodifiableSet(ownedLoads.keySet());
+                loaded = segmentFor(missingKeys.iterator().next()).cache.loadAll(missingKeys, loader);
+                for (Entry<K, V> entry : loaded.entrySet()) {
+                    if (entry.getValue() == null) {
+                        continue;
+                    }
+                    Loading<V> future = ownedLoads.get(entry.getKey());
+                    if (future != null) {
+                        install(entry.getKey(), entry.getValue(), future);
+                    }
+                    else {
+                        put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            catch (Throwable e) {
+                ownedLoads.forEach((key, future) -> {
+                    loadings.remove(key, future);
+                    future.completeExceptionally(e);
+                });
+                throw e;
+            }
+            ownedLoads.forEach((key, future) -> {
+                V value = loaded.get(key);
+                result.put(key, value);
+                loadings.remove(key, future);
+                future.complete(value);
+            });
+        }
+        for (Entry<K, CompletableFuture<V>> entry : otherLoads.entrySet()) {
+            try {
+                result.put(entry.getKey(), entry.getValue().join());
+            }
+            catch (CompletionException e) {
+                throw Throwables.throwThrowable(e.getCause());
+            }
+        }
+        result.values().removeIf(value -> value == null);
+        return result;
+    }
+
+    @Override
+    public V put(K key, V value)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            invalidateLoading(key);
+            return segment.cache.put(key, value);
+        }
+        finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public V remove(Object key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            invalidateLoading(key);
+            return segment.cache.remove(key);
+        }
+        finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                for (K key : loadings.keySet()) {
+                    if (segmentFor(key) == segment) {
+                        invalidateLoading(key);
+                    }
+                }
+                segment.cache.clear();
+            }
+            finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                size += segment.cache.size();
+            }
+            finally {
+                segment.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * weakly consistent view, the entries are copied segment by segment
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Entry<K, V>> iterator()
+            {
+                List<Entry<K, V>> entries = new ArrayList<>();
+                for (Segment<K, V> segment : segments) {
+                    segment.lock();
+                    try {
+                        for (Entry<K, V> entry : segment.cache.entrySet()) {
+                            entries.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+                        }
+                    }
+                    finally {
+                        segment.unlock();
+                    }
+                }
+                return entries.iterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return StripedHashCache.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Map<K, V> asMap()
+    {
+        return this;
+    }
+
+    @Override
+    public Map<K, V> getAllPresent()
+    {
+        Map<K, V> map = new HashMap<>();
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                map.putAll(segment.cache.getAllPresent());
+            }
+            finally {
+                segment.unlock();
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        CacheStats stats = null;
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                CacheStats segmentStats = segment.cache.stats();
+                stats = stats == null ? segmentStats : stats.plus(segmentStats);
+            }
+            finally {
+                segment.unlock();
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void cleanUp()
+    {
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                segment.cache.cleanUp();
+            }
+            finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    interface SegmentFactory<K, V>
+    {
+        AbstractHashCache<K, V> create(int maxCapacity, long maxWeight);
+    }
+
+    private static final class Loading<V>
+            extends CompletableFuture<V>
+    {
+        // guarded by the lock of the key's segment
+        private boolean stale;
+    }
+
+    private static final class Segment<K, V>
+            extends ReentrantLock
+    {
+        private static final long serialVersionUID = 4529046245216917364L;
+        private final transient AbstractHashCache<K, V> cache;
+
+        private Segment(AbstractHashCache<K, V> cache)
+        {
+            this.cache = cache;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import com.github.harbby.gadtry.cache.AbstractHashCache.Node;
+
+import java.util.function.Consumer;
+
+/**
+ * hierarchical timer wheel, schedules the nodes by {@link Node#expireTime}.
+ * <p>
+ * Every level is a ring of buckets, a bucket of the level i spans {@code 2^SHIFT[i]} nanoseconds.
+ * A node is put into the lowest level whose range covers its remaining duration.
+ * When the time advances, the passed buckets are drained, the expired nodes are handed to the
+ * expire handler and the others are rescheduled into a lower level.
+ * schedule, reschedule and deschedule are O(1), advance is O(1) amortized per node.
+ */
+final class TimerWheel<K, V>
+{
+    // 67ms, 4.3s, 4.6m, 4.9h, 6.5d
+    private static final int[] SHIFT = {26, 32, 38, 44, 49};
+    private static final int[] BUCKETS = {64, 64, 64, 32, 1};
+    private static final long[] SPANS = {1L << 26, 1L << 32, 1L << 38, 1L << 44, 1L << 49};
+
+    private final Node<K, V>[][] wheel;
+    private long nanos;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long nanos)
+    {
+        this.nanos = nanos;
+        this.wheel = (Node<K, V>[][]) new Node[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = (Node<K, V>[]) new Node[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                Node<K, V> sentinel = new Node<>(null, null, 0);
+                sentinel.timerPrev = sentinel;
+                sentinel.timerNext = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    void schedule(Node<K, V> node)
+    {
+        if (node.expireTime == Long.MAX_VALUE) {
+            return;
+        }
+        Node<K, V> sentinel = findBucket(node.expireTime);
+        node.timerNext = sentinel;
+        node.timerPrev = sentinel.timerPrev;
+        sentinel.timerPrev.timerNext = node;
+        sentinel.timerPrev = node;
+    }
+
+    void reschedule(Node<K, V> node)
+    {
+        deschedule(node);
+        schedule(node);
+    }
+
+    void deschedule(Node<K, V> node)
+    {
+        if (node.timerNext != null) {
+            node.timerPrev.timerNext = node.timerNext;
+            node.timerNext.timerPrev = node.timerPrev;
+            node.timerNext = null;
+            node.timerPrev = null;
+        }
+    }
+
+    /**
+     * advances the wheel to the current time, and hands every expired node to the expireHandler.
+     * the handler is called after the node is descheduled.
+     */
+    void advance(long currentTimeNanos, Consumer<Node<K, V>> expireHandler)
+    {
+        long previousTimeNanos = nanos;
+        this.nanos = currentTimeNanos;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTimeNanos >>> SHIFT[i];
+            long currentTicks = currentTimeNanos >>> SHIFT[i];
+            if (currentTicks - previousTicks <= 0L) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks - previousTicks, expireHandler);
+        }
+    }
+
+    private void expire(int level, long previousTicks, long delta, Consumer<Node<K, V>> expireHandler)
+    {
+        Node<K, V>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(delta + 1, buckets.length);
+        for (int i = 0; i < steps; i++) {
+            Node<K, V> sentinel = buckets[(int) ((previousTicks + i) & mask)];
+            Node<K, V> node = sentinel.timerNext;
+            sentinel.timerPrev = sentinel;
+            sentinel.timerNext = sentinel;
+            while (node != sentinel) {
+                Node<K, V> next = node.timerNext;
+                node.timerPrev = null;
+                node.timerNext = null;
+                if (node.expireTime <= nanos) {
+                    expireHandler.accept(node);
+                }
+                else {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    void clear()
+    {
+        for (Node<K, V>[] buckets : wheel) {
+            for (Node<K, V> sentinel : buckets) {
+                Node<K, V> node = sentinel.timerNext;
+                while (node != sentinel) {
+                    Node<K, V> next = node.timerNext;
+                    node.timerPrev = null;
+                    node.timerNext = null;
+                    node = next;
+                }
+                sentinel.timerPrev = sentinel;
+                sentinel.timerNext = sentinel;
+            }
+        }
+    }
+
+    private Node<K, V> findBucket(long time)
+    {
+        // an already expired node goes into the current bucket, it's drained by the next tick.
+        // a past bucket is drained only when the wheel wraps around
+        if (time < nanos) {
+            time = nanos;
+        }
+        long duration = time - nanos;
+        int last = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+}
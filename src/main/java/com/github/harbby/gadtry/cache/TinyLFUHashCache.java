@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+/**
+ * non thread safe cache, W-TinyLFU eviction policy.
+ * <p>
+ * New entries are added to a small lru window, the main space is a segmented lru (probation and protected).
+ * An entry evicted from the window competes with the victim of the probation segment,
+ * the one with the higher estimated access frequency is retained.
+ * So a scan of one-hit keys only churns the window and can't flush the frequently used entries.
+ * The window and protected segments are sized by weight, it's the entry count if the cache is not weighted.
+ * see: TinyLFU: A Highly Efficient Cache Admission Policy
+ */
+class TinyLFUHashCache<K, V>
+        extends AbstractHashCache<K, V>
+{
+    static final double WINDOW_PERCENT = 0.01;
+    static final double PROTECTED_PERCENT = 0.8;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final NodeQueue<K, V> windowQueue = new NodeQueue<>();
+    private final NodeQueue<K, V> probationQueue = new NodeQueue<>();
+    private final NodeQueue<K, V> protectedQueue = new NodeQueue<>();
+    private final FrequencySketch sketch;
+    private final long maxWindow;
+    private final long maxProtected;
+
+    private long windowSize;
+    private long protectedSize;
+    private Node<K, V> candidate;
+
+    TinyLFUHashCache(int maxCapacity, long maxWeight, CacheBuilder<K, V> builder)
+    {
+        super(maxCapacity, maxWeight, builder);
+        long maximum = maxWeight == Long.MAX_VALUE ? maxCapacity : maxWeight;
+        this.maxWindow = Math.max(1, (long) (maximum * WINDOW_PERCENT));
+        this.maxProtected = (long) (Math.max(0, maximum - maxWindow) * PROTECTED_PERCENT);
+        this.sketch = new FrequencySketch(expectedSize());
+    }
+
+    @Override
+    Node<K, V> newNode(K key, V value, int hash)
+    {
+        return new QueueNode<>(key, value, hash);
+    }
+
+    @Override
+    void onInsert(Node<K, V> node)
+    {
+        sketch.increment(node.hash);
+        ((QueueNode<K, V>) node).queue = WINDOW;
+        windowQueue.addFirst(node);
+        windowSize += node.weight;
+        while (windowSize > maxWindow) {
+            // move the window victim to the main space, if the cache is full it competes with the main victim
+            QueueNode<K, V> windowVictim = (QueueNode<K, V>) windowQueue.peekLast();
+            NodeQueue.unlink(windowVictim);
+            windowSize -= windowVictim.weight;
+            probationQueue.addFirst(windowVictim);
+            windowVictim.queue = PROBATION;
+            this.candidate = windowVictim;
+        }
+    }
+
+    @Override
+    void onAccess(Node<K, V> node)
+    {
+        sketch.increment(node.hash);
+        QueueNode<K, V> queueNode = (QueueNode<K, V>) node;
+        switch (queueNode.queue) {
+            case WINDOW:
+                windowQueue.moveToFirst(node);
+                break;
+            case PROBATION:
+                // promote to protected
+                if (node == candidate) {
+                    candidate = null;
+                }
+                NodeQueue.unlink(node);
+                protectedQueue.addFirst(node);
+                queueNode.queue = PROTECTED;
+                protectedSize += node.weight;
+                while (protectedSize > maxProtected) {
+                    QueueNode<K, V> demoted = (QueueNode<K, V>) protectedQueue.peekLast();
+                    NodeQueue.unlink(demoted);
+                    probationQueue.addFirst(demoted);
+                    demoted.queue = PROBATION;
+                    protectedSize -= demoted.weight;
+                }
+                break;
+            default:
+                protectedQueue.moveToFirst(node);
+        }
+    }
+
+    @Override
+    void onMiss(int hash)
+    {
+        sketch.increment(hash);
+    }
+
+    @Override
+    void onRemove(Node<K, V> node)
+    {
+        NodeQueue.unlink(node);
+        if (node == candidate) {
+            candidate = null;
+        }
+        int queue = ((QueueNode<K, V>) node).queue;
+        if (queue == WINDOW) {
+            windowSize -= node.weight;
+        }
+        else if (queue == PROTECTED) {
+            protectedSize -= node.weight;
+        }
+    }
+
+    @Override
+    void onWeightChanged(Node<K, V> node, int delta)
+    {
+        int queue = ((QueueNode<K, V>) node).queue;
+        if (queue == WINDOW) {
+            windowSize += delta;
+        }
+        else if (queue == PROTECTED) {
+            protectedSize += delta;
+        }
+    }
+
+    @Override
+    Node<K, V> selectVictim()
+    {
+        Node<K, V> candidate = this.candidate;
+        this.candidate = null;
+        Node<K, V> victim = probationQueue.peekLast();
+        if (victim == candidate) {
+            victim = protectedQueue.peekLast();
+        }
+        if (candidate == null) {
+            return victim != null ? victim : windowQueue.peekLast();
+        }
+        if (victim == null) {
+            return candidate;
+        }
+        // TinyLFU admission
+        return sketch.frequency(candidate.hash) > sketch.frequency(victim.hash) ? victim : candidate;
+    }
+
+    @Override
+    void onClear()
+    {
+        windowQueue.clear();
+        probationQueue.clear();
+        protectedQueue.clear();
+        windowSize = 0;
+        protectedSize = 0;
+        candidate = null;
+    }
+
+    private static final class QueueNode<K, V>
+            extends Node<K, V>
+    {
+        private int queue;
+
+        private QueueNode(K key, V value, int hash)
+        {
+            super(key, value, hash);
+        }
+    }
+}
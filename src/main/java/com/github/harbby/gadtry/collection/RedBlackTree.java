@@ -31,51 +31,40 @@ public abstract class RedBlackTree<K, V>
 
     public final V get(final TreeNode<K, V> root, Object key, int hash)
     {
-        if (root == null) {
-            return null;
-        }
-
-        TreeNode<K, V> next = root;
-        do {
-            int hash0 = next.getHash();
-            if (hash0 == hash) {
-                do {
-                    if (key.equals(next.getKey())) {
-                        return next.getValue();
-                    }
-                    next = next.hashDuplicated;
-                }
-                while (next != null);
-                return null;
-            }
-            next = hash > hash0 ? next.right : next.left;
-        }
-        while (next != null);
-        return null;
+        TreeNode<K, V> node = find(root, key, hash);
+        return node == null ? null : node.getValue();
     }
 
     public final boolean containsKey(TreeNode<K, V> root, Object key, int hash)
     {
-        if (root == null) {
-            return false;
-        }
+        return find(root, key, hash) != null;
+    }
+
+    private static <K, V> TreeNode<K, V> find(final TreeNode<K, V> root, Object key, int hash)
+    {
         TreeNode<K, V> next = root;
-        do {
+        while (next != null) {
             int hash0 = next.getHash();
             if (hash0 == hash) {
-                do {
-                    if (key.equals(next.getKey())) {
-                        return true;
+                if (key.equals(next.getKey())) {
+                    return next;
+                }
+                int cmp = tieBreakOrder(key, next.getKey());
+                if (cmp == 0) {
+                    while ((next = next.hashDuplicated) != null) {
+                        if (key.equals(next.getKey())) {
+                            return next;
+                        }
                     }
-                    next = next.hashDuplicated;
+                    return null;
                 }
-                while (next != null);
-                return false;
+                next = cmp > 0 ? next.right : next.left;
+            }
+            else {
+                next = hash > hash0 ? next.right : next.left;
             }
-            next = hash > hash0 ? next.right : next.left;
         }
-        while (next != null);
-        return false;
+        return null;
     }
 
     public final V put(int treeId, K key, V value, int hash)
@@ -91,21 +80,30 @@ public abstract class RedBlackTree<K, V>
         TreeNode<K, V> next = root;
         do {
             int hash0 = next.getHash();
+            boolean right;
             if (hash0 == hash) {
-                TreeNode<K, V> first = next;
-                do {
-                    if (key.equals(next.getKey())) {
-                        return next.setValue(value);
+                if (key.equals(next.getKey())) {
+                    return next.setValue(value);
+                }
+                int cmp = tieBreakOrder(key, next.getKey());
+                if (cmp == 0) {
+                    TreeNode<K, V> first = next;
+                    while ((next = next.hashDuplicated) != null) {
+                        if (key.equals(next.getKey())) {
+                            return next.setValue(value);
+                        }
                     }
-                    next = next.hashDuplicated;
+                    TreeNode<K, V> node = this.createNode(key, value, hash);
+                    node.hashDuplicated = first.hashDuplicated;
+                    first.hashDuplicated = node;
+                    return null;
                 }
-                while (next != null);
-                TreeNode<K, V> node = this.createNode(key, value, hash);
-                node.hashDuplicated = first.hashDuplicated;
-                first.hashDuplicated = node;
-                return null;
+                right = cmp > 0;
             }
-            else if (hash > hash0) {
+            else {
+                right = hash > hash0;
+            }
+            if (right) {
                 if (next.right == null) {
                     TreeNode<K, V> node = this.createNode(key, value, hash);
                     next.right = node;
@@ -153,20 +151,29 @@ public abstract class RedBlackTree<K, V>
         TreeNode<K, V> next = root;
         do {
             int hash0 = next.getHash();
+            boolean right;
             if (hash0 == hash) {
-                TreeNode<K, V> first = next;
-                do {
-                    if (key.equals(next.getKey())) {
-                        return next.setValue(value);
+                if (key.equals(next.getKey())) {
+                    return next.setValue(value);
+                }
+                int cmp = tieBreakOrder(key, next.getKey());
+                if (cmp == 0) {
+                    TreeNode<K, V> first = next;
+                    while ((next = next.hashDuplicated) != null) {
+                        if (key.equals(next.getKey())) {
+                            return next.setValue(value);
+                        }
                     }
-                    next = next.hashDuplicated;
+                    node.hashDuplicated = first.hashDuplicated;
+                    first.hashDuplicated = node;
+                    return null;
                 }
-                while (next != null);
-                node.hashDuplicated = first.hashDuplicated;
-                first.hashDuplicated = node;
-                return null;
+                right = cmp > 0;
             }
-            else if (hash > hash0) {
+            else {
+                right = hash > hash0;
+            }
+            if (right) {
                 if (next.right == null) {
                     next.right = node;
                     node.parent = next;
@@ -219,7 +226,8 @@ public abstract class RedBlackTree<K, V>
                     }
                     return returnValue;
                 }
-                else {
+                int cmp = tieBreakOrder(key, next.getKey());
+                if (cmp == 0) {
                     TreeNode<K, V> last = next;
                     while ((next = next.hashDuplicated) != null) {
                         if (key.equals(next.getKey())) {
@@ -230,6 +238,7 @@ public abstract class RedBlackTree<K, V>
                     }
                     return null;
                 }
+                next = cmp > 0 ? next.right : next.left;
             }
             else if (hash > hash0) {
                 next = next.right;
@@ -241,6 +250,32 @@ public abstract class RedBlackTree<K, V>
         return null;
     }
 
+    /**
+     * Orders two keys with the same hash, like HashMap's tieBreakOrder: by class name first,
+     * then by {@link Comparable#compareTo} when both keys are of the same comparable class.
+     * Keys that still tie share one tree position and are chained on its hashDuplicated list.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int tieBreakOrder(Object a, Object b)
+    {
+        Class<?> aClass = a.getClass();
+        Class<?> bClass = b.getClass();
+        if (aClass != bClass) {
+            int cmp = aClass.getName().compareTo(bClass.getName());
+            return cmp != 0 ? cmp : Integer.compare(System.identityHashCode(aClass), System.identityHashCode(bClass));
+        }
+        if (a instanceof Comparable) {
+            try {
+                return ((Comparable) a).compareTo(b);
+            }
+            catch (ClassCastException e) {
+                //not comparable to its own class
+                return 0;
+            }
+        }
+        return 0;
+    }
+
     private void overwrite(int treeId, TreeNode<K, V> in, TreeNode<K, V> target)
     {
         in.parent = target.parent;
@@ -309,27 +344,28 @@ public abstract class RedBlackTree<K, V>
 
     private static <K, V> TreeNode<K, V> findAndRemoveMaxNode(int treeId, RedBlackTree<K, V> tree, TreeNode<K, V> node)
     {
-        boolean isLeft = true;
-        do {
-            if (node.right != null) {
-                isLeft = false;
-                node = node.right;
-            }
-            else if (node.left != null) {
-                isLeft = true;
-                node = node.left;
+        while (node.right != null) {
+            node = node.right;
+        }
+        TreeNode<K, V> child = node.left;
+        if (child != null) {
+            //the max node is black and its only child is a red leaf
+            child.parent = node.parent;
+            child.red = false;
+            if (node.isLeftNode()) {
+                node.parent.left = child;
             }
             else {
-                break;
+                node.parent.right = child;
             }
+            return node;
         }
-        while (true);
 
         if (!node.red) {
             tree.balanceRemove(treeId, node);
         }
 
-        if (isLeft) {
+        if (node.isLeftNode()) {
             node.parent.left = null;
         }
         else {
@@ -580,6 +616,10 @@ public abstract class RedBlackTree<K, V>
                     if (left != null) {
                         queue.addFirst(left);
                     }
+                    //the nodes with same hash are linked and not in the tree
+                    if (treeNode.hashDuplicated != null) {
+                        queue.addFirst(treeNode.hashDuplicated);
+                    }
                 }
             }
         };
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.io;
+
+import com.github.harbby.gadtry.collection.iterator.CloseIterator;
+import com.github.harbby.gadtry.jcodec.Jcodec;
+import com.github.harbby.gadtry.jcodec.Serializer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * decodes the blocks of a record file on the pool and returns the records in file order.
+ * At most prefetch blocks are decoding or decoded ahead of the consumer, every decoding task
+ * borrows an idle jcodec with its own serializer, so neither is used by two threads at the same time.
+ */
+final class ParallelBlockIterator<E>
+        implements CloseIterator<E>
+{
+    private final RecordFileReader<E> reader;
+    private final ForkJoinPool pool;
+    private final int toBlock;
+    private final Queue<Decoder<E>> idleDecoders = new ConcurrentLinkedQueue<>();
+    private final Queue<ForkJoinTask<List<E>>> prefetchQueue;
+
+    private int nextBlock;
+    private Iterator<E> current = Collections.emptyIterator();
+    private boolean closed;
+
+    ParallelBlockIterator(RecordFileReader<E> reader, int fromBlock, int toBlock, ForkJoinPool pool, int prefetch)
+    {
+        checkArgument(prefetch > 0, "prefetch must be greater than 0");
+        this.reader = requireNonNull(reader, "reader is null");
+        this.pool = requireNonNull(pool, "pool is null");
+        this.nextBlock = fromBlock;
+        this.toBlock = toBlock;
+        this.prefetchQueue = new ArrayDeque<>(prefetch);
+        for (int i = 0; i < prefetch; i++) {
+            if (!this.submitNext()) {
+                break;
+            }
+        }
+    }
+
+    private boolean submitNext()
+    {
+        if (nextBlock >= toBlock) {
+            return false;
+        }
+        int block = nextBlock++;
+        prefetchQueue.add(pool.submit(() -> decode(block)));
+        return true;
+    }
+
+    private List<E> decode(int block)
+    {
+        Decoder<E> decoder = idleDecoders.poll();
+        if (decoder == null) {
+            Jcodec jcodec = reader.newJcodec();
+            decoder = new Decoder<>(jcodec, reader.newSerializer(jcodec));
+        }
+        try (CloseIterator<E> iterator = reader.openBlock(decoder.jcodec, decoder.serializer, block)) {
+            List<E> records = new ArrayList<>((int) reader.getBlockRecordCount(block));
+            iterator.forEachRemaining(records::add);
+            return records;
+        }
+        finally {
+            idleDecoders.add(decoder);
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!current.hasNext()) {
+            ForkJoinTask<List<E>> task = prefetchQueue.poll();
+            if (closed || task == null) {
+                return false;
+            }
+            // join() rethrows the exception of decoding task
+            current = task.join().iterator();
+            this.submitNext();
+        }
+        return true;
+    }
+
+    @Override
+    public E next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        ForkJoinTask<List<E>> task;
+        while ((task = prefetchQueue.poll()) != null) {
+            task.cancel(false);
+        }
+        current = Collections.emptyIterator();
+    }
+
+    private static final class Decoder<E>
+    {
+        private final Jcodec jcodec;
+        private final Serializer<E> serializer;
+
+        private Decoder(Jcodec jcodec, Serializer<E> serializer)
+        {
+            this.jcodec = jcodec;
+            this.serializer = serializer;
+        }
+    }
+}
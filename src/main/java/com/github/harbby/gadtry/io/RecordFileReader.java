@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.io;
+
+import com.github.harbby.gadtry.collection.iterator.CloseIterator;
+import com.github.harbby.gadtry.jcodec.InputView;
+import com.github.harbby.gadtry.jcodec.Jcodec;
+import com.github.harbby.gadtry.jcodec.JcodecException;
+import com.github.harbby.gadtry.jcodec.Serializer;
+import com.github.harbby.gadtry.jcodec.StreamInputView;
+import com.github.harbby.gadtry.jcodec.compress.BlockCodec;
+import com.github.harbby.gadtry.jcodec.compress.CompressedInputView;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkArgument;
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+import static com.github.harbby.gadtry.io.RecordFileWriter.FOOTER_SIZE;
+import static com.github.harbby.gadtry.io.RecordFileWriter.MAGIC;
+import static com.github.harbby.gadtry.io.RecordFileWriter.VERSION;
+import static com.github.harbby.gadtry.io.RecordFileWriter.serializerName;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * reads the record file written by {@link RecordFileWriter}.
+ * The header and the block index are loaded when opened, then the blocks are read on demand,
+ * every block can be decoded alone by a new jcodec, see {@link #newJcodec()} and {@link #openBlock(Jcodec, int)}.
+ */
+public final class RecordFileReader<E>
+        implements Closeable
+{
+    private final SeekableByteChannel channel;
+    private final Supplier<Jcodec> jcodecFactory;
+    private final byte[] header;
+    private final String codecName;
+    private final int blockSize;
+    private final Class<E> typeClass;
+    private final Supplier<Serializer<E>> serializerFactory;
+    private final long[] blockOffsets;
+    private final long[] blockRecords;
+    private final Object[] firstKeys;
+    private final long recordCount;
+
+    private RecordFileReader(SeekableByteChannel channel, Supplier<Jcodec> jcodecFactory, Supplier<Serializer<E>> serializerFactory)
+            throws IOException
+    {
+        this.channel = requireNonNull(channel, "channel is null");
+        this.jcodecFactory = requireNonNull(jcodecFactory, "jcodecFactory is null");
+        long size = channel.size();
+        checkState(size >= FOOTER_SIZE, "not a record file, file size %s", size);
+        InputView footer = new StreamInputView(new ByteArrayInputStream(readRegion(size - FOOTER_SIZE, FOOTER_SIZE)));
+        int headerLength = footer.readInt();
+        long indexOffset = footer.readLong();
+        if (footer.readInt() != MAGIC || headerLength <= 0 || indexOffset < headerLength || indexOffset > size - FOOTER_SIZE) {
+            throw new JcodecException("not a record file, bad footer");
+        }
+
+        this.header = readRegion(0, headerLength);
+        InputView header = new StreamInputView(new ByteArrayInputStream(this.header));
+        if (header.readInt() != MAGIC) {
+            throw new JcodecException("not a record file, bad magic");
+        }
+        byte version = header.readByte();
+        if (version != VERSION) {
+            throw new JcodecException("unsupported record file version " + version);
+        }
+        this.codecName = header.readString();
+        this.blockSize = header.readVarInt(true);
+        String typeName = header.readString();
+        String serializerName = header.readString();
+        boolean hasKey = header.readBoolean();
+        // the manifest is the rest of header, it is read again by every new jcodec
+        Jcodec jcodec = jcodecFactory.get();
+        jcodec.readManifest(header);
+
+        this.typeClass = loadClass(typeName);
+        if (serializerFactory == null) {
+            // the default serializer is got from the jcodec of every block
+            String defaultName = serializerName(jcodec.getSerializer(typeClass));
+            checkState(Objects.equals(defaultName, serializerName),
+                    "the file was written by serializer %s, but found %s", serializerName, defaultName);
+        }
+        this.serializerFactory = serializerFactory;
+
+        InputView index = new StreamInputView(new ByteArrayInputStream(readRegion(indexOffset, size - FOOTER_SIZE - indexOffset)));
+        int blockCount = index.readVarInt(true);
+        this.blockOffsets = new long[blockCount + 1];
+        this.blockRecords = new long[blockCount];
+        this.firstKeys = hasKey ? new Object[blockCount] : null;
+        long count = 0;
+        jcodec.reset();
+        for (int i = 0; i < blockCount; i++) {
+            blockOffsets[i] = index.readVarLong(true);
+            blockRecords[i] = index.readVarLong(true);
+            count += blockRecords[i];
+            if (hasKey) {
+                firstKeys[i] = jcodec.readClassAndObject(index);
+            }
+        }
+        blockOffsets[blockCount] = indexOffset;
+        this.recordCount = count;
+    }
+
+    public static <E> RecordFileReader<E> open(SeekableByteChannel channel)
+            throws IOException
+    {
+        return new RecordFileReader<>(channel, Jcodec::of, null);
+    }
+
+    /**
+     * @param serializerFactory creates the serializer decoding the records, every jcodec decoding the blocks
+     *                          gets its own serializer, so the serializer may keep the decoding state
+     */
+    public static <E> RecordFileReader<E> open(SeekableByteChannel channel, Supplier<Serializer<E>> serializerFactory)
+            throws IOException
+    {
+        return new RecordFileReader<>(channel, Jcodec::of, requireNonNull(serializerFactory, "serializerFactory is null"));
+    }
+
+    /**
+     * @param jcodecFactory creates the jcodec with the same custom serializers as the writer,
+     *                      the registrations are restored by the manifest of file
+     * @param serializerFactory null means the default serializer of every block jcodec,
+     *                          otherwise every jcodec decoding the blocks gets its own serializer created by it
+     */
+    public static <E> RecordFileReader<E> open(SeekableByteChannel channel, Supplier<Jcodec> jcodecFactory, Supplier<Serializer<E>> serializerFactory)
+            throws IOException
+    {
+        return new RecordFileReader<>(channel, jcodecFactory, serializerFactory);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Class<E> loadClass(String className)
+    {
+        try {
+            return (Class<E>) Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+        }
+        catch (ClassNotFoundException e) {
+            throw new JcodecException("not found record class " + className, e);
+        }
+    }
+
+    private byte[] readRegion(long position, long length)
+            throws IOException
+    {
+        checkState(length <= Integer.MAX_VALUE, "region too large %s", length);
+        byte[] bytes = new byte[(int) length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        synchronized (channel) {
+            channel.position(position);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new JcodecException("unexpected end of record file, required " + length + " bytes at " + position);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return a new jcodec with the registrations of file, a jcodec is not thread safe
+     */
+    public Jcodec newJcodec()
+    {
+        Jcodec jcodec = jcodecFactory.get();
+        InputView header = new StreamInputView(new ByteArrayInputStream(this.header));
+        header.readInt();
+        header.readByte();
+        header.readString();
+        header.readVarInt(true);
+        header.readString();
+        header.readString();
+        header.readBoolean();
+        jcodec.readManifest(header);
+        return jcodec;
+    }
+
+    public Class<E> getTypeClass()
+    {
+        return typeClass;
+    }
+
+    public int getBlockCount()
+    {
+        return blockRecords.length;
+    }
+
+    public long getRecordCount()
+    {
+        return recordCount;
+    }
+
+    public long getBlockRecordCount(int block)
+    {
+        return blockRecords[block];
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K> K getFirstKey(int block)
+    {
+        checkState(firstKeys != null, "the file was written without key");
+        return (K) firstKeys[block];
+    }
+
+    /**
+     * @return the last block whose first key is not greater than the key, or 0 if the key is less than all blocks
+     */
+    public <K> int findBlock(K key, Comparator<? super K> comparator)
+    {
+        checkState(firstKeys != null, "the file was written without key");
+        int low = 0;
+        int high = firstKeys.length - 1;
+        int block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            @SuppressWarnings("unchecked")
+            K midKey = (K) firstKeys[mid];
+            if (comparator.compare(midKey, key) <= 0) {
+                block = mid;
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return block;
+    }
+
+    /**
+     * reads the records from the first record whose key is not less than the key.
+     * Only the blocks after {@link #findBlock(Object, Comparator)} are read.
+     */
+    public <K> CloseIterator<E> seek(K key, Function<? super E, ? extends K> keyFunction, Comparator<? super K> comparator)
+    {
+        CloseIterator<E> iterator = iterator(findBlock(key, comparator), getBlockCount());
+        return new CloseIterator<E>()
+        {
+            private E next;
+            private boolean skipped;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (next != null) {
+                    return true;
+                }
+                while (iterator.hasNext()) {
+                    E record = iterator.next();
+                    if (skipped || comparator.compare(keyFunction.apply(record), key) >= 0) {
+                        skipped = true;
+                        next = record;
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public E next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                E record = next;
+                next = null;
+                return record;
+            }
+
+            @Override
+            public void close()
+            {
+                iterator.close();
+            }
+        };
+    }
+
+    public CloseIterator<E> iterator()
+    {
+        return iterator(0, getBlockCount());
+    }
+
+    /**
+     * @param fromBlock the first block, inclusive
+     * @param toBlock   the last block, exclusive
+     */
+    public CloseIterator<E> iterator(int fromBlock, int toBlock)
+    {
+        checkArgument(fromBlock >= 0 && fromBlock <= toBlock && toBlock <= getBlockCount(),
+                "block range [%s, %s) out of [0, %s)", fromBlock, toBlock, getBlockCount());
+        Jcodec jcodec = newJcodec();
+        Serializer<E> serializer = newSerializer(jcodec);
+        return new CloseIterator<E>()
+        {
+            private int block = fromBlock;
+            private CloseIterator<E> current;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (current == null || !current.hasNext()) {
+                    if (block >= toBlock) {
+                        return false;
+                    }
+                    current = openBlock(jcodec, serializer, block++);
+                }
+                return true;
+            }
+
+            @Override
+            public E next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void close()
+            {
+                if (current != null) {
+                    current.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * decodes the blocks on the common pool, see {@link #parallelIterator(int, int, ForkJoinPool, int)}
+     */
+    public CloseIterator<E> parallelIterator(int prefetch)
+    {
+        return parallelIterator(0, getBlockCount(), ForkJoinPool.commonPool(), prefetch);
+    }
+
+    /**
+     * decodes the blocks on the pool with a jcodec and a serializer per decoding task, the records are returned in file order.
+     *
+     * @param prefetch the max number of blocks decoded ahead of the consumer, the decoded blocks are held in memory
+     */
+    public CloseIterator<E> parallelIterator(int fromBlock, int toBlock, ForkJoinPool pool, int prefetch)
+    {
+        checkArgument(fromBlock >= 0 && fromBlock <= toBlock && toBlock <= getBlockCount(),
+                "block range [%s, %s) out of [0, %s)", fromBlock, toBlock, getBlockCount());
+        return new ParallelBlockIterator<>(this, fromBlock, toBlock, pool, prefetch);
+    }
+
+    /**
+     * reads the block into memory and decodes the records by the jcodec, the jcodec is reset before the block.
+     */
+    public CloseIterator<E> openBlock(Jcodec jcodec, int block)
+    {
+        return openBlock(jcodec, newSerializer(jcodec), block);
+    }
+
+    /**
+     * @return the serializer decoding the records with the jcodec, it is used by one thread only
+     */
+    Serializer<E> newSerializer(Jcodec jcodec)
+    {
+        if (serializerFactory == null) {
+            return jcodec.getSerializer(typeClass);
+        }
+        return requireNonNull(serializerFactory.get(), "serializerFactory return null");
+    }
+
+    CloseIterator<E> openBlock(Jcodec jcodec, Serializer<E> serializer, int block)
+    {
+        byte[] bytes;
+        try {
+            bytes = readRegion(blockOffsets[block], blockOffsets[block + 1] - blockOffsets[block]);
+        }
+        catch (IOException e) {
+            throw new JcodecException(e);
+        }
+        jcodec.reset();
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        InputView inputView = codecName == null ? new StreamInputView(in) :
+                new CompressedInputView(in, BlockCodec.of(codecName), blockSize);
+        return new EncoderInputStream<>(jcodec, typeClass, blockRecords[block], serializer, inputView);
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.io;
+
+import com.github.harbby.gadtry.jcodec.FieldSerializer;
+import com.github.harbby.gadtry.jcodec.Jcodec;
+import com.github.harbby.gadtry.jcodec.JcodecException;
+import com.github.harbby.gadtry.jcodec.OutputView;
+import com.github.harbby.gadtry.jcodec.Serializer;
+import com.github.harbby.gadtry.jcodec.StreamOutputView;
+import com.github.harbby.gadtry.jcodec.compress.BlockCodec;
+import com.github.harbby.gadtry.jcodec.compress.CompressedOutputView;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkArgument;
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * writes the records to a self-describing record file, the file is read by {@link RecordFileReader}.
+ * <pre>
+ * header: magic, version, codec name, block size, type class, serializer class, has key, jcodec manifest
+ * blocks: the records of a block are written by the serializer, every block starts with a clean jcodec state
+ * index:  block count, (offset, record count, first key) of every block
+ * footer: header length (int), index offset (long), magic (int)
+ * </pre>
+ * The blocks are compressed by the {@link CompressedOutputView} of the codec, a block ends at the first record
+ * boundary after blockSize bytes, so every block can be decoded alone, e.g. after seeking to the block of a key.
+ */
+public final class RecordFileWriter<E>
+        implements Closeable
+{
+    static final int MAGIC = 0x47524543;  // GREC
+    static final byte VERSION = 1;
+    static final int FOOTER_SIZE = 16;
+
+    private final Jcodec jcodec;
+    private final Serializer<E> serializer;
+    private final Function<? super E, ?> keyFunction;
+    private final CountingOutputStream outputStream;
+    private final OutputView outputView;
+    private final int headerLength;
+
+    private final List<long[]> blocks = new ArrayList<>();
+    private final List<Object> firstKeys = new ArrayList<>();
+    private long blockStart = -1;
+    private long blockRecords;
+    private long recordCount;
+    private boolean closed;
+
+    private RecordFileWriter(Builder<E> builder, OutputStream outputStream)
+    {
+        this.jcodec = builder.jcodec;
+        this.serializer = builder.serializer != null ? builder.serializer : jcodec.getSerializer(builder.typeClass);
+        this.keyFunction = builder.keyFunction;
+        this.outputStream = new CountingOutputStream(requireNonNull(outputStream, "outputStream is null"));
+
+        BlockCodec codec = builder.codec;
+        OutputView headerView = new StreamOutputView(this.outputStream, 4096);
+        headerView.writeInt(MAGIC);
+        headerView.writeByte(VERSION);
+        headerView.writeString(codec == null ? null : codec.name());
+        headerView.writeVarInt(builder.blockSize, true);
+        headerView.writeString(builder.typeClass.getName());
+        headerView.writeString(serializerName(serializer));
+        headerView.writeBoolean(keyFunction != null);
+        jcodec.writeManifest(headerView);
+        headerView.flush();
+        this.headerLength = (int) this.outputStream.count;
+
+        this.outputView = codec == null ? new StreamOutputView(this.outputStream, builder.blockSize) :
+                new CompressedOutputView(this.outputStream, codec, builder.blockSize);
+    }
+
+    /**
+     * null means the default field serializer, the generated class name is different in every process
+     */
+    static String serializerName(Serializer<?> serializer)
+    {
+        return serializer instanceof FieldSerializer ? null : serializer.getClass().getName();
+    }
+
+    public static <E> Builder<E> builder(Class<E> typeClass)
+    {
+        return new Builder<>(typeClass);
+    }
+
+    public void write(E record)
+    {
+        checkState(!closed, "writer is closed");
+        if (blockStart == -1) {
+            // the view was flushed, the block starts at the current position
+            blockStart = outputStream.count;
+            jcodec.reset();
+            if (keyFunction != null) {
+                firstKeys.add(keyFunction.apply(record));
+            }
+        }
+        serializer.write(jcodec, outputView, record);
+        blockRecords++;
+        recordCount++;
+        if (outputStream.count > blockStart) {
+            // the buffer of view was flushed by this block, ends the block at the record boundary
+            this.endBlock();
+        }
+    }
+
+    private void endBlock()
+    {
+        outputView.flush();
+        blocks.add(new long[] {blockStart, blockRecords});
+        blockStart = -1;
+        blockRecords = 0;
+    }
+
+    public long getRecordCount()
+    {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of blocks written, the last block is written by {@link #close()}
+     */
+    public int getBlockCount()
+    {
+        return blocks.size();
+    }
+
+    @Override
+    public void close()
+            throws JcodecException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (blockStart != -1) {
+                this.endBlock();
+            }
+            long indexOffset = outputStream.count;
+            jcodec.reset();
+            OutputView indexView = new StreamOutputView(outputStream, 4096);
+            indexView.writeVarInt(blocks.size(), true);
+            for (int i = 0; i < blocks.size(); i++) {
+                long[] block = blocks.get(i);
+                indexView.writeVarLong(block[0], true);
+                indexView.writeVarLong(block[1], true);
+                if (keyFunction != null) {
+                    jcodec.writeClassAndObject(indexView, firstKeys.get(i));
+                }
+            }
+            indexView.writeInt(headerLength);
+            indexView.writeLong(indexOffset);
+            indexView.writeInt(MAGIC);
+            indexView.flush();
+        }
+        finally {
+            outputView.close();
+        }
+    }
+
+    private static final class CountingOutputStream
+            extends FilterOutputStream
+    {
+        private long count;
+
+        private CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b)
+                throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+                throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    public static final class Builder<E>
+    {
+        private final Class<E> typeClass;
+        private Jcodec jcodec = Jcodec.of();
+        private Serializer<E> serializer;
+        private BlockCodec codec;
+        private int blockSize = 1 << 16;
+        private Function<? super E, ?> keyFunction;
+
+        private Builder(Class<E> typeClass)
+        {
+            this.typeClass = requireNonNull(typeClass, "typeClass is null");
+        }
+
+        /**
+         * the registered classes of jcodec are stored in the header, the reader uses the same class ids
+         */
+        public Builder<E> jcodec(Jcodec jcodec)
+        {
+            this.jcodec = requireNonNull(jcodec, "jcodec is null");
+            return this;
+        }
+
+        /**
+         * default is the serializer of typeClass in jcodec
+         */
+        public Builder<E> serializer(Serializer<E> serializer)
+        {
+            this.serializer = requireNonNull(serializer, "serializer is null");
+            return this;
+        }
+
+        /**
+         * a built-in codec, see {@link BlockCodec#name()}. default is no compression
+         */
+        public Builder<E> codec(BlockCodec codec)
+        {
+            checkArgument(codec.name() != null, "the codec must be a built-in codec");
+            this.codec = codec;
+            return this;
+        }
+
+        public Builder<E> blockSize(int blockSize)
+        {
+            checkArgument(blockSize > 0, "blockSize must be greater than 0");
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * the first key of every block is stored in the index, then the reader can seek to a key.
+         * The records must be sorted by the key.
+         */
+        public Builder<E> key(Function<? super E, ?> keyFunction)
+        {
+            this.keyFunction = requireNonNull(keyFunction, "keyFunction is null");
+            return this;
+        }
+
+        public RecordFileWriter<E> build(OutputStream outputStream)
+        {
+            return new RecordFileWriter<>(this, outputStream);
+        }
+    }
+}
@@ -15,9 +15,14 @@
  */
 package com.github.harbby.gadtry.jcodec;
 
+import com.github.harbby.gadtry.base.Platform;
+import com.github.harbby.gadtry.base.Strings;
 import com.github.harbby.gadtry.io.IOUtils;
+import sun.misc.Unsafe;
 
 import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 
 import static com.github.harbby.gadtry.StaticAssert.DEBUG;
 
@@ -25,6 +30,8 @@ public abstract class AbstractInputView
         extends InputStream
         implements InputView
 {
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
     protected final byte[] buffer;
     protected int position;
     protected int limit;
@@ -80,7 +87,20 @@ public abstract class AbstractInputView
     public final int skipBytes(int n)
             throws JcodecException
     {
-        throw new UnsupportedOperationException();
+        int skipped = 0;
+        while (skipped < n) {
+            int cacheSize = limit - position;
+            if (cacheSize == 0) {
+                if (limit != buffer.length || this.refill() == 0) {
+                    break;
+                }
+                continue;
+            }
+            int len = Math.min(cacheSize, n - skipped);
+            position += len;
+            skipped += len;
+        }
+        return skipped;
     }
 
     @Override
@@ -180,9 +200,135 @@ public abstract class AbstractInputView
     @Override
     public final void readBoolArray(boolean[] booleans, int pos, int len)
     {
-        int byteSize = (len + 7) >> 3;
-        require(byteSize);
-        IOUtils.unzipBoolArray(buffer, position, booleans, pos, len);
+        // see AbstractOutputView.writeBoolArray(), every chunk except the last one is a multiple of 8 booleans
+        int count = 0;
+        while (count < len) {
+            require(1);
+            int n = Math.min(len - count, (limit - position) << 3);
+            IOUtils.unzipBoolArray(buffer, position, booleans, pos + count, n);
+            position += (n + 7) >> 3;
+            count += n;
+        }
+    }
+
+    @Override
+    public final void readShorts(short[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_SHORT_BASE_OFFSET, 1, off, len);
+    }
+
+    @Override
+    public final void readChars(char[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_CHAR_BASE_OFFSET, 1, off, len);
+    }
+
+    @Override
+    public final void readInts(int[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_INT_BASE_OFFSET, 2, off, len);
+    }
+
+    @Override
+    public final void readLongs(long[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_LONG_BASE_OFFSET, 3, off, len);
+    }
+
+    @Override
+    public final void readFloats(float[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_FLOAT_BASE_OFFSET, 2, off, len);
+    }
+
+    @Override
+    public final void readDoubles(double[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_DOUBLE_BASE_OFFSET, 3, off, len);
+    }
+
+    private void readArray(Object array, int arrayLength, long baseOffset, int shift, int off, int len)
+    {
+        if ((off | len | (arrayLength - off - len)) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        long dstOffset = baseOffset + ((long) off << shift);
+        long remaining = (long) len << shift;
+        while (remaining > 0) {
+            require(1 << shift);
+            int n = (int) Math.min(remaining, (limit - position) >> shift << shift);
+            Platform.copyMemory(buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET + position, array, dstOffset, n);
+            if (LITTLE_ENDIAN) {
+                AbstractOutputView.reverseBytes(array, dstOffset, n, shift);
+            }
+            position += n;
+            dstOffset += n;
+            remaining -= n;
+        }
+    }
+
+    @Override
+    public short readShort()
+    {
+        require(2);
+        int ch1 = buffer[position++] & 0XFF;
+        int ch2 = buffer[position++] & 0XFF;
+        return (short) ((ch1 << 8) + ch2);
+    }
+
+    @Override
+    public int readUnsignedShort()
+    {
+        require(2);
+        int ch1 = buffer[position++] & 0XFF;
+        int ch2 = buffer[position++] & 0XFF;
+        return (ch1 << 8) + ch2;
+    }
+
+    @Override
+    public char readChar()
+    {
+        require(2);
+        int ch1 = buffer[position++] & 0XFF;
+        int ch2 = buffer[position++] & 0XFF;
+        return (char) ((ch1 << 8) + ch2);
+    }
+
+    @Override
+    public int readInt()
+    {
+        require(4);
+        int ch1 = buffer[position++] & 0XFF;
+        int ch2 = buffer[position++] & 0XFF;
+        int ch3 = buffer[position++] & 0XFF;
+        int ch4 = buffer[position++] & 0XFF;
+        return (ch1 << 24) + (ch2 << 16) + (ch3 << 8) + ch4;
+    }
+
+    @Override
+    public long readLong()
+    {
+        require(8);
+        return (((long) buffer[position++] << 56) +
+                ((long) (buffer[position++] & 255) << 48) +
+                ((long) (buffer[position++] & 255) << 40) +
+                ((long) (buffer[position++] & 255) << 32) +
+                ((long) (buffer[position++] & 255) << 24) +
+                ((buffer[position++] & 255) << 16) +
+                ((buffer[position++] & 255) << 8) +
+                ((buffer[position++] & 255)));
+    }
+
+    @Override
+    public float readFloat()
+    {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    @Override
+    public double readDouble()
+    {
+        return Double.longBitsToDouble(readLong());
     }
 
     @Override
@@ -290,6 +436,7 @@ public abstract class AbstractInputView
         }
 
         System.arraycopy(buffer, position, stringBuffer, 0, charCount);
+        position = limit;
         while (true) {
             require(1);
             byte b = buffer[position++];
@@ -325,19 +472,64 @@ public abstract class AbstractInputView
             return "";
         }
         int charCount = readUtf16CharCount() - 1;
+        if (limit - position >= charCount && Strings.isAscii(buffer, position, charCount)) {
+            // the bytes are the LATIN1 value of the string
+            String str = new String(buffer, position, charCount, StandardCharsets.ISO_8859_1);
+            position += charCount;
+            return str;
+        }
+        return readUtf8String(charCount);
+    }
+
+    /**
+     * decodes the chars <= 0xFF to a byte[] and creates a LATIN1 string without compressing a char[],
+     * switches to char[] when a larger char is found.
+     */
+    private String readUtf8String(int charCount)
+    {
+        if (stringBuffer.length < charCount) {
+            stringBuffer = new byte[charCount];
+        }
+        int count = 0;
+        for (; count < charCount; count++) {
+            require(1);
+            int char1 = buffer[position] & 0xFF;
+            if (char1 < 0x80) {
+                stringBuffer[count] = (byte) char1;
+                position++;
+            }
+            else if (char1 >= 0xC0 && char1 <= 0xC3) {
+                require(2);
+                int char2 = buffer[position + 1];
+                if ((char2 & 0xC0) != 0x80) {
+                    break;
+                }
+                stringBuffer[count] = (byte) (((char1 & 0x1F) << 6) | (char2 & 0x3F));
+                position += 2;
+            }
+            else {
+                break;
+            }
+        }
+        if (count == charCount) {
+            return new String(stringBuffer, 0, charCount, StandardCharsets.ISO_8859_1);
+        }
         if (charBuffer == null || charBuffer.length < charCount) {
             charBuffer = new char[charCount];
         }
-        this.readUtf8String(charCount);
+        for (int i = 0; i < count; i++) {
+            charBuffer[i] = (char) (stringBuffer[i] & 0xFF);
+        }
+        this.readUtf16Chars(count, charCount);
         return new String(charBuffer, 0, charCount);
     }
 
-    private void readUtf8String(int charCount)
+    private void readUtf16Chars(int start, int charCount)
     {
         int char1;
         int char2;
         int char3;
-        for (int count = 0; count < charCount; count++) {
+        for (int count = start; count < charCount; count++) {
             require(1);
             char1 = buffer[position++] & 0xFF;
             switch (char1 >> 4) {
@@ -15,10 +15,13 @@
  */
 package com.github.harbby.gadtry.jcodec;
 
+import com.github.harbby.gadtry.base.Platform;
 import com.github.harbby.gadtry.base.Strings;
 import com.github.harbby.gadtry.io.IOUtils;
+import sun.misc.Unsafe;
 
 import java.io.OutputStream;
+import java.nio.ByteOrder;
 
 import static com.github.harbby.gadtry.StaticAssert.DEBUG;
 
@@ -26,6 +29,9 @@ public abstract class AbstractOutputView
         extends OutputStream
         implements OutputView
 {
+    private static final Unsafe unsafe = Platform.getUnsafe();
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
     protected final byte[] buffer;
     protected int offset;
 
@@ -177,217 +183,218 @@ public abstract class AbstractOutputView
     {
         if (s == null) {
             require(1);
-            buffer[offset++] = (byte) 0x80;
+            buffer[offset++] = ViewEncoding.NULL_STRING;
             return;
         }
         int len = s.length();
         if (len == 0) {
             require(1);
-            buffer[offset++] = (byte) 0x81;
+            buffer[offset++] = ViewEncoding.EMPTY_STRING;
             return;
         }
 
-        if (len > 1 && len < 64 && Strings.isAscii(s, len)) {
-            writeAscii0(s, len);
+        byte[] latin1 = Strings.getLatin1Bytes(s);
+        if (ViewEncoding.isShortAscii(s, latin1, len)) {
+            if (latin1 != null) {
+                writeAscii0(latin1, len);
+            }
+            else {
+                writeAscii0(s, len);
+            }
             return;
         }
         // write utf-8 length
         // If ascii string length is greater than 8192(1 << (6 + 7)), the effect will be worse than DataOutputStream.writeUTF()
         writeUtf16CharCount(len + 1);
-        writeUtf8(s, len);
+        if (latin1 != null) {
+            writeLatin1(latin1, len);
+        }
+        else {
+            writeUtf8(s, len);
+        }
+    }
+
+    private void writeAscii0(byte[] latin1, int len)
+    {
+        int ramming = buffer.length - offset;
+        int off = 0;
+        while (len > ramming) {
+            System.arraycopy(latin1, off, buffer, offset, ramming);
+            offset += ramming;
+            this.flush();
+            off += ramming;
+            len -= ramming;
+            ramming = buffer.length;
+        }
+        System.arraycopy(latin1, off, buffer, offset, len);
+        offset += len;
+        buffer[offset - 1] |= 0x80;
     }
 
     /**
-     * @see java.io.DataOutputStream#writeUTF(String)
+     * the same bytes as {@link #writeUtf8(String, int)}, the runs of ascii chars are copied from the internal byte[] of the string.
      */
+    private void writeLatin1(byte[] latin1, int len)
+    {
+        int i = 0;
+        while (i < len) {
+            int n = Math.min(len - i, buffer.length - offset);
+            int asciiLength = ViewEncoding.utf8AsciiLength(latin1, i, n);
+            System.arraycopy(latin1, i, buffer, offset, asciiLength);
+            offset += asciiLength;
+            i += asciiLength;
+            if (asciiLength < n) {
+                // 0x80-0xFF and char 0 are 2 bytes
+                require(2);
+                ViewEncoding.putUtf8(buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, (char) (latin1[i++] & 0xFF), 2);
+                offset += 2;
+            }
+            else if (i < len) {
+                require(1);
+            }
+        }
+    }
+
     private void writeUtf8(String str, int len)
     {
         for (int i = 0; i < len; i++) {
             char ch = str.charAt(i);
-            if (ch < 0x80 && ch != 0) {
-                require(1);
-                buffer[offset++] = (byte) ch;
-            }
-            else if (ch >= 0x800) {
-                require(3);
-                buffer[offset++] = (byte) (0xE0 | ((ch >> 12) & 0x0F));
-                buffer[offset++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
-                buffer[offset++] = (byte) (0x80 | ((ch) & 0x3F));
-            }
-            else {
-                require(2);
-                buffer[offset++] = (byte) (0xC0 | ((ch >> 6) & 0x1F));
-                buffer[offset++] = (byte) (0x80 | ((ch) & 0x3F));
-            }
+            int size = ViewEncoding.utf8Size(ch);
+            require(size);
+            ViewEncoding.putUtf8(buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, ch, size);
+            offset += size;
         }
     }
 
     public final void writeUtf16CharCount(int charCount)
     {
         //assert charCount > 0;
-        if (charCount >>> 6 == 0) {
-            require(1);
-            buffer[offset++] = (byte) (charCount | 0x80);
-        }
-        else if (charCount >>> 13 == 0) {
-            require(2);
-            buffer[offset++] = (byte) (charCount & 0x3F | 0xC0);
-            buffer[offset++] = (byte) (charCount >>> 6 & 0x7F);
-        }
-        else if (charCount >>> 20 == 0) {
-            require(3);
-            buffer[offset++] = (byte) (charCount & 0x3F | 0xC0);
-            buffer[offset++] = (byte) (charCount >>> 6 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (charCount >>> 13 & 0x7F);
-        }
-        else if (charCount >>> 27 == 0) {
-            require(4);
-            buffer[offset++] = (byte) (charCount & 0x3F | 0xC0);
-            buffer[offset++] = (byte) (charCount >>> 6 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (charCount >>> 13 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (charCount >>> 20 & 0x7F);
-        }
-        else {
-            //5bit, 32 -27
-            require(5);
-            buffer[offset++] = (byte) (charCount & 0x3F | 0xC0);
-            buffer[offset++] = (byte) (charCount >>> 6 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (charCount >>> 13 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (charCount >>> 20 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (charCount >>> 27);
-        }
+        int size = ViewEncoding.utf16CharCountSize(charCount);
+        require(size);
+        ViewEncoding.putUtf16CharCount(buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, charCount);
+        offset += size;
     }
 
     @Override
     public final void writeVarInt(int value, boolean optimizePositive)
     {
-        int v = value;
-        if (!optimizePositive) {
-            // zigzag coder: v = v >=0 ? value << 1 : (~value) + 1;
-            v = (v << 1) ^ (v >> 31);
-        }
-        if (v >>> 7 == 0) {
-            require(1);
-            buffer[offset++] = (byte) (v & 0x7F);
-        }
-        else if (v >>> 14 == 0) {
-            require(2);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F);
-        }
-        else if (v >>> 21 == 0) {
-            require(3);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F);
-        }
-        else if (v >>> 28 == 0) {
-            require(4);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 21 & 0x7F);
-        }
-        else {
-            require(5);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 21 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 28);
-        }
+        int v = optimizePositive ? value : ViewEncoding.zigZag(value);
+        int size = ViewEncoding.varIntSize(v);
+        require(size);
+        ViewEncoding.putVarInt(buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, v);
+        offset += size;
     }
 
     @Override
     public final void writeVarLong(long value, boolean optimizePositive)
     {
-        long v = value;
-        if (!optimizePositive) {
-            // zigzag coder: v = v >=0 ? value << 1 : (~value) + 1;
-            v = (v << 1) ^ (v >> 63);
-        }
-        if (v >>> 7 == 0) {
+        long v = optimizePositive ? value : ViewEncoding.zigZag(value);
+        int size = ViewEncoding.varLongSize(v);
+        require(size);
+        ViewEncoding.putVarLong(buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, v);
+        offset += size;
+    }
+
+    @Override
+    public final void writeBoolArray(boolean[] value)
+    {
+        assert !DEBUG || value.length > 0;
+        // every chunk except the last one is a multiple of 8 booleans, the bits are the same as one zipBoolArray()
+        int pos = 0;
+        while (pos < value.length) {
             require(1);
-            buffer[offset++] = (byte) (v & 0x7F);
-        }
-        else if (v >>> 14 == 0) {
-            require(2);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F);
+            int n = Math.min(value.length - pos, (buffer.length - offset) << 3);
+            IOUtils.zipBoolArray(value, pos, buffer, offset, n);
+            offset += (n + 7) >> 3;
+            pos += n;
         }
-        else if (v >>> 21 == 0) {
-            require(3);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F);
-        }
-        else if (v >>> 28 == 0) {
-            require(4);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 21 & 0x7F);
-        }
-        else if (v >>> 35 == 0) {
-            require(5);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 21 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 28 & 0x7F);
-        }
-        else if (v >>> 42 == 0) {
-            require(6);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 21 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 28 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 35 & 0x7F);
-        }
-        else if (v >>> 49 == 0) {
-            require(7);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 21 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 28 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 35 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 42 & 0x7F);
-        }
-        else if (v >>> 56 == 0) {
-            require(8);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 21 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 28 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 35 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 42 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 49 & 0x7F);
+    }
+
+    @Override
+    public final void writeShorts(short[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_SHORT_BASE_OFFSET, 1, off, len);
+    }
+
+    @Override
+    public final void writeChars(char[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_CHAR_BASE_OFFSET, 1, off, len);
+    }
+
+    @Override
+    public final void writeInts(int[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_INT_BASE_OFFSET, 2, off, len);
+    }
+
+    @Override
+    public final void writeLongs(long[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_LONG_BASE_OFFSET, 3, off, len);
+    }
+
+    @Override
+    public final void writeFloats(float[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_FLOAT_BASE_OFFSET, 2, off, len);
+    }
+
+    @Override
+    public final void writeDoubles(double[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_DOUBLE_BASE_OFFSET, 3, off, len);
+    }
+
+    /**
+     * copies the elements into the buffer as many whole elements at a time as the buffer can take,
+     * then swaps them to big-endian in the buffer.
+     */
+    private void writeArray(Object array, int arrayLength, long baseOffset, int shift, int off, int len)
+    {
+        if ((off | len | (arrayLength - off - len)) < 0) {
+            throw new IndexOutOfBoundsException();
         }
-        else {
-            require(9);
-            buffer[offset++] = (byte) (v & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 7 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 14 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 21 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 28 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 35 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 42 & 0x7F | 0x80);
-            buffer[offset++] = (byte) (v >>> 49 & 0x7F | 0x80);
-            // remain 8bit (64 - 8 * 7)
-            buffer[offset++] = (byte) (v >>> 56);
+        long srcOffset = baseOffset + ((long) off << shift);
+        long remaining = (long) len << shift;
+        while (remaining > 0) {
+            require(1 << shift);
+            int n = (int) Math.min(remaining, (buffer.length - offset) >> shift << shift);
+            long dstOffset = Unsafe.ARRAY_BYTE_BASE_OFFSET + offset;
+            Platform.copyMemory(array, srcOffset, buffer, dstOffset, n);
+            if (LITTLE_ENDIAN) {
+                reverseBytes(buffer, dstOffset, n, shift);
+            }
+            offset += n;
+            srcOffset += n;
+            remaining -= n;
         }
     }
 
-    @Override
-    public final void writeBoolArray(boolean[] value)
+    /**
+     * swaps the byte order of every 2, 4 or 8 bytes element (shift is 1, 2 or 3) in [address, address + length) in place.
+     */
+    static void reverseBytes(Object base, long address, long length, int shift)
     {
-        assert !DEBUG || value.length > 0;
-        int byteSize = (value.length + 7) >> 3;
-        require(byteSize);
-        IOUtils.zipBoolArray(value, 0, buffer, offset, value.length);
-        offset += byteSize;
+        long end = address + length;
+        switch (shift) {
+            case 1:
+                for (long i = address; i < end; i += 2) {
+                    unsafe.putShort(base, i, Short.reverseBytes(unsafe.getShort(base, i)));
+                }
+                break;
+            case 2:
+                for (long i = address; i < end; i += 4) {
+                    unsafe.putInt(base, i, Integer.reverseBytes(unsafe.getInt(base, i)));
+                }
+                break;
+            case 3:
+                for (long i = address; i < end; i += 8) {
+                    unsafe.putLong(base, i, Long.reverseBytes(unsafe.getLong(base, i)));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("shift must be 1, 2 or 3");
+        }
     }
 }
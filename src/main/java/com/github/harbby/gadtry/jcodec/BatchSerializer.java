@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import java.util.List;
+
+/**
+ * writes a batch of records column by column, each field of the records is written as one column block.
+ * The integral columns are encoded with frame of reference or delta and bit packing,
+ * so the large homogeneous record sets are smaller and decoded in tight loops.
+ *
+ * @param <T> record type
+ */
+public interface BatchSerializer<T>
+{
+    void write(Jcodec jcodec, OutputView output, List<? extends T> values);
+
+    List<T> read(Jcodec jcodec, InputView input);
+
+    /**
+     * the serializer keeps reusable column buffers and is not thread safe, like the jcodec.
+     */
+    static <T> BatchSerializer<T> of(Jcodec jcodec, Class<? extends T> typeClass)
+    {
+        return new ColumnarBatchSerializer<>(jcodec, typeClass);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import java.util.Arrays;
+
+/**
+ * buffers a length prefixed chunk, the length is unknown until the chunk is finished.
+ */
+final class ChunkOutputView
+        extends AbstractOutputView
+{
+    private byte[] data = new byte[0];
+    private int count;
+
+    ChunkOutputView()
+    {
+        super(1 << 12);
+    }
+
+    @Override
+    public void flush()
+    {
+        if (count + offset > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length << 1, count + offset));
+        }
+        System.arraycopy(buffer, 0, data, count, offset);
+        count += offset;
+        offset = 0;
+    }
+
+    /**
+     * writes the varint length and the chunk bytes to output, then clears this chunk
+     */
+    void writeTo(OutputView output)
+    {
+        if (count == 0) {
+            output.writeVarInt(offset, true);
+            output.write(buffer, 0, offset);
+        }
+        else {
+            this.flush();
+            output.writeVarInt(count, true);
+            output.write(data, 0, count);
+        }
+        this.offset = 0;
+        this.count = 0;
+    }
+
+    @Override
+    public void close() {}
+}
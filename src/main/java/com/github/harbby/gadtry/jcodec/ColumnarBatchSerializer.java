@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.Platform;
+import sun.misc.Unsafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * column block of integral fields (boolean, byte, short, char, int, long):
+ * CONSTANT: value;
+ * FOR: min, bit width, bit packed (value - min);
+ * DELTA: first value, min delta, bit width, bit packed (delta - min delta).
+ * float and double columns are fixed width, the object columns are written value by value.
+ */
+final class ColumnarBatchSerializer<T>
+        implements BatchSerializer<T>
+{
+    private static final Unsafe unsafe = Platform.getUnsafe();
+
+    private static final byte CONSTANT = 0;
+    private static final byte FOR = 1;
+    private static final byte DELTA = 2;
+
+    private final Class<? extends T> typeClass;
+    private final FieldSerializer.FieldData[] fields;
+    private final long[] offsets;
+    private boolean useConstructor = true;
+
+    private long[] column = new long[0];
+    private byte[] packed = new byte[0];
+
+    ColumnarBatchSerializer(Jcodec jcodec, Class<? extends T> typeClass)
+    {
+        this.typeClass = requireNonNull(typeClass, "typeClass is null");
+        List<FieldSerializer.FieldData> fieldDataList = FieldSerializer.analyzeClass(jcodec, typeClass);
+        this.fields = fieldDataList.toArray(new FieldSerializer.FieldData[0]);
+        this.offsets = new long[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            offsets[i] = unsafe.objectFieldOffset(fields[i].field);
+        }
+    }
+
+    private static boolean isIntegral(Class<?> type)
+    {
+        return type.isPrimitive() && type != float.class && type != double.class;
+    }
+
+    @Override
+    public void write(Jcodec jcodec, OutputView output, List<? extends T> values)
+    {
+        int count = values.size();
+        output.writeVarInt(count, true);
+        if (count == 0) {
+            return;
+        }
+        if (column.length < count) {
+            column = new long[count];
+        }
+        for (int i = 0; i < fields.length; i++) {
+            FieldSerializer.FieldData fieldData = fields[i];
+            Class<?> type = fieldData.getType();
+            long offset = offsets[i];
+            if (isIntegral(type)) {
+                loadColumn(values, type, offset, column, count);
+                writeIntegralColumn(output, column, count);
+            }
+            else if (type == float.class) {
+                for (T value : values) {
+                    output.writeFloat(unsafe.getFloat(value, offset));
+                }
+            }
+            else if (type == double.class) {
+                for (T value : values) {
+                    output.writeDouble(unsafe.getDouble(value, offset));
+                }
+            }
+            else {
+                writeObjectColumn(jcodec, output, fieldData, offset, values);
+            }
+        }
+    }
+
+    private static void loadColumn(List<?> values, Class<?> type, long offset, long[] column, int count)
+    {
+        if (type == int.class) {
+            for (int i = 0; i < count; i++) {
+                column[i] = unsafe.getInt(values.get(i), offset);
+            }
+        }
+        else if (type == long.class) {
+            for (int i = 0; i < count; i++) {
+                column[i] = unsafe.getLong(values.get(i), offset);
+            }
+        }
+        else if (type == boolean.class) {
+            for (int i = 0; i < count; i++) {
+                column[i] = unsafe.getBoolean(values.get(i), offset) ? 1 : 0;
+            }
+        }
+        else if (type == byte.class) {
+            for (int i = 0; i < count; i++) {
+                column[i] = unsafe.getByte(values.get(i), offset);
+            }
+        }
+        else if (type == short.class) {
+            for (int i = 0; i < count; i++) {
+                column[i] = unsafe.getShort(values.get(i), offset);
+            }
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                column[i] = unsafe.getChar(values.get(i), offset);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeObjectColumn(Jcodec jcodec, OutputView output, FieldSerializer.FieldData fieldData, long offset, List<?> values)
+    {
+        Serializer<Object> serializer = fieldData.serializer;
+        switch (fieldData.fieldType) {
+            case OBJECT:
+                for (Object value : values) {
+                    jcodec.writeObject(output, unsafe.getObject(value, offset), serializer);
+                }
+                break;
+            case OBJECT_OR_NULL:
+                for (Object value : values) {
+                    jcodec.writeObjectOrNull(output, unsafe.getObject(value, offset), serializer);
+                }
+                break;
+            default:
+                for (Object value : values) {
+                    jcodec.writeClassAndObject(output, unsafe.getObject(value, offset));
+                }
+        }
+    }
+
+    private static int bitWidth(long unsignedMax)
+    {
+        return 64 - Long.numberOfLeadingZeros(unsignedMax);
+    }
+
+    private void writeIntegralColumn(OutputView output, long[] column, int count)
+    {
+        long min = column[0];
+        long max = column[0];
+        long minDelta = Long.MAX_VALUE;
+        long maxDelta = Long.MIN_VALUE;
+        for (int i = 1; i < count; i++) {
+            long v = column[i];
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            long delta = v - column[i - 1];
+            minDelta = Math.min(minDelta, delta);
+            maxDelta = Math.max(maxDelta, delta);
+        }
+        if (min == max) {
+            output.writeByte(CONSTANT);
+            output.writeVarLong(min, false);
+            return;
+        }
+        int forWidth = bitWidth(max - min);
+        int deltaWidth = bitWidth(maxDelta - minDelta);
+        if (deltaWidth < forWidth) {
+            output.writeByte(DELTA);
+            output.writeVarLong(column[0], false);
+            output.writeVarLong(minDelta, false);
+            output.writeByte(deltaWidth);
+            for (int i = count - 1; i > 0; i--) {
+                column[i] = column[i] - column[i - 1] - minDelta;
+            }
+            writePacked(output, column, 1, count - 1, deltaWidth);
+        }
+        else {
+            output.writeByte(FOR);
+            output.writeVarLong(min, false);
+            output.writeByte(forWidth);
+            for (int i = 0; i < count; i++) {
+                column[i] -= min;
+            }
+            writePacked(output, column, 0, count, forWidth);
+        }
+    }
+
+    private void writePacked(OutputView output, long[] values, int off, int len, int width)
+    {
+        int byteSize = (int) (((long) len * width + 7) >>> 3);
+        if (packed.length < byteSize) {
+            packed = new byte[byteSize];
+        }
+        BitPacker packer = new BitPacker(packed);
+        if (width > 56) {
+            for (int i = off; i < off + len; i++) {
+                packer.put(values[i] >>> 32, width - 32);
+                packer.put(values[i], 32);
+            }
+        }
+        else {
+            for (int i = off; i < off + len; i++) {
+                packer.put(values[i], width);
+            }
+        }
+        packer.finish();
+        output.write(packed, 0, byteSize);
+    }
+
+    private void readPacked(InputView input, long[] values, int off, int len, int width)
+    {
+        int byteSize = (int) (((long) len * width + 7) >>> 3);
+        if (packed.length < byteSize) {
+            packed = new byte[byteSize];
+        }
+        input.readFully(packed, 0, byteSize);
+        BitPacker packer = new BitPacker(packed);
+        if (width > 56) {
+            for (int i = off; i < off + len; i++) {
+                values[i] = packer.get(width - 32) << 32 | packer.get(32);
+            }
+        }
+        else {
+            for (int i = off; i < off + len; i++) {
+                values[i] = packer.get(width);
+            }
+        }
+    }
+
+    private void readIntegralColumn(InputView input, long[] column, int count)
+    {
+        byte encoding = input.readByte();
+        switch (encoding) {
+            case CONSTANT: {
+                Arrays.fill(column, 0, count, input.readVarLong(false));
+                break;
+            }
+            case FOR: {
+                long min = input.readVarLong(false);
+                int width = input.readByte();
+                readPacked(input, column, 0, count, width);
+                for (int i = 0; i < count; i++) {
+                    column[i] += min;
+                }
+                break;
+            }
+            case DELTA: {
+                column[0] = input.readVarLong(false);
+                long minDelta = input.readVarLong(false);
+                int width = input.readByte();
+                readPacked(input, column, 1, count - 1, width);
+                for (int i = 1; i < count; i++) {
+                    column[i] += column[i - 1] + minDelta;
+                }
+                break;
+            }
+            default:
+                throw new JcodecException("unknown column encoding " + encoding);
+        }
+    }
+
+    private static void storeColumn(Object[] instances, Class<?> type, long offset, long[] column, int count)
+    {
+        if (type == int.class) {
+            for (int i = 0; i < count; i++) {
+                unsafe.putInt(instances[i], offset, (int) column[i]);
+            }
+        }
+        else if (type == long.class) {
+            for (int i = 0; i < count; i++) {
+                unsafe.putLong(instances[i], offset, column[i]);
+            }
+        }
+        else if (type == boolean.class) {
+            for (int i = 0; i < count; i++) {
+                unsafe.putBoolean(instances[i], offset, column[i] != 0);
+            }
+        }
+        else if (type == byte.class) {
+            for (int i = 0; i < count; i++) {
+                unsafe.putByte(instances[i], offset, (byte) column[i]);
+            }
+        }
+        else if (type == short.class) {
+            for (int i = 0; i < count; i++) {
+                unsafe.putShort(instances[i], offset, (short) column[i]);
+            }
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                unsafe.putChar(instances[i], offset, (char) column[i]);
+            }
+        }
+    }
+
+    private T newInstance(Jcodec jcodec)
+    {
+        if (useConstructor) {
+            try {
+                return jcodec.newInstance(typeClass);
+            }
+            catch (JcodecException e) {
+                useConstructor = false;
+            }
+        }
+        return Platform.allocateInstance2(typeClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<T> read(Jcodec jcodec, InputView input)
+    {
+        int count = input.readVarInt(true);
+        Object[] instances = new Object[count];
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+        for (int i = 0; i < count; i++) {
+            instances[i] = newInstance(jcodec);
+        }
+        if (column.length < count) {
+            column = new long[count];
+        }
+        for (int i = 0; i < fields.length; i++) {
+            FieldSerializer.FieldData fieldData = fields[i];
+            Class<?> type = fieldData.getType();
+            long offset = offsets[i];
+            if (isIntegral(type)) {
+                readIntegralColumn(input, column, count);
+                storeColumn(instances, type, offset, column, count);
+            }
+            else if (type == float.class) {
+                for (Object instance : instances) {
+                    unsafe.putFloat(instance, offset, input.readFloat());
+                }
+            }
+            else if (type == double.class) {
+                for (Object instance : instances) {
+                    unsafe.putDouble(instance, offset, input.readDouble());
+                }
+            }
+            else {
+                readObjectColumn(jcodec, input, fieldData, offset, instances);
+            }
+        }
+        return (List<T>) new ArrayList<>(Arrays.asList(instances));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void readObjectColumn(Jcodec jcodec, InputView input, FieldSerializer.FieldData fieldData, long offset, Object[] instances)
+    {
+        Serializer<Object> serializer = fieldData.serializer;
+        Class<Object> type = (Class<Object>) fieldData.getType();
+        switch (fieldData.fieldType) {
+            case OBJECT:
+                for (Object instance : instances) {
+                    unsafe.putObject(instance, offset, jcodec.readObject(input, type, serializer));
+                }
+                break;
+            case OBJECT_OR_NULL:
+                for (Object instance : instances) {
+                    unsafe.putObject(instance, offset, jcodec.readObjectOrNull(input, type, serializer));
+                }
+                break;
+            default:
+                for (Object instance : instances) {
+                    unsafe.putObject(instance, offset, jcodec.readClassAndObject(input));
+                }
+        }
+    }
+
+    /**
+     * packs the values of width bits (at most 56) big endian
+     */
+    private static final class BitPacker
+    {
+        private final byte[] bytes;
+        private int index;
+        private long buffer;
+        private int bits;
+
+        private BitPacker(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+
+        private void put(long value, int width)
+        {
+            buffer = (buffer << width) | (value & ((1L << width) - 1));
+            bits += width;
+            while (bits >= 8) {
+                bits -= 8;
+                bytes[index++] = (byte) (buffer >>> bits);
+            }
+        }
+
+        private void finish()
+        {
+            if (bits > 0) {
+                bytes[index++] = (byte) (buffer << (8 - bits));
+                bits = 0;
+            }
+        }
+
+        private long get(int width)
+        {
+            while (bits < width) {
+                buffer = (buffer << 8) | (bytes[index++] & 0xFF);
+                bits += 8;
+            }
+            bits -= width;
+            return (buffer >>> bits) & ((1L << width) - 1);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.Platform;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * field serializer that tolerates class evolution, the writer and the reader may have different fields.
+ * <p>
+ * The field header (name hash and kind of each field) is written once per stream before the first object,
+ * primitive fields are fixed width and object fields are length prefixed chunks.
+ * The reader skips the unknown fields and the missing fields keep their default values.
+ * <p>
+ * usage: {@code @JcodecSerializer(CompatibleFieldSerializer.class)} or
+ * {@code jcodec.register(typeClass, new CompatibleFieldSerializer<>(jcodec, typeClass))}
+ */
+public class CompatibleFieldSerializer<T>
+        extends FieldSerializer<T>
+{
+    private static final Unsafe unsafe = Platform.getUnsafe();
+
+    private static final byte OBJECT = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte CHAR = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final int[] FIXED_SIZES = {0, 1, 1, 2, 2, 4, 8, 4, 8};
+
+    private final Field[] fields;
+    private final int[] nameHashes;
+    private final byte[] kinds;
+    private final long[] offsets;
+
+    public CompatibleFieldSerializer(Jcodec jcodec, Class<? extends T> typeClass)
+    {
+        super(jcodec, typeClass);
+        List<FieldData> fieldDataList = analyzeClass(jcodec, typeClass);
+        int size = fieldDataList.size();
+        this.fields = new Field[size];
+        this.nameHashes = new int[size];
+        this.kinds = new byte[size];
+        this.offsets = new long[size];
+        for (int i = 0; i < size; i++) {
+            Field field = fieldDataList.get(i).field;
+            int nameHash = field.getName().hashCode();
+            for (int j = 0; j < i; j++) {
+                if (nameHashes[j] == nameHash) {
+                    throw new JcodecException("the name hash of field " + field + " conflicts with " + fields[j]);
+                }
+            }
+            fields[i] = field;
+            nameHashes[i] = nameHash;
+            kinds[i] = kindOf(field.getType());
+            offsets[i] = unsafe.objectFieldOffset(field);
+        }
+    }
+
+    private static byte kindOf(Class<?> type)
+    {
+        if (type == boolean.class) {
+            return BOOLEAN;
+        }
+        else if (type == byte.class) {
+            return BYTE;
+        }
+        else if (type == short.class) {
+            return SHORT;
+        }
+        else if (type == char.class) {
+            return CHAR;
+        }
+        else if (type == int.class) {
+            return INT;
+        }
+        else if (type == long.class) {
+            return LONG;
+        }
+        else if (type == float.class) {
+            return FLOAT;
+        }
+        else if (type == double.class) {
+            return DOUBLE;
+        }
+        return OBJECT;
+    }
+
+    private static JcodecImpl checkJcodec(Jcodec jcodec)
+    {
+        if (!(jcodec instanceof JcodecImpl)) {
+            throw new JcodecException("CompatibleFieldSerializer not support jcodec " + jcodec.getClass());
+        }
+        return (JcodecImpl) jcodec;
+    }
+
+    @Override
+    public void write(Jcodec jcodec, OutputView output, T value)
+    {
+        JcodecImpl jcodecImpl = checkJcodec(jcodec);
+        JcodecImpl.StreamContext context = jcodecImpl.writeContext();
+        if (context.get(typeClass) == null) {
+            context.put(typeClass, Boolean.TRUE);
+            output.writeVarInt(fields.length + 1, true);
+            for (int i = 0; i < fields.length; i++) {
+                output.writeInt(nameHashes[i]);
+                output.writeByte(kinds[i]);
+            }
+        }
+        else {
+            output.writeVarInt(0, true);
+        }
+        for (int i = 0; i < fields.length; i++) {
+            long offset = offsets[i];
+            switch (kinds[i]) {
+                case BOOLEAN:
+                    output.writeBoolean(unsafe.getBoolean(value, offset));
+                    break;
+                case BYTE:
+                    output.writeByte(unsafe.getByte(value, offset));
+                    break;
+                case SHORT:
+                    output.writeShort(unsafe.getShort(value, offset));
+                    break;
+                case CHAR:
+                    output.writeChar(unsafe.getChar(value, offset));
+                    break;
+                case INT:
+                    output.writeInt(unsafe.getInt(value, offset));
+                    break;
+                case LONG:
+                    output.writeLong(unsafe.getLong(value, offset));
+                    break;
+                case FLOAT:
+                    output.writeFloat(unsafe.getFloat(value, offset));
+                    break;
+                case DOUBLE:
+                    output.writeDouble(unsafe.getDouble(value, offset));
+                    break;
+                default:
+                    OutputView chunk = jcodecImpl.beginChunk();
+                    jcodec.writeClassAndObject(chunk, unsafe.getObject(value, offset));
+                    jcodecImpl.endChunk(output);
+            }
+        }
+    }
+
+    @Override
+    public T read(Jcodec jcodec, InputView input, Class<? extends T> typeClass)
+    {
+        JcodecImpl jcodecImpl = checkJcodec(jcodec);
+        JcodecImpl.StreamContext context = jcodecImpl.readContext();
+        int flag = input.readVarInt(true);
+        ReadPlan plan;
+        if (flag == 0) {
+            plan = context.get(this.typeClass);
+            if (plan == null) {
+                throw new JcodecException("the field header of " + this.typeClass + " not found in the stream");
+            }
+        }
+        else {
+            plan = readHeader(input, flag - 1);
+            context.put(this.typeClass, plan);
+        }
+        T instance = this.newInstance(jcodec, input, this.typeClass);
+        for (int i = 0; i < plan.kinds.length; i++) {
+            byte kind = plan.kinds[i];
+            int target = plan.targets[i];
+            if (kind == OBJECT) {
+                int length = input.readVarInt(true);
+                if (target == -1) {
+                    if (input.skipBytes(length) != length) {
+                        throw new JcodecEOFException("required: " + length);
+                    }
+                    continue;
+                }
+                jcodecImpl.beginReadChunk();
+                Object value = jcodec.readClassAndObject(input);
+                jcodecImpl.endReadChunk();
+                if (value == null || fields[target].getType().isInstance(value)) {
+                    unsafe.putObject(instance, offsets[target], value);
+                }
+            }
+            else if (target == -1) {
+                int length = FIXED_SIZES[kind];
+                if (input.skipBytes(length) != length) {
+                    throw new JcodecEOFException("required: " + length);
+                }
+            }
+            else {
+                readPrimitive(input, kind, instance, offsets[target]);
+            }
+        }
+        return instance;
+    }
+
+    private static void readPrimitive(InputView input, byte kind, Object instance, long offset)
+    {
+        switch (kind) {
+            case BOOLEAN:
+                unsafe.putBoolean(instance, offset, input.readBoolean());
+                break;
+            case BYTE:
+                unsafe.putByte(instance, offset, input.readByte());
+                break;
+            case SHORT:
+                unsafe.putShort(instance, offset, input.readShort());
+                break;
+            case CHAR:
+                unsafe.putChar(instance, offset, input.readChar());
+                break;
+            case INT:
+                unsafe.putInt(instance, offset, input.readInt());
+                break;
+            case LONG:
+                unsafe.putLong(instance, offset, input.readLong());
+                break;
+            case FLOAT:
+                unsafe.putFloat(instance, offset, input.readFloat());
+                break;
+            case DOUBLE:
+                unsafe.putDouble(instance, offset, input.readDouble());
+                break;
+            default:
+                throw new JcodecException("unknown field kind " + kind);
+        }
+    }
+
+    /**
+     * matches the written fields to the local fields by name hash, the field is skipped if the kind changed
+     */
+    private ReadPlan readHeader(InputView input, int fieldCount)
+    {
+        byte[] planKinds = new byte[fieldCount];
+        int[] targets = new int[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            int nameHash = input.readInt();
+            byte kind = input.readByte();
+            if (kind < OBJECT || kind > DOUBLE) {
+                throw new JcodecException("unknown field kind " + kind);
+            }
+            planKinds[i] = kind;
+            targets[i] = -1;
+            for (int j = 0; j < nameHashes.length; j++) {
+                if (nameHashes[j] == nameHash && kinds[j] == kind) {
+                    targets[i] = j;
+                    break;
+                }
+            }
+        }
+        return new ReadPlan(planKinds, targets);
+    }
+
+    private static final class ReadPlan
+    {
+        private final byte[] kinds;
+        private final int[] targets;
+
+        private ReadPlan(byte[] kinds, int[] targets)
+        {
+            this.kinds = kinds;
+            this.targets = targets;
+        }
+    }
+}
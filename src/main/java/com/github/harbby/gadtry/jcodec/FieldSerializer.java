@@ -116,23 +116,106 @@ public abstract class FieldSerializer<T>
             fieldType = serializer.isNullable() ? FieldType.OBJECT : FieldType.OBJECT_OR_NULL;
         }
         else {
-            serializer = null;
-            fieldType = FieldType.CLASS_AND_OBJET;
+            // List<String> or Map<String, Long> field, the elements are written without class tags
+            serializer = GenericTypeSerializer.makeSerializer(jcodec, field.getGenericType());
+            fieldType = serializer != null ? FieldType.OBJECT : FieldType.CLASS_AND_OBJET;
         }
         return new FieldData(field, fieldType, serializer);
     }
 
+    /**
+     * creates the instance and registers it to jcodec.reference(), the fields are read after it.
+     */
     public T newInstance(Jcodec jcodec, InputView input, Class<? extends T> typeClass)
     {
+        T instance = null;
         if (useConstructor) {
             try {
-                return jcodec.newInstance(typeClass);
+                instance = jcodec.newInstance(typeClass);
             }
             catch (JcodecException e) {
                 useConstructor = false;
             }
         }
-        return Platform.allocateInstance2(typeClass);
+        if (instance == null) {
+            instance = Platform.allocateInstance2(typeClass);
+        }
+        jcodec.reference(instance);
+        return instance;
+    }
+
+    /**
+     * the helpers below are used by the serializers generated by {@code com.github.harbby.gadtry.jcodec.aot.JcodecAotProcessor},
+     * they do the same as the runtime generated serializers.
+     */
+    protected static Field getDeclaredField(Class<?> typeClass, String declaringClassName, String fieldName)
+    {
+        Class<?> it = typeClass;
+        while (!it.getName().equals(declaringClassName)) {
+            it = it.getSuperclass();
+            if (it == null) {
+                throw new JcodecException("not found class " + declaringClassName + " in the super classes of " + typeClass);
+            }
+        }
+        try {
+            return it.getDeclaredField(fieldName);
+        }
+        catch (NoSuchFieldException e) {
+            throw new JcodecException("not found field " + fieldName + " in " + declaringClassName, e);
+        }
+    }
+
+    protected static long getFieldOffset(Class<?> typeClass, String declaringClassName, String fieldName)
+    {
+        return Platform.getUnsafe().objectFieldOffset(getDeclaredField(typeClass, declaringClassName, fieldName));
+    }
+
+    /**
+     * returns null when the field is written with class name
+     */
+    protected static Serializer<?> getFieldSerializer(Jcodec jcodec, Class<?> fieldClass)
+    {
+        if (fieldClass.isPrimitive() || Modifier.isFinal(fieldClass.getModifiers())) {
+            return jcodec.getSerializer(fieldClass);
+        }
+        return null;
+    }
+
+    /**
+     * returns null when the field is written with class name, the same as the runtime generated serializers
+     * the generic collection fields are written by the serializers of their element types.
+     */
+    protected static Serializer<?> getFieldSerializer(Jcodec jcodec, Field field)
+    {
+        return analyzeField(jcodec, field).serializer;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static void writeField(Jcodec jcodec, OutputView output, Object value, Serializer<?> serializer)
+    {
+        if (serializer == null) {
+            jcodec.writeClassAndObject(output, value);
+        }
+        else if (serializer.isNullable()) {
+            jcodec.writeObject(output, value, (Serializer<Object>) serializer);
+        }
+        else {
+            jcodec.writeObjectOrNull(output, value, (Serializer<Object>) serializer);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static Object readField(Jcodec jcodec, InputView input, Class<?> fieldClass, Serializer<?> serializer)
+    {
+        if (serializer == null) {
+            return jcodec.readClassAndObject(input);
+        }
+        else if (serializer.isNullable()) {
+            return jcodec.readObject(input, fieldClass, (Serializer<Object>) serializer);
+        }
+        else {
+            return jcodec.readObjectOrNull(input, fieldClass, (Serializer<Object>) serializer);
+        }
     }
 
     static class EmptyFieldSerializer<T>
@@ -17,6 +17,7 @@ package com.github.harbby.gadtry.jcodec;
 
 import com.github.harbby.gadtry.aop.proxy2.AsmUtil;
 import com.github.harbby.gadtry.base.JavaTypes;
+import com.github.harbby.gadtry.base.PlatFormUnsupportedOperation;
 import com.github.harbby.gadtry.base.Platform;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassWriter;
@@ -26,7 +27,9 @@ import org.objectweb.asm.Type;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.github.harbby.gadtry.StaticAssert.DEBUG;
 import static org.objectweb.asm.ClassWriter.COMPUTE_MAXS;
@@ -39,6 +42,7 @@ import static org.objectweb.asm.Opcodes.ACC_SUPER;
 import static org.objectweb.asm.Opcodes.ALOAD;
 import static org.objectweb.asm.Opcodes.ARETURN;
 import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
 import static org.objectweb.asm.Opcodes.GETFIELD;
 import static org.objectweb.asm.Opcodes.GETSTATIC;
 import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
@@ -54,6 +58,17 @@ public class FieldSerializerFactory
     private FieldSerializerFactory() {}
 
     private static final FieldSerializerFactory factory = new FieldSerializerFactory();
+    /**
+     * the hidden classes can not be found by name, they are cached on typeClass and unloaded with it.
+     */
+    private static final ClassValue<AtomicReference<Class<?>>> hiddenClasses = new ClassValue<AtomicReference<Class<?>>>()
+    {
+        @Override
+        protected AtomicReference<Class<?>> computeValue(Class<?> type)
+        {
+            return new AtomicReference<>();
+        }
+    };
 
     @SuppressWarnings("unchecked")
     public static <T> FieldSerializer<T> makeSerializer(Jcodec jcodec, Class<? extends T> typeClass)
@@ -82,9 +97,27 @@ public class FieldSerializerFactory
         }
     }
 
-    private <T> Class<? extends FieldSerializer<T>> makeClass(Class<? extends T> typeClass, List<FieldSerializer.FieldData> fieldDataList)
+    /**
+     * synchronized, the jcodecs of different threads may generate the same class at the same time
+     */
+    private synchronized <T> Class<? extends FieldSerializer<T>> makeClass(Class<? extends T> typeClass, List<FieldSerializer.FieldData> fieldDataList)
             throws Exception
     {
+        if (Platform.getJavaVersion() >= 15 && isDirectAccessible(typeClass, fieldDataList)) {
+            AtomicReference<Class<?>> holder = hiddenClasses.get(typeClass);
+            if (holder.get() == null) {
+                byte[] byteCode = makeByteCode(typeClass, fieldDataList, true);
+                try {
+                    holder.set(Platform.defineHiddenClass(typeClass, byteCode, true, true));
+                }
+                catch (PlatFormUnsupportedOperation ignored) {
+                    // the java11 build of ExtPlatform, use the unsafe serializer
+                }
+            }
+            if (holder.get() != null) {
+                return holder.get().asSubclass(JavaTypes.classTag(FieldSerializer.class));
+            }
+        }
         String classFullName = typeClass.getName() + "$GenSerializer";
         ClassLoader classLoader = typeClass.getClassLoader();
         if (classLoader == null) {
@@ -95,35 +128,84 @@ public class FieldSerializerFactory
         }
         catch (ClassNotFoundException ignored) {
         }
+        byte[] byteCode = makeByteCode(typeClass, fieldDataList, false);
+        // IOUtils.write(byteCode, "out/" + className + ".class");
+        return Platform.defineClass(typeClass, byteCode).asSubclass(JavaTypes.classTag(FieldSerializer.class));
+    }
+
+    /**
+     * the hidden class is a nestmate of typeClass, it can GETFIELD/PUTFIELD the private fields of typeClass,
+     * but not the private fields of the super classes, and PUTFIELD of a final field is only allowed in {@code <init>}.
+     */
+    private static boolean isDirectAccessible(Class<?> typeClass, List<FieldSerializer.FieldData> fieldDataList)
+    {
+        for (FieldSerializer.FieldData fieldData : fieldDataList) {
+            Field field = fieldData.field;
+            int modifiers = field.getModifiers();
+            if (Modifier.isFinal(modifiers)) {
+                return false;
+            }
+            Class<?> declaringClass = field.getDeclaringClass();
+            if (declaringClass != typeClass && !Modifier.isPublic(modifiers) &&
+                    (Modifier.isPrivate(modifiers) || !isSamePackage(declaringClass, typeClass))) {
+                return false;
+            }
+            Class<?> fieldClass = field.getType();
+            while (fieldClass.isArray()) {
+                fieldClass = fieldClass.getComponentType();
+            }
+            if (!fieldClass.isPrimitive() && !Modifier.isPublic(fieldClass.getModifiers()) && !isSamePackage(fieldClass, typeClass)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        String className = classFullName.replace('.', '/');
+    private static boolean isSamePackage(Class<?> class1, Class<?> class2)
+    {
+        String name1 = class1.getName();
+        String name2 = class2.getName();
+        int index = name1.lastIndexOf('.');
+        return class1.getClassLoader() == class2.getClassLoader() && index == name2.lastIndexOf('.') &&
+                name1.regionMatches(0, name2, 0, Math.max(index, 0));
+    }
+
+    /**
+     * @param directAccess true: the fields are accessed by GETFIELD/PUTFIELD, the class must be defined as a hidden nestmate of typeClass.
+     *                     false: the fields are accessed by a static sun.misc.Unsafe.
+     */
+    private byte[] makeByteCode(Class<?> typeClass, List<FieldSerializer.FieldData> fieldDataList, boolean directAccess)
+            throws Exception
+    {
+        String className = (typeClass.getName() + "$GenSerializer").replace('.', '/');
         ClassWriter classWriter = new ClassWriter(COMPUTE_MAXS); // ClassWriter.COMPUTE_MAXS
         int version = Platform.getClassVersion();
         classWriter.visit(version, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, Type.getInternalName(FieldSerializer.class), null);
-        classWriter.visitField(ACC_PRIVATE | ACC_FINAL | ACC_STATIC, "unsafe", "Lsun/misc/Unsafe;", null, null)
-                .visitEnd();
         classWriter.visitField(ACC_PRIVATE | ACC_FINAL, "serializers", Type.getDescriptor(Serializer[].class), null, null)
                 .visitEnd();
-        // add static {}
-        Method getUnsafeMethod = Platform.class.getMethod("getUnsafe");
-        MethodVisitor methodVisitor = classWriter.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
-        methodVisitor.visitCode();
-        methodVisitor.visitMethodInsn(INVOKESTATIC, Type.getInternalName(getUnsafeMethod.getDeclaringClass()),
-                getUnsafeMethod.getName(), Type.getMethodDescriptor(getUnsafeMethod), false);
-        methodVisitor.visitFieldInsn(PUTSTATIC, className, "unsafe", "Lsun/misc/Unsafe;");
-        methodVisitor.visitInsn(RETURN);
-        methodVisitor.visitMaxs(1, 0);
-        methodVisitor.visitEnd();
+        if (!directAccess) {
+            classWriter.visitField(ACC_PRIVATE | ACC_FINAL | ACC_STATIC, "unsafe", "Lsun/misc/Unsafe;", null, null)
+                    .visitEnd();
+            // add static {}
+            Method getUnsafeMethod = Platform.class.getMethod("getUnsafe");
+            MethodVisitor methodVisitor = classWriter.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+            methodVisitor.visitCode();
+            methodVisitor.visitMethodInsn(INVOKESTATIC, Type.getInternalName(getUnsafeMethod.getDeclaringClass()),
+                    getUnsafeMethod.getName(), Type.getMethodDescriptor(getUnsafeMethod), false);
+            methodVisitor.visitFieldInsn(PUTSTATIC, className, "unsafe", "Lsun/misc/Unsafe;");
+            methodVisitor.visitInsn(RETURN);
+            methodVisitor.visitMaxs(1, 0);
+            methodVisitor.visitEnd();
+        }
 
         makeConstructor(className, classWriter);
+        String typeName = directAccess ? Type.getInternalName(typeClass) : null;
         // add write
-        addWriteMethod(className, classWriter, fieldDataList);
+        addWriteMethod(className, typeName, classWriter, fieldDataList);
         // add read
-        addReadMethod(className, classWriter, fieldDataList);
+        addReadMethod(className, typeName, classWriter, fieldDataList);
         classWriter.visitEnd();
-        byte[] byteCode = classWriter.toByteArray();
-        // IOUtils.write(byteCode, "out/" + className + ".class");
-        return Platform.defineClass(typeClass, byteCode).asSubclass(JavaTypes.classTag(FieldSerializer.class));
+        return classWriter.toByteArray();
     }
 
     private void makeConstructor(String className, ClassWriter classWriter)
@@ -147,7 +229,7 @@ public class FieldSerializerFactory
         methodVisitor.visitEnd();
     }
 
-    private void addWriteMethod(String className, ClassWriter classWriter, List<FieldSerializer.FieldData> fieldDataList)
+    private void addWriteMethod(String className, String typeName, ClassWriter classWriter, List<FieldSerializer.FieldData> fieldDataList)
     {
         String descriptor = Type.getMethodDescriptor(WRITE_METHOD);
         int access = WRITE_METHOD.getModifiers() & 0x07; //Modifier.isPublic(method.getModifiers()) ? ACC_PUBLIC : ACC_PROTECTED;
@@ -159,7 +241,12 @@ public class FieldSerializerFactory
         for (int i = 0; i < fieldDataList.size(); i++) {
             FieldSerializer.FieldData fieldData = fieldDataList.get(i);
             Class<?> fieldClass = fieldData.getType();
-            makeWriteField(className, methodVisitor, fieldData.field);
+            if (typeName != null) {
+                makeDirectWriteField(typeName, methodVisitor, fieldData.field);
+            }
+            else {
+                makeWriteField(className, methodVisitor, fieldData.field);
+            }
             if (fieldData.fieldType == FieldSerializer.FieldType.CLASS_AND_OBJET) {
                 methodVisitor.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Jcodec.class), "writeClassAndObject",
                         "(Lcom/github/harbby/gadtry/jcodec/OutputView;Ljava/lang/Object;)V",
@@ -192,6 +279,26 @@ public class FieldSerializerFactory
         methodVisitor.visitEnd();
     }
 
+    private void makeDirectWriteField(String typeName, MethodVisitor methodVisitor, Field field)
+    {
+        Class<?> fieldType = field.getType();
+        String desc = Type.getDescriptor(fieldType);
+        if (!fieldType.isPrimitive()) {
+            methodVisitor.visitVarInsn(ALOAD, 1);
+        }
+        methodVisitor.visitVarInsn(ALOAD, 2);
+        methodVisitor.visitVarInsn(ALOAD, 3);
+        methodVisitor.visitTypeInsn(CHECKCAST, typeName);
+        methodVisitor.visitFieldInsn(GETFIELD, typeName, field.getName(), desc);
+        if (fieldType.isPrimitive()) {
+            String name = fieldType.getName().substring(0, 1).toUpperCase() + fieldType.getName().substring(1);
+            // writeByte(int), writeShort(int) and writeChar(int)
+            boolean intArgument = fieldType == byte.class || fieldType == short.class || fieldType == char.class;
+            methodVisitor.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(OutputView.class), "write" + name,
+                    String.format("(%s)V", intArgument ? "I" : desc), true);
+        }
+    }
+
     private void makeWriteField(String className, MethodVisitor methodVisitor, Field field)
     {
         Class<?> fieldType = field.getType();
@@ -215,12 +322,14 @@ public class FieldSerializerFactory
                 String.format("(Ljava/lang/Object;%s)%s", Type.getDescriptor(long.class), desc),
                 false); // // stack 2
         if (fieldType.isPrimitive()) {
+            // writeByte(int), writeShort(int) and writeChar(int)
+            boolean intArgument = fieldType == byte.class || fieldType == short.class || fieldType == char.class;
             methodVisitor.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(OutputView.class), "write" + name,
-                    String.format("(%s)V", desc), true);  //stack 0
+                    String.format("(%s)V", intArgument ? "I" : desc), true);  //stack 0
         }
     }
 
-    private void addReadMethod(String className, ClassWriter classWriter, List<FieldSerializer.FieldData> fieldDataList)
+    private void addReadMethod(String className, String typeName, ClassWriter classWriter, List<FieldSerializer.FieldData> fieldDataList)
             throws NoSuchMethodException
     {
         String descriptor = Type.getMethodDescriptor(READ_METHOD);
@@ -239,14 +348,21 @@ public class FieldSerializerFactory
         methodVisitor.visitVarInsn(ASTORE, 4);
         for (int i = 0; i < fieldDataList.size(); i++) {
             FieldSerializer.FieldData fieldData = fieldDataList.get(i);
+            Method readMethod;
             if (fieldData.fieldType == FieldSerializer.FieldType.OBJECT) {
-                makeReadField(fieldData.field, className, methodVisitor, i, READ_OBJECT);
+                readMethod = READ_OBJECT;
             }
             else if (fieldData.fieldType == FieldSerializer.FieldType.OBJECT_OR_NULL) {
-                makeReadField(fieldData.field, className, methodVisitor, i, READ_OBJECT_OR_NULL);
+                readMethod = READ_OBJECT_OR_NULL;
             }
             else {
-                makeReadField(fieldData.field, className, methodVisitor, i, READ_CLASS_AND_OBJECT);
+                readMethod = READ_CLASS_AND_OBJECT;
+            }
+            if (typeName != null) {
+                makeDirectReadField(fieldData.field, className, typeName, methodVisitor, i, readMethod);
+            }
+            else {
+                makeReadField(fieldData.field, className, methodVisitor, i, readMethod);
             }
         }
         methodVisitor.visitVarInsn(ALOAD, 4);
@@ -274,6 +390,35 @@ public class FieldSerializerFactory
         }
     }
 
+    private void makeDirectReadField(Field field, String className, String typeName, MethodVisitor methodVisitor, int i, Method readMethod)
+    {
+        Class<?> fieldType = field.getType();
+        methodVisitor.visitVarInsn(ALOAD, 4);
+        methodVisitor.visitTypeInsn(CHECKCAST, typeName);
+        if (fieldType.isPrimitive()) {
+            String name = fieldType.getName().substring(0, 1).toUpperCase() + fieldType.getName().substring(1);
+            methodVisitor.visitVarInsn(ALOAD, 2);
+            methodVisitor.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(InputView.class), "read" + name,
+                    "()" + Type.getDescriptor(fieldType),
+                    true);
+        }
+        else {
+            methodVisitor.visitVarInsn(ALOAD, 1);
+            methodVisitor.visitVarInsn(ALOAD, 2);
+            if (readMethod != READ_CLASS_AND_OBJECT) {
+                methodVisitor.visitLdcInsn(Type.getType(fieldType));
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                methodVisitor.visitFieldInsn(GETFIELD, className, "serializers", "[Lcom/github/harbby/gadtry/jcodec/Serializer;");
+                AsmUtil.pushIntNumber(methodVisitor, i);
+                methodVisitor.visitInsn(AALOAD);
+            }
+            methodVisitor.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(readMethod.getDeclaringClass()),
+                    readMethod.getName(), Type.getMethodDescriptor(readMethod), true);
+            methodVisitor.visitTypeInsn(CHECKCAST, Type.getInternalName(fieldType));
+        }
+        methodVisitor.visitFieldInsn(PUTFIELD, typeName, field.getName(), Type.getDescriptor(fieldType));
+    }
+
     private void makeReadField(Field field, String className, MethodVisitor methodVisitor, int i, Method readMethod)
     {
         Class<?> fieldType = field.getType();
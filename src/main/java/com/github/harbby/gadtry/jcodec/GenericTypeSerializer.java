@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.JavaTypes;
+import com.github.harbby.gadtry.jcodec.codecs.ListSerializer;
+import com.github.harbby.gadtry.jcodec.codecs.MapSerializer;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the serializer of the fields declared as {@code List<E>} or {@code Map<K, V>}, e.g. {@code Map<String, Long>}.
+ * The class of the collection is still written, when the class is serialized by {@link ListSerializer} or {@link MapSerializer}
+ * the elements are written by the serializers of the generic types instead of writing a class tag for every element.
+ */
+final class GenericTypeSerializer
+        implements Serializer<Object>
+{
+    private final Class<?> plainSerializerClass;
+    private final Serializer<Object> typedSerializer;
+
+    @SuppressWarnings("unchecked")
+    private GenericTypeSerializer(Class<?> plainSerializerClass, Serializer<?> typedSerializer)
+    {
+        this.plainSerializerClass = plainSerializerClass;
+        this.typedSerializer = (Serializer<Object>) typedSerializer;
+    }
+
+    /**
+     * returns null when the type is not a List or Map, or none of the generic types has a serializer
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Serializer<?> makeSerializer(Jcodec jcodec, Type type)
+    {
+        if (!(jcodec instanceof JcodecImpl) || !(type instanceof ParameterizedType)) {
+            return null;
+        }
+        Class<?> rawClass = JavaTypes.typeToClass(type);
+        Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
+        if (rawClass == List.class || rawClass == ArrayList.class || rawClass == LinkedList.class) {
+            Serializer<?> elementSerializer = makeElementSerializer(jcodec, typeArguments[0]);
+            if (elementSerializer == null) {
+                return null;
+            }
+            Class elementClass = JavaTypes.typeToClass(typeArguments[0]);
+            return new GenericTypeSerializer(ListSerializer.class, new ListSerializer<>(elementClass, elementSerializer));
+        }
+        else if (rawClass == Map.class || rawClass == HashMap.class || rawClass == LinkedHashMap.class) {
+            Serializer<?> keySerializer = makeElementSerializer(jcodec, typeArguments[0]);
+            Serializer<?> valueSerializer = makeElementSerializer(jcodec, typeArguments[1]);
+            if (keySerializer == null && valueSerializer == null) {
+                return null;
+            }
+            Class keyClass = keySerializer == null ? null : JavaTypes.typeToClass(typeArguments[0]);
+            Class valueClass = valueSerializer == null ? null : JavaTypes.typeToClass(typeArguments[1]);
+            return new GenericTypeSerializer(MapSerializer.class, new MapSerializer<>(keyClass, keySerializer, valueClass, valueSerializer));
+        }
+        return null;
+    }
+
+    /**
+     * the same rule as the fields: final classes and nested generic collections, the others are written with class tags
+     */
+    private static Serializer<?> makeElementSerializer(Jcodec jcodec, Type type)
+    {
+        if (type instanceof Class) {
+            return FieldSerializer.getFieldSerializer(jcodec, (Class<?>) type);
+        }
+        return makeSerializer(jcodec, type);
+    }
+
+    @Override
+    public boolean isNullable()
+    {
+        return true;
+    }
+
+    @Override
+    public void write(Jcodec jcodec, OutputView output, Object value)
+    {
+        JcodecImpl jcodecImpl = (JcodecImpl) jcodec;
+        if (value == null) {
+            jcodecImpl.writeClass(output, null);
+            return;
+        }
+        SerializerWrapper wrapper = jcodecImpl.writeClass(output, value.getClass());
+        Serializer<Object> serializer = wrapper.getSerializer();
+        if (serializer.getClass() == plainSerializerClass) {
+            serializer = typedSerializer;
+        }
+        serializer.write(jcodec, output, value);
+    }
+
+    @Override
+    public Object read(Jcodec jcodec, InputView input, Class<?> typeClass)
+    {
+        SerializerWrapper wrapper = ((JcodecImpl) jcodec).readClass(input);
+        if (wrapper == null) {
+            return null;
+        }
+        Serializer<Object> serializer = wrapper.getSerializer();
+        if (serializer.getClass() == plainSerializerClass) {
+            serializer = typedSerializer;
+        }
+        return serializer.read(jcodec, input, wrapper.getTypeClass());
+    }
+}
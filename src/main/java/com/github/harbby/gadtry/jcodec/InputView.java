@@ -85,6 +85,58 @@ public interface InputView
     void readBoolArray(boolean[] booleans, int pos, int len)
             throws JcodecException;
 
+    /**
+     * reads the bytes of {@code len} shorts written by {@link OutputView#writeShorts(short[], int, int)}
+     * or by {@link OutputView#writeShort(int)}. The views of jcodec override it to block copy the bytes.
+     */
+    default void readShorts(short[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            v[i] = readShort();
+        }
+    }
+
+    default void readChars(char[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            v[i] = readChar();
+        }
+    }
+
+    default void readInts(int[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            v[i] = readInt();
+        }
+    }
+
+    default void readLongs(long[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            v[i] = readLong();
+        }
+    }
+
+    default void readFloats(float[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            v[i] = Float.intBitsToFloat(readInt());
+        }
+    }
+
+    default void readDoubles(double[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            v[i] = Double.longBitsToDouble(readLong());
+        }
+    }
+
     int readVarInt(boolean optimizePositive)
             throws JcodecException;
 
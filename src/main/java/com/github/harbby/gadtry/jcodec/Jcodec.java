@@ -29,6 +29,24 @@ public interface Jcodec
 
     public <T> void register(Class<T> typeClass);
 
+    /**
+     * writes the registered classes with their ids and serializers, a jcodec in another process (e.g. a forked child vm)
+     * reads it by {@link #readManifest(InputView)} and then both sides write the same class ids,
+     * the class names are not written into the stream and not loaded by name when reading.
+     *
+     * @param output outputView
+     */
+    void writeManifest(OutputView output);
+
+    /**
+     * registers the classes of the manifest with the same ids.
+     * The classes registered before must be the same as the writer side, e.g. the custom serializers registered in the same order,
+     * the generated field serializers are created again by {@link #register(Class)}.
+     *
+     * @param input inputView
+     */
+    void readManifest(InputView input);
+
     /**
      * write nonnull object to output
      *
@@ -55,6 +73,31 @@ public interface Jcodec
 
     <T> T readObjectOrNull(InputView inputView, Class<? extends T> typeClass, Serializer<T> serializer);
 
+    /**
+     * enable the reference tracking, default is false.
+     * a shared object is written only once and then as a back reference, so the cyclic object graph can be serialized too.
+     * the writer and the reader must use the same setting.
+     *
+     * @param references true if enable reference tracking
+     */
+    void setReferences(boolean references);
+
+    /**
+     * the serializer calls it after the instance is created and before its children are read,
+     * so the children can reference back to the instance. it does nothing if references is disabled.
+     * the id of the object being read is bound to the first instance of its type,
+     * the children read directly by {@link Serializer#read} before the instance is created are not bound.
+     *
+     * @param instance the instance being read
+     */
+    void reference(Object instance);
+
+    /**
+     * clears the stream state: the class names and references written or read.
+     * the written class name is only written once in a stream, call it before switching to another stream.
+     */
+    void reset();
+
     static Jcodec of()
     {
         return new JcodecImpl();
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+
+/**
+ * the field serializer of the annotated class is generated as source at compile time
+ * by {@code com.github.harbby.gadtry.jcodec.aot.JcodecAotProcessor} of the gadtry processor jar,
+ * jcodec loads it instead of generating the bytecode at runtime.
+ * The generated serializer writes the same bytes as the runtime one.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = {TYPE})
+public @interface JcodecAotSerializer
+{
+    /**
+     * the generated class is {@code typeClass.getName() + CLASS_SUFFIX} in the same package
+     */
+    String CLASS_SUFFIX = "_JcodecSerializer";
+}
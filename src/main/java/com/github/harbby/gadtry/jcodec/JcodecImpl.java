@@ -42,11 +42,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
 
 import static com.github.harbby.gadtry.StaticAssert.DEBUG;
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
 import static java.util.Objects.requireNonNull;
 
 final class JcodecImpl
@@ -60,10 +63,30 @@ final class JcodecImpl
     private int nextClassId;
 
     private final Map<Class<?>, Integer> classNameWriteCache = new CuckooStashHashMap<>();
+    private final List<Class<?>> classNameWriteList = new ArrayList<>();
     private final List<SerializerWrapper> classNameReadCache = new ArrayList<>();
 
     private final SerializerManager serializerManager = new SerializerManager();
 
+    // reference tracking of the object graph being written or read, the state is cleared after the root object
+    private boolean references;
+    private final Map<Object, Integer> writtenObjects = new IdentityHashMap<>();
+    private final List<Object> writtenList = new ArrayList<>();
+    private int writeDepth;
+    private final List<Object> readObjects = new ArrayList<>();
+    private int[] pendingReadIds = new int[16];
+    private Class<?>[] pendingReadTypes = new Class<?>[16];
+    private int readDepth;
+
+    // the state defined inside a chunk is dropped at the end of the chunk, the reader may skip the chunk
+    private final StreamContext writeContext = new StreamContext();
+    private final StreamContext readContext = new StreamContext();
+    private final List<ChunkOutputView> chunkViews = new ArrayList<>();
+    private int[] writeChunkMarks = new int[12];
+    private int writeChunkDepth;
+    private int[] readChunkMarks = new int[12];
+    private int readChunkDepth;
+
     JcodecImpl()
     {
         // Primitives
@@ -111,6 +134,190 @@ final class JcodecImpl
         }
     }
 
+    @Override
+    public void setReferences(boolean references)
+    {
+        this.references = references;
+        this.reset();
+    }
+
+    @Override
+    public void reset()
+    {
+        classNameWriteCache.clear();
+        classNameWriteList.clear();
+        classNameReadCache.clear();
+        writtenObjects.clear();
+        writtenList.clear();
+        readObjects.clear();
+        this.writeDepth = 0;
+        this.readDepth = 0;
+        writeContext.rollback(0);
+        readContext.rollback(0);
+        this.writeChunkDepth = 0;
+        this.readChunkDepth = 0;
+    }
+
+    StreamContext writeContext()
+    {
+        return writeContext;
+    }
+
+    StreamContext readContext()
+    {
+        return readContext;
+    }
+
+    /**
+     * starts a length prefixed chunk, the returned view must be finished with {@link #endChunk(OutputView)}
+     */
+    OutputView beginChunk()
+    {
+        int index = writeChunkDepth * 3;
+        if (index == writeChunkMarks.length) {
+            writeChunkMarks = Arrays.copyOf(writeChunkMarks, index * 2);
+        }
+        writeChunkMarks[index] = classNameWriteList.size();
+        writeChunkMarks[index + 1] = writtenList.size();
+        writeChunkMarks[index + 2] = writeContext.size();
+        if (writeChunkDepth == chunkViews.size()) {
+            chunkViews.add(new ChunkOutputView());
+        }
+        return chunkViews.get(writeChunkDepth++);
+    }
+
+    void endChunk(OutputView output)
+    {
+        ChunkOutputView chunk = chunkViews.get(--writeChunkDepth);
+        chunk.writeTo(output);
+        int index = writeChunkDepth * 3;
+        for (int i = classNameWriteList.size() - 1; i >= writeChunkMarks[index]; i--) {
+            classNameWriteCache.remove(classNameWriteList.remove(i));
+        }
+        for (int i = writtenList.size() - 1; i >= writeChunkMarks[index + 1]; i--) {
+            writtenObjects.remove(writtenList.remove(i));
+        }
+        writeContext.rollback(writeChunkMarks[index + 2]);
+    }
+
+    /**
+     * starts reading a chunk after its length, the reader must call {@link #endReadChunk()} after the chunk
+     */
+    void beginReadChunk()
+    {
+        int index = readChunkDepth * 3;
+        if (index == readChunkMarks.length) {
+            readChunkMarks = Arrays.copyOf(readChunkMarks, index * 2);
+        }
+        readChunkMarks[index] = classNameReadCache.size();
+        readChunkMarks[index + 1] = readObjects.size();
+        readChunkMarks[index + 2] = readContext.size();
+        readChunkDepth++;
+    }
+
+    void endReadChunk()
+    {
+        int index = --readChunkDepth * 3;
+        truncate(classNameReadCache, readChunkMarks[index]);
+        truncate(readObjects, readChunkMarks[index + 1]);
+        readContext.rollback(readChunkMarks[index + 2]);
+    }
+
+    private static void truncate(List<?> list, int size)
+    {
+        if (list.size() > size) {
+            list.subList(size, list.size()).clear();
+        }
+    }
+
+    @Override
+    public void reference(Object instance)
+    {
+        if (readDepth == 0) {
+            return;
+        }
+        int id = pendingReadIds[readDepth - 1];
+        //the children read directly by Serializer.read() have no frame of their own,
+        //only the first instance of the type being read is bound to the pending id
+        if (readObjects.get(id) == null && pendingReadTypes[readDepth - 1].isInstance(instance)) {
+            readObjects.set(id, instance);
+        }
+    }
+
+    /**
+     * writes the reference flag: NULL, NOT_NULL or the back reference id + 2
+     *
+     * @return true if the value is written the first time, the caller must write it
+     */
+    private boolean writeReferenceOrNull(OutputView output, Object value)
+    {
+        if (value == null) {
+            output.writeVarInt(NULL, true);
+            return false;
+        }
+        Integer id = writtenObjects.get(value);
+        if (id != null) {
+            output.writeVarInt(id + 2, true);
+            return false;
+        }
+        writtenObjects.put(value, writtenObjects.size());
+        writtenList.add(value);
+        output.writeVarInt(NOT_NULL, true);
+        return true;
+    }
+
+    private <T> void writeReferenceable(OutputView output, T value, Serializer<T> serializer)
+    {
+        if (!writeReferenceOrNull(output, value)) {
+            return;
+        }
+        writeDepth++;
+        try {
+            serializer.write(this, output, value);
+        }
+        finally {
+            if (--writeDepth == 0) {
+                writtenObjects.clear();
+                writtenList.clear();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T readReferenceable(InputView input, Class<? extends T> typeClass, Serializer<T> serializer)
+    {
+        int flag = input.readVarInt(true);
+        if (flag == NULL) {
+            return null;
+        }
+        if (flag != NOT_NULL) {
+            Object value = readObjects.get(flag - 2);
+            if (value == null) {
+                throw new JcodecException("the serializer of cyclic reference object not call jcodec.reference()");
+            }
+            return (T) value;
+        }
+        int id = readObjects.size();
+        readObjects.add(null);
+        if (readDepth == pendingReadIds.length) {
+            pendingReadIds = Arrays.copyOf(pendingReadIds, readDepth * 2);
+            pendingReadTypes = Arrays.copyOf(pendingReadTypes, readDepth * 2);
+        }
+        pendingReadTypes[readDepth] = typeClass;
+        pendingReadIds[readDepth++] = id;
+        try {
+            T value = serializer.read(this, input, typeClass);
+            readObjects.set(id, value);
+            return value;
+        }
+        finally {
+            pendingReadTypes[--readDepth] = null;
+            if (readDepth == 0) {
+                readObjects.clear();
+            }
+        }
+    }
+
     @Override
     public <T> void register(Class<T> typeClass, Class<? extends Serializer<T>> serializerClass)
     {
@@ -157,16 +364,74 @@ final class JcodecImpl
     {
         requireNonNull(typeClass, "typeClass is null");
         SerializerWrapper wrapper = registerMap.get(typeClass);
-        if (wrapper != null) {
+        if (wrapper != null && wrapper.getId() != -1) {
             return;
         }
         if (typeClass.isInterface() || (!typeClass.isArray() && Modifier.isAbstract(typeClass.getModifiers()))) {
             throw new JcodecException("type class must be entity class: " + typeClass);
         }
-        Serializer<T> serializer = createSerializer(typeClass);
+        // the class written by name before gets an id, the serializer is reused
+        Serializer<T> serializer = wrapper != null ? wrapper.getSerializer() : createSerializer(typeClass);
         this.register(typeClass, serializer);
     }
 
+    @Override
+    public void writeManifest(OutputView output)
+    {
+        output.writeVarInt(registerIndex.size(), true);
+        for (SerializerWrapper wrapper : registerIndex) {
+            output.writeString(wrapper.getTypeClass().getName());
+            output.writeString(manifestSerializerName(wrapper.getSerializer()));
+        }
+    }
+
+    /**
+     * null means the default field serializer, the generated class can not be found by name in another process
+     */
+    private static String manifestSerializerName(Serializer<?> serializer)
+    {
+        return serializer instanceof FieldSerializer ? null : serializer.getClass().getName();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void readManifest(InputView input)
+    {
+        int size = input.readVarInt(true);
+        for (int id = 0; id < size; id++) {
+            String className = input.readString();
+            String serializerName = input.readString();
+            if (id < registerIndex.size()) {
+                SerializerWrapper wrapper = registerIndex.get(id);
+                if (!wrapper.getTypeClass().getName().equals(className) ||
+                        !Objects.equals(manifestSerializerName(wrapper.getSerializer()), serializerName)) {
+                    throw new JcodecException(String.format("class id %s is registered as %s, but the manifest is %s with serializer %s",
+                            id, wrapper, className, serializerName));
+                }
+                continue;
+            }
+            Class<Object> typeClass = (Class<Object>) loadClass(className);
+            if (serializerName == null) {
+                this.register(typeClass);
+            }
+            else {
+                Class<? extends Serializer> serializerClass = loadClass(serializerName).asSubclass(Serializer.class);
+                this.register(typeClass, (Serializer<Object>) serializerManager.makeSerializer(this, typeClass, serializerClass));
+            }
+            checkState(registerIndex.size() == id + 1, "class %s is registered with other id", className);
+        }
+    }
+
+    private static Class<?> loadClass(String className)
+    {
+        try {
+            return Class.forName(className);
+        }
+        catch (ClassNotFoundException e) {
+            throw new JcodecException("class not found", e);
+        }
+    }
+
     private SerializerWrapper getOrCacheSerializerWrapper(Class<?> typeClass)
     {
         SerializerWrapper wrapper = registerMap.get(typeClass);
@@ -212,9 +477,36 @@ final class JcodecImpl
             throw new JcodecException("typeClass is Interface or Abstract class");
             // return null;
         }
+        if (typeClass.isAnnotationPresent(JcodecAotSerializer.class)) {
+            serializer = loadAotSerializer(typeClass);
+            if (serializer != null) {
+                return serializer;
+            }
+        }
         return FieldSerializerFactory.makeSerializer(this, typeClass);
     }
 
+    /**
+     * returns null when the serializer was not generated, e.g. the annotation processor was not enabled
+     */
+    @SuppressWarnings({"unchecked"})
+    private <T> Serializer<T> loadAotSerializer(Class<T> typeClass)
+    {
+        Class<?> aotClass;
+        try {
+            aotClass = Class.forName(typeClass.getName() + JcodecAotSerializer.CLASS_SUFFIX, true, typeClass.getClassLoader());
+        }
+        catch (ClassNotFoundException e) {
+            return null;
+        }
+        try {
+            return (Serializer<T>) aotClass.getConstructor(Jcodec.class, Class.class).newInstance(this, typeClass);
+        }
+        catch (Exception e) {
+            throw new JcodecException("jcodec failed", e);
+        }
+    }
+
     public SerializerWrapper writeClass(OutputView outputView, Class<?> typeClass)
     {
         if (typeClass == null) {
@@ -231,6 +523,7 @@ final class JcodecImpl
             else {
                 id = classNameWriteCache.size();
                 classNameWriteCache.put(typeClass, id);
+                classNameWriteList.add(typeClass);
                 outputView.writeVarInt(id, true);
                 outputView.writeString(typeClass.getName());
             }
@@ -281,7 +574,12 @@ final class JcodecImpl
         requireNonNull(output, "output is null");
         requireNonNull(value, "value is null");
         Class<?> typeClass = value.getClass();
-        getOrCacheSerializerWrapper(typeClass).getSerializer().write(this, output, value);
+        Serializer<Object> serializer = getOrCacheSerializerWrapper(typeClass).getSerializer();
+        if (references && serializer.isReferenceable()) {
+            writeReferenceable(output, value, serializer);
+            return;
+        }
+        serializer.write(this, output, value);
     }
 
     @Override
@@ -289,6 +587,10 @@ final class JcodecImpl
     {
         requireNonNull(output, "output is null");
         requireNonNull(serializer, "serializer is null");
+        if (references && serializer.isReferenceable()) {
+            writeReferenceable(output, value, serializer);
+            return;
+        }
         serializer.write(this, output, value);
     }
 
@@ -299,10 +601,15 @@ final class JcodecImpl
         requireNonNull(typeClass, "typeClass is null");
         if (value == null) {
             output.writeVarInt(NULL, true);
+            return;
+        }
+        Serializer<T> serializer = getOrCacheSerializerWrapper(typeClass).getSerializer();
+        if (references && serializer.isReferenceable()) {
+            writeReferenceable(output, value, serializer);
         }
         else {
             output.writeVarInt(NOT_NULL, true);
-            getOrCacheSerializerWrapper(typeClass).getSerializer().write(this, output, value);
+            serializer.write(this, output, value);
         }
     }
 
@@ -314,6 +621,9 @@ final class JcodecImpl
         if (value == null) {
             output.writeVarInt(NULL, true);
         }
+        else if (references && serializer.isReferenceable()) {
+            writeReferenceable(output, value, serializer);
+        }
         else {
             output.writeVarInt(NOT_NULL, true);
             serializer.write(this, output, value);
@@ -329,19 +639,27 @@ final class JcodecImpl
             return;
         }
         SerializerWrapper wrapper = writeClass(output, value.getClass());
-        wrapper.getSerializer().write(this, output, value);
+        Serializer<Object> serializer = wrapper.getSerializer();
+        if (references && serializer.isReferenceable()) {
+            writeReferenceable(output, value, serializer);
+            return;
+        }
+        serializer.write(this, output, value);
     }
 
     @Override
     public <T> T readObject(InputView input, Class<T> typeClass)
     {
         SerializerWrapper wrapper = this.getOrCacheSerializerWrapper(typeClass);
-        return wrapper.<T>getSerializer().read(this, input, typeClass);
+        return this.readObject(input, typeClass, wrapper.<T>getSerializer());
     }
 
     @Override
     public <T> T readObject(InputView input, Class<? extends T> typeClass, Serializer<T> serializer)
     {
+        if (references && serializer.isReferenceable()) {
+            return readReferenceable(input, typeClass, serializer);
+        }
         return serializer.read(this, input, typeClass);
     }
 
@@ -352,27 +670,60 @@ final class JcodecImpl
         if (wrapper == null) {
             return null;
         }
-        return wrapper.<T>getSerializer().read(this, inputView, wrapper.getTypeClass());
+        return this.readObject(inputView, wrapper.<T>getTypeClass(), wrapper.<T>getSerializer());
     }
 
     @Override
     public <T> T readObjectOrNull(InputView inputView, Class<T> typeClass)
     {
-        boolean isNull = inputView.readVarInt(true) == 0;
-        if (isNull) {
-            return null;
-        }
         SerializerWrapper wrapper = this.getOrCacheSerializerWrapper(typeClass);
-        return wrapper.<T>getSerializer().read(this, inputView, typeClass);
+        return this.readObjectOrNull(inputView, typeClass, wrapper.<T>getSerializer());
     }
 
     @Override
     public <T> T readObjectOrNull(InputView inputView, Class<? extends T> typeClass, Serializer<T> serializer)
     {
+        if (references && serializer.isReferenceable()) {
+            return readReferenceable(inputView, typeClass, serializer);
+        }
         boolean isNull = inputView.readVarInt(true) == 0;
         if (isNull) {
             return null;
         }
         return serializer.read(this, inputView, typeClass);
     }
+
+    /**
+     * state shared by the serializers of one stream, it is cleared by {@link #reset()}
+     */
+    static final class StreamContext
+    {
+        private final Map<Object, Object> values = new IdentityHashMap<>();
+        private final List<Object> keys = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        <V> V get(Object key)
+        {
+            return (V) values.get(key);
+        }
+
+        void put(Object key, Object value)
+        {
+            if (values.put(key, value) == null) {
+                keys.add(key);
+            }
+        }
+
+        private int size()
+        {
+            return keys.size();
+        }
+
+        private void rollback(int size)
+        {
+            for (int i = keys.size() - 1; i >= size; i--) {
+                values.remove(keys.remove(i));
+            }
+        }
+    }
 }
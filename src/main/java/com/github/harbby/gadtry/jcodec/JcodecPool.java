@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.function.Function;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * lock free pool of Jcodec, for concurrent serialization.
+ * A Jcodec is not thread safe, and creating one per call re-runs all the registration.
+ * The pooled Jcodec is created once by the factory and reset when it is borrowed.
+ * <p>
+ * The class names and references of a stream are cached by the Jcodec that writes or reads it,
+ * so a borrowed Jcodec must own a whole stream: every record of one stream is written (or read)
+ * between one {@link #borrow()} and {@link #release(Jcodec)}, or inside one {@link #run(Function)}.
+ * Two borrows never share a stream, the Jcodec of the second borrow may be another instance.
+ * <pre>
+ * JcodecPool pool = JcodecPool.of(() -&gt; {
+ *     Jcodec jcodec = Jcodec.of();
+ *     jcodec.register(MyClass.class);
+ *     return jcodec;
+ * });
+ * pool.run(jcodec -&gt; {
+ *     try (OutputView output = new StreamOutputView(outputStream)) {
+ *         for (MyClass value : values) {
+ *             jcodec.writeClassAndObject(output, value);
+ *         }
+ *     }
+ *     return null;
+ * });
+ * </pre>
+ */
+public final class JcodecPool
+{
+    private final Supplier<Jcodec> factory;
+    private final int maximumCapacity;
+    private final Queue<Jcodec> freeQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeSize = new AtomicInteger();
+
+    private JcodecPool(int maximumCapacity, Supplier<Jcodec> factory)
+    {
+        checkArgument(maximumCapacity > 0, "maximumCapacity <= 0");
+        this.maximumCapacity = maximumCapacity;
+        this.factory = requireNonNull(factory, "factory is null");
+    }
+
+    public static JcodecPool of(Supplier<Jcodec> factory)
+    {
+        return new JcodecPool(Integer.MAX_VALUE, factory);
+    }
+
+    /**
+     * @param maximumCapacity the max free Jcodec kept in the pool, the others released are discarded
+     * @param factory         creates and registers a Jcodec
+     * @return JcodecPool
+     */
+    public static JcodecPool of(int maximumCapacity, Supplier<Jcodec> factory)
+    {
+        return new JcodecPool(maximumCapacity, factory);
+    }
+
+    /**
+     * takes a free Jcodec or creates a new one, the caller owns it until {@link #release(Jcodec)}.
+     * The stream state left by the last owner is reset, so the borrowed Jcodec starts a new stream.
+     */
+    public Jcodec borrow()
+    {
+        Jcodec jcodec = freeQueue.poll();
+        if (jcodec == null) {
+            return requireNonNull(factory.get(), "factory return null");
+        }
+        freeSize.decrementAndGet();
+        jcodec.reset();
+        return jcodec;
+    }
+
+    /**
+     * returns the Jcodec to the pool, the stream written or read by it must not be used with another Jcodec later
+     */
+    public void release(Jcodec jcodec)
+    {
+        requireNonNull(jcodec, "jcodec is null");
+        if (freeSize.incrementAndGet() <= maximumCapacity) {
+            freeQueue.offer(jcodec);
+        }
+        else {
+            freeSize.decrementAndGet();
+        }
+    }
+
+    /**
+     * runs the function with a borrowed Jcodec, the function owns a whole stream
+     */
+    public <R, E extends Exception> R run(Function<Jcodec, R, E> function)
+            throws E
+    {
+        Jcodec jcodec = this.borrow();
+        try {
+            return function.apply(jcodec);
+        }
+        finally {
+            this.release(jcodec);
+        }
+    }
+
+    /**
+     * the number of free Jcodec in the pool
+     */
+    public int getFreeSize()
+    {
+        return freeSize.get();
+    }
+
+    public void clear()
+    {
+        while (freeQueue.poll() != null) {
+            freeSize.decrementAndGet();
+        }
+    }
+}
@@ -27,5 +27,6 @@ import static java.lang.annotation.ElementType.TYPE;
 @Target(value = {TYPE})
 public @interface JcodecSerializer
 {
-    Class<? extends Serializer<?>> value();
+    @SuppressWarnings("rawtypes")
+    Class<? extends Serializer> value();
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.Platform;
+import sun.misc.Unsafe;
+
+import java.nio.ByteOrder;
+
+/**
+ * finds the first mismatch 8 bytes at a time like Arrays.compareUnsigned(byte[]...),
+ * but the same code also works on off-heap memory and on java8.
+ */
+final class LexicographicComparator
+        implements RawComparator
+{
+    static final LexicographicComparator INSTANCE = new LexicographicComparator();
+    private static final Unsafe unsafe = Platform.getUnsafe();
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private LexicographicComparator() {}
+
+    @Override
+    public int compare(Object base1, long offset1, int length1, Object base2, long offset2, int length2)
+    {
+        int minLength = Math.min(length1, length2);
+        int i = 0;
+        for (; i + 8 <= minLength; i += 8) {
+            long v1 = unsafe.getLong(base1, offset1 + i);
+            long v2 = unsafe.getLong(base2, offset2 + i);
+            if (v1 != v2) {
+                if (LITTLE_ENDIAN) {
+                    v1 = Long.reverseBytes(v1);
+                    v2 = Long.reverseBytes(v2);
+                }
+                return Long.compareUnsigned(v1, v2);
+            }
+        }
+        for (; i < minLength; i++) {
+            int b1 = unsafe.getByte(base1, offset1 + i) & 0xFF;
+            int b2 = unsafe.getByte(base2, offset2 + i) & 0xFF;
+            if (b1 != b2) {
+                return b1 - b2;
+            }
+        }
+        return length1 - length2;
+    }
+
+    private Object readResolve()
+    {
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.Platform;
+import sun.misc.Unsafe;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkArgument;
+
+/**
+ * reads a native memory region directly with unsafe gets, there is no intermediate byte[] buffer.
+ * The region is set by {@link #reset(long, long)} or by a direct buffer (e.g. MappedByteBuffer of a spill file),
+ * so one view can decode many records without allocation.
+ * The memory is owned by the caller.
+ */
+public final class OffHeapInputView
+        extends InputStream
+        implements InputView
+{
+    private static final Unsafe unsafe = Platform.getUnsafe();
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private ByteBuffer byteBuffer;
+    private long address;
+    private long limit;
+
+    private byte[] stringBuffer = new byte[32];
+    private char[] charBuffer;
+
+    public OffHeapInputView() {}
+
+    public OffHeapInputView(long address, long length)
+    {
+        this.reset(address, length);
+    }
+
+    /**
+     * reads the buffer from its position to its limit, the position of buffer is not changed
+     */
+    public OffHeapInputView(ByteBuffer buffer)
+    {
+        this.reset(buffer);
+    }
+
+    /**
+     * read the region [address, address + length)
+     */
+    public void reset(long address, long length)
+    {
+        checkArgument(length >= 0, "length < 0");
+        this.byteBuffer = null;
+        this.address = address;
+        this.limit = address + length;
+    }
+
+    public void reset(ByteBuffer buffer)
+    {
+        long bufferAddress = Platform.getDirectBufferAddress(buffer);
+        this.reset(bufferAddress + buffer.position(), buffer.remaining());
+        // keeps the mapped buffer reachable while it is read
+        this.byteBuffer = buffer;
+    }
+
+    /**
+     * @return the number of bytes that can be read
+     */
+    public long remaining()
+    {
+        return limit - address;
+    }
+
+    private long require(long required)
+    {
+        if (limit - address < required) {
+            throw new JcodecEOFException("required: " + required);
+        }
+        long index = address;
+        address += required;
+        return index;
+    }
+
+    @Override
+    public void readFully(byte[] b)
+    {
+        this.readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len)
+    {
+        long index = require(len);
+        Platform.copyMemory(null, index, b, Unsafe.ARRAY_BYTE_BASE_OFFSET + off, len);
+    }
+
+    @Override
+    public int tryReadFully(byte[] b, int off, int len)
+    {
+        if (address == limit) {
+            return -1;
+        }
+        int n = (int) Math.min(len, limit - address);
+        Platform.copyMemory(null, address, b, Unsafe.ARRAY_BYTE_BASE_OFFSET + off, n);
+        address += n;
+        return n;
+    }
+
+    @Override
+    public int read()
+    {
+        if (address == limit) {
+            return -1;
+        }
+        return unsafe.getByte(address++) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+        return this.tryReadFully(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n)
+    {
+        int skipped = (int) Math.max(0, Math.min(n, limit - address));
+        address += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean()
+    {
+        return unsafe.getByte(require(1)) != 0;
+    }
+
+    @Override
+    public byte readByte()
+    {
+        return unsafe.getByte(require(1));
+    }
+
+    @Override
+    public int readUnsignedByte()
+    {
+        return unsafe.getByte(require(1)) & 0xFF;
+    }
+
+    @Override
+    public short readShort()
+    {
+        short v = unsafe.getShort(require(2));
+        return LITTLE_ENDIAN ? Short.reverseBytes(v) : v;
+    }
+
+    @Override
+    public int readUnsignedShort()
+    {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar()
+    {
+        return (char) readShort();
+    }
+
+    @Override
+    public int readInt()
+    {
+        int v = unsafe.getInt(require(4));
+        return LITTLE_ENDIAN ? Integer.reverseBytes(v) : v;
+    }
+
+    @Override
+    public long readLong()
+    {
+        long v = unsafe.getLong(require(8));
+        return LITTLE_ENDIAN ? Long.reverseBytes(v) : v;
+    }
+
+    @Override
+    public float readFloat()
+    {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    @Override
+    public double readDouble()
+    {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    @Override
+    public void readBoolArray(boolean[] booleans, int pos, int len)
+    {
+        int byteSize = (len + 7) >> 3;
+        long index = require(byteSize);
+        for (int i = 0; i < len; i++) {
+            byte v = unsafe.getByte(index + (i >> 3));
+            booleans[i + pos] = (v & (0x80 >> (i & 7))) != 0;
+        }
+    }
+
+    @Override
+    public void readShorts(short[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_SHORT_BASE_OFFSET, 1, off, len);
+    }
+
+    @Override
+    public void readChars(char[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_CHAR_BASE_OFFSET, 1, off, len);
+    }
+
+    @Override
+    public void readInts(int[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_INT_BASE_OFFSET, 2, off, len);
+    }
+
+    @Override
+    public void readLongs(long[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_LONG_BASE_OFFSET, 3, off, len);
+    }
+
+    @Override
+    public void readFloats(float[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_FLOAT_BASE_OFFSET, 2, off, len);
+    }
+
+    @Override
+    public void readDoubles(double[] v, int off, int len)
+    {
+        readArray(v, v.length, Unsafe.ARRAY_DOUBLE_BASE_OFFSET, 3, off, len);
+    }
+
+    private void readArray(Object array, int arrayLength, long baseOffset, int shift, int off, int len)
+    {
+        if ((off | len | (arrayLength - off - len)) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        long length = (long) len << shift;
+        long dstOffset = baseOffset + ((long) off << shift);
+        Platform.copyMemory(null, require(length), array, dstOffset, length);
+        if (LITTLE_ENDIAN) {
+            AbstractOutputView.reverseBytes(array, dstOffset, length, shift);
+        }
+    }
+
+    @Override
+    public int readVarInt(boolean optimizePositive)
+    {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = unsafe.getByte(require(1));
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return optimizePositive ? result : (result >>> 1) ^ -(result & 1);
+    }
+
+    @Override
+    public long readVarLong(boolean optimizePositive)
+    {
+        long result = 0;
+        int shift = 0;
+        for (; shift < 56; shift += 7) {
+            byte b = unsafe.getByte(require(1));
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        if (shift == 56) {
+            // the 9th byte keeps the remaining 8 bits
+            result |= (long) unsafe.getByte(require(1)) << 56;
+        }
+        return optimizePositive ? result : (result >>> 1) ^ -(result & 1);
+    }
+
+    @Override
+    public String readString()
+    {
+        byte b = unsafe.getByte(require(1));
+        if ((b & 0x80) == 0) {
+            return readAsciiString(b);
+        }
+        else if (b == (byte) 0x80) {
+            return null;
+        }
+        else if (b == (byte) 0x81) {
+            return "";
+        }
+        int charCount = readUtf16CharCount(b) - 1;
+        if (charBuffer == null || charBuffer.length < charCount) {
+            charBuffer = new char[charCount];
+        }
+        for (int count = 0; count < charCount; count++) {
+            int char1 = unsafe.getByte(require(1)) & 0xFF;
+            switch (char1 >> 4) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                case 4:
+                case 5:
+                case 6:
+                case 7:
+                    charBuffer[count] = (char) char1;
+                    break;
+                case 12:
+                case 13: {
+                    int char2 = unsafe.getByte(require(1));
+                    if ((char2 & 0xC0) != 0x80) {
+                        throw new JcodecEOFException("malformed input around byte " + count);
+                    }
+                    charBuffer[count] = (char) (((char1 & 0x1F) << 6) | (char2 & 0x3F));
+                    break;
+                }
+                case 14: {
+                    long index = require(2);
+                    int char2 = unsafe.getByte(index);
+                    int char3 = unsafe.getByte(index + 1);
+                    if (((char2 & 0xC0) != 0x80) || ((char3 & 0xC0) != 0x80)) {
+                        throw new JcodecEOFException("malformed input around byte " + count);
+                    }
+                    charBuffer[count] = (char) (((char1 & 0x0F) << 12) | ((char2 & 0x3F) << 6) | (char3 & 0x3F));
+                    break;
+                }
+                default:
+                    throw new JcodecEOFException("malformed input around byte " + count);
+            }
+        }
+        return new String(charBuffer, 0, charCount);
+    }
+
+    @SuppressWarnings("deprecation")
+    private String readAsciiString(byte first)
+    {
+        long start = address - 1;
+        long end = start;
+        byte b = first;
+        while (b >= 0) {
+            b = unsafe.getByte(require(1));
+            end++;
+        }
+        int charCount = (int) (end - start + 1);
+        if (charCount > stringBuffer.length) {
+            stringBuffer = new byte[charCount * 2];
+        }
+        Platform.copyMemory(null, start, stringBuffer, Unsafe.ARRAY_BYTE_BASE_OFFSET, charCount);
+        stringBuffer[charCount - 1] &= 0x7F;
+        return new String(stringBuffer, 0, 0, charCount);
+    }
+
+    private int readUtf16CharCount(byte first)
+    {
+        int result = first & 0x3F;
+        if ((first & 0x40) == 0) {
+            return result;
+        }
+        for (int shift = 6; shift < 32; shift += 7) {
+            byte b = unsafe.getByte(require(1));
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.Platform;
+import com.github.harbby.gadtry.base.Strings;
+import sun.misc.Unsafe;
+
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.github.harbby.gadtry.StaticAssert.DEBUG;
+import static com.github.harbby.gadtry.base.MoreObjects.checkArgument;
+
+/**
+ * writes a native memory region directly with unsafe puts, there is no intermediate byte[] buffer.
+ * The bytes are the same as {@link AbstractOutputView}, so the data can be read by any input view.
+ * The memory is owned by the caller, the region is set by {@link #reset(long, long)}
+ * or by a direct buffer (e.g. MappedByteBuffer of a spill file).
+ */
+public final class OffHeapOutputView
+        extends OutputStream
+        implements OutputView
+{
+    private static final Unsafe unsafe = Platform.getUnsafe();
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private ByteBuffer byteBuffer;
+    private long start;
+    private long flushed;
+    private long address;
+    private long limit;
+
+    public OffHeapOutputView() {}
+
+    public OffHeapOutputView(long address, long length)
+    {
+        this.reset(address, length);
+    }
+
+    /**
+     * writes the buffer from its position to its limit, the position of buffer is moved by {@link #flush()}
+     */
+    public OffHeapOutputView(ByteBuffer buffer)
+    {
+        this.reset(buffer);
+    }
+
+    /**
+     * writes the region [address, address + length)
+     */
+    public void reset(long address, long length)
+    {
+        checkArgument(length >= 0, "length < 0");
+        this.byteBuffer = null;
+        this.start = address;
+        this.flushed = address;
+        this.address = address;
+        this.limit = address + length;
+    }
+
+    public void reset(ByteBuffer buffer)
+    {
+        long bufferAddress = Platform.getDirectBufferAddress(buffer);
+        this.reset(bufferAddress + buffer.position(), buffer.remaining());
+        this.byteBuffer = buffer;
+    }
+
+    /**
+     * @return the number of bytes written after reset
+     */
+    public long size()
+    {
+        return address - start;
+    }
+
+    private long require(long required)
+    {
+        if (limit - address < required) {
+            throw new JcodecEOFException("required: " + required + ", remaining: " + (limit - address));
+        }
+        long index = address;
+        address += required;
+        return index;
+    }
+
+    @Override
+    public void write(int b)
+    {
+        unsafe.putByte(require(1), (byte) b);
+    }
+
+    @Override
+    public void write(byte[] b)
+    {
+        this.write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+        long index = require(len);
+        Platform.copyMemory(b, Unsafe.ARRAY_BYTE_BASE_OFFSET + off, null, index, len);
+    }
+
+    @Override
+    public void writeBoolean(boolean v)
+    {
+        unsafe.putByte(require(1), (byte) (v ? 1 : 0));
+    }
+
+    @Override
+    public void writeByte(int v)
+    {
+        unsafe.putByte(require(1), (byte) v);
+    }
+
+    @Override
+    public void writeShort(int v)
+    {
+        short value = (short) v;
+        unsafe.putShort(require(2), LITTLE_ENDIAN ? Short.reverseBytes(value) : value);
+    }
+
+    @Override
+    public void writeChar(int v)
+    {
+        this.writeShort(v);
+    }
+
+    @Override
+    public void writeInt(int v)
+    {
+        unsafe.putInt(require(4), LITTLE_ENDIAN ? Integer.reverseBytes(v) : v);
+    }
+
+    @Override
+    public void writeLong(long v)
+    {
+        unsafe.putLong(require(8), LITTLE_ENDIAN ? Long.reverseBytes(v) : v);
+    }
+
+    @Override
+    public void writeFloat(float v)
+    {
+        writeInt(Float.floatToIntBits(v));
+    }
+
+    @Override
+    public void writeDouble(double v)
+    {
+        writeLong(Double.doubleToLongBits(v));
+    }
+
+    @Override
+    public void writeVarInt(int value, boolean optimizePositive)
+    {
+        int v = optimizePositive ? value : ViewEncoding.zigZag(value);
+        ViewEncoding.putVarInt(null, require(ViewEncoding.varIntSize(v)), v);
+    }
+
+    @Override
+    public void writeVarLong(long value, boolean optimizePositive)
+    {
+        long v = optimizePositive ? value : ViewEncoding.zigZag(value);
+        ViewEncoding.putVarLong(null, require(ViewEncoding.varLongSize(v)), v);
+    }
+
+    @Override
+    public void writeBoolArray(boolean[] value)
+    {
+        assert !DEBUG || value.length > 0;
+        int byteSize = (value.length + 7) >> 3;
+        long index = require(byteSize);
+        for (int i = 0; i < byteSize; i++) {
+            int b = 0;
+            for (int j = i << 3, end = Math.min(j + 8, value.length); j < end; j++) {
+                if (value[j]) {
+                    b |= 0x80 >> (j & 7);
+                }
+            }
+            unsafe.putByte(index + i, (byte) b);
+        }
+    }
+
+    @Override
+    public void writeShorts(short[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_SHORT_BASE_OFFSET, 1, off, len);
+    }
+
+    @Override
+    public void writeChars(char[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_CHAR_BASE_OFFSET, 1, off, len);
+    }
+
+    @Override
+    public void writeInts(int[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_INT_BASE_OFFSET, 2, off, len);
+    }
+
+    @Override
+    public void writeLongs(long[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_LONG_BASE_OFFSET, 3, off, len);
+    }
+
+    @Override
+    public void writeFloats(float[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_FLOAT_BASE_OFFSET, 2, off, len);
+    }
+
+    @Override
+    public void writeDoubles(double[] v, int off, int len)
+    {
+        writeArray(v, v.length, Unsafe.ARRAY_DOUBLE_BASE_OFFSET, 3, off, len);
+    }
+
+    private void writeArray(Object array, int arrayLength, long baseOffset, int shift, int off, int len)
+    {
+        if ((off | len | (arrayLength - off - len)) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        long length = (long) len << shift;
+        long index = require(length);
+        Platform.copyMemory(array, baseOffset + ((long) off << shift), null, index, length);
+        if (LITTLE_ENDIAN) {
+            AbstractOutputView.reverseBytes(null, index, length, shift);
+        }
+    }
+
+    @Override
+    public void writeString(String s)
+    {
+        if (s == null) {
+            unsafe.putByte(require(1), ViewEncoding.NULL_STRING);
+            return;
+        }
+        int len = s.length();
+        if (len == 0) {
+            unsafe.putByte(require(1), ViewEncoding.EMPTY_STRING);
+            return;
+        }
+        byte[] latin1 = Strings.getLatin1Bytes(s);
+        if (ViewEncoding.isShortAscii(s, latin1, len)) {
+            long index = require(len);
+            if (latin1 != null) {
+                Platform.copyMemory(latin1, Unsafe.ARRAY_BYTE_BASE_OFFSET, null, index, len - 1);
+            }
+            else {
+                for (int i = 0; i < len - 1; i++) {
+                    unsafe.putByte(index + i, (byte) s.charAt(i));
+                }
+            }
+            unsafe.putByte(index + len - 1, (byte) (s.charAt(len - 1) | 0x80));
+            return;
+        }
+        ViewEncoding.putUtf16CharCount(null, require(ViewEncoding.utf16CharCountSize(len + 1)), len + 1);
+        if (latin1 != null) {
+            writeLatin1(latin1, len);
+            return;
+        }
+        for (int i = 0; i < len; i++) {
+            char ch = s.charAt(i);
+            int size = ViewEncoding.utf8Size(ch);
+            ViewEncoding.putUtf8(null, require(size), ch, size);
+        }
+    }
+
+    /**
+     * @see AbstractOutputView#writeString(String)
+     */
+    private void writeLatin1(byte[] latin1, int len)
+    {
+        int i = 0;
+        while (i < len) {
+            int asciiLength = ViewEncoding.utf8AsciiLength(latin1, i, len - i);
+            if (asciiLength > 0) {
+                Platform.copyMemory(latin1, Unsafe.ARRAY_BYTE_BASE_OFFSET + i, null, require(asciiLength), asciiLength);
+                i += asciiLength;
+            }
+            if (i < len) {
+                // 0x80-0xFF and char 0 are 2 bytes
+                ViewEncoding.putUtf8(null, require(2), (char) (latin1[i++] & 0xFF), 2);
+            }
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        if (byteBuffer != null) {
+            Buffer buffer = byteBuffer;
+            buffer.position(buffer.position() + (int) (address - flushed));
+            this.flushed = address;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        this.flush();
+    }
+}
@@ -70,6 +70,64 @@ public interface OutputView
     void writeBoolArray(boolean[] v)
             throws JcodecException;
 
+    /**
+     * writes the same bytes as calling {@link #writeShort(int)} for every element,
+     * the views of jcodec override it to block copy the array instead of one call per element.
+     */
+    default void writeShorts(short[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            writeShort(v[i]);
+        }
+    }
+
+    default void writeChars(char[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            writeChar(v[i]);
+        }
+    }
+
+    default void writeInts(int[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            writeInt(v[i]);
+        }
+    }
+
+    default void writeLongs(long[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            writeLong(v[i]);
+        }
+    }
+
+    /**
+     * the raw bits of floats are written, see {@link Float#floatToRawIntBits(float)}
+     */
+    default void writeFloats(float[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            writeInt(Float.floatToRawIntBits(v[i]));
+        }
+    }
+
+    /**
+     * the raw bits of doubles are written, see {@link Double#doubleToRawLongBits(double)}
+     */
+    default void writeDoubles(double[] v, int off, int len)
+            throws JcodecException
+    {
+        for (int i = off; i < off + len; i++) {
+            writeLong(Double.doubleToRawLongBits(v[i]));
+        }
+    }
+
     void writeString(String s)
             throws JcodecException;
 
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import sun.misc.Unsafe;
+
+import java.io.Serializable;
+
+/**
+ * compares two serialized values directly on their bytes, so sortMerge shuffle can sort
+ * the serialized records without deserializing the keys.
+ * The bytes are addressed like {@link Unsafe}: base is the byte[] (or null for an off-heap address)
+ * and offset is the unsafe offset in the base.
+ *
+ * @see Serializer#rawComparator()
+ */
+public interface RawComparator
+        extends Serializable
+{
+    public int compare(Object base1, long offset1, int length1, Object base2, long offset2, int length2);
+
+    public default int compare(byte[] b1, int off1, int len1, byte[] b2, int off2, int len2)
+    {
+        if ((off1 | len1 | (b1.length - off1 - len1) | off2 | len2 | (b2.length - off2 - len2)) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        return compare((Object) b1, (long) Unsafe.ARRAY_BYTE_BASE_OFFSET + off1, len1, b2, (long) Unsafe.ARRAY_BYTE_BASE_OFFSET + off2, len2);
+    }
+
+    public default int compare(long address1, int length1, long address2, int length2)
+    {
+        return compare(null, address1, length1, null, address2, length2);
+    }
+
+    /**
+     * unsigned lexicographic order, the shorter bytes come first when one is a prefix of the other.
+     */
+    public static RawComparator lexicographic()
+    {
+        return LexicographicComparator.INSTANCE;
+    }
+}
@@ -30,6 +30,15 @@ public interface Serializer<E>
         return false;
     }
 
+    /**
+     * whether the values are tracked when the jcodec references is enabled,
+     * the immutable values like primitive wrappers and String return false.
+     */
+    default boolean isReferenceable()
+    {
+        return true;
+    }
+
     /**
      * sortMerge shuffle need
      */
@@ -37,4 +46,14 @@ public interface Serializer<E>
     {
         return new HashCodeComparator<>();
     }
+
+    /**
+     * the comparator on the serialized bytes when the encoding is order-preserving,
+     * the order must be the same as {@link #comparator()}.
+     * null means the bytes are not comparable, the values have to be deserialized before sorting.
+     */
+    public default RawComparator rawComparator()
+    {
+        return null;
+    }
 }
@@ -20,6 +20,7 @@ import com.github.harbby.gadtry.collection.tuple.Tuple2;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -55,11 +56,14 @@ final class SerializerManager
 
     public void checkSerializer(Class<?> typeClass, Class<? extends Serializer> serializerClass)
     {
-        ParameterizedType parameterizedType = (ParameterizedType) serializerClass.getGenericInterfaces()[0];
-        Type type = parameterizedType.getActualTypeArguments()[0];
+        Type type = getSerializerType(serializerClass);
         if (type instanceof ParameterizedType) {
             type = ((ParameterizedType) type).getRawType();
         }
+        if (type instanceof TypeVariable) {
+            // generic serializer, e.g. CompatibleFieldSerializer<T>
+            return;
+        }
         if (typeClass == Object[].class) {
             checkState(type instanceof GenericArrayType, "serializerClass not is array serializer");
         }
@@ -68,6 +72,20 @@ final class SerializerManager
         }
     }
 
+    private static Type getSerializerType(Class<?> serializerClass)
+    {
+        Type[] interfaces = serializerClass.getGenericInterfaces();
+        if (interfaces.length > 0 && interfaces[0] instanceof ParameterizedType) {
+            return ((ParameterizedType) interfaces[0]).getActualTypeArguments()[0];
+        }
+        Type superclass = serializerClass.getGenericSuperclass();
+        if (superclass instanceof ParameterizedType) {
+            return ((ParameterizedType) superclass).getActualTypeArguments()[0];
+        }
+        checkState(superclass instanceof Class && superclass != Object.class, "serializerClass not found generic type");
+        return getSerializerType((Class<?>) superclass);
+    }
+
     public Serializer<?> makeSerializer(Jcodec jcodec, Class<?> typeClass, Class<? extends Serializer> serializerClass)
     {
         try {
@@ -53,68 +53,4 @@ public final class StreamInputView
             throw new JcodecException(e);
         }
     }
-
-    @Override
-    public short readShort()
-    {
-        require(2);
-        int ch1 = buffer[position++] & 0XFF;
-        int ch2 = buffer[position++] & 0XFF;
-        return (short) ((ch1 << 8) + ch2);
-    }
-
-    @Override
-    public int readUnsignedShort()
-    {
-        require(2);
-        int ch1 = buffer[position++] & 0XFF;
-        int ch2 = buffer[position++] & 0XFF;
-        return (ch1 << 8) + ch2;
-    }
-
-    @Override
-    public char readChar()
-    {
-        require(2);
-        int ch1 = buffer[position++] & 0XFF;
-        int ch2 = buffer[position++] & 0XFF;
-        return (char) ((ch1 << 8) + ch2);
-    }
-
-    @Override
-    public int readInt()
-    {
-        require(4);
-        int ch1 = buffer[position++] & 0XFF;
-        int ch2 = buffer[position++] & 0XFF;
-        int ch3 = buffer[position++] & 0XFF;
-        int ch4 = buffer[position++] & 0XFF;
-        return (ch1 << 24) + (ch2 << 16) + (ch3 << 8) + ch4;
-    }
-
-    @Override
-    public long readLong()
-    {
-        require(8);
-        return (((long) buffer[position++] << 56) +
-                ((long) (buffer[position++] & 255) << 48) +
-                ((long) (buffer[position++] & 255) << 40) +
-                ((long) (buffer[position++] & 255) << 32) +
-                ((long) (buffer[position++] & 255) << 24) +
-                ((buffer[position++] & 255) << 16) +
-                ((buffer[position++] & 255) << 8) +
-                ((buffer[position++] & 255)));
-    }
-
-    @Override
-    public float readFloat()
-    {
-        return Float.intBitsToFloat(readInt());
-    }
-
-    @Override
-    public double readDouble()
-    {
-        return Double.longBitsToDouble(readLong());
-    }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.Platform;
+import com.github.harbby.gadtry.base.Strings;
+import sun.misc.Unsafe;
+
+/**
+ * the varint and string encoders shared by {@link AbstractOutputView} and {@link OffHeapOutputView},
+ * so both views write the same bytes. The bytes are put at {@code base + address} by unsafe,
+ * base is the byte[] of a heap buffer, or null for native memory.
+ * The caller reserves the size of the value before putting it.
+ */
+final class ViewEncoding
+{
+    private ViewEncoding() {}
+
+    private static final Unsafe unsafe = Platform.getUnsafe();
+    private static final long ASCII_MASK = 0x8080808080808080L;
+
+    static final byte NULL_STRING = (byte) 0x80;
+    static final byte EMPTY_STRING = (byte) 0x81;
+
+    /**
+     * the short ascii strings are written without length, the last char is marked by the high bit
+     */
+    static boolean isShortAscii(String s, byte[] latin1, int len)
+    {
+        if (len <= 1 || len >= 64) {
+            return false;
+        }
+        if (latin1 != null) {
+            return Strings.isAscii(latin1, 0, len);
+        }
+        // a UTF16 compact string is never ascii
+        return !Strings.ENABLE_STRING_COMPACT && Strings.isAscii(s, len);
+    }
+
+    static int zigZag(int v)
+    {
+        // zigzag coder: v = v >=0 ? value << 1 : (~value) + 1;
+        return (v << 1) ^ (v >> 31);
+    }
+
+    static long zigZag(long v)
+    {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static int varIntSize(int v)
+    {
+        if (v >>> 7 == 0) {
+            return 1;
+        }
+        if (v >>> 14 == 0) {
+            return 2;
+        }
+        if (v >>> 21 == 0) {
+            return 3;
+        }
+        return v >>> 28 == 0 ? 4 : 5;
+    }
+
+    /**
+     * 7 bits per byte, the high bit marks the next byte
+     */
+    static void putVarInt(Object base, long address, int v)
+    {
+        while (v >>> 7 != 0) {
+            unsafe.putByte(base, address++, (byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        unsafe.putByte(base, address, (byte) v);
+    }
+
+    static int varLongSize(long v)
+    {
+        int size = 1;
+        while (size < 9 && v >>> 7 != 0) {
+            v >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * 7 bits per byte, the 9th byte keeps the remaining 8 bits
+     */
+    static void putVarLong(Object base, long address, long v)
+    {
+        for (int i = 0; i < 8 && v >>> 7 != 0; i++) {
+            unsafe.putByte(base, address++, (byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        unsafe.putByte(base, address, (byte) v);
+    }
+
+    static int utf16CharCountSize(int charCount)
+    {
+        return charCount >>> 6 == 0 ? 1 : 1 + varIntSize(charCount >>> 6);
+    }
+
+    /**
+     * the first byte keeps 6 bits and 0b11 marks the next bytes, the rest of count is a varint
+     */
+    static void putUtf16CharCount(Object base, long address, int charCount)
+    {
+        if (charCount >>> 6 == 0) {
+            unsafe.putByte(base, address, (byte) (charCount | 0x80));
+            return;
+        }
+        unsafe.putByte(base, address, (byte) (charCount & 0x3F | 0xC0));
+        putVarInt(base, address + 1, charCount >>> 6);
+    }
+
+    /**
+     * @see java.io.DataOutputStream#writeUTF(String)
+     */
+    static int utf8Size(char ch)
+    {
+        if (ch < 0x80 && ch != 0) {
+            return 1;
+        }
+        return ch >= 0x800 ? 3 : 2;
+    }
+
+    static void putUtf8(Object base, long address, char ch, int size)
+    {
+        if (size == 1) {
+            unsafe.putByte(base, address, (byte) ch);
+        }
+        else if (size == 3) {
+            unsafe.putByte(base, address, (byte) (0xE0 | ((ch >> 12) & 0x0F)));
+            unsafe.putByte(base, address + 1, (byte) (0x80 | ((ch >> 6) & 0x3F)));
+            unsafe.putByte(base, address + 2, (byte) (0x80 | ((ch) & 0x3F)));
+        }
+        else {
+            unsafe.putByte(base, address, (byte) (0xC0 | ((ch >> 6) & 0x1F)));
+            unsafe.putByte(base, address + 1, (byte) (0x80 | ((ch) & 0x3F)));
+        }
+    }
+
+    /**
+     * the length of the leading chars in 0x01-0x7F, they are written as is by utf-8.
+     * The other latin1 chars (0x80-0xFF and char 0) are 2 bytes, see {@link #putUtf8(Object, long, char, int)}.
+     */
+    static int utf8AsciiLength(byte[] latin1, int off, int len)
+    {
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            long word = unsafe.getLong(latin1, Unsafe.ARRAY_BYTE_BASE_OFFSET + off + i);
+            // no byte >= 0x80, then adding 0x7F to every byte sets the high bit unless the byte is 0
+            if ((word & ASCII_MASK) != 0 || ((word + 0x7F7F7F7F7F7F7F7FL) & ASCII_MASK) != ASCII_MASK) {
+                break;
+            }
+        }
+        for (; i < len; i++) {
+            byte b = latin1[off + i];
+            if (b <= 0) {
+                break;
+            }
+        }
+        return i;
+    }
+}
@@ -46,9 +46,7 @@ public class ArraySerializers
                 return;
             }
             output.writeVarInt(values.length + 1, true);
-            for (byte e : values) {
-                output.writeByte(e);
-            }
+            output.write(values);
         }
 
         @Override
@@ -64,9 +62,7 @@ public class ArraySerializers
             else {
                 len--;
                 byte[] values = new byte[len];
-                for (int i = 0; i < len; i++) {
-                    values[i] = input.readByte();
-                }
+                input.readFully(values);
                 return values;
             }
         }
@@ -146,9 +142,7 @@ public class ArraySerializers
                 return;
             }
             output.writeVarInt(values.length + 1, true);
-            for (short e : values) {
-                output.writeShort(e);
-            }
+            output.writeShorts(values, 0, values.length);
         }
 
         @Override
@@ -164,9 +158,7 @@ public class ArraySerializers
             else {
                 len--;
                 short[] values = new short[len];
-                for (int i = 0; i < len; i++) {
-                    values[i] = input.readShort();
-                }
+                input.readShorts(values, 0, len);
                 return values;
             }
         }
@@ -197,9 +189,7 @@ public class ArraySerializers
                 return;
             }
             output.writeVarInt(values.length + 1, true);
-            for (char e : values) {
-                output.writeChar(e);
-            }
+            output.writeChars(values, 0, values.length);
         }
 
         @Override
@@ -215,9 +205,7 @@ public class ArraySerializers
             else {
                 len--;
                 char[] values = new char[len];
-                for (int i = 0; i < len; i++) {
-                    values[i] = input.readChar();
-                }
+                input.readChars(values, 0, len);
                 return values;
             }
         }
@@ -248,9 +236,7 @@ public class ArraySerializers
                 return;
             }
             output.writeVarInt(values.length + 1, true);
-            for (int e : values) {
-                output.writeInt(e);
-            }
+            output.writeInts(values, 0, values.length);
         }
 
         @Override
@@ -266,9 +252,7 @@ public class ArraySerializers
             else {
                 len--;
                 int[] values = new int[len];
-                for (int i = 0; i < len; i++) {
-                    values[i] = input.readInt();
-                }
+                input.readInts(values, 0, len);
                 return values;
             }
         }
@@ -299,9 +283,7 @@ public class ArraySerializers
                 return;
             }
             output.writeVarInt(values.length + 1, true);
-            for (float e : values) {
-                output.writeFloat(e);
-            }
+            output.writeFloats(values, 0, values.length);
         }
 
         @Override
@@ -317,9 +299,7 @@ public class ArraySerializers
             else {
                 len--;
                 float[] values = new float[len];
-                for (int i = 0; i < len; i++) {
-                    values[i] = input.readByte();
-                }
+                input.readFloats(values, 0, len);
                 return values;
             }
         }
@@ -350,9 +330,7 @@ public class ArraySerializers
                 return;
             }
             output.writeVarInt(values.length + 1, true);
-            for (long e : values) {
-                output.writeLong(e);
-            }
+            output.writeLongs(values, 0, values.length);
         }
 
         @Override
@@ -368,9 +346,7 @@ public class ArraySerializers
             else {
                 len--;
                 long[] values = new long[len];
-                for (int i = 0; i < len; i++) {
-                    values[i] = input.readInt();
-                }
+                input.readLongs(values, 0, len);
                 return values;
             }
         }
@@ -401,9 +377,7 @@ public class ArraySerializers
                 return;
             }
             output.writeVarInt(values.length + 1, true);
-            for (double e : values) {
-                output.writeDouble(e);
-            }
+            output.writeDoubles(values, 0, values.length);
         }
 
         @Override
@@ -419,9 +393,7 @@ public class ArraySerializers
             else {
                 len--;
                 double[] values = new double[len];
-                for (int i = 0; i < len; i++) {
-                    values[i] = input.readInt();
-                }
+                input.readDoubles(values, 0, len);
                 return values;
             }
         }
@@ -37,6 +37,12 @@ public class ByteSerializer
         return input.readByte();
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Byte> comparator()
     {
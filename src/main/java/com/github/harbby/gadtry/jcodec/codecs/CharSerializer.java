@@ -18,6 +18,7 @@ package com.github.harbby.gadtry.jcodec.codecs;
 import com.github.harbby.gadtry.jcodec.InputView;
 import com.github.harbby.gadtry.jcodec.Jcodec;
 import com.github.harbby.gadtry.jcodec.OutputView;
+import com.github.harbby.gadtry.jcodec.RawComparator;
 import com.github.harbby.gadtry.jcodec.Serializer;
 
 import java.util.Comparator;
@@ -37,9 +38,21 @@ public class CharSerializer
         return input.readChar();
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Character> comparator()
     {
         return Character::compare;
     }
+
+    @Override
+    public RawComparator rawComparator()
+    {
+        return RawComparator.lexicographic();
+    }
 }
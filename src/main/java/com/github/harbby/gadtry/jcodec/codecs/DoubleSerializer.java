@@ -37,6 +37,12 @@ public class DoubleSerializer
         return input.readDouble();
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Double> comparator()
     {
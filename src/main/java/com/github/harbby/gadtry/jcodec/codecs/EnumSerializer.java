@@ -66,6 +66,12 @@ public class EnumSerializer
         }
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Enum> comparator()
     {
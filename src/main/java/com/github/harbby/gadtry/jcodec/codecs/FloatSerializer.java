@@ -37,6 +37,12 @@ public class FloatSerializer
         return input.readFloat();
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Float> comparator()
     {
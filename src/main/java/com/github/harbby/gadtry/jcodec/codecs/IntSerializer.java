@@ -37,6 +37,12 @@ public class IntSerializer
         return input.readInt();
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Integer> comparator()
     {
@@ -21,6 +21,7 @@ import com.github.harbby.gadtry.jcodec.OutputView;
 import com.github.harbby.gadtry.jcodec.Serializer;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,6 +29,24 @@ import java.util.List;
 public class ListSerializer<T>
         implements Serializer<List<T>>
 {
+    private final Class<T> elementClass;
+    private final Serializer<T> elementSerializer;
+
+    public ListSerializer()
+    {
+        this(null, null);
+    }
+
+    /**
+     * the elements are written by the elementSerializer without class tags,
+     * null elementSerializer means every element is written with its class.
+     */
+    public ListSerializer(Class<T> elementClass, Serializer<T> elementSerializer)
+    {
+        this.elementClass = elementClass;
+        this.elementSerializer = elementSerializer;
+    }
+
     @Override
     public void write(Jcodec jcodec, OutputView output, List<T> list)
     {
@@ -38,9 +57,15 @@ public class ListSerializer<T>
         final int size = list.size();
         //write size on the head
         output.writeVarInt(size + 1, true);
-        //write key and value
+        if (elementSerializer == null) {
+            for (T value : list) {
+                jcodec.writeClassAndObject(output, value);
+            }
+            return;
+        }
+        boolean hasNull = writeHasNull(output, elementSerializer, list);
         for (T value : list) {
-            jcodec.writeClassAndObject(output, value);
+            writeElement(jcodec, output, value, elementSerializer, hasNull);
         }
     }
 
@@ -54,12 +79,66 @@ public class ListSerializer<T>
         size--;
         Class<?> listClass = typeClass;
         List<T> list = listClass == LinkedList.class ? new LinkedList<>() : new ArrayList<>(size);
+        jcodec.reference(list);
+        if (elementSerializer == null) {
+            for (int i = 0; i < size; i++) {
+                list.add(jcodec.readClassAndObject(input));
+            }
+            return list;
+        }
+        boolean hasNull = readHasNull(input, elementSerializer);
         for (int i = 0; i < size; i++) {
-            list.add(jcodec.readClassAndObject(input));
+            list.add(readElement(jcodec, input, elementClass, elementSerializer, hasNull));
         }
         return list;
     }
 
+    /**
+     * the null flag of the elements is written once if the serializer can not write null,
+     * then the elements of a collection without null are written without the flag.
+     */
+    static boolean writeHasNull(OutputView output, Serializer<?> serializer, Collection<?> values)
+    {
+        if (serializer.isNullable()) {
+            return false;
+        }
+        // contains(null) throws NPE on the null-hostile collections, e.g. List.of() and ConcurrentHashMap
+        boolean hasNull = false;
+        for (Object value : values) {
+            if (value == null) {
+                hasNull = true;
+                break;
+            }
+        }
+        output.writeBoolean(hasNull);
+        return hasNull;
+    }
+
+    static boolean readHasNull(InputView input, Serializer<?> serializer)
+    {
+        return !serializer.isNullable() && input.readBoolean();
+    }
+
+    static <E> void writeElement(Jcodec jcodec, OutputView output, E value, Serializer<E> serializer, boolean hasNull)
+    {
+        if (hasNull) {
+            jcodec.writeObjectOrNull(output, value, serializer);
+        }
+        else {
+            jcodec.writeObject(output, value, serializer);
+        }
+    }
+
+    static <E> E readElement(Jcodec jcodec, InputView input, Class<E> elementClass, Serializer<E> serializer, boolean hasNull)
+    {
+        if (hasNull) {
+            return jcodec.readObjectOrNull(input, elementClass, serializer);
+        }
+        else {
+            return jcodec.readObject(input, elementClass, serializer);
+        }
+    }
+
     @Override
     public boolean isNullable()
     {
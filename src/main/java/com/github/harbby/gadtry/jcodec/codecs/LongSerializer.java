@@ -37,6 +37,12 @@ public class LongSerializer
         return input.readLong();
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Long> comparator()
     {
@@ -28,6 +28,28 @@ import java.util.Map;
 public class MapSerializer<K, V>
         implements Serializer<Map<K, V>>
 {
+    private final Class<K> keyClass;
+    private final Serializer<K> keySerializer;
+    private final Class<V> valueClass;
+    private final Serializer<V> valueSerializer;
+
+    public MapSerializer()
+    {
+        this(null, null, null, null);
+    }
+
+    /**
+     * the keys and values are written by their serializers without class tags,
+     * a null serializer means the keys or values are written with their classes.
+     */
+    public MapSerializer(Class<K> keyClass, Serializer<K> keySerializer, Class<V> valueClass, Serializer<V> valueSerializer)
+    {
+        this.keyClass = keyClass;
+        this.keySerializer = keySerializer;
+        this.valueClass = valueClass;
+        this.valueSerializer = valueSerializer;
+    }
+
     @Override
     public void write(Jcodec jcodec, OutputView output, Map<K, V> value)
     {
@@ -38,10 +60,22 @@ public class MapSerializer<K, V>
         final int size = value.size();
         //write size on the head
         output.writeVarInt(size + 1, true);
+        boolean keyHasNull = keySerializer != null && ListSerializer.writeHasNull(output, keySerializer, value.keySet());
+        boolean valueHasNull = valueSerializer != null && ListSerializer.writeHasNull(output, valueSerializer, value.values());
         //write key and value
         for (Map.Entry<K, V> entry : value.entrySet()) {
-            jcodec.writeClassAndObject(output, entry.getKey());
-            jcodec.writeClassAndObject(output, entry.getValue());
+            if (keySerializer == null) {
+                jcodec.writeClassAndObject(output, entry.getKey());
+            }
+            else {
+                ListSerializer.writeElement(jcodec, output, entry.getKey(), keySerializer, keyHasNull);
+            }
+            if (valueSerializer == null) {
+                jcodec.writeClassAndObject(output, entry.getValue());
+            }
+            else {
+                ListSerializer.writeElement(jcodec, output, entry.getValue(), valueSerializer, valueHasNull);
+            }
         }
     }
 
@@ -55,9 +89,14 @@ public class MapSerializer<K, V>
         size--;
         Class<?> mapClass = typeClass;
         Map<K, V> map = mapClass == LinkedHashMap.class ? new LinkedHashMap<>(size) : new HashMap<>(size);
+        jcodec.reference(map);
+        boolean keyHasNull = keySerializer != null && ListSerializer.readHasNull(input, keySerializer);
+        boolean valueHasNull = valueSerializer != null && ListSerializer.readHasNull(input, valueSerializer);
         for (int i = 0; i < size; i++) {
-            K key = jcodec.readClassAndObject(input);
-            V value = jcodec.readClassAndObject(input);
+            K key = keySerializer == null ? jcodec.readClassAndObject(input) :
+                    ListSerializer.readElement(jcodec, input, keyClass, keySerializer, keyHasNull);
+            V value = valueSerializer == null ? jcodec.readClassAndObject(input) :
+                    ListSerializer.readElement(jcodec, input, valueClass, valueSerializer, valueHasNull);
             map.put(key, value);
         }
         return map;
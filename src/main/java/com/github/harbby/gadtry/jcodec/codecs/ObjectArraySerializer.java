@@ -101,6 +101,7 @@ public class ObjectArraySerializer<E>
         }
         len--;
         E[] values = (E[]) java.lang.reflect.Array.newInstance(classTag, len);
+        jcodec.reference(values);
         if (serializer == null) {
             for (int i = 0; i < len; i++) {
                 values[i] = jcodec.readClassAndObject(input);
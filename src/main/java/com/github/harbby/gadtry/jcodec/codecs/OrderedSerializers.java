@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec.codecs;
+
+import com.github.harbby.gadtry.jcodec.InputView;
+import com.github.harbby.gadtry.jcodec.Jcodec;
+import com.github.harbby.gadtry.jcodec.JcodecException;
+import com.github.harbby.gadtry.jcodec.OutputView;
+import com.github.harbby.gadtry.jcodec.RawComparator;
+import com.github.harbby.gadtry.jcodec.Serializer;
+
+import java.util.Comparator;
+
+/**
+ * order-preserving encodings for sort keys, the unsigned lexicographic order of the bytes
+ * is the same as the order of the values, see {@link Serializer#rawComparator()}.
+ * The bytes are not compatible with the default serializers of the same types.
+ * <p>
+ * signed integers flip the sign bit, floating point values flip the sign bit of positive values
+ * and all bits of negative values, strings are written as utf-8 terminated by 0x0000
+ * (the char 0 is escaped as 0x00FF) so a string key can be followed by other keys.
+ */
+public class OrderedSerializers
+{
+    private OrderedSerializers() {}
+
+    @SuppressWarnings("unchecked")
+    public static <T> Serializer<T> getSerializer(Class<T> typeClass)
+    {
+        Serializer<?> serializer;
+        if (typeClass == int.class || typeClass == Integer.class) {
+            serializer = new IntOrderedSerializer();
+        }
+        else if (typeClass == long.class || typeClass == Long.class) {
+            serializer = new LongOrderedSerializer();
+        }
+        else if (typeClass == String.class) {
+            serializer = new StringOrderedSerializer();
+        }
+        else if (typeClass == double.class || typeClass == Double.class) {
+            serializer = new DoubleOrderedSerializer();
+        }
+        else if (typeClass == float.class || typeClass == Float.class) {
+            serializer = new FloatOrderedSerializer();
+        }
+        else if (typeClass == short.class || typeClass == Short.class) {
+            serializer = new ShortOrderedSerializer();
+        }
+        else if (typeClass == byte.class || typeClass == Byte.class) {
+            serializer = new ByteOrderedSerializer();
+        }
+        else if (typeClass == char.class || typeClass == Character.class) {
+            serializer = new CharSerializer();
+        }
+        else if (typeClass == boolean.class || typeClass == Boolean.class) {
+            serializer = new BooleanSerializer();
+        }
+        else {
+            throw new JcodecException("not found order-preserving serializer of " + typeClass);
+        }
+        return (Serializer<T>) serializer;
+    }
+
+    private abstract static class OrderedSerializer<E>
+            implements Serializer<E>
+    {
+        @Override
+        public boolean isReferenceable()
+        {
+            return false;
+        }
+
+        @Override
+        public RawComparator rawComparator()
+        {
+            return RawComparator.lexicographic();
+        }
+    }
+
+    public static class ByteOrderedSerializer
+            extends OrderedSerializer<Byte>
+    {
+        @Override
+        public void write(Jcodec jcodec, OutputView output, Byte value)
+        {
+            output.writeByte(value ^ 0x80);
+        }
+
+        @Override
+        public Byte read(Jcodec jcodec, InputView input, Class<? extends Byte> typeClass)
+        {
+            return (byte) (input.readByte() ^ 0x80);
+        }
+
+        @Override
+        public Comparator<Byte> comparator()
+        {
+            return Byte::compare;
+        }
+    }
+
+    public static class ShortOrderedSerializer
+            extends OrderedSerializer<Short>
+    {
+        @Override
+        public void write(Jcodec jcodec, OutputView output, Short value)
+        {
+            output.writeShort(value ^ 0x8000);
+        }
+
+        @Override
+        public Short read(Jcodec jcodec, InputView input, Class<? extends Short> typeClass)
+        {
+            return (short) (input.readShort() ^ 0x8000);
+        }
+
+        @Override
+        public Comparator<Short> comparator()
+        {
+            return Short::compare;
+        }
+    }
+
+    public static class IntOrderedSerializer
+            extends OrderedSerializer<Integer>
+    {
+        @Override
+        public void write(Jcodec jcodec, OutputView output, Integer value)
+        {
+            output.writeInt(value ^ Integer.MIN_VALUE);
+        }
+
+        @Override
+        public Integer read(Jcodec jcodec, InputView input, Class<? extends Integer> typeClass)
+        {
+            return input.readInt() ^ Integer.MIN_VALUE;
+        }
+
+        @Override
+        public Comparator<Integer> comparator()
+        {
+            return Integer::compare;
+        }
+    }
+
+    public static class LongOrderedSerializer
+            extends OrderedSerializer<Long>
+    {
+        @Override
+        public void write(Jcodec jcodec, OutputView output, Long value)
+        {
+            output.writeLong(value ^ Long.MIN_VALUE);
+        }
+
+        @Override
+        public Long read(Jcodec jcodec, InputView input, Class<? extends Long> typeClass)
+        {
+            return input.readLong() ^ Long.MIN_VALUE;
+        }
+
+        @Override
+        public Comparator<Long> comparator()
+        {
+            return Long::compare;
+        }
+    }
+
+    public static class FloatOrderedSerializer
+            extends OrderedSerializer<Float>
+    {
+        @Override
+        public void write(Jcodec jcodec, OutputView output, Float value)
+        {
+            int bits = Float.floatToIntBits(value);
+            output.writeInt(bits ^ ((bits >> 31) | Integer.MIN_VALUE));
+        }
+
+        @Override
+        public Float read(Jcodec jcodec, InputView input, Class<? extends Float> typeClass)
+        {
+            int bits = input.readInt();
+            return Float.intBitsToFloat(bits ^ ((~bits >> 31) | Integer.MIN_VALUE));
+        }
+
+        @Override
+        public Comparator<Float> comparator()
+        {
+            return Float::compare;
+        }
+    }
+
+    public static class DoubleOrderedSerializer
+            extends OrderedSerializer<Double>
+    {
+        @Override
+        public void write(Jcodec jcodec, OutputView output, Double value)
+        {
+            long bits = Double.doubleToLongBits(value);
+            output.writeLong(bits ^ ((bits >> 63) | Long.MIN_VALUE));
+        }
+
+        @Override
+        public Double read(Jcodec jcodec, InputView input, Class<? extends Double> typeClass)
+        {
+            long bits = input.readLong();
+            return Double.longBitsToDouble(bits ^ ((~bits >> 63) | Long.MIN_VALUE));
+        }
+
+        @Override
+        public Comparator<Double> comparator()
+        {
+            return Double::compare;
+        }
+    }
+
+    /**
+     * utf-8 bytes are in code point order, which is the same as {@link String#compareTo(String)}
+     * except for the supplementary characters, so {@link #comparator()} compares the code points.
+     */
+    public static class StringOrderedSerializer
+            extends OrderedSerializer<String>
+    {
+        @Override
+        public void write(Jcodec jcodec, OutputView output, String value)
+        {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c == 0) {
+                    output.writeByte(0);
+                    output.writeByte(0xFF);
+                }
+                else if (c < 0x80) {
+                    output.writeByte(c);
+                }
+                else if (c < 0x800) {
+                    output.writeByte(0xC0 | (c >> 6));
+                    output.writeByte(0x80 | (c & 0x3F));
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    output.writeByte(0xF0 | (codePoint >> 18));
+                    output.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                    output.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                    output.writeByte(0x80 | (codePoint & 0x3F));
+                }
+                else {
+                    output.writeByte(0xE0 | (c >> 12));
+                    output.writeByte(0x80 | ((c >> 6) & 0x3F));
+                    output.writeByte(0x80 | (c & 0x3F));
+                }
+            }
+            output.writeShort(0);
+        }
+
+        @Override
+        public String read(Jcodec jcodec, InputView input, Class<? extends String> typeClass)
+        {
+            StringBuilder builder = new StringBuilder();
+            while (true) {
+                int b = input.readByte() & 0xFF;
+                if (b == 0) {
+                    if (input.readByte() == 0) {
+                        return builder.toString();
+                    }
+                    builder.append('\0');
+                }
+                else if (b < 0x80) {
+                    builder.append((char) b);
+                }
+                else if (b < 0xE0) {
+                    builder.append((char) (((b & 0x1F) << 6) | (input.readByte() & 0x3F)));
+                }
+                else if (b < 0xF0) {
+                    int b2 = input.readByte() & 0x3F;
+                    builder.append((char) (((b & 0x0F) << 12) | (b2 << 6) | (input.readByte() & 0x3F)));
+                }
+                else {
+                    int b2 = input.readByte() & 0x3F;
+                    int b3 = input.readByte() & 0x3F;
+                    builder.appendCodePoint(((b & 0x07) << 18) | (b2 << 12) | (b3 << 6) | (input.readByte() & 0x3F));
+                }
+            }
+        }
+
+        @Override
+        public Comparator<String> comparator()
+        {
+            return StringOrderedSerializer::compareCodePoints;
+        }
+
+        private static int compareCodePoints(String s1, String s2)
+        {
+            int length1 = s1.length();
+            int length2 = s2.length();
+            int i = 0;
+            int j = 0;
+            while (i < length1 && j < length2) {
+                int c1 = s1.codePointAt(i);
+                int c2 = s2.codePointAt(j);
+                if (c1 != c2) {
+                    return Integer.compare(c1, c2);
+                }
+                i += Character.charCount(c1);
+                j += Character.charCount(c2);
+            }
+            return (length1 - i) - (length2 - j);
+        }
+    }
+}
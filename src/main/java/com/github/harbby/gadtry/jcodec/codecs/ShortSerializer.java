@@ -37,6 +37,12 @@ public class ShortSerializer
         return input.readShort();
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Short> comparator()
     {
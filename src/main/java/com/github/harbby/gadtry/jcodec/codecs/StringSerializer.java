@@ -43,6 +43,12 @@ public class StringSerializer
         return input.readString();
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<String> comparator()
     {
@@ -61,6 +61,7 @@ public class TreeMapSerializer<K, V>
         size--;
         Comparator<? super K> comparator = jcodec.readClassAndObject(input);
         TreeMap<K, V> treeMap = new TreeMap<>(comparator);
+        jcodec.reference(treeMap);
         for (int i = 0; i < size; i++) {
             treeMap.put(jcodec.readClassAndObject(input), jcodec.readClassAndObject(input));
         }
@@ -53,6 +53,12 @@ public class VarIntSerializer
         return input.readVarInt(optimizePositive);
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Integer> comparator()
     {
@@ -49,6 +49,12 @@ public class VarLongSerializer
         return input.readVarLong(optimizePositive);
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Long> comparator()
     {
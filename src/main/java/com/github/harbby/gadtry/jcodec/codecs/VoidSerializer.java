@@ -36,6 +36,12 @@ public class VoidSerializer
         return null;
     }
 
+    @Override
+    public boolean isReferenceable()
+    {
+        return false;
+    }
+
     @Override
     public Comparator<Void> comparator()
     {
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec.compress;
+
+import java.util.zip.Deflater;
+
+/**
+ * compresses one block at a time, a codec instance keeps reusable state and is not thread safe.
+ *
+ * @see CompressedOutputView
+ * @see CompressedInputView
+ */
+public interface BlockCodec
+{
+    /**
+     * @return the max compressed size of a block of length bytes
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * @return the compressed size
+     */
+    int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff);
+
+    /**
+     * @param rawLength the length of the original block
+     */
+    void decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int rawLength);
+
+    /**
+     * releases the native resources of the codec
+     */
+    default void close() {}
+
+    /**
+     * the name of the built-in codecs, the reader of a stored file creates the codec by {@link #of(String)}.
+     * null means the codec is not built-in.
+     */
+    default String name()
+    {
+        return null;
+    }
+
+    /**
+     * @param name lz4 or deflate
+     * @return a new codec instance
+     */
+    static BlockCodec of(String name)
+    {
+        switch (name) {
+            case Lz4BlockCodec.NAME:
+                return lz4();
+            case DeflateBlockCodec.NAME:
+                return deflate();
+            default:
+                throw new IllegalArgumentException("unknown block codec " + name);
+        }
+    }
+
+    /**
+     * pure java LZ4 block format, fast and moderate ratio
+     */
+    static BlockCodec lz4()
+    {
+        return new Lz4BlockCodec();
+    }
+
+    static BlockCodec deflate()
+    {
+        return new DeflateBlockCodec(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    static BlockCodec deflate(int level)
+    {
+        return new DeflateBlockCodec(level);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec.compress;
+
+import com.github.harbby.gadtry.io.IOUtils;
+import com.github.harbby.gadtry.jcodec.AbstractInputView;
+import com.github.harbby.gadtry.jcodec.JcodecEOFException;
+import com.github.harbby.gadtry.jcodec.JcodecException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.github.harbby.gadtry.jcodec.compress.CompressedOutputView.HEADER_SIZE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * decodes the blocks written by {@link CompressedOutputView} when the buffer is refilled.
+ * The codec must be the same type as the writer, it is owned by this view and is closed with it.
+ */
+public final class CompressedInputView
+        extends AbstractInputView
+{
+    private final InputStream in;
+    private final BlockCodec codec;
+    private final byte[] header = new byte[HEADER_SIZE];
+    private byte[] compressed = new byte[0];
+    private byte[] block = new byte[0];
+    private int blockPosition;
+    private int blockLimit;
+    private int storedLength;
+
+    public CompressedInputView(InputStream in, BlockCodec codec)
+    {
+        this(in, codec, 1 << 16);
+    }
+
+    public CompressedInputView(InputStream in, BlockCodec codec, int buffSize)
+    {
+        super(new byte[buffSize]);
+        this.in = requireNonNull(in, "in is null");
+        this.codec = requireNonNull(codec, "codec is null");
+    }
+
+    private static int getInt(byte[] b, int off)
+    {
+        return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+    }
+
+    /**
+     * @return the raw length of next block, or -1 at the end of stream
+     */
+    private int readBlockHeader()
+            throws IOException
+    {
+        int n = IOUtils.tryReadFully(in, header, 0, HEADER_SIZE);
+        if (n == 0) {
+            return -1;
+        }
+        if (n < HEADER_SIZE) {
+            throw new JcodecEOFException("malformed block header, required: " + HEADER_SIZE + ", read: " + n);
+        }
+        int rawLength = getInt(header, 0);
+        this.storedLength = getInt(header, 4);
+        if (rawLength <= 0 || storedLength <= 0 || storedLength > rawLength) {
+            throw new JcodecException("malformed block header, raw length: " + rawLength + ", stored length: " + storedLength);
+        }
+        return rawLength;
+    }
+
+    private void readBlock(byte[] dest, int destOff, int rawLength)
+            throws IOException
+    {
+        if (storedLength == rawLength) {
+            IOUtils.readFully(in, dest, destOff, rawLength);
+            return;
+        }
+        if (compressed.length < storedLength) {
+            compressed = new byte[storedLength];
+        }
+        IOUtils.readFully(in, compressed, 0, storedLength);
+        codec.decompress(compressed, 0, storedLength, dest, destOff, rawLength);
+    }
+
+    @Override
+    protected int tryReadFully0(byte[] b, int off, int len)
+            throws JcodecException
+    {
+        int n = 0;
+        try {
+            while (n < len) {
+                if (blockPosition == blockLimit) {
+                    int rawLength = readBlockHeader();
+                    if (rawLength == -1) {
+                        break;
+                    }
+                    if (len - n >= rawLength) {
+                        // decode into the target directly
+                        readBlock(b, off + n, rawLength);
+                        n += rawLength;
+                        continue;
+                    }
+                    if (block.length < rawLength) {
+                        block = new byte[rawLength];
+                    }
+                    readBlock(block, 0, rawLength);
+                    blockPosition = 0;
+                    blockLimit = rawLength;
+                }
+                int size = Math.min(len - n, blockLimit - blockPosition);
+                System.arraycopy(block, blockPosition, b, off + n, size);
+                blockPosition += size;
+                n += size;
+            }
+        }
+        catch (IOException e) {
+            throw new JcodecException(e);
+        }
+        return n;
+    }
+
+    @Override
+    public void close()
+    {
+        try {
+            codec.close();
+        }
+        finally {
+            try {
+                in.close();
+            }
+            catch (IOException e) {
+                throw new JcodecException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec.compress;
+
+import com.github.harbby.gadtry.jcodec.AbstractOutputView;
+import com.github.harbby.gadtry.jcodec.JcodecException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * compresses the buffer as one block on every flush, a block is written as:
+ * raw length (int), stored length (int), stored bytes.
+ * The block is stored uncompressed if the codec can not make it smaller.
+ * <p>
+ * The codec is owned by this view and is closed with it.
+ *
+ * @see CompressedInputView
+ */
+public final class CompressedOutputView
+        extends AbstractOutputView
+{
+    static final int HEADER_SIZE = 8;
+
+    private final OutputStream outputStream;
+    private final BlockCodec codec;
+    private final byte[] compressBuffer;
+
+    public CompressedOutputView(OutputStream outputStream, BlockCodec codec)
+    {
+        //64k
+        this(outputStream, codec, 1 << 16);
+    }
+
+    public CompressedOutputView(OutputStream outputStream, BlockCodec codec, int blockSize)
+    {
+        super(blockSize);
+        this.outputStream = requireNonNull(outputStream, "outputStream is null");
+        this.codec = requireNonNull(codec, "codec is null");
+        this.compressBuffer = new byte[HEADER_SIZE + codec.maxCompressedLength(blockSize)];
+    }
+
+    private static void putInt(byte[] b, int off, int v)
+    {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    @Override
+    public void flush()
+            throws JcodecException
+    {
+        if (offset == 0) {
+            return;
+        }
+        int compressedLength = codec.compress(buffer, 0, offset, compressBuffer, HEADER_SIZE);
+        try {
+            putInt(compressBuffer, 0, offset);
+            if (compressedLength < offset) {
+                putInt(compressBuffer, 4, compressedLength);
+                outputStream.write(compressBuffer, 0, HEADER_SIZE + compressedLength);
+            }
+            else {
+                putInt(compressBuffer, 4, offset);
+                outputStream.write(compressBuffer, 0, HEADER_SIZE);
+                outputStream.write(buffer, 0, offset);
+            }
+        }
+        catch (IOException e) {
+            throw new JcodecException(e);
+        }
+        this.offset = 0;
+    }
+
+    @Override
+    public void close()
+            throws JcodecException
+    {
+        try {
+            this.flush();
+        }
+        finally {
+            try {
+                outputStream.close();
+            }
+            catch (IOException e) {
+                throw new JcodecException(e);
+            }
+            finally {
+                codec.close();
+            }
+        }
+    }
+}
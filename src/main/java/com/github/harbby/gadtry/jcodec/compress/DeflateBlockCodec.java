@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec.compress;
+
+import com.github.harbby.gadtry.jcodec.JcodecException;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+final class DeflateBlockCodec
+        implements BlockCodec
+{
+    static final String NAME = "deflate";
+
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater(true);
+
+    DeflateBlockCodec(int level)
+    {
+        this.deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public String name()
+    {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length)
+    {
+        // the conservative bound of zlib deflateBound()
+        return length + ((length + 7) >> 3) + ((length + 63) >> 6) + 11;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff)
+    {
+        deflater.reset();
+        deflater.setInput(src, srcOff, srcLen);
+        deflater.finish();
+        int n = 0;
+        int capacity = dest.length - destOff;
+        while (!deflater.finished() && n < capacity) {
+            n += deflater.deflate(dest, destOff + n, capacity - n);
+        }
+        if (!deflater.finished()) {
+            throw new JcodecException("dest is small: capacity: " + capacity);
+        }
+        return n;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int rawLength)
+    {
+        inflater.reset();
+        inflater.setInput(src, srcOff, srcLen);
+        try {
+            int n = 0;
+            while (n < rawLength) {
+                int len = inflater.inflate(dest, destOff + n, rawLength - n);
+                if (len == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += len;
+            }
+            if (n != rawLength) {
+                throw new JcodecException("malformed deflate block, required: " + rawLength + ", decoded: " + n);
+            }
+        }
+        catch (DataFormatException e) {
+            throw new JcodecException("malformed deflate block", e);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        deflater.end();
+        inflater.end();
+    }
+}
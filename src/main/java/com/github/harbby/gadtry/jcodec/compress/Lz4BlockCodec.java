@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec.compress;
+
+import com.github.harbby.gadtry.jcodec.JcodecException;
+
+import java.util.Arrays;
+
+/**
+ * pure java codec of the LZ4 block format.
+ * <p>
+ * A block is a list of sequences: token (literal length: 4bit, match length - 4: 4bit),
+ * extended literal length, literals, match offset (2 bytes little endian), extended match length.
+ * The last sequence has only literals.
+ */
+final class Lz4BlockCodec
+        implements BlockCodec
+{
+    static final String NAME = "lz4";
+    private static final int MIN_MATCH = 4;
+    // the last match must start at least 12 bytes before the end of block
+    private static final int MF_LIMIT = 12;
+    // the last 5 bytes are always literals
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_DISTANCE = (1 << 16) - 1;
+    private static final int HASH_LOG = 14;
+    private static final int SKIP_STRENGTH = 6;
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    @Override
+    public String name()
+    {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length)
+    {
+        return length + length / 255 + 16;
+    }
+
+    private static int readInt(byte[] b, int i)
+    {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int v)
+    {
+        return (v * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff)
+    {
+        int srcEnd = srcOff + srcLen;
+        int d = destOff;
+        int anchor = srcOff;
+        if (srcLen >= MF_LIMIT + 1) {
+            Arrays.fill(hashTable, -1);
+            int matchLimit = srcEnd - LAST_LITERALS;
+            int mfLimit = srcEnd - MF_LIMIT;
+            int s = srcOff + 1;
+            hashTable[hash(readInt(src, srcOff))] = srcOff;
+            while (s < mfLimit) {
+                // find a match, the step grows when there is no match for a long time
+                int ref;
+                int searchCount = 1 << SKIP_STRENGTH;
+                while (true) {
+                    int h = hash(readInt(src, s));
+                    ref = hashTable[h];
+                    hashTable[h] = s;
+                    if (ref >= 0 && s - ref <= MAX_DISTANCE && readInt(src, ref) == readInt(src, s)) {
+                        break;
+                    }
+                    s += searchCount++ >>> SKIP_STRENGTH;
+                    if (s >= mfLimit) {
+                        return writeLastLiterals(src, anchor, srcEnd - anchor, dest, d) - destOff;
+                    }
+                }
+                // extend the match backward
+                while (s > anchor && ref > srcOff && src[s - 1] == src[ref - 1]) {
+                    s--;
+                    ref--;
+                }
+                int matchEnd = s + MIN_MATCH;
+                int refEnd = ref + MIN_MATCH;
+                while (matchEnd < matchLimit && src[matchEnd] == src[refEnd]) {
+                    matchEnd++;
+                    refEnd++;
+                }
+                d = writeSequence(src, anchor, s - anchor, s - ref, matchEnd - s - MIN_MATCH, dest, d);
+                s = matchEnd;
+                anchor = s;
+                if (s < mfLimit) {
+                    hashTable[hash(readInt(src, s - 2))] = s - 2;
+                }
+            }
+        }
+        return writeLastLiterals(src, anchor, srcEnd - anchor, dest, d) - destOff;
+    }
+
+    private static int writeLength(int length, byte[] dest, int d)
+    {
+        while (length >= 255) {
+            dest[d++] = (byte) 255;
+            length -= 255;
+        }
+        dest[d++] = (byte) length;
+        return d;
+    }
+
+    private static int writeSequence(byte[] src, int literalOff, int literalLength, int offset, int matchLength, byte[] dest, int d)
+    {
+        int tokenIndex = d++;
+        int token;
+        if (literalLength >= 15) {
+            token = 15 << 4;
+            d = writeLength(literalLength - 15, dest, d);
+        }
+        else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalOff, dest, d, literalLength);
+        d += literalLength;
+        dest[d++] = (byte) offset;
+        dest[d++] = (byte) (offset >>> 8);
+        if (matchLength >= 15) {
+            token |= 15;
+            d = writeLength(matchLength - 15, dest, d);
+        }
+        else {
+            token |= matchLength;
+        }
+        dest[tokenIndex] = (byte) token;
+        return d;
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalOff, int literalLength, byte[] dest, int d)
+    {
+        if (literalLength >= 15) {
+            dest[d++] = (byte) (15 << 4);
+            d = writeLength(literalLength - 15, dest, d);
+        }
+        else {
+            dest[d++] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, literalOff, dest, d, literalLength);
+        return d + literalLength;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int rawLength)
+    {
+        int s = srcOff;
+        int srcEnd = srcOff + srcLen;
+        int d = destOff;
+        int destEnd = destOff + rawLength;
+        try {
+            while (true) {
+                if (s >= srcEnd) {
+                    throw new JcodecException("malformed lz4 block, the last sequence not found");
+                }
+                int token = src[s++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = src[s++] & 0xFF;
+                        literalLength += b;
+                    }
+                    while (b == 255);
+                }
+                if (literalLength > destEnd - d || literalLength > srcEnd - s) {
+                    throw new JcodecException("malformed lz4 block, literal length: " + literalLength);
+                }
+                System.arraycopy(src, s, dest, d, literalLength);
+                s += literalLength;
+                d += literalLength;
+                if (s == srcEnd) {
+                    break;
+                }
+                int offset = (src[s++] & 0xFF) | (src[s++] & 0xFF) << 8;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[s++] & 0xFF;
+                        matchLength += b;
+                    }
+                    while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = d - offset;
+                if (offset == 0 || ref < destOff || matchLength > destEnd - d) {
+                    throw new JcodecException("malformed lz4 block, match offset: " + offset);
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(dest, ref, dest, d, matchLength);
+                    d += matchLength;
+                }
+                else {
+                    // overlapped copy, e.g. run length
+                    for (int i = 0; i < matchLength; i++) {
+                        dest[d++] = dest[ref++];
+                    }
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            throw new JcodecException("malformed lz4 block", e);
+        }
+        if (d != destEnd) {
+            throw new JcodecException("malformed lz4 block, required: " + rawLength + ", decoded: " + (d - destOff));
+        }
+    }
+}
@@ -43,7 +43,7 @@ class ExtPlatformImpl
     }
 
     @Override
-    public Class<?> defineHiddenClass(Class<?> buddyClass, byte[] classBytes, boolean initialize)
+    public Class<?> defineHiddenClass(Class<?> buddyClass, byte[] classBytes, boolean initialize, boolean nestmate)
             throws IllegalAccessException
     {
         //Platform.getJavaVersion() >= 15
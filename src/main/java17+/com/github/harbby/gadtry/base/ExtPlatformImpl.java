@@ -48,13 +48,16 @@ class ExtPlatformImpl
     }
 
     @Override
-    public Class<?> defineHiddenClass(Class<?> buddyClass, byte[] classBytes, boolean initialize)
+    public Class<?> defineHiddenClass(Class<?> buddyClass, byte[] classBytes, boolean initialize, boolean nestmate)
             throws IllegalAccessException
     {
         //Platform.getJavaVersion() >= 15
         Platform.class.getModule().addReads(buddyClass.getModule());
         MethodHandles.Lookup lookup = MethodHandles.lookup();
         MethodHandles.Lookup prvlookup = MethodHandles.privateLookupIn(buddyClass, lookup);
+        if (nestmate) {
+            return prvlookup.defineHiddenClass(classBytes, initialize, MethodHandles.Lookup.ClassOption.NESTMATE).lookupClass();
+        }
         return prvlookup.defineHiddenClass(classBytes, initialize).lookupClass();
     }
 
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec.aot;
+
+import com.github.harbby.gadtry.jcodec.JcodecAotSerializer;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * generates the source of the field serializer for the classes annotated with {@link JcodecAotSerializer}.
+ * The fields are written in the same order and format as {@code FieldSerializerFactory},
+ * the accessible fields are read and assigned directly, the others use sun.misc.Unsafe with the field offset.
+ * The inherited fields are accessed through a cast to the declaring class, so a hidden field of the subclass
+ * never shadows the field of the super class.
+ * <p>
+ * The processor is shipped in the gadtry jar with the {@code processor} classifier, not in the runtime jar,
+ * so it only runs when that jar is on the annotation processor path,
+ * e.g. {@code annotationProcessor("com.github.harbby:gadtry:<version>:processor")} or the maven {@code annotationProcessorPaths}.
+ */
+public class JcodecAotProcessor
+        extends AbstractProcessor
+{
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv)
+    {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.filer = processingEnv.getFiler();
+        this.messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes()
+    {
+        return Collections.singleton(JcodecAotSerializer.class.getName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        for (Element element : roundEnv.getElementsAnnotatedWith(JcodecAotSerializer.class)) {
+            if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@JcodecAotSerializer must be on a non-abstract class", element);
+                continue;
+            }
+            TypeElement typeElement = (TypeElement) element;
+            PackageElement packageElement = elements.getPackageOf(typeElement);
+            if (!isAccessible(typeElement, packageElement)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@JcodecAotSerializer class must not be private", element);
+                continue;
+            }
+            try {
+                generate(typeElement, packageElement);
+            }
+            catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "generate serializer failed: " + e, element);
+            }
+        }
+        return true;
+    }
+
+    private static class FieldInfo
+    {
+        private final VariableElement field;
+        private final String declaringClassName;
+        // the cast of value to the declaring class for the inherited fields, empty for the fields of the class
+        private final String owner;
+        private final TypeMirror type;
+        private final boolean direct;
+        private final String typeLiteral;
+
+        private FieldInfo(VariableElement field, String declaringClassName, String owner, TypeMirror type, boolean direct, String typeLiteral)
+        {
+            this.field = field;
+            this.declaringClassName = declaringClassName;
+            this.owner = owner;
+            this.type = type;
+            this.direct = direct;
+            this.typeLiteral = typeLiteral;
+        }
+
+        private String name()
+        {
+            return field.getSimpleName().toString();
+        }
+
+        private String access()
+        {
+            return owner.isEmpty() ? "value." + name() : String.format("((%s) value).%s", owner, name());
+        }
+    }
+
+    /**
+     * the same order as FieldSerializer.analyzeClass(): the declared fields of the class, then the super classes.
+     */
+    private List<FieldInfo> analyzeFields(TypeElement typeElement, PackageElement packageElement)
+    {
+        List<FieldInfo> fieldList = new ArrayList<>();
+        TypeElement it = typeElement;
+        while (!it.getQualifiedName().contentEquals(Object.class.getName())) {
+            boolean samePackage = elements.getPackageOf(it).equals(packageElement);
+            String declaringClassName = elements.getBinaryName(it).toString();
+            boolean inherited = it != typeElement;
+            String owner = inherited ? types.erasure(it.asType()).toString() : "";
+            boolean ownerAccessible = !inherited || isAccessible(it, packageElement);
+            for (VariableElement field : ElementFilter.fieldsIn(it.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                TypeMirror type = types.erasure(field.asType());
+                String typeLiteral = type.getKind().isPrimitive() || isAccessible(type, packageElement) ? type.toString() : null;
+                boolean direct = !modifiers.contains(Modifier.PRIVATE) && !modifiers.contains(Modifier.FINAL) &&
+                        (samePackage || modifiers.contains(Modifier.PUBLIC)) && typeLiteral != null && ownerAccessible;
+                fieldList.add(new FieldInfo(field, declaringClassName, owner, type, direct, typeLiteral));
+            }
+            TypeMirror superclass = it.getSuperclass();
+            if (superclass.getKind() != TypeKind.DECLARED) {
+                break;
+            }
+            it = (TypeElement) types.asElement(superclass);
+        }
+        return fieldList;
+    }
+
+    private boolean isAccessible(TypeMirror type, PackageElement packageElement)
+    {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return isAccessible(((ArrayType) type).getComponentType(), packageElement);
+        }
+        if (type.getKind().isPrimitive()) {
+            return true;
+        }
+        return type.getKind() == TypeKind.DECLARED && isAccessible((TypeElement) ((DeclaredType) type).asElement(), packageElement);
+    }
+
+    private boolean isAccessible(TypeElement typeElement, PackageElement packageElement)
+    {
+        boolean samePackage = elements.getPackageOf(typeElement).equals(packageElement);
+        Element it = typeElement;
+        while (it.getKind() != ElementKind.PACKAGE) {
+            Set<Modifier> modifiers = it.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || (!samePackage && !modifiers.contains(Modifier.PUBLIC))) {
+                return false;
+            }
+            it = it.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private static String primitiveName(TypeMirror type)
+    {
+        String name = type.getKind().name().toLowerCase();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void generate(TypeElement typeElement, PackageElement packageElement)
+            throws IOException
+    {
+        String packageName = packageElement.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(typeElement).toString();
+        String className = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1) + JcodecAotSerializer.CLASS_SUFFIX;
+        String typeName = types.erasure(typeElement.asType()).toString();
+        List<FieldInfo> fieldList = analyzeFields(typeElement, packageElement);
+
+        StringBuilder code = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("import com.github.harbby.gadtry.jcodec.FieldSerializer;\n")
+                .append("import com.github.harbby.gadtry.jcodec.InputView;\n")
+                .append("import com.github.harbby.gadtry.jcodec.Jcodec;\n")
+                .append("import com.github.harbby.gadtry.jcodec.OutputView;\n")
+                .append("import com.github.harbby.gadtry.jcodec.Serializer;\n\n")
+                .append("/**\n * generated by ").append(JcodecAotProcessor.class.getName()).append(", do not edit\n */\n")
+                .append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("public final class ").append(className).append("\n        extends FieldSerializer<").append(typeName).append(">\n{\n")
+                .append("    private static final sun.misc.Unsafe unsafe = com.github.harbby.gadtry.base.Platform.getUnsafe();\n");
+        for (int i = 0; i < fieldList.size(); i++) {
+            FieldInfo fieldInfo = fieldList.get(i);
+            if (!fieldInfo.direct) {
+                code.append(String.format("    private static final long OFFSET%s = getFieldOffset(%s.class, \"%s\", \"%s\");%n",
+                        i, typeName, fieldInfo.declaringClassName, fieldInfo.name()));
+            }
+            if (!fieldInfo.type.getKind().isPrimitive()) {
+                String fieldClass = fieldInfo.typeLiteral != null ? fieldInfo.typeLiteral + ".class" :
+                        String.format("getDeclaredField(%s.class, \"%s\", \"%s\").getType()", typeName, fieldInfo.declaringClassName, fieldInfo.name());
+                code.append(String.format("    private static final Class<?> CLASS%s = %s;%n", i, fieldClass));
+            }
+        }
+        for (int i = 0; i < fieldList.size(); i++) {
+            if (!fieldList.get(i).type.getKind().isPrimitive()) {
+                code.append(String.format("    private final Serializer serializer%s;%n", i));
+            }
+        }
+        // constructor
+        code.append("\n    public ").append(className).append("(Jcodec jcodec, Class<? extends ").append(typeName).append("> typeClass)\n    {\n")
+                .append("        super(jcodec, typeClass);\n");
+        for (int i = 0; i < fieldList.size(); i++) {
+            FieldInfo fieldInfo = fieldList.get(i);
+            if (!fieldInfo.type.getKind().isPrimitive()) {
+                code.append(String.format("        this.serializer%s = getFieldSerializer(jcodec, getDeclaredField(%s.class, \"%s\", \"%s\"));%n",
+                        i, typeName, fieldInfo.declaringClassName, fieldInfo.name()));
+            }
+        }
+        code.append("    }\n");
+        // write
+        code.append("\n    @Override\n    public void write(Jcodec jcodec, OutputView output, ").append(typeName).append(" value)\n    {\n");
+        for (int i = 0; i < fieldList.size(); i++) {
+            FieldInfo fieldInfo = fieldList.get(i);
+            boolean primitive = fieldInfo.type.getKind().isPrimitive();
+            String getter;
+            if (fieldInfo.direct) {
+                getter = fieldInfo.access();
+            }
+            else {
+                getter = String.format("unsafe.get%s(value, OFFSET%s)", primitive ? primitiveName(fieldInfo.type) : "Object", i);
+            }
+            if (primitive) {
+                code.append(String.format("        output.write%s(%s);%n", primitiveName(fieldInfo.type), getter));
+            }
+            else {
+                code.append(String.format("        writeField(jcodec, output, %s, serializer%s);%n", getter, i));
+            }
+        }
+        code.append("    }\n");
+        // read
+        code.append("\n    @Override\n    public ").append(typeName).append(" read(Jcodec jcodec, InputView input, Class<? extends ")
+                .append(typeName).append("> typeClass)\n    {\n")
+                .append("        ").append(typeName).append(" value = newInstance(jcodec, input, typeClass);\n");
+        for (int i = 0; i < fieldList.size(); i++) {
+            FieldInfo fieldInfo = fieldList.get(i);
+            boolean primitive = fieldInfo.type.getKind().isPrimitive();
+            String read = primitive ? String.format("input.read%s()", primitiveName(fieldInfo.type)) :
+                    String.format("readField(jcodec, input, CLASS%s, serializer%s)", i, i);
+            if (fieldInfo.direct) {
+                code.append(String.format("        %s = %s%s;%n", fieldInfo.access(), primitive ? "" : "(" + fieldInfo.typeLiteral + ") ", read));
+            }
+            else {
+                code.append(String.format("        unsafe.put%s(value, OFFSET%s, %s);%n", primitive ? primitiveName(fieldInfo.type) : "Object", i, read));
+            }
+        }
+        code.append("        return value;\n    }\n}\n");
+
+        String sourceName = packageName.isEmpty() ? className : packageName + "." + className;
+        try (Writer writer = filer.createSourceFile(sourceName, typeElement).openWriter()) {
+            writer.write(code.toString());
+        }
+    }
+}
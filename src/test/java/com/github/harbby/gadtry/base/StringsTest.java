@@ -18,6 +18,8 @@ package com.github.harbby.gadtry.base;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+
 public class StringsTest
 {
     @Test
@@ -45,5 +47,15 @@ public class StringsTest
         Assertions.assertTrue(Strings.isAscii("Info"));
         Assertions.assertTrue(Strings.isAscii("123info.!#@&123Abc"));
         Assertions.assertFalse(Strings.isAscii("hello!,你好"));
+        // LATIN1 compact string
+        Assertions.assertFalse(Strings.isAscii("café"));
+        Assertions.assertFalse(Strings.isAscii("0123456789abcdef\u00ff"));
+        Assertions.assertTrue(Strings.isAscii("0123456789abcdef\u00ff", 16));
+        Assertions.assertFalse(Strings.isAscii("0123456789abcdef\u4f60"));
+        Assertions.assertTrue(Strings.isAscii("0123456789abcdef\u4f60", 16));
+        byte[] bytes = "0123456789abcdef\u00ff".getBytes(StandardCharsets.ISO_8859_1);
+        Assertions.assertTrue(Strings.isAscii(bytes, 0, 16));
+        Assertions.assertFalse(Strings.isAscii(bytes, 1, 16));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> Strings.isAscii(bytes, 10, 16));
     }
 }
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import com.github.harbby.gadtry.jcodec.codecs.StringSerializer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class CacheBuilderTest
+{
+    private static <K, V> Cache<K, V> create(EvictPolicy policy, int maxCapacity, Callback<K, V> callback)
+    {
+        return CacheBuilder.<K, V>newBuilder()
+                .maxCapacity(maxCapacity)
+                .evictPolicy(policy)
+                .callback(callback)
+                .build();
+    }
+
+    @Test
+    public void capacityTest()
+    {
+        for (EvictPolicy policy : EvictPolicy.values()) {
+            List<Integer> evictList = new ArrayList<>();
+            Cache<Integer, Integer> cache = create(policy, 10, (k, v, cause) -> evictList.add(k));
+            for (int i = 0; i < 100; i++) {
+                cache.put(i, i);
+                cache.getIfPresent(i);
+            }
+            Assertions.assertEquals(10, cache.size(), policy.name());
+            Assertions.assertEquals(90, evictList.size(), policy.name());
+            cache.getAllPresent().forEach((k, v) -> Assertions.assertEquals(k, v));
+            for (int i = 0; i < 100; i++) {
+                cache.remove(i);
+            }
+            Assertions.assertEquals(0, cache.size(), policy.name());
+        }
+    }
+
+    @Test
+    public void lruTest()
+    {
+        List<String> evictList = new ArrayList<>();
+        Cache<String, String> cache = create(EvictPolicy.LRU, 2, (k, v, cause) -> evictList.add(k));
+        cache.put("k1", "v1");
+        cache.put("k2", "v2");
+        cache.getIfPresent("k1");
+        cache.put("k3", "v3");
+        Assertions.assertEquals(Collections.singletonList("k2"), evictList);
+    }
+
+    @Test
+    public void fifoTest()
+    {
+        List<String> evictList = new ArrayList<>();
+        Cache<String, String> cache = create(EvictPolicy.FIFO, 2, (k, v, cause) -> evictList.add(k));
+        cache.put("k1", "v1");
+        cache.put("k2", "v2");
+        cache.getIfPresent("k1");
+        cache.put("k1", "v11");
+        cache.put("k3", "v3");
+        Assertions.assertEquals(Collections.singletonList("k1"), evictList);
+    }
+
+    @Test
+    public void lfuTest()
+    {
+        List<String> evictList = new ArrayList<>();
+        Cache<String, String> cache = create(EvictPolicy.LFU, 3, (k, v, cause) -> evictList.add(k));
+        cache.put("k1", "v1");
+        cache.put("k2", "v2");
+        cache.put("k3", "v3");
+        cache.getIfPresent("k1");
+        cache.getIfPresent("k1");
+        cache.getIfPresent("k3");
+        cache.put("k4", "v4");
+        cache.put("k5", "v5");
+        // k2 has the lowest frequency, then k4 is the lru one of the frequency 1 entries
+        Assertions.assertEquals(Arrays.asList("k2", "k4"), evictList);
+        Assertions.assertEquals("v1", cache.getIfPresent("k1"));
+        Assertions.assertEquals("v3", cache.getIfPresent("k3"));
+    }
+
+    @Test
+    public void tinyLfuScanResistantTest()
+    {
+        int maxCapacity = 100;
+        Cache<Integer, Integer> lru = create(EvictPolicy.LRU, maxCapacity, (k, v, cause) -> {});
+        Cache<Integer, Integer> tinyLfu = create(EvictPolicy.TINY_LFU, maxCapacity, (k, v, cause) -> {});
+        Random random = new Random(0);
+        int scanKey = 1000;
+        int lruHits = 0;
+        int tinyLfuHits = 0;
+        for (int i = 0; i < 100_000; i++) {
+            int key;
+            if (random.nextBoolean()) {
+                // hot keys
+                key = random.nextInt(80);
+            }
+            else {
+                // one-hit scan
+                key = scanKey++;
+            }
+            if (lru.getIfPresent(key) != null) {
+                lruHits++;
+            }
+            else {
+                lru.put(key, key);
+            }
+            if (tinyLfu.getIfPresent(key) != null) {
+                tinyLfuHits++;
+            }
+            else {
+                tinyLfu.put(key, key);
+            }
+        }
+        Assertions.assertTrue(tinyLfu.size() <= maxCapacity);
+        Assertions.assertTrue(tinyLfuHits > lruHits, String.format("tinyLfu hits %s, lru hits %s", tinyLfuHits, lruHits));
+    }
+
+    @Test
+    public void concurrencyLevelTest()
+    {
+        for (EvictPolicy policy : EvictPolicy.values()) {
+            Cache<Integer, Integer> cache = CacheBuilder.<Integer, Integer>newBuilder()
+                    .maxCapacity(100)
+                    .evictPolicy(policy)
+                    .concurrencyLevel(4)
+                    .build();
+            Assertions.assertTrue(cache instanceof StripedHashCache);
+            for (int i = 0; i < 1000; i++) {
+                int value = i;
+                Assertions.assertEquals(value, cache.get(i, () -> value).intValue());
+            }
+            Assertions.assertTrue(cache.size() <= 100);
+        }
+    }
+
+    private static int totalWeight(Cache<String, String> cache)
+    {
+        return cache.asMap().values().stream().mapToInt(String::length).sum();
+    }
+
+    @Test
+    public void maximumWeightTest()
+    {
+        for (EvictPolicy policy : EvictPolicy.values()) {
+            List<String> evictList = new ArrayList<>();
+            Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                    .maximumWeight(100)
+                    .weigher((k, v) -> v.length())
+                    .evictPolicy(policy)
+                    .callback((k, v, cause) -> evictList.add(k))
+                    .build();
+            for (int i = 0; i < 100; i++) {
+                cache.put("k" + i, String.join("", Collections.nCopies(i % 20, "x")));
+                Assertions.assertTrue(totalWeight(cache) <= 100, policy.name());
+            }
+            Assertions.assertEquals(100 - cache.size(), evictList.size());
+
+            //the entry heavier than maximumWeight is evicted immediately
+            evictList.clear();
+            cache.put("huge", String.join("", Collections.nCopies(101, "x")));
+            Assertions.assertNull(cache.getIfPresent("huge"));
+            Assertions.assertTrue(evictList.contains("huge"));
+        }
+    }
+
+    @Test
+    public void weightUpdateTest()
+    {
+        List<String> evictList = new ArrayList<>();
+        Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                .maxCapacity(100)
+                .maximumWeight(10)
+                .weigher((k, v) -> v.length())
+                .callback((k, v, cause) -> evictList.add(k))
+                .build();
+        cache.put("k1", "xxx");
+        cache.put("k2", "xxx");
+        cache.put("k3", "xxx");
+        Assertions.assertTrue(evictList.isEmpty());
+        //k1 grows from 3 to 6, the least recently used k2 is evicted
+        cache.put("k1", "xxxxxx");
+        Assertions.assertEquals(Collections.singletonList("k2"), evictList);
+        Assertions.assertEquals(9, totalWeight(cache));
+    }
+
+    @Test
+    public void concurrentMaximumWeightTest()
+    {
+        Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                .maximumWeight(1000)
+                .weigher((k, v) -> v.length())
+                .concurrencyLevel(4)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("k" + i, String.join("", Collections.nCopies(i % 10, "x")));
+        }
+        Assertions.assertTrue(totalWeight(cache) <= 1000);
+    }
+
+    @Test
+    public void weigherNotSetTest()
+    {
+        Assertions.assertThrows(IllegalStateException.class, () -> CacheBuilder.newBuilder().maximumWeight(10).build());
+        Assertions.assertThrows(IllegalStateException.class, () -> CacheBuilder.<String, String>newBuilder()
+                .maxCapacity(10)
+                .weigher((k, v) -> v.length())
+                .build());
+    }
+
+    @Test
+    public void recordStatsTest()
+    {
+        Cache<Integer, Integer> cache = CacheBuilder.<Integer, Integer>newBuilder()
+                .maxCapacity(10)
+                .recordStats()
+                .build();
+        for (int i = 0; i < 20; i++) {
+            int value = i;
+            cache.get(i, () -> value);
+        }
+        Assertions.assertEquals(10, cache.get(10, () -> -1).intValue());
+        Assertions.assertNull(cache.getIfPresent(0));
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.get(100, () -> {
+            throw new IllegalStateException("load failed");
+        }));
+
+        CacheStats stats = cache.stats();
+        Assertions.assertEquals(1, stats.hitCount());
+        Assertions.assertEquals(22, stats.missCount());
+        Assertions.assertEquals(20, stats.loadSuccessCount());
+        Assertions.assertEquals(1, stats.loadFailureCount());
+        Assertions.assertEquals(10, stats.evictionCount(EvictCause.OVERFLOW));
+        Assertions.assertEquals(0, stats.evictionCount(EvictCause.TIME_OUT));
+        Assertions.assertTrue(stats.averageChainLength() >= 1.0);
+        Assertions.assertTrue(stats.maxChainLength() >= 1);
+    }
+
+    @Test
+    public void concurrentRecordStatsTest()
+    {
+        Cache<Integer, Integer> cache = CacheBuilder.<Integer, Integer>newBuilder()
+                .maxCapacity(100)
+                .concurrencyLevel(4)
+                .recordStats()
+                .build();
+        for (int i = 0; i < 200; i++) {
+            cache.put(i % 50, i);
+            cache.getIfPresent(i % 60);
+        }
+        CacheStats stats = cache.stats();
+        Assertions.assertEquals(200, stats.requestCount());
+        Assertions.assertEquals(30, stats.missCount());
+        Assertions.assertEquals(0, stats.evictionCount());
+    }
+
+    @Test
+    public void statsNotRecordedTest()
+    {
+        Cache<Integer, Integer> cache = CacheBuilder.<Integer, Integer>newBuilder()
+                .maxCapacity(10)
+                .build();
+        cache.put(1, 1);
+        cache.getIfPresent(1);
+        CacheStats stats = cache.stats();
+        Assertions.assertEquals(0, stats.requestCount());
+        Assertions.assertEquals(1, stats.maxChainLength());
+    }
+
+    @Test
+    public void chainStatsMaintainedTest()
+    {
+        List<Cache<String, String>> caches = Arrays.asList(
+                CacheBuilder.<String, String>newBuilder().maxCapacity(100_000).build(),
+                CacheBuilder.<String, String>newBuilder().maxCapacity(100_000)
+                        .offHeap(new StringSerializer(), new StringSerializer()).build());
+        for (Cache<String, String> cache : caches) {
+            for (int i = 0; i < 5000; i++) {
+                cache.put("key" + i, "value" + i);
+            }
+            CacheStats stats = cache.stats();
+            Assertions.assertTrue(stats.averageChainLength() >= 1.0);
+            Assertions.assertTrue(stats.maxChainLength() >= 1);
+            for (int i = 0; i < 5000; i++) {
+                cache.remove("key" + i);
+            }
+            //the used buckets are counted down by the removal, the max chain length is a high-water mark
+            Assertions.assertEquals(0.0, cache.stats().averageChainLength());
+            Assertions.assertEquals(stats.maxChainLength(), cache.stats().maxChainLength());
+            cache.put("key", "value");
+            Assertions.assertEquals(1.0, cache.stats().averageChainLength());
+            cache.clear();
+            Assertions.assertEquals(0, cache.stats().maxChainLength());
+        }
+    }
+
+    @Test
+    public void bulkOperationTest()
+    {
+        for (int concurrencyLevel : new int[] {0, 4}) {
+            CacheBuilder<Integer, String> builder = CacheBuilder.<Integer, String>newBuilder()
+                    .maxCapacity(100)
+                    .recordStats();
+            if (concurrencyLevel > 0) {
+                builder.concurrencyLevel(concurrencyLevel);
+            }
+            Cache<Integer, String> cache = builder.build();
+            Map<Integer, String> values = new HashMap<>();
+            for (int i = 0; i < 10; i++) {
+                values.put(i, "v" + i);
+            }
+            cache.putAll(values);
+            Assertions.assertEquals(10, cache.size());
+
+            List<Set<Integer>> loadKeys = new ArrayList<>();
+            Map<Integer, String> result = cache.getAll(Arrays.asList(15, 5, 12, 5, 99), keys -> {
+                loadKeys.add(new HashSet<>(keys));
+                Map<Integer, String> loaded = new HashMap<>();
+                for (Integer key : keys) {
+                    if (key != 99) {
+                        loaded.put(key, "loaded" + key);
+                    }
+                }
+                return loaded;
+            });
+            Assertions.assertEquals(Collections.singletonList(new HashSet<>(Arrays.asList(15, 12, 99))), loadKeys);
+            Assertions.assertEquals(Arrays.asList(15, 5, 12), new ArrayList<>(result.keySet()));
+            Assertions.assertEquals(Arrays.asList("loaded15", "v5", "loaded12"), new ArrayList<>(result.values()));
+            Assertions.assertEquals("loaded12", cache.getIfPresent(12));
+            Assertions.assertNull(cache.getIfPresent(99));
+            Assertions.assertEquals(1, cache.stats().loadSuccessCount());
+
+            cache.invalidateAll(Arrays.asList(1, 2, 3, 12));
+            Assertions.assertEquals(8, cache.size());
+            Assertions.assertNull(cache.getIfPresent(12));
+            Assertions.assertEquals("v4", cache.getIfPresent(4));
+        }
+    }
+
+    @Test
+    public void notSetMaxCapacityTest()
+    {
+        Assertions.assertThrows(IllegalStateException.class, () -> CacheBuilder.newBuilder().build());
+    }
+}
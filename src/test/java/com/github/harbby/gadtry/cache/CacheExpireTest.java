@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CacheExpireTest
+{
+    @Test
+    public void expireAfterWriteTest()
+            throws InterruptedException
+    {
+        Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                .maxCapacity(10)
+                .expireAfterWrite(200, TimeUnit.MILLISECONDS)
+                .build();
+        cache.put("k1", "v1");
+        TimeUnit.MILLISECONDS.sleep(120);
+        //read does not extend the write ttl
+        Assertions.assertEquals("v1", cache.getIfPresent("k1"));
+        TimeUnit.MILLISECONDS.sleep(120);
+        Assertions.assertNull(cache.getIfPresent("k1"));
+    }
+
+    @Test
+    public void maxDurationTest()
+            throws InterruptedException
+    {
+        Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                .maxCapacity(10)
+                .maxDuration(200, TimeUnit.MILLISECONDS)
+                .build();
+        cache.put("k1", "v1");
+        for (int i = 0; i < 2; i++) {
+            TimeUnit.MILLISECONDS.sleep(80);
+            Assertions.assertEquals("v1", cache.getIfPresent("k1"));
+        }
+        //the reads don't extend the entry
+        TimeUnit.MILLISECONDS.sleep(80);
+        Assertions.assertNull(cache.getIfPresent("k1"));
+    }
+
+    @Test
+    public void expireAfterAccessTest()
+            throws InterruptedException
+    {
+        Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                .maxCapacity(10)
+                .expireAfterAccess(200, TimeUnit.MILLISECONDS)
+                .build();
+        cache.put("k1", "v1");
+        cache.put("k2", "v2");
+        for (int i = 0; i < 3; i++) {
+            TimeUnit.MILLISECONDS.sleep(100);
+            Assertions.assertEquals("v1", cache.getIfPresent("k1"));
+        }
+        Assertions.assertNull(cache.getIfPresent("k2"));
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void variableExpiryTest()
+            throws InterruptedException
+    {
+        Cache<String, Long> cache = CacheBuilder.<String, Long>newBuilder()
+                .maxCapacity(10)
+                .expireAfter((Expiry<String, Long>) (key, ttl) -> TimeUnit.MILLISECONDS.toNanos(ttl))
+                .build();
+        cache.put("short", 50L);
+        cache.put("long", 60_000L);
+        cache.put("forever", Long.MAX_VALUE);
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assertions.assertNull(cache.getIfPresent("short"));
+        Assertions.assertEquals(60_000L, cache.getIfPresent("long").longValue());
+        Assertions.assertEquals(Long.MAX_VALUE, cache.getIfPresent("forever").longValue());
+    }
+
+    @Test
+    public void proactiveExpireTest()
+            throws InterruptedException
+    {
+        List<String> evictList = new ArrayList<>();
+        Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                .maxCapacity(10)
+                .callback((k, v, cause) -> evictList.add(k + ":" + cause))
+                .expireAfterWrite(50, TimeUnit.MILLISECONDS)
+                .build();
+        cache.put("k1", "v1");
+        cache.put("k2", "v2");
+        TimeUnit.MILLISECONDS.sleep(200);
+        cache.cleanUp();
+        Assertions.assertEquals(0, cache.size());
+        evictList.sort(String::compareTo);
+        Assertions.assertEquals(Arrays.asList("k1:TIME_OUT", "k2:TIME_OUT"), evictList);
+    }
+
+    @Test
+    public void expiredEntriesNotOverflowTest()
+            throws InterruptedException
+    {
+        List<String> evictList = new ArrayList<>();
+        Cache<Integer, Integer> cache = CacheBuilder.<Integer, Integer>newBuilder()
+                .maxCapacity(10)
+                .callback((k, v, cause) -> evictList.add(k + ":" + cause))
+                .expireAfterWrite(50, TimeUnit.MILLISECONDS)
+                .build();
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        TimeUnit.MILLISECONDS.sleep(200);
+        //the write advances the timer wheel, the dead entries are removed before the capacity check
+        cache.put(10, 10);
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(10, evictList.size());
+        Assertions.assertTrue(evictList.stream().allMatch(x -> x.endsWith(":TIME_OUT")));
+    }
+
+    @Test
+    public void expiryNotCombinedTest()
+    {
+        CacheBuilder<String, String> builder = CacheBuilder.<String, String>newBuilder()
+                .maxCapacity(10)
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .expireAfter((key, value) -> Long.MAX_VALUE);
+        Assertions.assertThrows(IllegalStateException.class, builder::build);
+    }
+
+    @Test
+    public void refreshAfterWriteTest()
+            throws InterruptedException
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                    .maxCapacity(10)
+                    .refreshAfterWrite(100, TimeUnit.MILLISECONDS)
+                    .refreshExecutor(executor)
+                    .build();
+            Assertions.assertEquals("v1", cache.get("k1", () -> "v1"));
+            TimeUnit.MILLISECONDS.sleep(150);
+
+            CountDownLatch refreshLatch = new CountDownLatch(1);
+            AtomicInteger refreshCount = new AtomicInteger();
+            for (int i = 0; i < 3; i++) {
+                //the stale value is served while the refresh is in flight
+                Assertions.assertEquals("v1", cache.get("k1", () -> {
+                    refreshCount.incrementAndGet();
+                    refreshLatch.await();
+                    return "v2";
+                }));
+            }
+            refreshLatch.countDown();
+            executor.shutdown();
+            Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, refreshCount.get());
+            Assertions.assertEquals("v2", cache.getIfPresent("k1"));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void writeDuringRefreshTest()
+            throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                    .maxCapacity(10)
+                    .refreshAfterWrite(50, TimeUnit.MILLISECONDS)
+                    .refreshExecutor(executor)
+                    .build();
+            cache.put("k1", "v1");
+            cache.put("k2", "v1");
+            TimeUnit.MILLISECONDS.sleep(100);
+
+            CountDownLatch refreshStarted = new CountDownLatch(2);
+            CountDownLatch refreshLatch = new CountDownLatch(1);
+            for (String key : Arrays.asList("k1", "k2")) {
+                Assertions.assertEquals("v1", cache.get(key, () -> {
+                    refreshStarted.countDown();
+                    refreshLatch.await();
+                    return "refreshed";
+                }));
+            }
+            Assertions.assertTrue(refreshStarted.await(10, TimeUnit.SECONDS));
+            cache.put("k1", "new");
+            cache.remove("k2");
+            refreshLatch.countDown();
+            executor.shutdown();
+            Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            // the refresh doesn't overwrite the newer value or resurrect the removed key
+            Assertions.assertEquals("new", cache.getIfPresent("k1"));
+            Assertions.assertNull(cache.getIfPresent("k2"));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void refreshFailedTest()
+            throws InterruptedException
+    {
+        Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                .maxCapacity(10)
+                .refreshAfterWrite(50, TimeUnit.MILLISECONDS)
+                .refreshExecutor(Runnable::run)
+                .build();
+        cache.put("k1", "v1");
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assertions.assertEquals("v1", cache.get("k1", () -> {
+            throw new IllegalStateException("refresh failed");
+        }));
+        Assertions.assertEquals("v1", cache.getIfPresent("k1"));
+        Assertions.assertEquals("v1", cache.get("k1", () -> "v2"));
+        Assertions.assertEquals("v2", cache.getIfPresent("k1"));
+    }
+
+    @Test
+    public void timerWheelScheduleExpiredNodeTest()
+    {
+        long tick = 1L << 26;
+        long start = 1000 * tick;
+        TimerWheel<String, String> timerWheel = new TimerWheel<>(start);
+        AbstractHashCache.Node<String, String> node = new AbstractHashCache.Node<>("k1", "v1", 0);
+        node.expireTime = start - 3 * tick;
+        timerWheel.schedule(node);
+
+        List<String> expired = new ArrayList<>();
+        // the expired node is drained by the next tick, not when the wheel wraps around
+        timerWheel.advance(start + tick, n -> expired.add(n.key));
+        Assertions.assertEquals(Arrays.asList("k1"), expired);
+    }
+}
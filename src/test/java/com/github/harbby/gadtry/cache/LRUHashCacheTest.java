@@ -124,4 +124,122 @@ public class LRUHashCacheTest
 
         Assertions.assertTrue(cache.getAllPresent().isEmpty());
     }
+
+    @Test
+    public void hugeCapacityResizeTest()
+    {
+        Cache<Integer, Integer> cache = CacheBuilder.<Integer, Integer>newBuilder()
+                .maxCapacity(Integer.MAX_VALUE)
+                .build();
+        for (int i = 0; i < 100_000; i++) {
+            cache.put(i, i);
+        }
+        Assertions.assertEquals(100_000, cache.size());
+        for (int i = 0; i < 100_000; i++) {
+            Assertions.assertEquals(i, cache.getIfPresent(i).intValue());
+        }
+        Assertions.assertTrue(cache.stats().maxChainLength() < 8);
+    }
+
+    @Test
+    public void repeatedLookupNotRecordedTest()
+    {
+        List<String> evictList = new ArrayList<>();
+        LRUHashCache<String, Integer> cache = new LRUHashCache<>(2, (k, v, cause) -> evictList.add(k), TimeUnit.SECONDS.toMillis(60));
+        cache.put("a", 1);
+        cache.put("b", 2);
+        //the internal recheck doesn't move the key in the lru order
+        Assertions.assertEquals(1, cache.getNodeIfPresent("a", false).value.intValue());
+        cache.put("c", 3);
+        Assertions.assertEquals(Arrays.asList("a"), evictList);
+    }
+
+    @Test
+    public void hashCollisionTest()
+    {
+        List<String> evictList = new ArrayList<>();
+        Cache<BadKey, Integer> cache = new LRUHashCache<>(500, (k, v, cause) -> evictList.add(k.id + ":" + cause), TimeUnit.SECONDS.toMillis(60));
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new BadKey(i), i);
+        }
+        //the first 500 keys are evicted in lru order
+        Assertions.assertEquals(500, evictList.size());
+        Assertions.assertEquals("0:OVERFLOW", evictList.get(0));
+        Assertions.assertEquals("499:OVERFLOW", evictList.get(499));
+        Assertions.assertEquals(500, cache.size());
+        Assertions.assertEquals(500, cache.asMap().entrySet().size());
+        int count = 0;
+        for (Integer value : cache.asMap().values()) {
+            Assertions.assertTrue(value >= 500);
+            count++;
+        }
+        Assertions.assertEquals(500, count);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i < 500 ? null : i, cache.getIfPresent(new BadKey(i)));
+        }
+        for (int i = 500; i < 1000; i += 2) {
+            Assertions.assertEquals(i, cache.remove(new BadKey(i)).intValue());
+        }
+        Assertions.assertEquals(250, cache.size());
+        Assertions.assertEquals(250, cache.getAllPresent().size());
+        Assertions.assertNull(cache.getIfPresent(new BadKey(500)));
+        Assertions.assertEquals(501, cache.getIfPresent(new BadKey(501)).intValue());
+        cache.clear();
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertNull(cache.getIfPresent(new BadKey(501)));
+    }
+
+    @Test
+    public void comparableHashCollisionTest()
+    {
+        Cache<ComparableBadKey, Integer> cache = new LRUHashCache<>(1000, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new ComparableBadKey(i), i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            Assertions.assertEquals(i, cache.remove(new ComparableBadKey(i)).intValue());
+        }
+        Assertions.assertEquals(500, cache.size());
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i % 2 == 0 ? null : i, cache.getIfPresent(new ComparableBadKey(i)));
+        }
+    }
+
+    private static class BadKey
+    {
+        final int id;
+
+        private BadKey(int id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return id & 3;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof BadKey && ((BadKey) obj).id == id;
+        }
+    }
+
+    private static class ComparableBadKey
+            extends BadKey
+            implements Comparable<ComparableBadKey>
+    {
+        private ComparableBadKey(int id)
+        {
+            super(id);
+        }
+
+        @Override
+        public int compareTo(ComparableBadKey o)
+        {
+            return Integer.compare(this.id, o.id);
+        }
+    }
 }
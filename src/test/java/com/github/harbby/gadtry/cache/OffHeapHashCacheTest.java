@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import com.github.harbby.gadtry.base.Platform;
+import com.github.harbby.gadtry.jcodec.InputView;
+import com.github.harbby.gadtry.jcodec.Jcodec;
+import com.github.harbby.gadtry.jcodec.codecs.IntSerializer;
+import com.github.harbby.gadtry.jcodec.codecs.ListSerializer;
+import com.github.harbby.gadtry.jcodec.codecs.StringSerializer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OffHeapHashCacheTest
+{
+    private static Cache<Integer, String> create(int maxCapacity, Callback<Integer, String> callback)
+    {
+        return CacheBuilder.<Integer, String>newBuilder()
+                .maxCapacity(maxCapacity)
+                .offHeap(new IntSerializer(), new StringSerializer())
+                .callback(callback)
+                .build();
+    }
+
+    @Test
+    public void baseTest()
+    {
+        Cache<Integer, String> cache = create(1000, (k, v, cause) -> {});
+        for (int i = 0; i < 500; i++) {
+            Assertions.assertNull(cache.put(i, "value" + i));
+        }
+        Assertions.assertEquals(500, cache.size());
+        Assertions.assertEquals("value1", cache.getIfPresent(1));
+        Assertions.assertEquals("value2", cache.get(2, () -> "other"));
+        Assertions.assertEquals("value600", cache.get(600, () -> "value600"));
+        Assertions.assertEquals("value3", cache.put(3, "value33"));
+        Assertions.assertEquals("value33", cache.getIfPresent(3));
+        Assertions.assertEquals("value4", cache.remove(4));
+        Assertions.assertNull(cache.getIfPresent(4));
+        Assertions.assertNull(cache.remove(4));
+        Assertions.assertEquals(500, cache.size());
+
+        Map<Integer, String> map = cache.getAllPresent();
+        Assertions.assertEquals(500, map.size());
+        Assertions.assertEquals("value33", map.get(3));
+        Assertions.assertEquals("value100", map.get(100));
+
+        cache.clear();
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertNull(cache.getIfPresent(1));
+        cache.put(1, "value1");
+        Assertions.assertEquals("value1", cache.getIfPresent(1));
+    }
+
+    @Test
+    public void lruTest()
+    {
+        List<String> evictList = new ArrayList<>();
+        Cache<Integer, String> cache = create(3, (k, v, cause) -> evictList.add(k + ":" + v + ":" + cause));
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        cache.getIfPresent(1);
+        cache.put(4, "d");
+        Assertions.assertEquals(Collections.singletonList("2:b:OVERFLOW"), evictList);
+        cache.put(3, "cc");
+        cache.put(5, "e");
+        Assertions.assertEquals(Arrays.asList("2:b:OVERFLOW", "1:a:OVERFLOW"), evictList);
+        Assertions.assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void maximumWeightTest()
+    {
+        Cache<Integer, String> cache = CacheBuilder.<Integer, String>newBuilder()
+                .maximumWeight(64 * 1024)
+                .offHeap(new IntSerializer(), new StringSerializer())
+                .build();
+        String value = String.join("", Collections.nCopies(100, "x"));
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, value + i);
+        }
+        OffHeapHashCache<Integer, String> offHeapCache = (OffHeapHashCache<Integer, String>) cache;
+        Assertions.assertTrue(offHeapCache.usedMemory() <= 64 * 1024);
+        Assertions.assertTrue(cache.size() > 100);
+        Assertions.assertEquals(value + 9999, cache.getIfPresent(9999));
+        Assertions.assertNull(cache.getIfPresent(0));
+
+        //the huge record is allocated out of the slabs
+        String hugeValue = String.join("", Collections.nCopies(2 << 20, "x"));
+        Cache<Integer, String> hugeCache = CacheBuilder.<Integer, String>newBuilder()
+                .maxCapacity(10)
+                .offHeap(new IntSerializer(), new StringSerializer())
+                .build();
+        hugeCache.put(1, hugeValue);
+        Assertions.assertEquals(hugeValue, hugeCache.getIfPresent(1));
+        Assertions.assertEquals(hugeValue, hugeCache.remove(1));
+    }
+
+    @Test
+    public void growTest()
+    {
+        Cache<String, String> cache = CacheBuilder.<String, String>newBuilder()
+                .maxCapacity(100_000)
+                .offHeap(new StringSerializer(), new StringSerializer())
+                .recordStats()
+                .build();
+        for (int i = 0; i < 20_000; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        for (int i = 0; i < 20_000; i += 2) {
+            cache.remove("key" + i);
+        }
+        for (int i = 0; i < 20_000; i++) {
+            Assertions.assertEquals(i % 2 == 0 ? null : "value" + i, cache.getIfPresent("key" + i));
+        }
+        CacheStats stats = cache.stats();
+        Assertions.assertEquals(10_000, stats.hitCount());
+        Assertions.assertEquals(10_000, stats.missCount());
+        Assertions.assertTrue(stats.averageChainLength() < 2.0);
+    }
+
+    @Test
+    public void decodeRecordAloneTest()
+    {
+        Cache<String, List<Bean>> cache = CacheBuilder.<String, List<Bean>>newBuilder()
+                .maxCapacity(10)
+                .offHeap(new StringSerializer(), new ListSerializer<>())
+                .build();
+        // the class name of unregistered Bean is written in every record
+        cache.put("k1", Arrays.asList(new Bean(1), new Bean(2)));
+        cache.put("k2", Collections.singletonList(new Bean(3)));
+        Assertions.assertEquals(Collections.singletonList(new Bean(3)), cache.getIfPresent("k2"));
+        Assertions.assertEquals(Arrays.asList(new Bean(1), new Bean(2)), cache.getIfPresent("k1"));
+    }
+
+    private static class Bean
+    {
+        private int id;
+
+        private Bean(int id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Bean && ((Bean) o).id == id;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return id;
+        }
+    }
+
+    @Test
+    public void notSupportedTest()
+    {
+        Assertions.assertThrows(IllegalStateException.class, () -> CacheBuilder.<Integer, String>newBuilder()
+                .maxCapacity(10)
+                .offHeap(new IntSerializer(), new StringSerializer())
+                .concurrencyLevel(4)
+                .build());
+        Assertions.assertThrows(IllegalStateException.class, () -> CacheBuilder.<Integer, String>newBuilder()
+                .maxCapacity(10)
+                .offHeap(new IntSerializer(), new StringSerializer())
+                .evictPolicy(EvictPolicy.LFU)
+                .build());
+    }
+
+    @Test
+    public void overwriteWithoutDecodeTest()
+    {
+        AtomicInteger readCount = new AtomicInteger();
+        Cache<Integer, String> cache = CacheBuilder.<Integer, String>newBuilder()
+                .maxCapacity(10)
+                .offHeap(new IntSerializer(), new StringSerializer()
+                {
+                    @Override
+                    public String read(Jcodec jcodec, InputView input, Class<? extends String> typeClass)
+                    {
+                        readCount.incrementAndGet();
+                        return super.read(jcodec, input, typeClass);
+                    }
+                })
+                .build();
+        cache.put(1, "a");
+        cache.putAll(Collections.singletonMap(1, "b"));
+        Assertions.assertEquals(0, readCount.get());
+        Assertions.assertEquals("b", cache.put(1, "c"));
+        Assertions.assertEquals(1, readCount.get());
+    }
+
+    @Test
+    public void slabAllocatorTest()
+    {
+        SlabAllocator allocator = new SlabAllocator();
+        try {
+            long[] refs = new long[100_000];
+            long[] addresses = new long[refs.length];
+            for (int i = 0; i < refs.length; i++) {
+                refs[i] = allocator.allocate(32);
+                addresses[i] = allocator.address(refs[i]);
+                Platform.getUnsafe().putInt(addresses[i], i);
+            }
+            long reservedBytes = allocator.reservedBytes();
+            Assertions.assertTrue(reservedBytes >= 32L * refs.length);
+            //the slabs are appended, the chunks never move
+            for (int i = 0; i < refs.length; i++) {
+                Assertions.assertEquals(addresses[i], allocator.address(refs[i]));
+                Assertions.assertEquals(i, Platform.getUnsafe().getInt(addresses[i]));
+            }
+            //the empty slabs are released except one
+            for (long ref : refs) {
+                allocator.free(ref);
+            }
+            Assertions.assertEquals(1 << 16, allocator.reservedBytes());
+            long ref = allocator.allocate(32);
+            Assertions.assertEquals(1 << 16, allocator.reservedBytes());
+            allocator.free(ref);
+
+            long huge1 = allocator.allocate(2 << 20);
+            long huge2 = allocator.allocate(2 << 20);
+            long huge3 = allocator.allocate(2 << 20);
+            allocator.free(huge2);
+            Platform.getUnsafe().putLong(allocator.address(huge1), 1L);
+            Platform.getUnsafe().putLong(allocator.address(huge3), 3L);
+            Assertions.assertEquals(1L, Platform.getUnsafe().getLong(allocator.address(huge1)));
+        }
+        finally {
+            allocator.clear();
+        }
+        Assertions.assertEquals(0, allocator.reservedBytes());
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StripedHashCacheTest
+{
+    @Test
+    public void baseTest()
+    {
+        Cache<String, String> cache = new StripedHashCache<>(4, 100, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        for (int i = 0; i < 50; i++) {
+            Assertions.assertNull(cache.put("key" + i, "value" + i));
+        }
+        Assertions.assertEquals(50, cache.size());
+        Assertions.assertEquals("value1", cache.getIfPresent("key1"));
+        Assertions.assertEquals("value2", cache.get("key2", () -> "other"));
+        Assertions.assertEquals("value100", cache.get("key100", () -> "value100"));
+        Assertions.assertEquals("value3", cache.remove("key3"));
+        Assertions.assertNull(cache.getIfPresent("key3"));
+        Assertions.assertEquals(50, cache.size());
+        Assertions.assertEquals(50, cache.getAllPresent().size());
+        Assertions.assertEquals(50, cache.asMap().entrySet().size());
+        cache.clear();
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void overFlowCallBackTest()
+    {
+        AtomicInteger overflowCount = new AtomicInteger();
+        Cache<Integer, Integer> cache = new StripedHashCache<>(8, 100,
+                (k, v, cause) -> {
+                    Assertions.assertEquals(EvictCause.OVERFLOW, cause);
+                    overflowCount.incrementAndGet();
+                },
+                TimeUnit.SECONDS.toMillis(60));
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        Assertions.assertTrue(cache.size() <= 100);
+        Assertions.assertEquals(1000 - cache.size(), overflowCount.get());
+    }
+
+    @Test
+    public void smallCapacityTest()
+    {
+        Cache<Integer, Integer> cache = new StripedHashCache<>(16, 3, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        Assertions.assertTrue(cache.size() <= 3);
+    }
+
+    @Test
+    public void timeOutCallbackTest()
+            throws InterruptedException
+    {
+        List<String> evictList = new ArrayList<>();
+        Cache<String, String> cache = new StripedHashCache<>(4, 10,
+                (k, v, cause) -> evictList.add(String.format("%s:%s cause:%s", k, v, cause)),
+                TimeUnit.MILLISECONDS.toMillis(300));
+        cache.put("k1", "v1");
+        TimeUnit.MILLISECONDS.sleep(301);
+        Assertions.assertNull(cache.getIfPresent("k1"));
+        Assertions.assertEquals("k1:v1 cause:TIME_OUT", evictList.get(0));
+    }
+
+    @Test
+    public void multiThreadTest()
+            throws Exception
+    {
+        int threads = 8;
+        Cache<Integer, String> cache = new StripedHashCache<>(16, 1000, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        int key = i % 2000;
+                        String value = cache.get(key, () -> "value" + key);
+                        Assertions.assertEquals("value" + key, value);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        Assertions.assertTrue(cache.size() <= 1000);
+        cache.asMap().forEach((k, v) -> Assertions.assertEquals("value" + k, v));
+    }
+
+    @Test
+    public void singleFlightLoadTest()
+            throws Exception
+    {
+        int threads = 8;
+        AtomicInteger loadCount = new AtomicInteger();
+        Cache<String, String> cache = new StripedHashCache<>(4, 100, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        CountDownLatch startLatch = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    startLatch.await();
+                    return cache.get("key", () -> {
+                        loadCount.incrementAndGet();
+                        TimeUnit.MILLISECONDS.sleep(200);
+                        return "value";
+                    });
+                }));
+            }
+            startLatch.countDown();
+            for (Future<String> future : futures) {
+                Assertions.assertEquals("value", future.get());
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        Assertions.assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void getAsyncTest()
+            throws Exception
+    {
+        AtomicInteger loadCount = new AtomicInteger();
+        Cache<String, String> cache = new StripedHashCache<>(4, 100, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        CountDownLatch loadLatch = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<String> future1 = cache.getAsync("key", () -> {
+                loadCount.incrementAndGet();
+                loadLatch.await();
+                return "value";
+            }, pool);
+            CompletableFuture<String> future2 = cache.getAsync("key", () -> {
+                loadCount.incrementAndGet();
+                return "other";
+            }, pool);
+            Assertions.assertNotSame(future1, future2);
+            //a caller cancelling its future doesn't affect the other waiters
+            Assertions.assertTrue(future2.cancel(true));
+            CompletableFuture<String> future3 = cache.getAsync("key", () -> "other", pool);
+            Assertions.assertFalse(future3.isDone());
+            loadLatch.countDown();
+            Assertions.assertEquals("value", future1.get());
+            Assertions.assertEquals("value", future3.get());
+            Assertions.assertEquals("value", cache.getIfPresent("key"));
+            Assertions.assertEquals(1, loadCount.get());
+            Assertions.assertTrue(cache.getAsync("key", () -> "other", pool).isDone());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void loadNullTest()
+            throws Exception
+    {
+        AtomicInteger loadCount = new AtomicInteger();
+        Cache<String, String> cache = new StripedHashCache<>(4, 100, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        //a null value is a miss, it is neither retried nor cached
+        Assertions.assertNull(cache.get("key", () -> {
+            loadCount.incrementAndGet();
+            return null;
+        }));
+        Assertions.assertEquals(1, loadCount.get());
+        Assertions.assertNull(cache.getAsync("key", () -> {
+            loadCount.incrementAndGet();
+            return null;
+        }).get());
+        Assertions.assertEquals(2, loadCount.get());
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals("value", cache.get("key", () -> "value"));
+    }
+
+    @Test
+    public void loadFailedTest()
+            throws InterruptedException
+    {
+        Cache<String, String> cache = new StripedHashCache<>(4, 100, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.get("key", () -> {
+            throw new IllegalStateException("load failed");
+        }));
+        CompletableFuture<String> future = cache.getAsync("key", () -> {
+            throw new IOException("load failed");
+        });
+        try {
+            future.get();
+            Assertions.fail();
+        }
+        catch (ExecutionException e) {
+            Assertions.assertTrue(e.getCause() instanceof IOException);
+        }
+        //the failed load is not cached
+        Assertions.assertEquals("value", cache.get("key", () -> "value"));
+    }
+
+    @Test
+    public void writeDuringLoadTest()
+            throws Exception
+    {
+        Cache<String, String> cache = new StripedHashCache<>(4, 100, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        CountDownLatch loadStarted = new CountDownLatch(2);
+        CountDownLatch loadLatch = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> putDuringLoad = pool.submit(() -> cache.get("k1", () -> {
+                loadStarted.countDown();
+                loadLatch.await();
+                return "loaded";
+            }));
+            Future<String> removeDuringLoad = pool.submit(() -> cache.get("k2", () -> {
+                loadStarted.countDown();
+                loadLatch.await();
+                return "loaded";
+            }));
+            loadStarted.await();
+            cache.put("k1", "new");
+            cache.put("k2", "new");
+            cache.remove("k2");
+            loadLatch.countDown();
+            Assertions.assertEquals("loaded", putDuringLoad.get());
+            Assertions.assertEquals("loaded", removeDuringLoad.get());
+            // the stale loaded values are not cached
+            Assertions.assertEquals("new", cache.getIfPresent("k1"));
+            Assertions.assertNull(cache.getIfPresent("k2"));
+        }
+        finally {
+            pool.shutdown();
+        }
+        Assertions.assertEquals("loaded", cache.get("k3", () -> "loaded"));
+        Assertions.assertEquals("loaded", cache.getIfPresent("k3"));
+    }
+
+    @Test
+    public void getAllSharesInFlightLoadTest()
+            throws Exception
+    {
+        AtomicInteger loadCount = new AtomicInteger();
+        Cache<Integer, String> cache = new StripedHashCache<>(4, 100, (k, v, cause) -> {}, TimeUnit.SECONDS.toMillis(60));
+        CountDownLatch loadLatch = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            Future<Map<Integer, String>> bulk = pool.submit(() -> cache.getAll(Arrays.asList(1, 2, 3), keys -> {
+                loadCount.incrementAndGet();
+                loadLatch.await();
+                Map<Integer, String> loaded = new HashMap<>();
+                keys.forEach(key -> loaded.put(key, "bulk" + key));
+                return loaded;
+            }));
+            while (loadCount.get() == 0) {
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+            CompletableFuture<String> single = cache.getAsync(2, () -> {
+                loadCount.incrementAndGet();
+                return "single2";
+            });
+            loadLatch.countDown();
+            Assertions.assertEquals("bulk2", single.get());
+            Assertions.assertEquals(3, bulk.get().size());
+            Assertions.assertEquals(1, loadCount.get());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -22,7 +22,9 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -117,6 +119,28 @@ public class RedBlackTreeTest
         }
     }
 
+    @Test
+    public void randomPutRemoveCheckTest()
+    {
+        Random random = new Random(0);
+        SingleRedBlackTree<Integer, Integer> tree = new TestRedBlackTree<>();
+        Map<Integer, Integer> map = new HashMap<>();
+        for (int step = 0; step < 100_000; step++) {
+            int key = random.nextInt(300);
+            int hash = key % 50;
+            if (random.nextBoolean()) {
+                Assertions.assertEquals(map.put(key, step), tree.put(key, step, hash));
+            }
+            else {
+                Assertions.assertEquals(map.remove(key), tree.remove(key, hash));
+            }
+            Assertions.assertEquals(map.get(key), tree.get(key, hash));
+        }
+        Map<Integer, Integer> treeMap = new HashMap<>();
+        Iterators.foreach(tree.iterator(), (n) -> treeMap.put(n.getKey(), n.getValue()));
+        Assertions.assertEquals(map, treeMap);
+    }
+
     @Test
     public void insertTest()
     {
@@ -155,9 +179,55 @@ public class RedBlackTreeTest
         Assertions.assertTrue(tree.containsKey("ccc", 9));
         Assertions.assertEquals(3, tree.remove("ccc", 9).intValue());
         Assertions.assertFalse(tree.containsKey("ccc", 9));
+        List<String> keys = new ArrayList<>();
+        Iterators.foreach(tree.iterator(), (n) -> keys.add(n.getKey()));
+        Collections.sort(keys);
+        Assertions.assertEquals(Arrays.asList("bb", "dddd", "eeeee"), keys);
         show(tree);
     }
 
+    @Test
+    public void comparableHashCollisionDepthTest()
+    {
+        int size = 1024;
+        List<Integer> data = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            data.add(i);
+        }
+        Collections.shuffle(data, new Random(0));
+        TestRedBlackTree<Integer, Integer> tree = new TestRedBlackTree<>();
+        data.forEach(i -> tree.put(i, i, 9));
+
+        //comparable keys with the same hash are ordered in the tree instead of a duplicate list
+        int maxDepth = 0;
+        int linkedNodes = 0;
+        Iterator<RedBlackTree.TreeNode<Integer, Integer>> iterator = tree.iterator();
+        while (iterator.hasNext()) {
+            RedBlackTree.TreeNode<Integer, Integer> node = iterator.next();
+            if (node.getParent() != null) {
+                linkedNodes++;
+            }
+            int depth = 0;
+            while (node.getParent() != null) {
+                node = node.getParent();
+                depth++;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        Assertions.assertEquals(size - 1, linkedNodes);
+        Assertions.assertTrue(maxDepth <= 2 * 10, "tree depth " + maxDepth);
+
+        for (int i = 0; i < size; i++) {
+            Assertions.assertEquals(i, tree.get(i, 9).intValue());
+        }
+        for (int i = 0; i < size; i += 2) {
+            Assertions.assertEquals(i, tree.remove(i, 9).intValue());
+        }
+        for (int i = 0; i < size; i++) {
+            Assertions.assertEquals(i % 2 == 0 ? null : i, tree.get(i, 9));
+        }
+    }
+
     public static <K, V> void show(SingleRedBlackTree<K, V> tree)
     {
         Graph.GraphBuilder<GNode<K>, Void> graph = Graph.builder();
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.io;
+
+import com.github.harbby.gadtry.collection.iterator.CloseIterator;
+import com.github.harbby.gadtry.jcodec.InputView;
+import com.github.harbby.gadtry.jcodec.Jcodec;
+import com.github.harbby.gadtry.jcodec.JcodecException;
+import com.github.harbby.gadtry.jcodec.OutputView;
+import com.github.harbby.gadtry.jcodec.Serializer;
+import com.github.harbby.gadtry.jcodec.compress.BlockCodec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+public class RecordFileTest
+{
+    private static File writeFile(BlockCodec codec, int blockSize, int count)
+            throws IOException
+    {
+        File file = File.createTempFile("record", ".grec");
+        file.deleteOnExit();
+        Jcodec jcodec = Jcodec.of();
+        jcodec.register(Event.class);
+        RecordFileWriter.Builder<Event> builder = RecordFileWriter.builder(Event.class)
+                .jcodec(jcodec)
+                .blockSize(blockSize)
+                .key(event -> event.id);
+        if (codec != null) {
+            builder.codec(codec);
+        }
+        try (RecordFileWriter<Event> writer = builder.build(new FileOutputStream(file))) {
+            for (int i = 0; i < count; i++) {
+                writer.write(new Event(i * 2L, "event" + i % 10));
+            }
+            Assertions.assertEquals(count, writer.getRecordCount());
+        }
+        return file;
+    }
+
+    private static SeekableByteChannel open(File file)
+            throws IOException
+    {
+        return Files.newByteChannel(file.toPath(), StandardOpenOption.READ);
+    }
+
+    private static List<Event> toList(CloseIterator<Event> iterator)
+    {
+        List<Event> list = new ArrayList<>();
+        try (CloseIterator<Event> it = iterator) {
+            it.forEachRemaining(list::add);
+        }
+        return list;
+    }
+
+    private static void checkRoundTrip(BlockCodec codec)
+            throws IOException
+    {
+        File file = writeFile(codec, 256, 1000);
+        try (RecordFileReader<Event> reader = RecordFileReader.open(open(file))) {
+            Assertions.assertEquals(Event.class, reader.getTypeClass());
+            Assertions.assertEquals(1000, reader.getRecordCount());
+            Assertions.assertTrue(reader.getBlockCount() > 1);
+            List<Event> events = toList(reader.iterator());
+            Assertions.assertEquals(1000, events.size());
+            for (int i = 0; i < events.size(); i++) {
+                Assertions.assertEquals(new Event(i * 2L, "event" + i % 10), events.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void lz4RoundTripTest()
+            throws IOException
+    {
+        checkRoundTrip(BlockCodec.lz4());
+    }
+
+    @Test
+    public void deflateRoundTripTest()
+            throws IOException
+    {
+        checkRoundTrip(BlockCodec.deflate());
+    }
+
+    @Test
+    public void uncompressedRoundTripTest()
+            throws IOException
+    {
+        checkRoundTrip(null);
+    }
+
+    @Test
+    public void emptyFileTest()
+            throws IOException
+    {
+        File file = writeFile(BlockCodec.lz4(), 256, 0);
+        try (RecordFileReader<Event> reader = RecordFileReader.open(open(file))) {
+            Assertions.assertEquals(0, reader.getBlockCount());
+            Assertions.assertFalse(reader.iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void blockIndexTest()
+            throws IOException
+    {
+        File file = writeFile(BlockCodec.lz4(), 256, 1000);
+        try (RecordFileReader<Event> reader = RecordFileReader.open(open(file))) {
+            long first = 0;
+            for (int i = 0; i < reader.getBlockCount(); i++) {
+                Assertions.assertEquals(first * 2L, (long) reader.getFirstKey(i));
+                List<Event> events = toList(reader.iterator(i, i + 1));
+                Assertions.assertEquals(reader.getBlockRecordCount(i), events.size());
+                Assertions.assertEquals(first * 2L, events.get(0).id);
+                first += events.size();
+            }
+            Assertions.assertEquals(1000, first);
+        }
+    }
+
+    @Test
+    public void seekTest()
+            throws IOException
+    {
+        File file = writeFile(BlockCodec.deflate(), 256, 1000);
+        try (RecordFileReader<Event> reader = RecordFileReader.open(open(file))) {
+            Comparator<Long> comparator = Long::compare;
+            List<Event> events = toList(reader.seek(1201L, event -> event.id, comparator));
+            Assertions.assertEquals(1000 - 601, events.size());
+            Assertions.assertEquals(1202L, events.get(0).id);
+
+            Assertions.assertEquals(0, reader.findBlock(-1L, comparator));
+            Assertions.assertEquals(reader.getBlockCount() - 1, reader.findBlock(5000L, comparator));
+            Assertions.assertTrue(toList(reader.seek(5000L, event -> event.id, comparator)).isEmpty());
+        }
+    }
+
+    @Test
+    public void newJcodecTest()
+            throws IOException
+    {
+        File file = writeFile(BlockCodec.lz4(), 256, 100);
+        try (RecordFileReader<Event> reader = RecordFileReader.open(open(file))) {
+            Jcodec jcodec = reader.newJcodec();
+            List<Event> events = toList(reader.openBlock(jcodec, reader.getBlockCount() - 1));
+            Assertions.assertEquals(99 * 2L, events.get(events.size() - 1).id);
+        }
+    }
+
+    @Test
+    public void parallelIteratorTest()
+            throws IOException
+    {
+        File file = writeFile(BlockCodec.lz4(), 256, 5000);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (RecordFileReader<Event> reader = RecordFileReader.open(open(file))) {
+            Assertions.assertEquals(toList(reader.iterator()), toList(reader.parallelIterator(0, reader.getBlockCount(), pool, 3)));
+            Assertions.assertEquals(toList(reader.iterator()), toList(reader.parallelIterator(1)));
+
+            int fromBlock = reader.getBlockCount() / 2;
+            List<Event> events = toList(reader.parallelIterator(fromBlock, reader.getBlockCount(), pool, 8));
+            Assertions.assertEquals(toList(reader.iterator(fromBlock, reader.getBlockCount())), events);
+            Assertions.assertEquals((long) reader.getFirstKey(fromBlock), events.get(0).id);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelIteratorSerializerPerTaskTest()
+            throws IOException
+    {
+        File file = File.createTempFile("record", ".grec");
+        file.deleteOnExit();
+        RecordFileWriter.Builder<Event> builder = RecordFileWriter.builder(Event.class)
+                .serializer(new StatefulEventSerializer())
+                .blockSize(256)
+                .codec(BlockCodec.lz4());
+        try (RecordFileWriter<Event> writer = builder.build(new FileOutputStream(file))) {
+            for (int i = 0; i < 5000; i++) {
+                writer.write(new Event(i, "event" + i));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (RecordFileReader<Event> reader = RecordFileReader.open(open(file), StatefulEventSerializer::new)) {
+            //every decoding task has its own serializer, the stateful serializer is never shared by two threads
+            List<Event> events = toList(reader.parallelIterator(0, reader.getBlockCount(), pool, 8));
+            Assertions.assertEquals(5000, events.size());
+            for (int i = 0; i < events.size(); i++) {
+                Assertions.assertEquals(new Event(i, "event" + i), events.get(i));
+            }
+            Assertions.assertEquals(events, toList(reader.iterator()));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelIteratorCloseTest()
+            throws IOException
+    {
+        File file = writeFile(BlockCodec.deflate(), 256, 5000);
+        try (RecordFileReader<Event> reader = RecordFileReader.open(open(file))) {
+            CloseIterator<Event> iterator = reader.parallelIterator(4);
+            Assertions.assertEquals(0L, iterator.next().id);
+            iterator.close();
+            Assertions.assertFalse(iterator.hasNext());
+            Assertions.assertThrows(IllegalArgumentException.class, () -> reader.parallelIterator(0));
+        }
+    }
+
+    @Test
+    public void readByOtherClassLoaderTest()
+            throws Exception
+    {
+        File file = writeFile(BlockCodec.lz4(), 256, 100);
+        String[] classPath = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] urls = new URL[classPath.length];
+        for (int i = 0; i < classPath.length; i++) {
+            urls[i] = new File(classPath[i]).toURI().toURL();
+        }
+        // the default serializer is generated again by the other class loader, as in another process
+        ClassLoader originalLoader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent())) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            Class<?> readerClass = classLoader.loadClass(IsolatedReader.class.getName());
+            Assertions.assertNotSame(IsolatedReader.class, readerClass);
+            @SuppressWarnings("unchecked")
+            Function<String, List<String>> reader = (Function<String, List<String>>) readerClass.getConstructor().newInstance();
+            List<String> events = reader.apply(file.getPath());
+            Assertions.assertEquals(100, events.size());
+            Assertions.assertEquals("198:event9", events.get(99));
+        }
+        finally {
+            Thread.currentThread().setContextClassLoader(originalLoader);
+        }
+    }
+
+    public static class IsolatedReader
+            implements Function<String, List<String>>
+    {
+        @Override
+        public List<String> apply(String path)
+        {
+            try (RecordFileReader<Event> reader = RecordFileReader.open(open(new File(path)))) {
+                List<String> events = new ArrayList<>();
+                for (Event event : toList(reader.iterator())) {
+                    events.add(event.id + ":" + event.name);
+                }
+                return events;
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Test
+    public void badFileTest()
+            throws IOException
+    {
+        File file = File.createTempFile("record", ".grec");
+        file.deleteOnExit();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(new byte[32]);
+        }
+        Assertions.assertThrows(JcodecException.class, () -> RecordFileReader.open(open(file)));
+    }
+
+    /**
+     * reuses the name buffer between the records, like a column buffer
+     */
+    private static class StatefulEventSerializer
+            implements Serializer<Event>
+    {
+        private final AtomicBoolean reading = new AtomicBoolean();
+        private byte[] buffer = new byte[16];
+
+        @Override
+        public void write(Jcodec jcodec, OutputView output, Event value)
+        {
+            byte[] name = value.name.getBytes(StandardCharsets.UTF_8);
+            output.writeLong(value.id);
+            output.writeVarInt(name.length, true);
+            output.write(name);
+        }
+
+        @Override
+        public Event read(Jcodec jcodec, InputView input, Class<? extends Event> typeClass)
+        {
+            Assertions.assertTrue(reading.compareAndSet(false, true), "the serializer is used by two threads");
+            try {
+                long id = input.readLong();
+                int length = input.readVarInt(true);
+                if (buffer.length < length) {
+                    buffer = new byte[length];
+                }
+                input.readFully(buffer, 0, length);
+                return new Event(id, new String(buffer, 0, length, StandardCharsets.UTF_8));
+            }
+            finally {
+                reading.set(false);
+            }
+        }
+    }
+
+    public static class Event
+    {
+        private long id;
+        private String name;
+
+        public Event() {}
+
+        public Event(long id, String name)
+        {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Event)) {
+                return false;
+            }
+            Event event = (Event) o;
+            return id == event.id && name.equals(event.name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(id) * 31 + name.hashCode();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+public class BatchSerializerTest
+{
+    private static <T> byte[] writeBatch(Jcodec jcodec, BatchSerializer<T> serializer, List<T> values)
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        serializer.write(jcodec, outputView, values);
+        outputView.writeInt(-1);
+        outputView.close();
+        return outputStream.toByteArray();
+    }
+
+    private static <T> List<T> readBatch(Jcodec jcodec, BatchSerializer<T> serializer, byte[] bytes)
+    {
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(bytes));
+        List<T> out = serializer.read(jcodec, inputView);
+        Assertions.assertEquals(-1, inputView.readInt());
+        return out;
+    }
+
+    @Test
+    public void roundTripTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        BatchSerializer<Record> serializer = BatchSerializer.of(jcodec, Record.class);
+        Random random = new Random(0);
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            records.add(new Record(i, random));
+        }
+        Assertions.assertEquals(records, readBatch(jcodec, serializer, writeBatch(jcodec, serializer, records)));
+        Assertions.assertEquals(records.subList(0, 1), readBatch(jcodec, serializer, writeBatch(jcodec, serializer, records.subList(0, 1))));
+        Assertions.assertEquals(Collections.emptyList(), readBatch(jcodec, serializer, writeBatch(jcodec, serializer, Collections.emptyList())));
+    }
+
+    @Test
+    public void extremeValuesTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        BatchSerializer<Record> serializer = BatchSerializer.of(jcodec, Record.class);
+        List<Record> records = new ArrayList<>();
+        for (long v : new long[] {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, Long.MAX_VALUE, Long.MIN_VALUE + 1}) {
+            Record record = new Record();
+            record.time = v;
+            record.id = (int) (v >> 32);
+            record.c = (char) v;
+            record.b = (byte) v;
+            record.s = (short) v;
+            records.add(record);
+        }
+        Assertions.assertEquals(records, readBatch(jcodec, serializer, writeBatch(jcodec, serializer, records)));
+    }
+
+    @Test
+    public void smallerThanRowFormatTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        BatchSerializer<Event> serializer = BatchSerializer.of(jcodec, Event.class);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            events.add(new Event(i, 1_600_000_000_000L + i * 1000L, i % 3 == 0, (byte) (i % 16)));
+        }
+        byte[] batchBytes = writeBatch(jcodec, serializer, events);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        for (Event event : events) {
+            jcodec.writeObject(outputView, event);
+        }
+        outputView.close();
+        // id and time are delta encoded with 0 bit, flag is 1 bit and b is 4 bits
+        Assertions.assertTrue(batchBytes.length * 10 < outputStream.size());
+        List<Event> out = readBatch(jcodec, serializer, batchBytes);
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            Assertions.assertEquals(event.id, out.get(i).id);
+            Assertions.assertEquals(event.time, out.get(i).time);
+            Assertions.assertEquals(event.flag, out.get(i).flag);
+            Assertions.assertEquals(event.b, out.get(i).b);
+        }
+    }
+
+    private static class Event
+    {
+        private int id;
+        private long time;
+        private boolean flag;
+        private byte b;
+
+        private Event(int id, long time, boolean flag, byte b)
+        {
+            this.id = id;
+            this.time = time;
+            this.flag = flag;
+            this.b = b;
+        }
+    }
+
+    private static class Record
+    {
+        private int id;
+        private long time;
+        private boolean flag;
+        private byte b;
+        private short s;
+        private char c;
+        private float f;
+        private double d;
+        private String name;
+        private Integer boxed;
+        private List<Integer> list;
+
+        private Record() {}
+
+        private Record(int id, Random random)
+        {
+            this.id = id;
+            this.time = random.nextLong();
+            this.flag = random.nextBoolean();
+            this.b = (byte) random.nextInt();
+            this.s = (short) (random.nextInt(100) - 50);
+            this.c = (char) ('a' + random.nextInt(26));
+            this.f = random.nextFloat();
+            this.d = random.nextDouble();
+            this.name = id % 5 == 0 ? null : "name" + id;
+            this.boxed = id % 7 == 0 ? null : id;
+            this.list = id % 11 == 0 ? null : Arrays.asList(id, -id);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Record that = (Record) o;
+            return id == that.id && time == that.time && flag == that.flag && b == that.b && s == that.s && c == that.c &&
+                    Float.compare(f, that.f) == 0 && Double.compare(d, that.d) == 0 &&
+                    Objects.equals(name, that.name) && Objects.equals(boxed, that.boxed) && Objects.equals(list, that.list);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.harbby.gadtry.jcodec.EncoderChecker.deserialize;
+import static com.github.harbby.gadtry.jcodec.EncoderChecker.serialize;
+
+public class CompatibleFieldSerializerTest
+{
+    @Test
+    public void baseTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        jcodec.register(PersonV1.class, new CompatibleFieldSerializer<>(jcodec, PersonV1.class));
+        PersonV1 person = new PersonV1("a1", 18);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        jcodec.writeClassAndObject(outputView, person);
+        jcodec.writeClassAndObject(outputView, person);
+        outputView.close();
+
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(outputStream.toByteArray()));
+        PersonV1 out = jcodec.readClassAndObject(inputView);
+        Assertions.assertEquals(person, out);
+        Assertions.assertEquals(person, jcodec.readClassAndObject(inputView));
+    }
+
+    @Test
+    public void headerWrittenOncePerStreamTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        jcodec.register(PersonV1.class, new CompatibleFieldSerializer<>(jcodec, PersonV1.class));
+        PersonV1 person = new PersonV1("a1", 18);
+        int first = serialize(jcodec, person).length;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        jcodec.writeObject(outputView, person);
+        jcodec.writeObject(outputView, person);
+        outputView.close();
+        int second = outputStream.size() - first;
+        Assertions.assertTrue(second < first);
+
+        //reset() starts a new stream
+        jcodec.reset();
+        Assertions.assertEquals(first, serialize(jcodec, person).length);
+    }
+
+    @Test
+    public void classEvolutionTest()
+    {
+        Jcodec writeJcodec = Jcodec.of();
+        writeJcodec.register(PersonV1.class, new CompatibleFieldSerializer<>(writeJcodec, PersonV1.class));
+        Jcodec readJcodec = Jcodec.of();
+        readJcodec.register(PersonV2.class, new CompatibleFieldSerializer<>(readJcodec, PersonV2.class));
+
+        PersonV1 person1 = new PersonV1("a1", 18);
+        PersonV1 person2 = new PersonV1("a2", 19);
+        Address address = new Address("street3", 3);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        writeJcodec.writeClassAndObject(outputView, person1);
+        writeJcodec.writeClassAndObject(outputView, person2);
+        writeJcodec.writeClassAndObject(outputView, address);
+        outputView.close();
+
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(outputStream.toByteArray()));
+        PersonV2 out1 = readJcodec.readClassAndObject(inputView);
+        PersonV2 out2 = readJcodec.readClassAndObject(inputView);
+        //the Address header and the class names inside the skipped fields are not lost
+        Assertions.assertEquals(address, readJcodec.readClassAndObject(inputView));
+
+        Assertions.assertEquals("a1", out1.name);
+        Assertions.assertEquals("a2", out2.name);
+        // the type of age changed, the field keeps the default value
+        Assertions.assertEquals(-1L, out1.age);
+        Assertions.assertEquals("none", out1.email);
+        Assertions.assertEquals(person1.others, out1.others);
+        Assertions.assertEquals(person2.others, out2.others);
+    }
+
+    @Test
+    public void cyclicReferencesTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        jcodec.setReferences(true);
+        Address a = new Address("a", 1);
+        Address b = new Address("b", 2);
+        a.next = b;
+        b.next = a;
+        byte[] bytes = serialize(jcodec, a);
+        Address out = deserialize(jcodec, bytes);
+        Assertions.assertEquals(a, out);
+        Assertions.assertSame(out, out.next.next);
+    }
+
+    @Test
+    public void nameHashConflictTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        // "aa".hashCode() == "bB".hashCode()
+        Assertions.assertThrows(JcodecException.class, () -> new CompatibleFieldSerializer<>(jcodec, HashConflict.class));
+    }
+
+    private static class PersonV1
+    {
+        private String name;
+        private int age;
+        private List<String> tags;
+        private Address address;
+        private List<String> others;
+
+        private PersonV1(String name, int age)
+        {
+            this.name = name;
+            this.age = age;
+            this.tags = new ArrayList<>();
+            //the skipped chunk is larger than the buffer of input view
+            for (int i = 0; i < 10_000; i++) {
+                tags.add("tag" + i);
+            }
+            this.address = new Address("street" + age, age);
+            this.others = new ArrayList<>(Arrays.asList("o1", name));
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PersonV1 that = (PersonV1) o;
+            return age == that.age && name.equals(that.name) && tags.equals(that.tags) &&
+                    address.equals(that.address) && others.equals(that.others);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return name.hashCode();
+        }
+    }
+
+    private static class PersonV2
+    {
+        private String name;
+        private long age = -1;
+        private String email = "none";
+        private List<String> others;
+    }
+
+    @JcodecSerializer(CompatibleFieldSerializer.class)
+    private static class Address
+    {
+        private String street;
+        private int number;
+        private Address next;
+
+        private Address() {}
+
+        private Address(String street, int number)
+        {
+            this.street = street;
+            this.number = number;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Address that = (Address) o;
+            return number == that.number && street.equals(that.street) &&
+                    (next == null ? that.next == null : that.next != null && next.street.equals(that.next.street));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return street.hashCode();
+        }
+    }
+
+    private static class HashConflict
+    {
+        private int aa;
+        private int bB;
+    }
+}
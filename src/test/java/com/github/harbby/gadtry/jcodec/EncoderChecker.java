@@ -52,6 +52,29 @@ public class EncoderChecker<T>
         return value;
     }
 
+    public static byte[] serialize(Jcodec jcodec, Object value)
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputView outputView = new StreamOutputView(outputStream)) {
+            jcodec.writeClassAndObject(outputView, value);
+        }
+        return outputStream.toByteArray();
+    }
+
+    public static <T> byte[] serialize(Jcodec jcodec, Serializer<T> serializer, T value)
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputView outputView = new StreamOutputView(outputStream)) {
+            jcodec.writeObject(outputView, value, serializer);
+        }
+        return outputStream.toByteArray();
+    }
+
+    public static <T> T deserialize(Jcodec jcodec, byte[] bytes)
+    {
+        return jcodec.readClassAndObject(new StreamInputView(new ByteArrayInputStream(bytes)));
+    }
+
     private static final class TestByteArrayOutputStream
             extends ByteArrayOutputStream
     {
@@ -20,8 +20,11 @@ import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -91,4 +94,52 @@ public class EncoderStringChecker
             Assertions.assertEquals(str, rs);
         }
     }
+
+    @Test
+    public void latin1StringTest()
+            throws IOException
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            builder.append((char) (i % 7 == 0 ? 0xE9 : i % 11 == 0 ? 0 : 'a' + i % 26));
+        }
+        String longLatin1 = builder.toString();
+        List<String> strings = Arrays.asList("café", "\u00e9", "\u00e9\u00ff", "\u0000", "ab\u0000", "\u00ff\u00ffabc",
+                String.join("", Collections.nCopies(100, "abc")), longLatin1, longLatin1 + "齐", "齐" + longLatin1);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        // a small buffer, the latin1 bytes are copied in many parts
+        OutputView outputView = new StreamOutputView(outputStream, 64);
+        strings.forEach(outputView::writeString);
+        outputView.close();
+
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(outputStream.toByteArray()));
+        for (String str : strings) {
+            Assertions.assertEquals(str, inputView.readString());
+        }
+        // the non-ascii strings are modified utf-8, the same as DataOutputStream.writeUTF()
+        for (String str : Arrays.asList("café", "\u00e9\u00ff\u0000x", String.join("", Collections.nCopies(100, "ab\u00e9")))) {
+            byte[] bytes = checker.encoder(str);
+            ByteArrayOutputStream utfOutputStream = new ByteArrayOutputStream();
+            try (DataOutputStream dataOutputStream = new DataOutputStream(utfOutputStream)) {
+                dataOutputStream.writeUTF(str);
+            }
+            byte[] utf = utfOutputStream.toByteArray();
+            Assertions.assertArrayEquals(Arrays.copyOfRange(utf, 2, utf.length), Arrays.copyOfRange(bytes, bytes.length - utf.length + 2, bytes.length));
+        }
+    }
+
+    @Test
+    public void randomLatin1StringTest()
+    {
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            char[] chars = new char[random.nextInt(200)];
+            for (int k = 0; k < chars.length; k++) {
+                chars[k] = (char) (random.nextInt(10) == 0 ? random.nextInt(0x100) : random.nextInt(0x80));
+            }
+            String str = new String(chars);
+            byte[] bytes = checker.encoder(str);
+            Assertions.assertEquals(str, checker.decoder(bytes));
+        }
+    }
 }
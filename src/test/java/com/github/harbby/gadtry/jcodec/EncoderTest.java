@@ -27,6 +27,7 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -101,6 +102,10 @@ public class EncoderTest
         };
         checker.accept(new String[] {"a1", "a2", "12345"});
         checker.accept(null);
+        //the ascii strings cross the refill of input buffer
+        String[] largeArray = new String[10_000];
+        Arrays.setAll(largeArray, i -> "value" + i);
+        checker.accept(largeArray);
     }
 
     @Test
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.Platform;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static com.github.harbby.gadtry.jcodec.EncoderChecker.deserialize;
+import static com.github.harbby.gadtry.jcodec.EncoderChecker.serialize;
+
+public class FieldSerializerFactoryTest
+{
+    private static <T> T roundTrip(Jcodec jcodec, T value)
+    {
+        return deserialize(jcodec, serialize(jcodec, value));
+    }
+
+    private static boolean isHiddenClass(Class<?> aClass)
+    {
+        // the name of a hidden class is like Bean$GenSerializer/0x0000000800c01000
+        return aClass.getName().contains("/");
+    }
+
+    @Test
+    public void hiddenClassSerializerTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        Bean bean = new Bean();
+        bean.b = -1;
+        bean.s = 1024;
+        bean.c = '齐';
+        bean.i = Integer.MIN_VALUE;
+        bean.l = Long.MAX_VALUE;
+        bean.f = 1.5f;
+        bean.d = -2.25;
+        bean.flag = true;
+        bean.name = "gadtry";
+        bean.values = new int[] {1, 2, 3};
+        bean.list = Arrays.asList("a", "b");
+        bean.child = new Bean();
+        bean.child.name = "child";
+        bean.packageField = 7;
+
+        Bean out = roundTrip(jcodec, bean);
+        Assertions.assertEquals(bean, out);
+        Assertions.assertEquals("child", out.child.name);
+        Assertions.assertEquals(Platform.getJavaVersion() >= 15, isHiddenClass(jcodec.getSerializer(Bean.class).getClass()));
+        // the hidden class is cached on Bean.class
+        Assertions.assertSame(jcodec.getSerializer(Bean.class).getClass(), Jcodec.of().getSerializer(Bean.class).getClass());
+    }
+
+    @Test
+    public void unsafeSerializerFallbackTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        FinalFieldBean finalFieldBean = roundTrip(jcodec, new FinalFieldBean(3, "a"));
+        Assertions.assertEquals(3, finalFieldBean.id);
+        Assertions.assertEquals("a", finalFieldBean.name);
+        Assertions.assertFalse(isHiddenClass(jcodec.getSerializer(FinalFieldBean.class).getClass()));
+
+        SubBean subBean = new SubBean();
+        subBean.i = 5;
+        subBean.name = "sub";
+        subBean.setParentField(9);
+        SubBean out = roundTrip(jcodec, subBean);
+        Assertions.assertEquals(5, out.i);
+        Assertions.assertEquals("sub", out.name);
+        Assertions.assertEquals(9, out.getParentField());
+        Assertions.assertFalse(isHiddenClass(jcodec.getSerializer(SubBean.class).getClass()));
+    }
+
+    private static class Bean
+    {
+        private byte b;
+        private short s;
+        private char c;
+        private int i;
+        private long l;
+        private float f;
+        private double d;
+        private boolean flag;
+        private String name;
+        private int[] values;
+        private List<String> list;
+        private Bean child;
+        int packageField;
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Bean bean = (Bean) o;
+            return b == bean.b && s == bean.s && c == bean.c && i == bean.i && l == bean.l &&
+                    Float.compare(bean.f, f) == 0 && Double.compare(bean.d, d) == 0 && flag == bean.flag &&
+                    packageField == bean.packageField &&
+                    Objects.equals(name, bean.name) && Arrays.equals(values, bean.values) &&
+                    Objects.equals(list, bean.list) && Objects.equals(child, bean.child);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(i, name);
+        }
+    }
+
+    private static class FinalFieldBean
+    {
+        private final int id;
+        private final String name;
+
+        private FinalFieldBean(int id, String name)
+        {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private static class ParentBean
+    {
+        private int parentField;
+
+        int getParentField()
+        {
+            return parentField;
+        }
+
+        void setParentField(int parentField)
+        {
+            this.parentField = parentField;
+        }
+    }
+
+    private static class SubBean
+            extends ParentBean
+    {
+        private int i;
+        private String name;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.github.harbby.gadtry.jcodec.EncoderChecker.deserialize;
+import static com.github.harbby.gadtry.jcodec.EncoderChecker.serialize;
+import static java.util.Objects.requireNonNull;
+
+public class GenericTypeSerializerTest
+{
+    private static GenericBean createBean()
+    {
+        GenericBean bean = new GenericBean();
+        bean.names = new ArrayList<>(Arrays.asList("a", null, "c"));
+        bean.longs = new LinkedList<>(Arrays.asList(1L, 2L, 3L));
+        bean.nullableLongs = new ArrayList<>(Arrays.asList(1L, null, 3L));
+        bean.counts = new LinkedHashMap<>();
+        bean.counts.put("x", 1L);
+        bean.counts.put(null, 2L);
+        bean.counts.put("z", null);
+        bean.nested = new HashMap<>();
+        bean.nested.put("a", Arrays.asList(1, 2));
+        bean.nested.put("b", null);
+        bean.sorted = new TreeMap<>();
+        bean.sorted.put("k", 7L);
+        bean.objects = new ArrayList<>(Arrays.asList(1, "a", 2L));
+        return bean;
+    }
+
+    @Test
+    public void serializerTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        List<FieldSerializer.FieldData> fields = FieldSerializer.analyzeClass(jcodec, GenericBean.class);
+        for (FieldSerializer.FieldData fieldData : fields) {
+            if (fieldData.field.getName().equals("objects")) {
+                Assertions.assertEquals(FieldSerializer.FieldType.CLASS_AND_OBJET, fieldData.fieldType);
+            }
+            else {
+                Assertions.assertEquals(FieldSerializer.FieldType.OBJECT, fieldData.fieldType, fieldData.toString());
+                Assertions.assertTrue(fieldData.serializer instanceof GenericTypeSerializer);
+            }
+        }
+    }
+
+    @Test
+    public void readWriteTest()
+    {
+        GenericBean bean = createBean();
+        byte[] bytes = serialize(Jcodec.of(), bean);
+        GenericBean out = deserialize(Jcodec.of(), bytes);
+        Assertions.assertEquals(bean, out);
+        Assertions.assertEquals(LinkedList.class, out.longs.getClass());
+        Assertions.assertEquals(LinkedHashMap.class, out.counts.getClass());
+        Assertions.assertEquals(TreeMap.class, out.sorted.getClass());
+
+        GenericBean empty = new GenericBean();
+        Assertions.assertEquals(empty, deserialize(Jcodec.of(), serialize(Jcodec.of(), empty)));
+    }
+
+    @Test
+    public void referencesTest()
+    {
+        GenericBean bean = createBean();
+        bean.objects = new ArrayList<>(Arrays.asList(bean.names, bean.names));
+        Jcodec jcodec = Jcodec.of();
+        jcodec.setReferences(true);
+        Jcodec readJcodec = Jcodec.of();
+        readJcodec.setReferences(true);
+        GenericBean out = deserialize(readJcodec, serialize(jcodec, bean));
+        Assertions.assertEquals(bean, out);
+        Assertions.assertSame(out.objects.get(0), out.objects.get(1));
+    }
+
+    @Test
+    public void smallerThanClassTagsTest()
+    {
+        GenericBean bean = new GenericBean();
+        bean.longs = new ArrayList<>();
+        RawBean rawBean = new RawBean();
+        rawBean.longs = bean.longs;
+        for (long i = 0; i < 1000; i++) {
+            bean.longs.add(i);
+        }
+        int genericSize = serialize(Jcodec.of(), bean).length;
+        int rawSize = serialize(Jcodec.of(), rawBean).length;
+        // no class id per element
+        Assertions.assertTrue(genericSize + 900 < rawSize, genericSize + " vs " + rawSize);
+    }
+
+    @Test
+    public void nullHostileCollectionTest()
+    {
+        NullHostileBean bean = new NullHostileBean();
+        bean.counts = new ConcurrentHashMap<>();
+        bean.counts.put("k", 1);
+        bean.names = new NullHostileList<>(Arrays.asList("a", "b"));
+        Assertions.assertThrows(NullPointerException.class, () -> bean.counts.keySet().contains(null));
+        Assertions.assertThrows(NullPointerException.class, () -> bean.names.contains(null));
+
+        NullHostileBean out = deserialize(Jcodec.of(), serialize(Jcodec.of(), bean));
+        Assertions.assertEquals(bean.counts, out.counts);
+        Assertions.assertEquals(bean.names, out.names);
+    }
+
+    private static class NullHostileBean
+    {
+        private Map<String, Integer> counts;
+        private List<String> names;
+    }
+
+    /**
+     * rejects contains(null) like the immutable List.of() of java9+
+     */
+    public static class NullHostileList<E>
+            extends ArrayList<E>
+    {
+        public NullHostileList() {}
+
+        public NullHostileList(List<E> list)
+        {
+            super(list);
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            return super.contains(requireNonNull(o));
+        }
+    }
+
+    private static class RawBean
+    {
+        @SuppressWarnings("rawtypes")
+        private List longs;
+    }
+
+    private static class GenericBean
+    {
+        private List<String> names;
+        private List<Long> longs;
+        private ArrayList<Long> nullableLongs;
+        private Map<String, Long> counts;
+        private Map<String, List<Integer>> nested;
+        private Map<String, Long> sorted;
+        private List<Object> objects;
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            GenericBean that = (GenericBean) o;
+            return Objects.equals(names, that.names) &&
+                    Objects.equals(longs, that.longs) &&
+                    Objects.equals(nullableLongs, that.nullableLongs) &&
+                    Objects.equals(counts, that.counts) &&
+                    Objects.equals(nested, that.nested) &&
+                    Objects.equals(sorted, that.sorted) &&
+                    Objects.equals(objects, that.objects);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(names, longs, nullableLongs, counts, nested, sorted, objects);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.harbby.gadtry.jcodec.EncoderChecker.serialize;
+
+public class JcodecAotSerializerTest
+{
+    private static AotBean createBean()
+    {
+        AotBean bean = new AotBean(1_600_000_000_000L);
+        bean.id = 7;
+        bean.name = "gadtry";
+        bean.tags = Arrays.asList("a", "b");
+        bean.inner = new Inner(3);
+        bean.score = 1.5;
+        bean.flag = true;
+        bean.ch = '齐';
+        bean.values = new int[] {1, 2, 3};
+        bean.skip = 100;
+        bean.setParentField(9);
+        bean.hidden = 12;
+        ((AotParent) bean).hidden = 11;
+        return bean;
+    }
+
+    @Test
+    public void generatedSerializerTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        Serializer<AotBean> serializer = jcodec.getSerializer(AotBean.class);
+        Assertions.assertEquals(AotBean.class.getName() + JcodecAotSerializer.CLASS_SUFFIX, serializer.getClass().getName());
+
+        AotBean bean = createBean();
+        byte[] bytes = serialize(jcodec, serializer, bean);
+        AotBean out = jcodec.readObject(new StreamInputView(new ByteArrayInputStream(bytes)), AotBean.class);
+        Assertions.assertEquals(7, out.id);
+        Assertions.assertEquals("gadtry", out.name);
+        Assertions.assertEquals(bean.created, out.created);
+        Assertions.assertEquals(bean.tags, out.tags);
+        Assertions.assertEquals(3, out.inner.value);
+        Assertions.assertEquals(1.5, out.score);
+        Assertions.assertTrue(out.flag);
+        Assertions.assertEquals('齐', out.ch);
+        Assertions.assertArrayEquals(bean.values, out.values);
+        Assertions.assertEquals(0, out.skip);
+        Assertions.assertEquals(9, out.getParentField());
+        Assertions.assertEquals(12, out.hidden);
+        Assertions.assertEquals(11, ((AotParent) out).hidden);
+    }
+
+    @Test
+    public void sameBytesAsRuntimeSerializerTest()
+    {
+        AotBean bean = createBean();
+        bean.name = null;
+        bean.inner = null;
+        Jcodec jcodec = Jcodec.of();
+        byte[] aotBytes = serialize(jcodec, jcodec.getSerializer(AotBean.class), bean);
+        // the class names written by writeClassAndObject are cached in jcodec
+        Jcodec runtimeJcodec = Jcodec.of();
+        Serializer<AotBean> runtimeSerializer = FieldSerializerFactory.makeSerializer(runtimeJcodec, AotBean.class);
+        Assertions.assertArrayEquals(aotBytes, serialize(runtimeJcodec, runtimeSerializer, bean));
+    }
+
+    static class AotParent
+    {
+        private int parentField;
+        // hidden by AotBean.hidden
+        int hidden;
+
+        int getParentField()
+        {
+            return parentField;
+        }
+
+        void setParentField(int parentField)
+        {
+            this.parentField = parentField;
+        }
+    }
+
+    @JcodecAotSerializer
+    static class AotBean
+            extends AotParent
+    {
+        private int id;
+        String name;
+        private final long created;
+        List<String> tags;
+        private Inner inner;
+        double score;
+        boolean flag;
+        char ch;
+        int[] values;
+        transient int skip;
+        int hidden;
+
+        AotBean(long created)
+        {
+            this.created = created;
+        }
+    }
+
+    private static final class Inner
+    {
+        private final int value;
+
+        private Inner(int value)
+        {
+            this.value = value;
+        }
+    }
+}
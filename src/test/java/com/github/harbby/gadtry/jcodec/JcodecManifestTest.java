@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import static com.github.harbby.gadtry.jcodec.EncoderChecker.deserialize;
+import static com.github.harbby.gadtry.jcodec.EncoderChecker.serialize;
+
+public class JcodecManifestTest
+{
+    private static byte[] writeManifest(Jcodec jcodec)
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        jcodec.writeManifest(outputView);
+        outputView.close();
+        return outputStream.toByteArray();
+    }
+
+    private static void readManifest(Jcodec jcodec, byte[] manifest)
+    {
+        jcodec.readManifest(new StreamInputView(new ByteArrayInputStream(manifest)));
+    }
+
+    @Test
+    public void sameClassIdTest()
+    {
+        Jcodec writer = Jcodec.of();
+        writer.register(ManifestBean.class);
+        writer.register(Point.class, PointSerializer.class);
+        byte[] manifest = writeManifest(writer);
+
+        Jcodec reader = Jcodec.of();
+        readManifest(reader, manifest);
+        Assertions.assertEquals(PointSerializer.class, reader.getSerializer(Point.class).getClass());
+
+        ManifestBean bean = new ManifestBean(7, "a", new Point(1, 2));
+        byte[] bytes = serialize(writer, bean);
+        Assertions.assertFalse(new String(bytes, StandardCharsets.ISO_8859_1).contains(ManifestBean.class.getName()));
+        Assertions.assertTrue(bytes.length < serialize(Jcodec.of(), bean).length);
+        ManifestBean out = deserialize(reader, bytes);
+        Assertions.assertEquals(bean, out);
+        // the manifest of the reader is the same
+        Assertions.assertArrayEquals(manifest, writeManifest(reader));
+        // read it again is ok
+        readManifest(reader, manifest);
+    }
+
+    @Test
+    public void mismatchTest()
+    {
+        Jcodec writer = Jcodec.of();
+        writer.register(ManifestBean.class);
+        Jcodec reader = Jcodec.of();
+        reader.register(Point.class);
+        Assertions.assertThrows(JcodecException.class, () -> readManifest(reader, writeManifest(writer)));
+    }
+
+    @Test
+    public void registerWrittenClassTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        Point point = new Point(1, 2);
+        int size = serialize(jcodec, point).length;
+        jcodec.register(Point.class);
+        jcodec.reset();
+        Assertions.assertTrue(serialize(jcodec, point).length < size);
+    }
+
+    public static class PointSerializer
+            implements Serializer<Point>
+    {
+        @Override
+        public void write(Jcodec jcodec, OutputView output, Point value)
+        {
+            output.writeVarInt(value.x, false);
+            output.writeVarInt(value.y, false);
+        }
+
+        @Override
+        public Point read(Jcodec jcodec, InputView input, Class<? extends Point> typeClass)
+        {
+            return new Point(input.readVarInt(false), input.readVarInt(false));
+        }
+    }
+
+    private static class Point
+    {
+        private final int x;
+        private final int y;
+
+        private Point(int x, int y)
+        {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Point point = (Point) o;
+            return x == point.x && y == point.y;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(x, y);
+        }
+    }
+
+    private static class ManifestBean
+    {
+        private int id;
+        private String name;
+        private Object point;
+
+        private ManifestBean(int id, String name, Point point)
+        {
+            this.id = id;
+            this.name = name;
+            this.point = point;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ManifestBean that = (ManifestBean) o;
+            return id == that.id && Objects.equals(name, that.name) && Objects.equals(point, that.point);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(id, name, point);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JcodecPoolTest
+{
+    private static byte[] write(Jcodec jcodec, Object value)
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        jcodec.writeClassAndObject(outputView, value);
+        outputView.close();
+        return outputStream.toByteArray();
+    }
+
+    private static <T> T read(Jcodec jcodec, byte[] bytes)
+    {
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(bytes));
+        return jcodec.readClassAndObject(inputView);
+    }
+
+    @Test
+    public void reuseTest()
+    {
+        AtomicInteger createCount = new AtomicInteger();
+        JcodecPool pool = JcodecPool.of(() -> {
+            createCount.incrementAndGet();
+            return Jcodec.of();
+        });
+        Jcodec jcodec = pool.borrow();
+        pool.release(jcodec);
+        Assertions.assertEquals(1, pool.getFreeSize());
+        Assertions.assertSame(jcodec, pool.borrow());
+        Assertions.assertEquals(0, pool.getFreeSize());
+        Assertions.assertNotSame(jcodec, pool.borrow());
+        Assertions.assertEquals(2, createCount.get());
+    }
+
+    @Test
+    public void maximumCapacityTest()
+    {
+        JcodecPool pool = JcodecPool.of(1, Jcodec::of);
+        Jcodec jcodec1 = pool.borrow();
+        Jcodec jcodec2 = pool.borrow();
+        pool.release(jcodec1);
+        pool.release(jcodec2);
+        Assertions.assertEquals(1, pool.getFreeSize());
+        pool.clear();
+        Assertions.assertEquals(0, pool.getFreeSize());
+    }
+
+    @Test
+    public void releaseResetStreamStateTest()
+    {
+        JcodecPool pool = JcodecPool.of(1, Jcodec::of);
+        Bean bean = new Bean(1, "a");
+        //the unregistered class name is written in each stream
+        byte[] bytes1 = pool.run(jcodec -> write(jcodec, bean));
+        byte[] bytes2 = pool.run(jcodec -> write(jcodec, bean));
+        Assertions.assertArrayEquals(bytes1, bytes2);
+        Assertions.assertEquals(bean, pool.run(jcodec -> read(jcodec, bytes2)));
+        Assertions.assertEquals(bean, read(Jcodec.of(), bytes2));
+    }
+
+    @Test
+    public void runOwnsWholeStreamTest()
+    {
+        JcodecPool pool = JcodecPool.of(1, Jcodec::of);
+        List<Bean> values = Arrays.asList(new Bean(1, "a"), new Bean(2, "b"), new Bean(3, "c"));
+        for (int round = 0; round < 2; round++) {
+            //the pooled jcodec is reused by every round, it is reset when borrowed
+            byte[] bytes = pool.run(jcodec -> {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                OutputView outputView = new StreamOutputView(outputStream);
+                for (Bean value : values) {
+                    jcodec.writeClassAndObject(outputView, value);
+                }
+                outputView.close();
+                return outputStream.toByteArray();
+            });
+            //the class name is written once per stream, a single reader decodes all the records
+            Jcodec reader = Jcodec.of();
+            InputView inputView = new StreamInputView(new ByteArrayInputStream(bytes));
+            for (Bean value : values) {
+                Assertions.assertEquals(value, reader.readClassAndObject(inputView));
+            }
+        }
+        Assertions.assertEquals(1, pool.getFreeSize());
+    }
+
+    @Test
+    public void multiThreadTest()
+            throws Exception
+    {
+        JcodecPool pool = JcodecPool.of(() -> {
+            Jcodec jcodec = Jcodec.of();
+            jcodec.register(Bean.class);
+            return jcodec;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        Object value = Arrays.asList(new Bean(i, "v" + i), new Other(i));
+                        byte[] bytes = pool.run(jcodec -> write(jcodec, value));
+                        Assertions.assertEquals(value, pool.run(jcodec -> read(jcodec, bytes)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        Assertions.assertTrue(pool.getFreeSize() <= 8);
+    }
+
+    private static class Bean
+    {
+        private int id;
+        private String name;
+
+        private Bean(int id, String name)
+        {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Bean bean = (Bean) o;
+            return id == bean.id && Objects.equals(name, bean.name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(id, name);
+        }
+    }
+
+    private static class Other
+    {
+        private long value;
+
+        private Other(long value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Other && ((Other) o).value == value;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(value);
+        }
+    }
+}
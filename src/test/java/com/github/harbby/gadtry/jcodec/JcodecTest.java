@@ -18,6 +18,7 @@ package com.github.harbby.gadtry.jcodec;
 import com.github.harbby.gadtry.base.TypeWrapper;
 import com.github.harbby.gadtry.collection.ImmutableMap;
 import com.github.harbby.gadtry.collection.tuple.Tuple2;
+import com.github.harbby.gadtry.jcodec.codecs.ListSerializer;
 import com.github.harbby.gadtry.jcodec.codecs.MapSerializer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -26,6 +27,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -126,6 +128,121 @@ class JcodecTest
         System.out.println(rs);
     }
 
+    @Test
+    public void referencesTest()
+    {
+        Jcodec jcodec = Jcodec.of();
+        jcodec.setReferences(true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        TestClass1 in = new TestClass1(23);
+        jcodec.writeClassAndObject(outputView, in);
+        jcodec.writeObject(outputView, in);
+        outputView.close();
+
+        Jcodec readJcodec = Jcodec.of();
+        readJcodec.setReferences(true);
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(outputStream.toByteArray()));
+        TestClass1 out = readJcodec.readClassAndObject(inputView);
+        Assertions.assertEquals(in, out);
+        //the references are cleared after the root object
+        TestClass1 out2 = readJcodec.readObject(inputView, TestClass1.class);
+        Assertions.assertEquals(in, out2);
+        Assertions.assertNotSame(out, out2);
+    }
+
+    @Test
+    public void cyclicReferencesTest()
+    {
+        GraphNode a = new GraphNode("a");
+        GraphNode b = new GraphNode("b");
+        a.next = b;
+        b.next = a;
+        a.children = Arrays.asList(b, b, a);
+        b.children = new ArrayList<>(Collections.singletonList(a));
+
+        Jcodec jcodec = Jcodec.of();
+        jcodec.setReferences(true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        jcodec.writeClassAndObject(outputView, a);
+        outputView.close();
+
+        Jcodec readJcodec = Jcodec.of();
+        readJcodec.setReferences(true);
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(outputStream.toByteArray()));
+        GraphNode out = readJcodec.readClassAndObject(inputView);
+        Assertions.assertEquals("a", out.name);
+        Assertions.assertEquals("b", out.next.name);
+        Assertions.assertSame(out, out.next.next);
+        Assertions.assertSame(out.next, out.children.get(0));
+        Assertions.assertSame(out.next, out.children.get(1));
+        Assertions.assertSame(out, out.children.get(2));
+        Assertions.assertSame(out, out.next.children.get(0));
+    }
+
+    @Test
+    public void sharedReferencesSizeTest()
+    {
+        TestClass1 shared = new TestClass1(1);
+        Object[] values = new Object[100];
+        Arrays.fill(values, shared);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        Jcodec.of().writeObject(outputView, values);
+        outputView.close();
+        int size = outputStream.size();
+
+        Jcodec jcodec = Jcodec.of();
+        jcodec.setReferences(true);
+        outputStream.reset();
+        outputView = new StreamOutputView(outputStream);
+        jcodec.writeObject(outputView, values);
+        outputView.close();
+        Assertions.assertTrue(outputStream.size() * 10 < size);
+
+        Jcodec readJcodec = Jcodec.of();
+        readJcodec.setReferences(true);
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(outputStream.toByteArray()));
+        Object[] out = readJcodec.readObject(inputView, Object[].class);
+        Assertions.assertEquals(100, out.length);
+        Assertions.assertEquals(shared, out[0]);
+        Assertions.assertSame(out[0], out[99]);
+    }
+
+    @Test
+    public void childFirstReferencesTest()
+    {
+        ChildFirstClass in = new ChildFirstClass(new ArrayList<>(Arrays.asList("a", "b")));
+        in.self = in;
+        Jcodec jcodec = Jcodec.of();
+        jcodec.setReferences(true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        jcodec.writeClassAndObject(outputView, in);
+        outputView.close();
+
+        Jcodec readJcodec = Jcodec.of();
+        readJcodec.setReferences(true);
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(outputStream.toByteArray()));
+        ChildFirstClass out = readJcodec.readClassAndObject(inputView);
+        Assertions.assertEquals(Arrays.asList("a", "b"), out.values);
+        //the list read before the parent is created must not take the id of the parent
+        Assertions.assertSame(out, out.self);
+    }
+
+    private static class GraphNode
+    {
+        private final String name;
+        private GraphNode next;
+        private List<GraphNode> children;
+
+        private GraphNode(String name)
+        {
+            this.name = name;
+        }
+    }
+
     private static class TestClass1
     {
         private final int f1 = 123;
@@ -226,4 +343,41 @@ class JcodecTest
             }
         }
     }
+
+    @JcodecSerializer(ChildFirstClass.ChildFirstSerializer.class)
+    public static class ChildFirstClass
+    {
+        private final List<Object> values;
+        private Object self;
+
+        public ChildFirstClass(List<Object> values)
+        {
+            this.values = values;
+        }
+
+        public static class ChildFirstSerializer
+                implements Serializer<ChildFirstClass>
+        {
+            private final ListSerializer<Object> listSerializer = new ListSerializer<>();
+
+            @Override
+            public void write(Jcodec jcodec, OutputView output, ChildFirstClass value)
+            {
+                listSerializer.write(jcodec, output, value.values);
+                jcodec.writeClassAndObject(output, value.self);
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public ChildFirstClass read(Jcodec jcodec, InputView input, Class<? extends ChildFirstClass> typeClass)
+            {
+                //the children are read directly before the instance is created
+                List<Object> values = listSerializer.read(jcodec, input, (Class<List<Object>>) (Class<?>) List.class);
+                ChildFirstClass instance = new ChildFirstClass(values);
+                jcodec.reference(instance);
+                instance.self = jcodec.readClassAndObject(input);
+                return instance;
+            }
+        }
+    }
 }
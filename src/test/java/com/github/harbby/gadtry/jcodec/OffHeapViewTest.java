@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.Platform;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import sun.misc.Unsafe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OffHeapViewTest
+{
+    private static final int[] INTS = {0, 1, 63, 64, 127, 128, 8191, 8192, 1 << 20, 1 << 27, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+    private static final long[] LONGS = {0, 1, 127, 128, 1L << 35, 1L << 49, 1L << 56, -1, Long.MIN_VALUE, Long.MAX_VALUE};
+    private static final String[] STRINGS = {null, "", "a", "abc123", "a齐1", "\u0000x", String.join("", Collections.nCopies(100, "ab")),
+            "café", "\u00e9\u00ff", String.join("", Collections.nCopies(100, "a\u00e9\u0000")),
+            String.join("", Collections.nCopies(5000, "a齐"))};
+    private static final boolean[] BOOLEANS = {true, false, true, true, false, false, true, false, true, true};
+
+    private static void writeAll(OutputView output)
+    {
+        output.writeInt(0x01020304);
+        output.writeLong(0x0102030405060708L);
+        output.writeShort(-2);
+        output.writeChar('齐');
+        output.writeFloat(1.5f);
+        output.writeDouble(-2.25);
+        output.writeBoolean(true);
+        output.writeByte(-3);
+        for (int v : INTS) {
+            output.writeVarInt(v, true);
+            output.writeVarInt(v, false);
+        }
+        for (long v : LONGS) {
+            output.writeVarLong(v, true);
+            output.writeVarLong(v, false);
+        }
+        for (String s : STRINGS) {
+            output.writeString(s);
+        }
+        output.writeBoolArray(BOOLEANS);
+        output.write(new byte[] {7, 8, 9});
+        output.writeInts(INTS, 1, INTS.length - 1);
+        output.writeLongs(LONGS, 0, LONGS.length);
+        output.writeChars("a齐1".toCharArray(), 0, 3);
+        output.writeDoubles(new double[] {-2.25, Double.MAX_VALUE}, 0, 2);
+    }
+
+    private static void checkAll(InputView input)
+    {
+        Assertions.assertEquals(0x01020304, input.readInt());
+        Assertions.assertEquals(0x0102030405060708L, input.readLong());
+        Assertions.assertEquals(-2, input.readShort());
+        Assertions.assertEquals('齐', input.readChar());
+        Assertions.assertEquals(1.5f, input.readFloat());
+        Assertions.assertEquals(-2.25, input.readDouble());
+        Assertions.assertTrue(input.readBoolean());
+        Assertions.assertEquals(-3, input.readByte());
+        for (int v : INTS) {
+            Assertions.assertEquals(v, input.readVarInt(true));
+            Assertions.assertEquals(v, input.readVarInt(false));
+        }
+        for (long v : LONGS) {
+            Assertions.assertEquals(v, input.readVarLong(true));
+            Assertions.assertEquals(v, input.readVarLong(false));
+        }
+        for (String s : STRINGS) {
+            Assertions.assertEquals(s, input.readString());
+        }
+        boolean[] booleans = new boolean[BOOLEANS.length];
+        input.readBoolArray(booleans, 0, booleans.length);
+        Assertions.assertArrayEquals(BOOLEANS, booleans);
+        byte[] bytes = new byte[3];
+        input.readFully(bytes);
+        Assertions.assertArrayEquals(new byte[] {7, 8, 9}, bytes);
+        int[] ints = new int[INTS.length];
+        input.readInts(ints, 1, INTS.length - 1);
+        Assertions.assertArrayEquals(INTS, ints);
+        long[] longs = new long[LONGS.length];
+        input.readLongs(longs, 0, longs.length);
+        Assertions.assertArrayEquals(LONGS, longs);
+        char[] chars = new char[3];
+        input.readChars(chars, 0, 3);
+        Assertions.assertArrayEquals("a齐1".toCharArray(), chars);
+        double[] doubles = new double[2];
+        input.readDoubles(doubles, 0, 2);
+        Assertions.assertArrayEquals(new double[] {-2.25, Double.MAX_VALUE}, doubles);
+    }
+
+    @Test
+    public void sameBytesAsStreamViewTest()
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView streamOutput = new StreamOutputView(outputStream);
+        writeAll(streamOutput);
+        streamOutput.close();
+        byte[] expected = outputStream.toByteArray();
+
+        long address = Platform.allocateMemory(1 << 16);
+        try {
+            OffHeapOutputView offHeapOutput = new OffHeapOutputView(address, 1 << 16);
+            writeAll(offHeapOutput);
+            byte[] bytes = new byte[(int) offHeapOutput.size()];
+            Platform.copyMemory(null, address, bytes, Unsafe.ARRAY_BYTE_BASE_OFFSET, bytes.length);
+            Assertions.assertArrayEquals(expected, bytes);
+
+            OffHeapInputView offHeapInput = new OffHeapInputView(address, bytes.length);
+            checkAll(offHeapInput);
+            Assertions.assertEquals(0, offHeapInput.remaining());
+            Assertions.assertEquals(-1, offHeapInput.read());
+            checkAll(new StreamInputView(new ByteArrayInputStream(bytes)));
+        }
+        finally {
+            Platform.freeMemory(address);
+        }
+    }
+
+    @Test
+    public void mappedByteBufferTest()
+            throws IOException
+    {
+        Jcodec jcodec = Jcodec.of();
+        Map<String, List<Integer>> value = new HashMap<>();
+        value.put("a1", Arrays.asList(1, 2, 3));
+        value.put("a2", Arrays.asList(-1, null));
+        File file = File.createTempFile("jcodec", ".spill");
+        file.deleteOnExit();
+        long size;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 1024);
+            OffHeapOutputView outputView = new OffHeapOutputView(buffer);
+            jcodec.writeClassAndObject(outputView, value);
+            jcodec.writeClassAndObject(outputView, "end");
+            outputView.close();
+            size = outputView.size();
+            Assertions.assertEquals(size, buffer.position());
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            OffHeapInputView inputView = new OffHeapInputView(buffer);
+            Assertions.assertEquals(value, jcodec.readClassAndObject(inputView));
+            Assertions.assertEquals("end", jcodec.readClassAndObject(inputView));
+            Assertions.assertEquals(0, inputView.remaining());
+        }
+    }
+
+    @Test
+    public void outOfRegionTest()
+    {
+        long address = Platform.allocateMemory(8);
+        try {
+            OffHeapOutputView outputView = new OffHeapOutputView(address, 4);
+            outputView.writeInt(1);
+            Assertions.assertThrows(JcodecEOFException.class, () -> outputView.writeByte(1));
+            Assertions.assertEquals(4, outputView.size());
+
+            OffHeapInputView inputView = new OffHeapInputView(address, 4);
+            Assertions.assertThrows(JcodecEOFException.class, inputView::readLong);
+            Assertions.assertEquals(1, inputView.readInt());
+            Assertions.assertEquals(0, inputView.skipBytes(1));
+        }
+        finally {
+            Platform.freeMemory(address);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.jcodec.codecs.ArraySerializers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Array;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+public class PrimitiveArrayEncoderTest
+{
+    private static final int LENGTH = 10_000;
+    private final Random random = new Random(0);
+    private final Jcodec jcodec = Jcodec.of();
+
+    private <T> T checkSameBytes(Serializer<T> serializer, Class<T> typeClass, T value, BiConsumer<OutputView, T> elementWriter)
+    {
+        // the small buffer makes the bulk copy split into many chunks
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream, 60);
+        serializer.write(jcodec, outputView, value);
+        outputView.close();
+        byte[] bytes = outputStream.toByteArray();
+
+        outputStream.reset();
+        outputView = new StreamOutputView(outputStream);
+        outputView.writeVarInt(Array.getLength(value) + 1, true);
+        elementWriter.accept(outputView, value);
+        outputView.close();
+        Assertions.assertArrayEquals(outputStream.toByteArray(), bytes);
+
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(bytes));
+        T rs = serializer.read(jcodec, inputView, typeClass);
+        Assertions.assertEquals(-1, inputView.read());
+        return rs;
+    }
+
+    @Test
+    public void shortArrayTest()
+    {
+        short[] value = new short[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            value[i] = (short) random.nextInt();
+        }
+        short[] rs = checkSameBytes(new ArraySerializers.ShortArraySerializer(), short[].class, value, (output, arr) -> {
+            for (short e : arr) {
+                output.writeShort(e);
+            }
+        });
+        Assertions.assertArrayEquals(value, rs);
+    }
+
+    @Test
+    public void charArrayTest()
+    {
+        char[] value = new char[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            value[i] = (char) random.nextInt();
+        }
+        char[] rs = checkSameBytes(new ArraySerializers.CharArraySerializer(), char[].class, value, (output, arr) -> {
+            for (char e : arr) {
+                output.writeChar(e);
+            }
+        });
+        Assertions.assertArrayEquals(value, rs);
+    }
+
+    @Test
+    public void intArrayTest()
+    {
+        int[] value = random.ints(LENGTH).toArray();
+        int[] rs = checkSameBytes(new ArraySerializers.IntArraySerializer(), int[].class, value, (output, arr) -> {
+            for (int e : arr) {
+                output.writeInt(e);
+            }
+        });
+        Assertions.assertArrayEquals(value, rs);
+    }
+
+    @Test
+    public void longArrayTest()
+    {
+        long[] value = random.longs(LENGTH).toArray();
+        long[] rs = checkSameBytes(new ArraySerializers.LongArraySerializer(), long[].class, value, (output, arr) -> {
+            for (long e : arr) {
+                output.writeLong(e);
+            }
+        });
+        Assertions.assertArrayEquals(value, rs);
+    }
+
+    @Test
+    public void floatArrayTest()
+    {
+        float[] value = new float[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            value[i] = random.nextFloat() * 1000 - 500;
+        }
+        value[0] = Float.NaN;
+        value[1] = Float.NEGATIVE_INFINITY;
+        float[] rs = checkSameBytes(new ArraySerializers.FloatArraySerializer(), float[].class, value, (output, arr) -> {
+            for (float e : arr) {
+                output.writeFloat(e);
+            }
+        });
+        Assertions.assertArrayEquals(value, rs);
+    }
+
+    @Test
+    public void doubleArrayTest()
+    {
+        double[] value = random.doubles(LENGTH).toArray();
+        value[0] = Double.NaN;
+        value[1] = -0.0;
+        double[] rs = checkSameBytes(new ArraySerializers.DoubleArraySerializer(), double[].class, value, (output, arr) -> {
+            for (double e : arr) {
+                output.writeDouble(e);
+            }
+        });
+        Assertions.assertArrayEquals(value, rs);
+    }
+
+    @Test
+    public void byteArrayTest()
+    {
+        byte[] value = new byte[LENGTH];
+        random.nextBytes(value);
+        byte[] rs = checkSameBytes(new ArraySerializers.ByteArraySerializer(), byte[].class, value, (output, arr) -> {
+            for (byte e : arr) {
+                output.writeByte(e);
+            }
+        });
+        Assertions.assertArrayEquals(value, rs);
+    }
+
+    @Test
+    public void nullAndEmptyArrayTest()
+    {
+        EncoderChecker<int[]> checker = new EncoderChecker<>(new ArraySerializers.IntArraySerializer(), int[].class);
+        Assertions.assertNull(checker.decoder(checker.encoder(null)));
+        Assertions.assertArrayEquals(new int[0], checker.decoder(checker.encoder(new int[0])));
+    }
+
+    @Test
+    public void largerThanBufferBoolArrayTest()
+    {
+        boolean[] value = new boolean[(1 << 19) * 2 + 3];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = random.nextBoolean();
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream, 61);
+        new ArraySerializers.BooleanArraySerializer().write(jcodec, outputView, value);
+        outputView.close();
+        boolean[] rs = new ArraySerializers.BooleanArraySerializer().read(jcodec,
+                new StreamInputView(new ByteArrayInputStream(outputStream.toByteArray())), boolean[].class);
+        Assertions.assertArrayEquals(value, rs);
+    }
+
+    @Test
+    public void offsetAndBoundsTest()
+    {
+        long[] value = {1, 2, 3, 4, 5, 6};
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new StreamOutputView(outputStream);
+        outputView.writeLongs(value, 2, 3);
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> outputView.writeLongs(value, 4, 3));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> outputView.writeLongs(value, -1, 1));
+        outputView.close();
+        Assertions.assertEquals(3 * Long.BYTES, outputStream.size());
+
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(outputStream.toByteArray()));
+        long[] rs = new long[5];
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> inputView.readLongs(rs, 3, 3));
+        inputView.readLongs(rs, 1, 3);
+        Assertions.assertArrayEquals(new long[] {0, 3, 4, 5, 0}, rs);
+        Assertions.assertThrows(JcodecEOFException.class, () -> inputView.readLongs(rs, 0, 1));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec;
+
+import com.github.harbby.gadtry.base.Platform;
+import com.github.harbby.gadtry.jcodec.codecs.OrderedSerializers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import sun.misc.Unsafe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class RawComparatorTest
+{
+    private final Jcodec jcodec = Jcodec.of();
+
+    private <T> byte[] serialize(Serializer<T> serializer, T value)
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputView outputView = new StreamOutputView(outputStream)) {
+            serializer.write(jcodec, outputView, value);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private <T> void checkOrder(Class<T> typeClass, List<T> values)
+    {
+        Serializer<T> serializer = OrderedSerializers.getSerializer(typeClass);
+        Comparator<T> comparator = serializer.comparator();
+        RawComparator rawComparator = serializer.rawComparator();
+        List<byte[]> bytesList = new ArrayList<>();
+        for (T value : values) {
+            byte[] bytes = serialize(serializer, value);
+            T out = serializer.read(jcodec, new StreamInputView(new ByteArrayInputStream(bytes)), typeClass);
+            Assertions.assertEquals(value, out);
+            bytesList.add(bytes);
+        }
+        for (int i = 0; i < values.size(); i++) {
+            for (int j = 0; j < values.size(); j++) {
+                byte[] b1 = bytesList.get(i);
+                byte[] b2 = bytesList.get(j);
+                int expected = Integer.signum(comparator.compare(values.get(i), values.get(j)));
+                Assertions.assertEquals(expected, Integer.signum(rawComparator.compare(b1, 0, b1.length, b2, 0, b2.length)),
+                        values.get(i) + " vs " + values.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void intOrderTest()
+    {
+        Random random = new Random(0);
+        List<Integer> values = new ArrayList<>(Arrays.asList(0, 1, -1, 255, 256, -256, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        for (int i = 0; i < 100; i++) {
+            values.add(random.nextInt());
+        }
+        checkOrder(Integer.class, values);
+    }
+
+    @Test
+    public void longOrderTest()
+    {
+        Random random = new Random(0);
+        List<Long> values = new ArrayList<>(Arrays.asList(0L, 1L, -1L, 1L << 40, -(1L << 40), Long.MIN_VALUE, Long.MAX_VALUE));
+        for (int i = 0; i < 100; i++) {
+            values.add(random.nextLong());
+        }
+        checkOrder(Long.class, values);
+    }
+
+    @Test
+    public void floatingOrderTest()
+    {
+        Random random = new Random(0);
+        List<Double> doubles = new ArrayList<>(Arrays.asList(0.0, -0.0, 1.0, -1.0, Double.MIN_VALUE, -Double.MIN_VALUE,
+                Double.MAX_VALUE, -Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN));
+        List<Float> floats = new ArrayList<>(Arrays.asList(0.0f, -0.0f, 1.0f, -1.0f, Float.MIN_VALUE, -Float.MIN_VALUE,
+                Float.MAX_VALUE, -Float.MAX_VALUE, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NaN));
+        for (int i = 0; i < 100; i++) {
+            doubles.add(random.nextGaussian() * 1000);
+            floats.add((float) random.nextGaussian() * 1000);
+        }
+        checkOrder(Double.class, doubles);
+        checkOrder(Float.class, floats);
+    }
+
+    @Test
+    public void smallTypesOrderTest()
+    {
+        checkOrder(Byte.class, Arrays.asList((byte) 0, (byte) 1, (byte) -1, Byte.MIN_VALUE, Byte.MAX_VALUE));
+        checkOrder(Short.class, Arrays.asList((short) 0, (short) 1, (short) -1, (short) 256, Short.MIN_VALUE, Short.MAX_VALUE));
+        checkOrder(Character.class, Arrays.asList('a', 'b', '\0', '齐', Character.MAX_VALUE));
+        checkOrder(Boolean.class, Arrays.asList(true, false));
+    }
+
+    @Test
+    public void stringOrderTest()
+    {
+        List<String> values = new ArrayList<>(Arrays.asList("", "a", "ab", "abc", "b", "\0", "\0\0", "a\0", "a\0b", "a\1",
+                "\u007f", "\u0080", "߿", "ࠀ", "齐", "￿", "😀", "a😀", "\ud800", "\udfff"));
+        Random random = new Random(0);
+        for (int i = 0; i < 50; i++) {
+            char[] chars = new char[random.nextInt(20)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) (random.nextBoolean() ? random.nextInt(4) : random.nextInt(0x10000));
+            }
+            values.add(new String(chars));
+        }
+        checkOrder(String.class, values);
+    }
+
+    @Test
+    public void compositeKeyTest()
+    {
+        Serializer<String> stringSerializer = OrderedSerializers.getSerializer(String.class);
+        Serializer<Integer> intSerializer = OrderedSerializers.getSerializer(int.class);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputView outputView = new StreamOutputView(outputStream)) {
+            stringSerializer.write(jcodec, outputView, "ab");
+            intSerializer.write(jcodec, outputView, 1);
+        }
+        byte[] key1 = outputStream.toByteArray();
+        outputStream.reset();
+        try (OutputView outputView = new StreamOutputView(outputStream)) {
+            stringSerializer.write(jcodec, outputView, "abc");
+            intSerializer.write(jcodec, outputView, -1);
+        }
+        byte[] key2 = outputStream.toByteArray();
+        Assertions.assertTrue(RawComparator.lexicographic().compare(key1, 0, key1.length, key2, 0, key2.length) < 0);
+    }
+
+    @Test
+    public void offHeapCompareTest()
+    {
+        Unsafe unsafe = Platform.getUnsafe();
+        byte[] b1 = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, (byte) 0x80};
+        byte[] b2 = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+        long address1 = unsafe.allocateMemory(b1.length);
+        long address2 = unsafe.allocateMemory(b2.length);
+        try {
+            Platform.copyMemory(b1, Unsafe.ARRAY_BYTE_BASE_OFFSET, null, address1, b1.length);
+            Platform.copyMemory(b2, Unsafe.ARRAY_BYTE_BASE_OFFSET, null, address2, b2.length);
+            RawComparator comparator = RawComparator.lexicographic();
+            Assertions.assertTrue(comparator.compare(address1, b1.length, address2, b2.length) > 0);
+            Assertions.assertTrue(comparator.compare(address2, b2.length, address1, b1.length) < 0);
+            Assertions.assertEquals(0, comparator.compare(address1, 11, address2, 11));
+            Assertions.assertTrue(comparator.compare(address1, 11, address2, 12) < 0);
+            Assertions.assertTrue(comparator.compare(b1, 0, b1.length, b2, 0, b2.length) > 0);
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> comparator.compare(b1, 1, b1.length, b2, 0, b2.length));
+        }
+        finally {
+            unsafe.freeMemory(address1);
+            unsafe.freeMemory(address2);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jcodec.compress;
+
+import com.github.harbby.gadtry.jcodec.InputView;
+import com.github.harbby.gadtry.jcodec.Jcodec;
+import com.github.harbby.gadtry.jcodec.JcodecException;
+import com.github.harbby.gadtry.jcodec.OutputView;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class CompressedViewTest
+{
+    private static final List<Supplier<BlockCodec>> CODECS = Arrays.asList(BlockCodec::lz4, BlockCodec::deflate, () -> BlockCodec.deflate(1));
+
+    private static byte[] compressibleBytes(int size)
+    {
+        Random random = new Random(0);
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ("abcdefgh".charAt(random.nextInt(8)) + (i % 1024 < 512 ? 0 : 1));
+        }
+        return bytes;
+    }
+
+    private static void checkCodec(BlockCodec codec, byte[] raw)
+    {
+        byte[] compressed = new byte[codec.maxCompressedLength(raw.length) + 3];
+        int compressedLength = codec.compress(raw, 0, raw.length, compressed, 3);
+        Assertions.assertTrue(compressedLength <= codec.maxCompressedLength(raw.length));
+        byte[] out = new byte[raw.length + 2];
+        codec.decompress(compressed, 3, compressedLength, out, 2, raw.length);
+        Assertions.assertArrayEquals(raw, Arrays.copyOfRange(out, 2, out.length));
+    }
+
+    @Test
+    public void codecRoundTripTest()
+    {
+        Random random = new Random(0);
+        byte[] randomBytes = new byte[100_000];
+        random.nextBytes(randomBytes);
+        byte[] runLength = new byte[70_000];
+        Arrays.fill(runLength, (byte) 7);
+        for (Supplier<BlockCodec> supplier : CODECS) {
+            BlockCodec codec = supplier.get();
+            checkCodec(codec, new byte[0]);
+            checkCodec(codec, "abc".getBytes());
+            checkCodec(codec, "abcabcabcabcabcabcabcabc1".getBytes());
+            checkCodec(codec, compressibleBytes(100_000));
+            checkCodec(codec, randomBytes);
+            checkCodec(codec, runLength);
+            codec.close();
+        }
+    }
+
+    @Test
+    public void lz4CompressRatioTest()
+    {
+        BlockCodec codec = BlockCodec.lz4();
+        byte[] raw = new byte[1 << 16];
+        for (int i = 0; i < raw.length; i += 8) {
+            System.arraycopy("user_id=".getBytes(), 0, raw, i, 8);
+        }
+        byte[] compressed = new byte[codec.maxCompressedLength(raw.length)];
+        Assertions.assertTrue(codec.compress(raw, 0, raw.length, compressed, 0) < raw.length / 50);
+    }
+
+    @Test
+    public void malformedBlockTest()
+    {
+        BlockCodec codec = BlockCodec.lz4();
+        byte[] raw = compressibleBytes(1000);
+        byte[] compressed = new byte[codec.maxCompressedLength(raw.length)];
+        int compressedLength = codec.compress(raw, 0, raw.length, compressed, 0);
+        Assertions.assertThrows(JcodecException.class, () -> codec.decompress(compressed, 0, compressedLength, new byte[raw.length], 0, raw.length - 1));
+        Assertions.assertThrows(JcodecException.class, () -> codec.decompress(compressed, 0, compressedLength / 2, new byte[raw.length], 0, raw.length));
+        BlockCodec deflate = BlockCodec.deflate();
+        Assertions.assertThrows(JcodecException.class, () -> deflate.decompress(compressed, 0, compressedLength, new byte[raw.length], 0, raw.length));
+    }
+
+    @Test
+    public void viewRoundTripTest()
+    {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            values.add("value" + (i % 100));
+        }
+        for (Supplier<BlockCodec> supplier : CODECS) {
+            Jcodec jcodec = Jcodec.of();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            // small blocks, the objects cross the blocks
+            OutputView outputView = new CompressedOutputView(outputStream, supplier.get(), 1024);
+            jcodec.writeClassAndObject(outputView, values);
+            outputView.writeInt(123);
+            outputView.close();
+            byte[] bytes = outputStream.toByteArray();
+            Assertions.assertTrue(bytes.length < 20_000 * 8 / 2);
+
+            for (int buffSize : new int[] {512, 1 << 16}) {
+                jcodec.reset();
+                InputView inputView = new CompressedInputView(new ByteArrayInputStream(bytes), supplier.get(), buffSize);
+                Assertions.assertEquals(values, jcodec.readClassAndObject(inputView));
+                Assertions.assertEquals(123, inputView.readInt());
+                Assertions.assertEquals(-1, inputView.read());
+                inputView.close();
+            }
+        }
+    }
+
+    @Test
+    public void incompressibleBlockStoredTest()
+    {
+        byte[] randomBytes = new byte[10_000];
+        new Random(0).nextBytes(randomBytes);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputView outputView = new CompressedOutputView(outputStream, BlockCodec.lz4(), 4096);
+        outputView.write(randomBytes);
+        outputView.close();
+        // 3 blocks, the header is 8 bytes
+        Assertions.assertEquals(randomBytes.length + 3 * 8, outputStream.size());
+
+        InputView inputView = new CompressedInputView(new ByteArrayInputStream(outputStream.toByteArray()), BlockCodec.lz4());
+        byte[] out = new byte[randomBytes.length];
+        inputView.readFully(out);
+        Assertions.assertArrayEquals(randomBytes, out);
+    }
+}
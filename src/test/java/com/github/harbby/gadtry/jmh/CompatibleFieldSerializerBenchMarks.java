@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.jcodec.CompatibleFieldSerializer;
+import com.github.harbby.gadtry.jcodec.InputView;
+import com.github.harbby.gadtry.jcodec.Jcodec;
+import com.github.harbby.gadtry.jcodec.OutputView;
+import com.github.harbby.gadtry.jcodec.StreamInputView;
+import com.github.harbby.gadtry.jcodec.StreamOutputView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compares the generated field serializer with the CompatibleFieldSerializer,
+ * the field header is written once per stream, the extra cost is the fixed width primitives
+ * and the length prefixed object fields.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Fork(jvmArgsPrepend = {}, value = 1)
+public class CompatibleFieldSerializerBenchMarks
+{
+    @Param({"1000"})
+    private int size;
+
+    private final Jcodec generatedJcodec = Jcodec.of();
+    private final Jcodec compatibleJcodec = Jcodec.of();
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    private Bean[] beans;
+    private byte[] generatedBytes;
+    private byte[] compatibleBytes;
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(CompatibleFieldSerializerBenchMarks.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup()
+    {
+        generatedJcodec.register(Bean.class);
+        compatibleJcodec.register(Bean.class, new CompatibleFieldSerializer<>(compatibleJcodec, Bean.class));
+        beans = new Bean[size];
+        for (int i = 0; i < size; i++) {
+            beans[i] = new Bean(i);
+        }
+        generatedBytes = write(generatedJcodec);
+        compatibleBytes = write(compatibleJcodec);
+    }
+
+    private byte[] write(Jcodec jcodec)
+    {
+        outputStream.reset();
+        jcodec.reset();
+        OutputView outputView = new StreamOutputView(outputStream);
+        for (Bean bean : beans) {
+            jcodec.writeObject(outputView, bean);
+        }
+        outputView.close();
+        return outputStream.toByteArray();
+    }
+
+    private Bean read(Jcodec jcodec, byte[] bytes)
+    {
+        jcodec.reset();
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(bytes));
+        Bean bean = null;
+        for (int i = 0; i < size; i++) {
+            bean = jcodec.readObject(inputView, Bean.class);
+        }
+        return bean;
+    }
+
+    @Benchmark
+    public byte[] generatedWrite()
+    {
+        return write(generatedJcodec);
+    }
+
+    @Benchmark
+    public byte[] compatibleWrite()
+    {
+        return write(compatibleJcodec);
+    }
+
+    @Benchmark
+    public Bean generatedRead()
+    {
+        return read(generatedJcodec, generatedBytes);
+    }
+
+    @Benchmark
+    public Bean compatibleRead()
+    {
+        return read(compatibleJcodec, compatibleBytes);
+    }
+
+    public static class Bean
+    {
+        private int id;
+        private long time;
+        private double score;
+        private boolean active;
+        private String name;
+        private String city;
+
+        public Bean() {}
+
+        public Bean(int id)
+        {
+            this.id = id;
+            this.time = id * 1000L;
+            this.score = id * 0.5;
+            this.active = (id & 1) == 0;
+            this.name = "name" + id;
+            this.city = "city" + (id % 10);
+        }
+    }
+}
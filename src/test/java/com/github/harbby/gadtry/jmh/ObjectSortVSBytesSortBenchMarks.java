@@ -15,6 +15,7 @@
  */
 package com.github.harbby.gadtry.jmh;
 
+import com.github.harbby.gadtry.jcodec.RawComparator;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -53,6 +54,8 @@ public class ObjectSortVSBytesSortBenchMarks
 {
     private List<Integer> integerList;
     private byte[] byteArray;
+    private byte[] orderedByteArray;
+    private final RawComparator rawComparator = RawComparator.lexicographic();
     private List<Integer> indexList;
 
     @Param({"1024"})
@@ -64,10 +67,14 @@ public class ObjectSortVSBytesSortBenchMarks
         integerList = ThreadLocalRandom.current().ints(size).boxed().collect(Collectors.toList());
         this.byteArray = new byte[size << 2];
         indexList = new ArrayList<>(size);
+        this.orderedByteArray = new byte[size << 2];
         ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray);
+        ByteBuffer orderedByteBuffer = ByteBuffer.wrap(orderedByteArray);
         for (int i = 0; i < size; i++) {
             int value = integerList.get(i);
             byteBuffer.putInt(value);
+            // same as OrderedSerializers.IntOrderedSerializer
+            orderedByteBuffer.putInt(value ^ Integer.MIN_VALUE);
             indexList.add(i << 2);
         }
     }
@@ -86,6 +93,16 @@ public class ObjectSortVSBytesSortBenchMarks
         return integerList.get(0);
     }
 
+    /**
+     * the order-preserving encoding sorted by unsigned bytes is the same as sortIntegerList
+     */
+    @Benchmark
+    public Integer sortRawComparator()
+    {
+        indexList.sort((x, y) -> rawComparator.compare(orderedByteArray, x, 4, orderedByteArray, y, 4));
+        return indexList.get(0);
+    }
+
     @Benchmark
     public Integer sortByteArray2()
     {
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.jcodec.InputView;
+import com.github.harbby.gadtry.jcodec.OutputView;
+import com.github.harbby.gadtry.jcodec.StreamInputView;
+import com.github.harbby.gadtry.jcodec.StreamOutputView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writeLongs()/readLongs() block copies against one writeLong()/readLong() call per element,
+ * both write the same bytes.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Fork(jvmArgsPrepend = {}, value = 1)
+public class PrimitiveArrayBenchMarks
+{
+    @Param({"64", "4096", "262144"})
+    private int length;
+
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    private long[] longs;
+    private long[] readBuffer;
+    private byte[] bytes;
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(PrimitiveArrayBenchMarks.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup()
+    {
+        longs = new Random(0).longs(length).toArray();
+        readBuffer = new long[length];
+        bytes = bulkWrite();
+    }
+
+    @Benchmark
+    public byte[] bulkWrite()
+    {
+        outputStream.reset();
+        OutputView outputView = new StreamOutputView(outputStream);
+        outputView.writeLongs(longs, 0, longs.length);
+        outputView.close();
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] perElementWrite()
+    {
+        outputStream.reset();
+        OutputView outputView = new StreamOutputView(outputStream);
+        for (long v : longs) {
+            outputView.writeLong(v);
+        }
+        outputView.close();
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public long[] bulkRead()
+    {
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(bytes));
+        inputView.readLongs(readBuffer, 0, length);
+        return readBuffer;
+    }
+
+    @Benchmark
+    public long[] perElementRead()
+    {
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < length; i++) {
+            readBuffer[i] = inputView.readLong();
+        }
+        return readBuffer;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.collection.iterator.CloseIterator;
+import com.github.harbby.gadtry.io.RecordFileReader;
+import com.github.harbby.gadtry.io.RecordFileWriter;
+import com.github.harbby.gadtry.jcodec.compress.BlockCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * decodes the same lz4 record file by one thread against the parallel block iterator.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Fork(jvmArgsPrepend = {}, value = 1)
+public class RecordFileBenchMarks
+{
+    @Param({"4", "16"})
+    private int prefetch;
+
+    private File file;
+    private RecordFileReader<Record> reader;
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(RecordFileBenchMarks.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        file = File.createTempFile("record", ".grec");
+        try (RecordFileWriter<Record> writer = RecordFileWriter.builder(Record.class)
+                .codec(BlockCodec.lz4())
+                .build(new FileOutputStream(file))) {
+            for (int i = 0; i < 1_000_000; i++) {
+                writer.write(new Record(i, "name" + i % 1000, i * 0.5));
+            }
+        }
+        reader = RecordFileReader.open(Files.newByteChannel(file.toPath(), StandardOpenOption.READ));
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException
+    {
+        reader.close();
+        Files.delete(file.toPath());
+    }
+
+    private static long sum(CloseIterator<Record> iterator)
+    {
+        long sum = 0;
+        try (CloseIterator<Record> it = iterator) {
+            while (it.hasNext()) {
+                sum += it.next().id;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long sequentialRead()
+    {
+        return sum(reader.iterator());
+    }
+
+    @Benchmark
+    public long parallelRead()
+    {
+        return sum(reader.parallelIterator(prefetch));
+    }
+
+    public static class Record
+    {
+        private long id;
+        private String name;
+        private double score;
+
+        public Record() {}
+
+        public Record(long id, String name, double score)
+        {
+            this.id = id;
+            this.name = name;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.jcodec.InputView;
+import com.github.harbby.gadtry.jcodec.OutputView;
+import com.github.harbby.gadtry.jcodec.StreamInputView;
+import com.github.harbby.gadtry.jcodec.StreamOutputView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writeString/readString of the ascii, LATIN1 (10% chars in 0x80-0xFF) and UTF16 (10% chinese chars) strings,
+ * DataOutputStream.writeUTF() is the baseline, it writes the same modified utf-8 bytes.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Fork(jvmArgsPrepend = {}, value = 1)
+public class StringEncoderBenchMarks
+{
+    @Param({"ascii", "latin1", "utf16"})
+    private String payload;
+
+    @Param({"16", "256", "4096"})
+    private int length;
+
+    private static final int COUNT = 1000;
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    private String[] strings;
+    private byte[] bytes;
+    private byte[] utfBytes;
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(StringEncoderBenchMarks.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        Random random = new Random(0);
+        strings = new String[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            char[] chars = new char[length];
+            for (int j = 0; j < length; j++) {
+                chars[j] = (char) ('a' + random.nextInt(26));
+                if (random.nextInt(10) == 0) {
+                    if ("latin1".equals(payload)) {
+                        chars[j] = (char) (0x80 + random.nextInt(0x80));
+                    }
+                    else if ("utf16".equals(payload)) {
+                        chars[j] = (char) (0x4E00 + random.nextInt(0x5000));
+                    }
+                }
+            }
+            strings[i] = new String(chars);
+        }
+        bytes = jcodecWrite();
+        utfBytes = dataOutputWrite();
+    }
+
+    @Benchmark
+    public byte[] jcodecWrite()
+    {
+        outputStream.reset();
+        OutputView outputView = new StreamOutputView(outputStream);
+        for (String str : strings) {
+            outputView.writeString(str);
+        }
+        outputView.close();
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public String jcodecRead()
+    {
+        InputView inputView = new StreamInputView(new ByteArrayInputStream(bytes));
+        String str = null;
+        for (int i = 0; i < COUNT; i++) {
+            str = inputView.readString();
+        }
+        return str;
+    }
+
+    @Benchmark
+    public byte[] dataOutputWrite()
+            throws IOException
+    {
+        outputStream.reset();
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        for (String str : strings) {
+            dataOutputStream.writeUTF(str);
+        }
+        dataOutputStream.flush();
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public String dataInputRead()
+            throws IOException
+    {
+        DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(utfBytes));
+        String str = null;
+        for (int i = 0; i < COUNT; i++) {
+            str = dataInputStream.readUTF();
+        }
+        return str;
+    }
+}